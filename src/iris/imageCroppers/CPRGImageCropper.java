@@ -8,7 +8,9 @@ import ij.gui.Roi;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -34,7 +36,7 @@ public class CPRGImageCropper {
 	public static ImagePlus cropPlate(ImagePlus originalImage){
 		
 		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus croppedImage = originalImage.duplicate();
 			croppedImage.setRoi(originalImage.getRoi());
 			return(croppedImage);
@@ -48,11 +50,7 @@ public class CPRGImageCropper {
 		Roi rectangle = findCropBorders(duplicate);
 		duplicate.flush();
 
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
 		return(croppedImage);
 	}
 
@@ -304,30 +302,7 @@ public class CPRGImageCropper {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -341,28 +316,6 @@ public class CPRGImageCropper {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 }
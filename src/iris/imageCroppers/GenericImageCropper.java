@@ -6,7 +6,9 @@ package iris.imageCroppers;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -57,7 +59,7 @@ public class GenericImageCropper {
 	public static ImagePlus cropPlate(ImagePlus originalImage){
 		
 		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus croppedImage = originalImage.duplicate();
 			croppedImage.setRoi(originalImage.getRoi());
 			return(croppedImage);
@@ -71,11 +73,7 @@ public class GenericImageCropper {
 		Roi rectangle = findCropBorders(duplicate);
 		duplicate.flush();
 
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
 		return(croppedImage);
 	}
 
@@ -89,20 +87,44 @@ public class GenericImageCropper {
 	 */
 	private static Roi findCropBorders(ImagePlus originalImage) {
 
-
-
-		//1. get the plate's plastic borders
-		Roi plasticPlateBorders = findPlatePlasticBorders(originalImage);
-
-		//2. get the sums of brightness per row/column
+		//get the sums of brightness per row/column
 		ImageConverter imageConverter = new ImageConverter(originalImage);
 		imageConverter.convertToGray8();
 
 		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
 		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
 
+		return(findCropBorders(sumOfColumns, sumOfRows));
+	}
+
+
+	/**
+	 * Finds the Roi that cropPlate would keep, using the sums of brightness of the whole plate,
+	 * so that these are only calculated once for all croppers tried on a plate
+	 * @param plateProjections
+	 * @return
+	 */
+	public static Roi findCropBorders(PlateProjections plateProjections) {
+		ArrayList<Integer> sumOfColumns = IntegralImage.toIntegerList(plateProjections.getSumOfColumns());
+		ArrayList<Integer> sumOfRows = IntegralImage.toIntegerList(plateProjections.getSumOfRows());
+
+		return(findCropBorders(sumOfColumns, sumOfRows));
+	}
 
-		//3. define the search space for the minima
+
+	/**
+	 * Finds the colony borders using the sums of brightness per row/column of the grayscale plate
+	 * @param sumOfColumns
+	 * @param sumOfRows
+	 * @return
+	 */
+	private static Roi findCropBorders(ArrayList<Integer> sumOfColumns, ArrayList<Integer> sumOfRows) {
+
+		//1. get the plate's plastic borders
+		Roi plasticPlateBorders = findPlatePlasticBorders(sumOfColumns, sumOfRows);
+
+
+		//2. define the search space for the minima
 		int searchSmallWidth = (int) Math.round(plasticPlateBorders.getBounds().width * searchStart);
 		int searchBigWidth = (int) Math.round(plasticPlateBorders.getBounds().width * searchEnd);
 
@@ -111,7 +133,7 @@ public class GenericImageCropper {
 
 
 
-		//4. get the sublist of columns. The indices found during the call to getIndexOfMinimumElement are relative to the index of the element 
+		//3. get the sublist of columns. The indices found during the call to getIndexOfMinimumElement are relative to the index of the element 
 		//at the start of the search. We add it back before storing the indexOfMinimum*, so these variables store indices relative to the original
 		//picture and NOT the in-plate picture.
 
@@ -160,22 +182,15 @@ public class GenericImageCropper {
 	/**
 	 * This method will return the Roi of the image, where the plate's plastic borders were found.
 	 * The image is assumed to be already rotated.
-	 * @param originalImage
+	 * @param sumOfColumns: of the grayscale image
+	 * @param sumOfRows: of the grayscale image
 	 * @return
 	 */
-	private static Roi findPlatePlasticBorders(ImagePlus originalImage) {
-		
-		//1. make image grayscale
-		ImageConverter imageConverter = new ImageConverter(originalImage);
-		imageConverter.convertToGray8();
-		
-		//2. get sum of rows/columns
-		ArrayList<Integer> sumOfColumns = sumOfColumns(originalImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(originalImage);
+	private static Roi findPlatePlasticBorders(ArrayList<Integer> sumOfColumns, ArrayList<Integer> sumOfRows) {
 		
-		//3. get only the sums that correspond to the middle of the plate, get their means
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
+		//1. get only the sums that correspond to the middle of the plate, get their means
+		int width = sumOfColumns.size();
+		int height = sumOfRows.size();
 		
 		//define from where to where to get the sums of brightness (in the sawtooth pattern)
 		int columnsStartArea = width/2 - plateBorderSearchAreaColumns;
@@ -193,7 +208,7 @@ public class GenericImageCropper {
 		//get their mean
 		int meanOfCenterRows = (int)Math.round(getMean(sublistRows));
 		
-		//4. get the index of the 20th element above the mean, this is the plate's plastic bounds
+		//2. get the index of the 20th element above the mean, this is the plate's plastic bounds
 		ArrayList<Integer> indicesOfColumnsSumsAboveMean = getIndicesAboveMean(sumOfColumns, meanOfCenterColumns);
 		ArrayList<Integer> indicesOfRowsSumsAboveMean = getIndicesAboveMean(sumOfRows, meanOfCenterRows);
 		
@@ -309,30 +324,7 @@ public class GenericImageCropper {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -346,28 +338,6 @@ public class GenericImageCropper {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 }
@@ -6,7 +6,9 @@ package iris.imageCroppers;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ImageConverter;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
+import iris.utils.Toolbox;
 
 import java.awt.Rectangle;
 import java.util.ArrayList;
@@ -58,7 +60,7 @@ public class GenericImageCropper2 {
 	public static ImagePlus cropPlate(ImagePlus originalImage){
 
 		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus croppedImage = originalImage.duplicate();
 			croppedImage.setRoi(originalImage.getRoi());
 			return(croppedImage);
@@ -71,11 +73,7 @@ public class GenericImageCropper2 {
 		Roi rectangle = findCropBorders2(duplicate);
 		duplicate.flush();
 
-		originalImage.setRoi(rectangle);
-		originalImage.copy(false);//copy to the internal clipboard
-
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, rectangle);
 		croppedImage.setTitle(originalImage.getTitle());
 		return(croppedImage);
 	}
@@ -169,21 +167,44 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, originalImageWidth, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, PlateProjections.getHorizontalSection(originalImageWidth, originalImageHeight));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, originalImageHeight));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
-
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, PlateProjections.getVerticalSection(originalImageWidth, originalImageHeight));
 
 		//2. get sum of rows/columns
 		ArrayList<Integer> sumOfColumns = sumOfColumns(horizontalSection);
 		ArrayList<Integer> sumOfRows = sumOfRows(verticalSection);
 
+		return(findCropBorders2(sumOfColumns, sumOfRows, originalImageWidth, originalImageHeight));
+	}
+
+
+	/**
+	 * Finds the Roi that cropPlate would keep, using the sums of brightness of the plate sections,
+	 * so that these are only calculated once for all croppers tried on a plate
+	 * @param plateProjections
+	 * @return
+	 */
+	public static Roi findCropBorders(PlateProjections plateProjections){
+		ArrayList<Integer> sumOfColumns = IntegralImage.toIntegerList(plateProjections.getSumOfColumnsOfHorizontalSection());
+		ArrayList<Integer> sumOfRows = IntegralImage.toIntegerList(plateProjections.getSumOfRowsOfVerticalSection());
+
+		return(findCropBorders2(sumOfColumns, sumOfRows, plateProjections.getWidth(), plateProjections.getHeight()));
+	}
+
+
+	/**
+	 * Finds the colony borders using the sums of brightness of two grayscale sections of the plate
+	 * @param sumOfColumns: of the horizontal section
+	 * @param sumOfRows: of the vertical section
+	 * @param originalImageWidth
+	 * @param originalImageHeight
+	 * @return
+	 */
+	private static Roi findCropBorders2(ArrayList<Integer> sumOfColumns, ArrayList<Integer> sumOfRows, int originalImageWidth, int originalImageHeight){
+
 		//3. get only the sums that correspond to the middle of the plate, get their means
 		int indexOfLeftPlasticBorder = getIndexOfMaximumElement(sumOfColumns.subList(0, originalImageWidth/2));
 		int indexOfRightPlasticBorder = getIndexOfMaximumElement(sumOfColumns.subList(originalImageWidth/2, originalImageWidth)) + originalImageWidth/2;
@@ -236,15 +257,11 @@ public class GenericImageCropper2 {
 
 
 		//get a horizontal section of the plate
-		originalImage.setRoi(new Rectangle(0, 1000, width, 1000));
-		originalImage.copy(false);
-		ImagePlus horizontalSection = ImagePlus.getClipboard();
+		ImagePlus horizontalSection = Toolbox.cropImage(originalImage, new Rectangle(0, 1000, width, 1000));
 
 
 		//get a vertical section of the plate
-		originalImage.setRoi(new Rectangle(1000, 0, 1000, height));
-		originalImage.copy(false);
-		ImagePlus verticalSection = ImagePlus.getClipboard();
+		ImagePlus verticalSection = Toolbox.cropImage(originalImage, new Rectangle(1000, 0, 1000, height));
 
 
 		//2. get sum of rows/columns
@@ -357,30 +374,7 @@ public class GenericImageCropper2 {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -394,28 +388,6 @@ public class GenericImageCropper2 {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 }
@@ -5,7 +5,8 @@ package iris.imageCroppers;
 
 import ij.ImagePlus;
 import ij.gui.Roi;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.Toolbox;
 
 /**
  *This class provides methods to crop the original picture so as to keep only the colonies.
@@ -24,17 +25,24 @@ public abstract class NaiveImageCropper {
 	 */
 	private static Roi keepOnlyColoniesROI = new Roi(590, 380, 4130, 2730);
 	
+	
+	/**
+	 * @return the (hard-coded) Roi that cropPlate keeps
+	 */
+	public static Roi getCropBorders(){
+		return(keepOnlyColoniesROI);
+	}
+	
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the area of interest (580, 380, 4080, 2730) to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the area of interest (580, 380, 4080, 2730) to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	public static ImagePlus cropPlate(ImagePlus originalImage){
 		
 		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus croppedImage = originalImage.duplicate();
 			croppedImage.setRoi(originalImage.getRoi());
 			return(croppedImage);
@@ -44,11 +52,7 @@ public abstract class NaiveImageCropper {
 		//crop the plate so that we keep only the colonies
 		//Roi keepOnlyColoniesROI = new Roi(580, 380, 4080, 2730);
 		
-		originalImage.setRoi(keepOnlyColoniesROI);
-		originalImage.copy(false);//copy to the internal clipboard
-		
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, keepOnlyColoniesROI);
 		croppedImage.setTitle(originalImage.getTitle());
 		return(croppedImage);
 
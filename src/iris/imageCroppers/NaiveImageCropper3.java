@@ -5,7 +5,8 @@ package iris.imageCroppers;
 
 import ij.ImagePlus;
 import ij.gui.Roi;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.Toolbox;
 
 /**
  *This class provides methods to crop the original picture so as to keep only the colonies.
@@ -23,19 +24,30 @@ public abstract class NaiveImageCropper3 {
 	 * left and top are measured from the top left pixel of the picture
 	 * width and height are measured from the ROI starting point (left, top)
 	 */
-	public static Roi keepOnlyColoniesROI = new Roi(470, 325, 4150, 2750);
+	private static final Roi keepOnlyColoniesROI = new Roi(470, 325, 4150, 2750);
 	
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the area of interest (580, 380, 4080, 2730) to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the area of interest (470, 325, 4150, 2750) to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	public static ImagePlus cropPlate(ImagePlus originalImage){
+		return(cropPlate(originalImage, keepOnlyColoniesROI));
+	}
+	
+	
+	/**
+	 * Same as above, copying the given area of interest instead; profiles that crop their pictures
+	 * in other places pass their own ROI here, rather than changing the one every profile uses
+	 * @param originalImage
+	 * @param keepOnlyColoniesROI
+	 * @return
+	 */
+	public static ImagePlus cropPlate(ImagePlus originalImage, Roi keepOnlyColoniesROI){
 		
 		//if user has cropped the picture, no need to re-crop
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus croppedImage = originalImage.duplicate();
 			croppedImage.setRoi(originalImage.getRoi());
 			return(croppedImage);
@@ -45,11 +57,7 @@ public abstract class NaiveImageCropper3 {
 		//crop the plate so that we keep only the colonies
 		//Roi keepOnlyColoniesROI = new Roi(580, 380, 4080, 2730);
 		
-		originalImage.setRoi(keepOnlyColoniesROI);
-		originalImage.copy(false);//copy to the internal clipboard
-		
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, keepOnlyColoniesROI);
 		croppedImage.setTitle(originalImage.getTitle());
 		return(croppedImage);
 
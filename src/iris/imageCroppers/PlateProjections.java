@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package iris.imageCroppers;
+
+import ij.ImagePlus;
+import iris.utils.IntegralImage;
+import iris.utils.RotatedPlate;
+
+import java.awt.Rectangle;
+
+/**
+ * This class holds the sums of brightness of the rows and columns of a rotated plate picture (made grayscale),
+ * which is all the croppers need to find where the colonies are.
+ * They are calculated once per plate, the first time they are needed, so that trying out one cropper after
+ * the other only costs picking different parts of the same sums.
+ *
+ * Two kinds of sums are kept:
+ * the sums of the whole picture (used by GenericImageCropper),
+ * and the sums of a horizontal and a vertical section of the picture (used by GenericImageCropper2).
+ * The sums of the whole picture are calculated band by band, so that the whole picture is never made grayscale at once;
+ * the sums of the sections come out of the same pass.
+ *
+ * @author George Kritikos
+ *
+ */
+public class PlateProjections {
+
+	/**
+	 * how many rows of the picture are made grayscale at a time
+	 */
+	private static final int bandHeight = 64;
+
+	private final RotatedPlate rotatedPlate;
+	private final int width;
+	private final int height;
+
+	private long[] sumOfRows = null;
+	private long[] sumOfColumns = null;
+	private long[] sumOfColumnsOfHorizontalSection = null;
+	private long[] sumOfRowsOfVerticalSection = null;
+
+
+
+	/**
+	 * @param rotatedPlate: the sums are those of this picture, rotated
+	 */
+	public PlateProjections(RotatedPlate rotatedPlate){
+		this.rotatedPlate = rotatedPlate;
+		width = rotatedPlate.getWidth();
+		height = rotatedPlate.getHeight();
+	}
+
+
+	public int getWidth(){
+		return(width);
+	}
+
+
+	public int getHeight(){
+		return(height);
+	}
+
+
+	/**
+	 * @return the horizontal section of the plate used to find the left and right borders
+	 */
+	static Rectangle getHorizontalSection(int width, int height){
+		return(new Rectangle(0, 1000, width, 1000));
+	}
+
+
+	/**
+	 * @return the vertical section of the plate used to find the top and bottom borders
+	 */
+	static Rectangle getVerticalSection(int width, int height){
+		return(new Rectangle(1000, 0, 1000, height));
+	}
+
+
+
+	/**
+	 * @return the sum of brightness of every row of the picture (one for every y)
+	 */
+	public long[] getSumOfRows(){
+		if(sumOfRows==null)
+			calculateSums();
+		return(sumOfRows);
+	}
+
+
+	/**
+	 * @return the sum of brightness of every column of the picture (one for every x)
+	 */
+	public long[] getSumOfColumns(){
+		if(sumOfColumns==null)
+			calculateSums();
+		return(sumOfColumns);
+	}
+
+
+	/**
+	 * @return the sum of brightness of every column of the horizontal section (one for every x),
+	 * nothing if the section falls outside the picture
+	 */
+	public long[] getSumOfColumnsOfHorizontalSection(){
+		if(sumOfColumnsOfHorizontalSection==null){
+			//no need to go through the whole picture for this
+			ImagePlus section = rotatedPlate.getGrayscaleSection(getHorizontalSection(width, height));
+			sumOfColumnsOfHorizontalSection = IntegralImage.sumOfColumns(section);
+			section.flush();
+		}
+		return(sumOfColumnsOfHorizontalSection);
+	}
+
+
+	/**
+	 * @return the sum of brightness of every row of the vertical section (one for every y),
+	 * nothing if the section falls outside the picture
+	 */
+	public long[] getSumOfRowsOfVerticalSection(){
+		if(sumOfRowsOfVerticalSection==null){
+			ImagePlus section = rotatedPlate.getGrayscaleSection(getVerticalSection(width, height));
+			sumOfRowsOfVerticalSection = IntegralImage.sumOfRows(section);
+			section.flush();
+		}
+		return(sumOfRowsOfVerticalSection);
+	}
+
+
+
+	/**
+	 * Goes through the picture band by band, summing up the brightness of its rows and columns,
+	 * as well as those of the two sections
+	 */
+	private void calculateSums(){
+		Rectangle horizontalSection = getHorizontalSection(width, height).intersection(new Rectangle(0, 0, width, height));
+		Rectangle verticalSection = getVerticalSection(width, height).intersection(new Rectangle(0, 0, width, height));
+
+		//sections that fall outside the picture are empty, the same as if they were cropped out of it
+		long[] horizontalSectionColumns = new long[horizontalSection.isEmpty() ? 0 : width];
+		long[] verticalSectionRows = new long[verticalSection.isEmpty() ? 0 : height];
+
+		long[] rows = new long[height];
+		long[] columns = new long[width];
+
+		for(int bandStart=0; bandStart<height; bandStart+=bandHeight){
+			int bandRows = Math.min(bandHeight, height-bandStart);
+
+			ImagePlus band = rotatedPlate.getGrayscaleSection(new Rectangle(0, bandStart, width, bandRows));
+			byte[] pixels = (byte[]) band.getProcessor().getPixels();
+
+			for(int i=0; i<bandRows; i++){
+				int y = bandStart+i;
+				int offset = i*width;
+				boolean inHorizontalSection = horizontalSectionColumns.length>0
+						&& y>=horizontalSection.y && y<horizontalSection.y+horizontalSection.height;
+
+				long sumOfRow = 0;
+				long sumOfRowInVerticalSection = 0;
+
+				for(int x=0; x<width; x++){
+					int brightness = pixels[offset+x]&0xff;
+
+					sumOfRow += brightness;
+					columns[x] += brightness;
+
+					if(inHorizontalSection)
+						horizontalSectionColumns[x] += brightness;
+					if(x>=verticalSection.x && x<verticalSection.x+verticalSection.width)
+						sumOfRowInVerticalSection += brightness;
+				}
+
+				rows[y] = sumOfRow;
+				if(verticalSectionRows.length>0)
+					verticalSectionRows[y] = sumOfRowInVerticalSection;
+			}
+			band.flush();
+		}
+
+		sumOfRows = rows;
+		sumOfColumns = columns;
+		if(sumOfColumnsOfHorizontalSection==null)
+			sumOfColumnsOfHorizontalSection = horizontalSectionColumns;
+		if(sumOfRowsOfVerticalSection==null)
+			sumOfRowsOfVerticalSection = verticalSectionRows;
+	}
+
+}
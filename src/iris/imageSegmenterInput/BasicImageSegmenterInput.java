@@ -5,6 +5,7 @@ package iris.imageSegmenterInput;
 
 import ij.ImagePlus;
 import iris.settings.BasicSettings;
+import iris.utils.IntegralImage;
 
 /**
  * @author george
@@ -15,6 +16,13 @@ public class BasicImageSegmenterInput extends ImageSegmenterInput {
 	public ImagePlus imageToSegment;
 	public BasicSettings settings;
 	
+	/**
+	 * the integral image of the picture to segment, only calculated if something needs the sums of arbitrary
+	 * rectangles of it: the segmenters and colony breathing get by with the sums of rows and columns,
+	 * and with the pixels around the tile borders
+	 */
+	private IntegralImage integralImage = null;
+	
 	
 	/**
 	 * This will also adapt the input for various array formats
@@ -31,4 +39,47 @@ public class BasicImageSegmenterInput extends ImageSegmenterInput {
 		settings.minimumDistanceBetweenRows = (int) Math.round(nominalDistanceBetweenRows*0.75);
 		settings.maximumDistanceBetweenRows = (int) Math.round(nominalDistanceBetweenRows*1.5);
 	}
+	
+	
+	/**
+	 * This takes 8 bytes for every pixel of the picture, so it's only for callers that need the sums of
+	 * arbitrary rectangles; since the integral image is kept for the next ones,
+	 * the picture to segment should not be changed after this is called
+	 * @return the integral image of the picture to segment
+	 */
+	public IntegralImage getIntegralImage(){
+		if(integralImage==null)
+			integralImage = new IntegralImage(imageToSegment);
+		return(integralImage);
+	}
+	
+	
+	/**
+	 * @return true if the integral image of the picture to segment was already calculated
+	 */
+	public boolean hasIntegralImage(){
+		return(integralImage!=null);
+	}
+	
+	
+	/**
+	 * @return the sum of the brightness of every row of the picture to segment,
+	 * out of the integral image if it was already calculated
+	 */
+	public long[] getSumOfRows(){
+		if(integralImage!=null)
+			return(integralImage.sumOfRows());
+		return(IntegralImage.sumOfRows(imageToSegment));
+	}
+	
+	
+	/**
+	 * @return the sum of the brightness of every column of the picture to segment,
+	 * out of the integral image if it was already calculated
+	 */
+	public long[] getSumOfColumns(){
+		if(integralImage!=null)
+			return(integralImage.sumOfColumns());
+		return(IntegralImage.sumOfColumns(imageToSegment));
+	}
 }
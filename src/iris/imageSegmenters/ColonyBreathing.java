@@ -8,10 +8,11 @@ import ij.gui.Roi;
 import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
-import iris.ui.IrisFrontend;
+import iris.settings.BasicSettings;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 
 /**
  * This class implements methods that redefine the output of an existing image segmenter,
@@ -22,13 +23,6 @@ import java.util.ArrayList;
  */
 public class ColonyBreathing {
 
-	/**
-	 * This variable holds the maximum distance a boundary can travel from it's original location
-	 * (calculated by means of another image segmenter). This value is +/-
-	 */
-	public static int breathingSpace = 15;
-
-
 	/**
 	 * This function will redefine the borders of every tile
 	 * @param originalSegmentation - the output of an existing segmenter
@@ -38,65 +32,53 @@ public class ColonyBreathing {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
 
 		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			return(originalSegmentation);
 		}
 
 		try{
 
-			//create a copy of the output
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = originalSegmentation.copyRoiMatrix();
-
-			//for all rows except the last one
-			for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
-				//for all columns except the last one
-				for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
-
-
-
-					Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
-
-
-
-					//update bottom one's top (also change it's height)
-					//bottom one is on the next row, so i+1
-					//the new top of the tile just under the current tile is where the old one was 
-					//plus the difference from the new height to the previous height 
-					//e.g. making this tile higher should increase the bottom one's y
-					//conversely, making this tile shorter should bring the bottom one higher
-					int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
-
-					int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
-					int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
-
-					int x = output.ROImatrix[i+1][j].getBounds().x;
-					int y = bottomsNewTop;
-					int width = output.ROImatrix[i+1][j].getBounds().width;
-					int height = bottomsNewHeight;
-
-					output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
-
-					//in a similar fashion, update right one's left (also change it's width)
-					//right one is on the next column, so j+1
-					int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
-
-					int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
-					int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
-
-					x = rightsNewLeft;
-					y = output.ROImatrix[i][j+1].getBounds().y;
-					width = rightsNewWidth;
-					height = output.ROImatrix[i][j+1].getBounds().height;
-
-					output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
-
-
-					//now update also our current tile
-					output.ROImatrix[i][j] = newRoi;
-
-				}
+			//the maximum distance a boundary can travel from its original location, +/-
+			final int breathingSpace = input.settings.colonyBreathingSpace;
+			BorderSearch borderSearch;
+
+			int type = input.imageToSegment.getType();
+
+			if(input.hasIntegralImage() || (type!=ImagePlus.GRAY8 && type!=ImagePlus.COLOR_RGB)){
+				//the sums of brightnesses around the tile borders come out of the integral image of the picture,
+				//if some other step already needed it (or for the picture types that aren't read directly)
+				final IntegralImage integralImage = input.getIntegralImage();
+
+				borderSearch = new BorderSearch() {
+					int findBottom(int left, int right, int initialBottom) {
+						return(colonyBreatheBotom(left, right, initialBottom, breathingSpace, integralImage));
+					}
+					int findRight(int top, int bottom, int initialRight) {
+						return(colonyBreatheRight(top, bottom, initialRight, breathingSpace, integralImage));
+					}
+				};
 			}
+			else{
+				//only the pixels around the tile borders are summed up, that's a lot less than the whole picture,
+				//and there's no need for an integral image of it
+				final byte[] pixels = type==ImagePlus.GRAY8 ?
+						(byte[]) input.imageToSegment.getProcessor().getPixels() : redChannel(input.imageToSegment);
+				final int width = input.imageToSegment.getWidth();
+				final int height = input.imageToSegment.getHeight();
+
+				borderSearch = new BorderSearch() {
+					int findBottom(int left, int right, int initialBottom) {
+						return(darkestLine(sumOfRowsAround(left, right, initialBottom, breathingSpace, pixels, width, height), breathingSpace));
+					}
+					int findRight(int top, int bottom, int initialRight) {
+						return(darkestLine(sumOfColumnsAround(top, bottom, initialRight, breathingSpace, pixels, width, height), breathingSpace));
+					}
+				};
+			}
+
+			//create a copy of the output, with every tile's borders moved
+			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+			output.ROImatrix = breathe(originalSegmentation.ROImatrix, input.settings, borderSearch);
 
 			return output;
 		}
@@ -161,172 +143,260 @@ public class ColonyBreathing {
 
 
 	/**
-	 * This method takes one rectangle and recalculates the best position for it's bottom and it's
-	 * right side
-	 * @param originalTileRectangle
-	 * @param bigPicture - the complete grayscaled picture
-	 * @return
+	 * This finds how much the bottom and right border of a tile should move
 	 */
-	private static Roi colonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture){
+	static abstract class BorderSearch {
+		/**
+		 * @return how much the bottom of the tile should move, given its left, right and current bottom
+		 */
+		abstract int findBottom(int left, int right, int initialBottom);
+
+		/**
+		 * @return how much the right of the tile should move, given its top, (new) bottom and current right
+		 */
+		abstract int findRight(int top, int bottom, int initialRight);
+	}
 
-		//first calculate the boundaries within which we will sum up brightnesses
-		int left = originalTileRectangle.getBounds().x;
-		int oldRight = left + originalTileRectangle.getBounds().width;
-		int top = originalTileRectangle.getBounds().y;
-		int oldBottom = top + originalTileRectangle.getBounds().height;
 
 
-		//first calculate the bottom boundary, then the right boundary
-		int newBottom = colonyBreatheBotom(left, oldRight, oldBottom, bigPicture) + oldBottom;
-		int newRight = colonyBreatheRight(top, newBottom, oldRight, bigPicture) + oldRight; //use the new bottom
+	/**
+	 * This function lets the bottom and right border of every tile (except those of the last row and column) breathe.
+	 * Moving a tile's bottom also moves the top of the tile under it, moving its right also moves the left of the
+	 * tile right of it.
+	 * The tiles are kept as arrays of coordinates while their borders move, the Rois are only made at the end.
+	 * @param roiMatrix - the tiles found by an existing segmenter, these are not changed
+	 * @param settings
+	 * @param borderSearch
+	 * @return the new tiles
+	 */
+	static Roi[][] breathe(Roi[][] roiMatrix, BasicSettings settings, BorderSearch borderSearch){
+
+		int numberOfRows = roiMatrix.length;
+		int numberOfColumns = roiMatrix[0].length;
+
+		int[][] x = new int[numberOfRows][numberOfColumns];
+		int[][] y = new int[numberOfRows][numberOfColumns];
+		int[][] width = new int[numberOfRows][numberOfColumns];
+		int[][] height = new int[numberOfRows][numberOfColumns];
+
+		for(int i=0; i<numberOfRows; i++){
+			for(int j=0; j<numberOfColumns; j++){
+				Rectangle bounds = roiMatrix[i][j].getBounds();
+				x[i][j] = bounds.x;
+				y[i][j] = bounds.y;
+				width[i][j] = bounds.width;
+				height[i][j] = bounds.height;
+			}
+		}
 
-		int newHeight = newBottom - top;
-		int newWidth = newRight - left;
 
+		//for all rows except the last one
+		for(int i=0;i<settings.numberOfRowsOfColonies-1; i++){
+			//for all columns except the last one
+			for (int j = 0; j < settings.numberOfColumnsOfColonies-1; j++) {
+
+				//first calculate the bottom boundary, then the right boundary
+				int left = x[i][j];
+				int top = y[i][j];
+				int oldRight = left + width[i][j];
+				int oldBottom = top + height[i][j];
+
+				int newBottom = borderSearch.findBottom(left, oldRight, oldBottom) + oldBottom;
+				int newRight = borderSearch.findRight(top, newBottom, oldRight) + oldRight; //use the new bottom
+
+				//a Roi is at least 1 pixel wide and high
+				int newHeight = Math.max(1, newBottom - top);
+				int newWidth = Math.max(1, newRight - left);
+
+
+				//update bottom one's top (also change it's height)
+				//bottom one is on the next row, so i+1
+				//the new top of the tile just under the current tile is where the old one was 
+				//plus the difference from the new height to the previous height 
+				//e.g. making this tile higher should increase the bottom one's y
+				//conversely, making this tile shorter should bring the bottom one higher
+				int heightDifference = newHeight - height[i][j];
+				y[i+1][j] += heightDifference;
+				height[i+1][j] = Math.max(1, height[i+1][j] - heightDifference); //just because we want to keep the bottom's bottom where it was
+
+				//in a similar fashion, update right one's left (also change it's width)
+				//right one is on the next column, so j+1
+				int widthDifference = newWidth - width[i][j];
+				x[i][j+1] += widthDifference;
+				width[i][j+1] = Math.max(1, width[i][j+1] - widthDifference);
+
+				//now update also our current tile
+				height[i][j] = newHeight;
+				width[i][j] = newWidth;
+			}
+		}
 
 
-		//calculate the new colony Roi
-		Roi newRoi = new Roi(new Rectangle(left, top, newWidth, newHeight));
-		return(newRoi);
+		Roi[][] newRoiMatrix = new Roi[numberOfRows][numberOfColumns];
+		for(int i=0; i<numberOfRows; i++){
+			for(int j=0; j<numberOfColumns; j++){
+				newRoiMatrix[i][j] = new Roi(x[i][j], y[i][j], width[i][j], height[i][j]);
+			}
+		}
+		return(newRoiMatrix);
 	}
 
 
 
 	/**
-	 * This function sums up the brightnesses to find the correct bottom boundary
+	 * This function sums up the brightnesses of the rows around the initial bottom, from left to right (inclusive),
+	 * to find the correct bottom boundary; pixels outside the picture count as 0
 	 * @param left
 	 * @param right
 	 * @param initialBottom
-	 * @param bigPicture
-	 * @return the y of the new bottom of the tile
+	 * @param breathingSpace - how far the bottom can move, up or down
+	 * @param bigPicture - the integral image of the complete grayscaled picture
+	 * @return how much the bottom of the tile should move
 	 */
-	private static int colonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture){
-		try{
-			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfRows_ = sumOfRows(bigPicture, left, right, initialBottom);
-			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfRows_);
-			//that's your new bottom
-			return(minimumBrightnessSumLocation - breathingSpace);
-		}
-		catch(Exception e){
-			//do nothing
+	private static int colonyBreatheBotom(int left, int right, int initialBottom, int breathingSpace, IntegralImage bigPicture){
+		//find the darkest row
+		int minimumBrightnessSumLocation = -1;
+		long min = Integer.MAX_VALUE;
+
+		for(int i=0; i<2*breathingSpace+1; i++){
+			long sum = bigPicture.sum(left, initialBottom-breathingSpace+i, right-left+1, 1);
+			if(sum<min){
+				min = sum;
+				minimumBrightnessSumLocation = i;
+			}
 		}
-		return(initialBottom);
+
+		//that's your new bottom
+		return(minimumBrightnessSumLocation - breathingSpace);
 	}
 
 
 	/**
-	 * This function sums up the brightnesses to find the correct right boundary
-	 * @param left
-	 * @param right
-	 * @param initialBottom
-	 * @param bigPicture
-	 * @return the y of the new bottom of the tile
+	 * This function sums up the brightnesses of the columns around the initial right, from top to bottom (inclusive),
+	 * to find the correct right boundary; pixels outside the picture count as 0
+	 * @param top
+	 * @param bottom
+	 * @param initialRight
+	 * @param breathingSpace - how far the right can move, left or right
+	 * @param bigPicture - the integral image of the complete grayscaled picture
+	 * @return how much the right of the tile should move
 	 */
-	private static int colonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture){
-		try{
-			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfColumns_ = sumOfColumns(bigPicture, top, bottom, initialRight);
-			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfColumns_);
-			//that's your new bottom
-			return(minimumBrightnessSumLocation - breathingSpace);
-		}
-		catch(Exception e){
-			//do nothing
+	private static int colonyBreatheRight(int top, int bottom, int initialRight, int breathingSpace, IntegralImage bigPicture){
+		//find the darkest column
+		int minimumBrightnessSumLocation = -1;
+		long min = Integer.MAX_VALUE;
+
+		for(int i=0; i<2*breathingSpace+1; i++){
+			long sum = bigPicture.sum(initialRight-breathingSpace+i, top, 1, bottom-top+1);
+			if(sum<min){
+				min = sum;
+				minimumBrightnessSumLocation = i;
+			}
 		}
-		return(initialRight);
+
+		//that's your new right
+		return(minimumBrightnessSumLocation - breathingSpace);
 	}
 
 
 
 	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
+	 * @param sums - the sums of brightnesses of the rows or columns around the initial border,
+	 * from breathingSpace before to breathingSpace after it
+	 * @param breathingSpace
+	 * @return how much the border should move to reach the darkest of them (the first one, if several are as dark)
 	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage, int left, int right, int initialBottom ){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=initialBottom-breathingSpace; y<=initialBottom+breathingSpace; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=left; x<=right; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
+	private static int darkestLine(long[] sums, int breathingSpace){
+		int minimumBrightnessSumLocation = -1;
+		long min = Integer.MAX_VALUE;
+
+		for(int i=0; i<sums.length; i++){
+			if(sums[i]<min){
+				min = sums[i];
+				minimumBrightnessSumLocation = i;
 			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
 		}
 
-		return(sumOfRows);
+		return(minimumBrightnessSumLocation - breathingSpace);
 	}
 
 
-
-
-
 	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
+	 * @param image - an RGB picture
+	 * @return the red channel of the picture, which is the brightness used for RGB pictures (see IntegralImage)
 	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage, int top, int bottom, int initialRight){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
+	private static byte[] redChannel(ImagePlus image){
+		int[] rgbPixels = (int[]) image.getProcessor().getPixels();
+		byte[] red = new byte[rgbPixels.length];
+		for(int i=0; i<rgbPixels.length; i++){
+			red[i] = (byte) (rgbPixels[i]>>16);
+		}
+		return(red);
+	}
 
-		//for all columns
-		for(int x=initialRight-breathingSpace; x<=initialRight+breathingSpace; x++ ){
-			sum = 0;
 
-			//for all rows
-			for(int y=top; y<=bottom; y++ ){
 
-				sum += croppedImage.getPixel(x, y)[0];
+	/**
+	 * Same sums as colonyBreatheBotom, read straight from the pixels of a grayscale picture
+	 * @param left
+	 * @param right
+	 * @param initialBottom
+	 * @param breathingSpace
+	 * @param pixels - the pixels of the complete grayscaled picture
+	 * @param width
+	 * @param height
+	 * @return the sums of the brightnesses of the rows around the initial bottom, from left to right (inclusive);
+	 * pixels outside the picture count as 0
+	 */
+	private static long[] sumOfRowsAround(int left, int right, int initialBottom, int breathingSpace, byte[] pixels, int width, int height){
+		long[] sums = new long[2*breathingSpace+1];
+		int fromX = Math.max(left, 0);
+		int toX = Math.min(right+1, width);
+
+		for(int i=0; i<sums.length; i++){
+			int y = initialBottom-breathingSpace+i;
+			if(y<0 || y>=height)
+				continue;
+
+			int offset = y*width;
+			long sum = 0;
+			for(int x=fromX; x<toX; x++){
+				sum += pixels[offset+x]&0xff;
 			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
+			sums[i] = sum;
 		}
-
-		return(sumOfColumns);
+		return(sums);
 	}
 
 
 	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the smallest element
+	 * Same sums as colonyBreatheRight, read straight from the pixels of a grayscale picture
+	 * (a row at a time, to read the pixels in the order they are stored)
+	 * @param top
+	 * @param bottom
+	 * @param initialRight
+	 * @param breathingSpace
+	 * @param pixels - the pixels of the complete grayscaled picture
+	 * @param width
+	 * @param height
+	 * @return the sums of the brightnesses of the columns around the initial right, from top to bottom (inclusive);
+	 * pixels outside the picture count as 0
 	 */
-	private static int getIndexOfMinimumElement(ArrayList<Integer> list) {
-		int index = -1;
-		int min = Integer.MAX_VALUE;
-
-		for (int i = 0; i < list.size(); i++) {
-			if(list.get(i)<min){
-				min = list.get(i);
-				index = i;
+	private static long[] sumOfColumnsAround(int top, int bottom, int initialRight, int breathingSpace, byte[] pixels, int width, int height){
+		long[] sums = new long[2*breathingSpace+1];
+		int fromY = Math.max(top, 0);
+		int toY = Math.min(bottom+1, height);
+		int firstX = initialRight-breathingSpace;
+		int fromI = Math.max(0, -firstX);
+		int toI = Math.min(sums.length, width-firstX);
+
+		for(int y=fromY; y<toY; y++){
+			int offset = y*width + firstX;
+			for(int i=fromI; i<toI; i++){
+				sums[i] += pixels[offset+i]&0xff;
 			}
 		}
-
-		return(index);
+		return(sums);
 	}
 
 }
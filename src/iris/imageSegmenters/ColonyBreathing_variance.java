@@ -8,11 +8,9 @@ import ij.gui.Roi;
 import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
-import iris.ui.IrisFrontend;
-import iris.utils.StdStats;
+import iris.settings.PictureSettings;
 
 import java.awt.Rectangle;
-import java.util.ArrayList;
 
 /**
  * This class implements methods that redefine the output of an existing image segmenter,
@@ -23,13 +21,6 @@ import java.util.ArrayList;
  */
 public class ColonyBreathing_variance {
 
-	/**
-	 * This variable holds the maximum distance a boundary can travel from it's original location
-	 * (calculated by means of another image segmenter). This value is +/-
-	 */
-	public static int breathingSpace = 15;
-
-
 	/**
 	 * This function will redefine the borders of every tile
 	 * @param originalSegmentation - the output of an existing segmenter
@@ -39,65 +30,27 @@ public class ColonyBreathing_variance {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
 
 		//don't re-adjust colony borders if user has made the cropping
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			return(originalSegmentation);
 		}
 
 		try{
 
-			//create a copy of the output
-			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
-			output.ROImatrix = originalSegmentation.copyRoiMatrix();
-
-			//for all rows except the last one
-			for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
-				//for all columns except the last one
-				for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
-
-
-
-					Roi newRoi = colonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
-
-
-
-					//update bottom one's top (also change it's height)
-					//bottom one is on the next row, so i+1
-					//the new top of the tile just under the current tile is where the old one was 
-					//plus the difference from the new height to the previous height 
-					//e.g. making this tile higher should increase the bottom one's y
-					//conversely, making this tile shorter should bring the bottom one higher
-					int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;				
-
-					int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
-					int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference; //just because we want to keep the bottom's bottom where it was
-
-					int x = output.ROImatrix[i+1][j].getBounds().x;
-					int y = bottomsNewTop;
-					int width = output.ROImatrix[i+1][j].getBounds().width;
-					int height = bottomsNewHeight;
-
-					output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
-
-					//in a similar fashion, update right one's left (also change it's width)
-					//right one is on the next column, so j+1
-					int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;				
-
-					int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
-					int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference; //just because we want to keep the bottom's bottom where it was
-
-					x = rightsNewLeft;
-					y = output.ROImatrix[i][j+1].getBounds().y;
-					width = rightsNewWidth;
-					height = output.ROImatrix[i][j+1].getBounds().height;
+			final ImageProcessor picture = input.imageToSegment.getProcessor();
 
-					output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
-
-
-					//now update also our current tile
-					output.ROImatrix[i][j] = newRoi;
+			//the maximum distance a boundary can travel from its original location, +/-
+			final int breathingSpace = input.settings.colonyBreathingSpace;
 
+			//create a copy of the output, with every tile's borders moved
+			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+			output.ROImatrix = ColonyBreathing.breathe(originalSegmentation.ROImatrix, input.settings, new ColonyBreathing.BorderSearch() {
+				int findBottom(int left, int right, int initialBottom) {
+					return(colonyBreatheBotom(left, right, initialBottom, breathingSpace, picture));
 				}
-			}
+				int findRight(int top, int bottom, int initialRight) {
+					return(colonyBreatheRight(top, bottom, initialRight, breathingSpace, picture));
+				}
+			});
 
 			return output;
 		}
@@ -165,20 +118,23 @@ public class ColonyBreathing_variance {
 	 * right side
 	 * @param originalTileRectangle
 	 * @param bigPicture - the complete grayscaled picture
+	 * @param breathingSpace - how far the bottom and right can move
 	 * @return
 	 */
-	public static Roi colonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture){
+	public static Roi colonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture, int breathingSpace){
 
 		//first calculate the boundaries within which we will sum up brightnesses
-		int left = originalTileRectangle.getBounds().x;
-		int oldRight = left + originalTileRectangle.getBounds().width;
-		int top = originalTileRectangle.getBounds().y;
-		int oldBottom = top + originalTileRectangle.getBounds().height;
+		Rectangle bounds = originalTileRectangle.getBounds();
+		int left = bounds.x;
+		int oldRight = left + bounds.width;
+		int top = bounds.y;
+		int oldBottom = top + bounds.height;
 
+		ImageProcessor picture = bigPicture.getProcessor();
 
 		//first calculate the bottom boundary, then the right boundary
-		int newBottom = colonyBreatheBotom(left, oldRight, oldBottom, bigPicture) + oldBottom;
-		int newRight = colonyBreatheRight(top, newBottom, oldRight, bigPicture) + oldRight; //use the new bottom
+		int newBottom = colonyBreatheBotom(left, oldRight, oldBottom, breathingSpace, picture) + oldBottom;
+		int newRight = colonyBreatheRight(top, newBottom, oldRight, breathingSpace, picture) + oldRight; //use the new bottom
 
 		int newHeight = newBottom - top;
 		int newWidth = newRight - left;
@@ -186,152 +142,106 @@ public class ColonyBreathing_variance {
 
 
 		//calculate the new colony Roi
-		Roi newRoi = new Roi(new Rectangle(left, top, newWidth, newHeight));
+		Roi newRoi = new Roi(left, top, newWidth, newHeight);
 		return(newRoi);
 	}
 
 
 
 	/**
-	 * This function sums up the brightnesses to find the correct bottom boundary
-	 * @param left
-	 * @param right
-	 * @param initialBottom
-	 * @param bigPicture
-	 * @return the y of the new bottom of the tile
-	 */
-	private static int colonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture){
-		try{
-			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfRows_ = varianceOfRows(bigPicture, left, right, initialBottom);
-			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfRows_);
-			//that's your new bottom
-			return(minimumBrightnessSumLocation - breathingSpace);
-		}
-		catch(Exception e){
-			//do nothing
-		}
-		return(initialBottom);
-	}
-
-
-	/**
-	 * This function sums up the brightnesses to find the correct right boundary
+	 * This function finds the row around the initial bottom with the least variance of brightness
+	 * (relative to its mean), from left to right (inclusive)
 	 * @param left
 	 * @param right
 	 * @param initialBottom
+	 * @param breathingSpace - how far the bottom can move, up or down
 	 * @param bigPicture
-	 * @return the y of the new bottom of the tile
+	 * @return how much the bottom of the tile should move
 	 */
-	private static int colonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture){
-		try{
-			//first get the sums of brightnesses
-			ArrayList<Integer> sumOfColumns_ = varianceOfColumns(bigPicture, top, bottom, initialRight);
-			//then, find the minimum
-			int minimumBrightnessSumLocation = getIndexOfMinimumElement(sumOfColumns_);
-			//that's your new bottom
-			return(minimumBrightnessSumLocation - breathingSpace);
-		}
-		catch(Exception e){
-			//do nothing
-		}
-		return(initialRight);
-	}
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> varianceOfRows(ImagePlus croppedImage, int left, int right, int initialBottom ){
-		//int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> varOfRows = new ArrayList<Integer>(2*breathingSpace+1);
-		
-		int[] myVector = new int[right-left];
-
-		int sum = 0;
+	private static int colonyBreatheBotom(int left, int right, int initialBottom, int breathingSpace, ImageProcessor bigPicture){
+		int minimumVarianceLocation = -1;
+		int min = Integer.MAX_VALUE;
 
 		//for all rows
-		for(int y=initialBottom-breathingSpace; y<=initialBottom+breathingSpace; y++ ){
-			sum = 0;
+		for(int i=0; i<2*breathingSpace+1; i++){
+			int y = initialBottom-breathingSpace+i;
 
-			//for all columns
-			for(int x=left; x<=right; x++ ){
+			long sum = 0;
+			long sumOfSquares = 0;
 
-				myVector[x] = croppedImage.getPixel(x, y)[0];
+			//for all columns, pixels outside the picture count as 0
+			for(int x=left; x<=right; x++){
+				int brightness = bigPicture.getPixel(x, y);
+				sum += brightness;
+				sumOfSquares += brightness*brightness;
 			}
 
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			varOfRows.add(sum);
+			int variance = relativeVariance(sum, sumOfSquares, right-left+1);
+			if(variance<min){
+				min = variance;
+				minimumVarianceLocation = i;
+			}
 		}
 
-		return(varOfRows);
+		//that's your new bottom
+		return(minimumVarianceLocation - breathingSpace);
 	}
 
 
-
-
-
 	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
+	 * This function finds the column around the initial right with the least variance of brightness
+	 * (relative to its mean), from top to bottom (inclusive)
+	 * @param top
+	 * @param bottom
+	 * @param initialRight
+	 * @param breathingSpace - how far the right can move, left or right
+	 * @param bigPicture
+	 * @return how much the right of the tile should move
 	 */
-	private static ArrayList<Integer> varianceOfColumns(ImagePlus croppedImage, int top, int bottom, int initialRight){
-		//int dimensions[] = croppedImage.getDimensions();
-
-
-		int[] myVector = new int[bottom-top];
-
-		//make the sum of rows and columns
-		ArrayList<Integer> varOfColumns = new ArrayList<Integer>(2*breathingSpace+1);
-
-		int sum = 0;
+	private static int colonyBreatheRight(int top, int bottom, int initialRight, int breathingSpace, ImageProcessor bigPicture){
+		int minimumVarianceLocation = -1;
+		int min = Integer.MAX_VALUE;
 
 		//for all columns
-		for(int x=initialRight-breathingSpace; x<=initialRight+breathingSpace; x++ ){
-			sum = 0;
+		for(int i=0; i<2*breathingSpace+1; i++){
+			int x = initialRight-breathingSpace+i;
 
-			//for all rows
-			for(int y=top; y<=bottom; y++ ){
+			long sum = 0;
+			long sumOfSquares = 0;
 
-				myVector[y] = croppedImage.getPixel(x, y)[0];
+			//for all rows, pixels outside the picture count as 0
+			for(int y=top; y<=bottom; y++){
+				int brightness = bigPicture.getPixel(x, y);
+				sum += brightness;
+				sumOfSquares += brightness*brightness;
 			}
 
-			//sum complete, add it to the list
-			int variance = (int)Math.round(1e4 * StdStats.varp(myVector) / StdStats.mean(myVector));
-			varOfColumns.add(variance);
+			int variance = relativeVariance(sum, sumOfSquares, bottom-top+1);
+			if(variance<min){
+				min = variance;
+				minimumVarianceLocation = i;
+			}
 		}
 
-		return(varOfColumns);
+		//that's your new right
+		return(minimumVarianceLocation - breathingSpace);
 	}
 
 
+
 	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the smallest element
+	 * @param sum
+	 * @param sumOfSquares
+	 * @param n
+	 * @return the population variance of the n values over their mean, times 10000 (0 if there are no values)
 	 */
-	private static int getIndexOfMinimumElement(ArrayList<Integer> list) {
-		int index = -1;
-		int min = Integer.MAX_VALUE;
-
-		for (int i = 0; i < list.size(); i++) {
-			if(list.get(i)<min){
-				min = list.get(i);
-				index = i;
-			}
-		}
+	private static int relativeVariance(long sum, long sumOfSquares, int n){
+		if(n<=0)
+			return(0);
 
-		return(index);
+		double mean = (double) sum / n;
+		double variance = (double) sumOfSquares / n - mean*mean;
+		return((int)Math.round(1e4 * variance / mean));
 	}
 
 }
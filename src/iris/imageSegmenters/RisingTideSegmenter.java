@@ -4,6 +4,8 @@
 package iris.imageSegmenters;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 
 import ij.ImagePlus;
@@ -16,10 +18,18 @@ import ij.process.ImageStatistics;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
+import iris.utils.Toolbox;
 
 /**
  * This class holds methods that implement the rising tide algorithm
+ * 
+ * If the settings ask for it (segmentationDownsampling), the grid is first found on a downsampled copy of the picture,
+ * and each grid line is then moved to the darkest row (column) of the full resolution picture nearby,
+ * so that only the rows and columns around the grid lines are summed at full resolution.
+ * No integral image of the full resolution picture is made then: colony breathing also sums up
+ * only the rows and columns around the tile borders (see ColonyBreathing.segmentPicture).
  *
  */
 public class RisingTideSegmenter {
@@ -34,7 +44,7 @@ public class RisingTideSegmenter {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -51,36 +61,162 @@ public class RisingTideSegmenter {
 		}
 
 
+		//find the grid on a downsampled picture first, if asked to
+		int downsamplingFactor = input.settings.segmentationDownsampling;
+		if(downsamplingFactor>1 && input.imageToSegment.getType()==ImagePlus.GRAY8){
+			return(segmentDownsampledPicture(input, downsamplingFactor));
+		}
+
+
 		//get input values
+		BasicSettings settings = input.settings;
+
+		//1.-2. the picture used to be copied and turned black and white here,
+		//but the threshold found is never actually used, so we work on the original picture
+		////input.settings.threshold = turnImageBW_Otsu(croppedImage.duplicate());
+
+
+		//3. the next step includes calculating the sum of the row/column brightness
+		int[] sumOfColumns = IntegralImage.toIntArray(input.getSumOfColumns());
+		int[] sumOfRows = IntegralImage.toIntArray(input.getSumOfRows());
+
+
+		//4. in this step, we apply the rising tide algorithm 
+		//first to the sum of rows, then to the sum of columns
+		ArrayList<Integer> minimaBagRows = risingTide(sumOfRows, settings, true);
+		ArrayList<Integer> minimaBagColumns = risingTide(sumOfColumns, settings, false);
+
+		return(getGrid(minimaBagRows, minimaBagColumns, input));
+	}
+
+
+
+	/**
+	 * Finds the grid on the picture downsampled by the given factor, then moves every grid line to the darkest
+	 * row (column) of the full resolution picture around the block it was found in
+	 * @param input
+	 * @param downsamplingFactor
+	 * @return
+	 */
+	private static BasicImageSegmenterOutput segmentDownsampledPicture(BasicImageSegmenterInput input, int downsamplingFactor){
+
 		ImagePlus croppedImage = input.imageToSegment;
 		BasicSettings settings = input.settings;
 
+		//1. downsample the picture, the distances between the colonies get smaller by the same factor
+		ImagePlus downsampledImage = Toolbox.downsampleImage(croppedImage, downsamplingFactor);
 
-		//set up an output object
-		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+		BasicSettings downsampledSettings = new BasicSettings(settings);
+		downsampledSettings.minimumDistanceBetweenRows = Math.max(1, settings.minimumDistanceBetweenRows/downsamplingFactor);
+		downsampledSettings.maximumDistanceBetweenRows = Math.max(1, settings.maximumDistanceBetweenRows/downsamplingFactor);
 
-		//1. copy original picture
-		//since this pipeline needs a black and white version of the picture
-		//we copy the original picture here, so that we don't tamper with the original cropped picture
-		ImagePlus BW_croppedImage = croppedImage.duplicate();
 
+		//2. apply the rising tide algorithm to the sums of rows and columns of the downsampled picture
+		int[] sumOfColumns = IntegralImage.toIntArray(IntegralImage.sumOfColumns(downsampledImage));
+		int[] sumOfRows = IntegralImage.toIntArray(IntegralImage.sumOfRows(downsampledImage));
+		downsampledImage.flush();
 
-		//2. turn the image Black/White using the Otsu method
-		//save the threshold in settings for future use --this is never actually used
-		////input.settings.threshold = turnImageBW_Otsu(BW_croppedImage);
+		ArrayList<Integer> minimaBagRows = risingTide(sumOfRows, downsampledSettings, true);
+		ArrayList<Integer> minimaBagColumns = risingTide(sumOfColumns, downsampledSettings, false);
 
 
-		//3. the next step includes calculating the sum of the row/column brightness
-		ArrayList<Integer> sumOfColumns = sumOfColumns(BW_croppedImage);
-		ArrayList<Integer> sumOfRows = sumOfRows(BW_croppedImage);
+		//3. find each grid line at full resolution
+		byte[] pixels = (byte[]) croppedImage.getProcessor().getPixels();
+		int width = croppedImage.getWidth();
+		int height = croppedImage.getHeight();
 
-		BW_croppedImage.flush();//flush the BW picture, we took the measurements we needed from it
+		minimaBagRows = refineGridLines(minimaBagRows, downsamplingFactor, pixels, width, height, true);
+		minimaBagColumns = refineGridLines(minimaBagColumns, downsamplingFactor, pixels, width, height, false);
 
+		return(getGrid(minimaBagRows, minimaBagColumns, input));
+	}
 
-		//4. in this step, we apply the rising tide algorithm 
-		//first to the sum of rows, then to the sum of columns
-		ArrayList<Integer> minimaBagRows = risingTide(sumOfRows, settings, true);
-		ArrayList<Integer> minimaBagColumns = risingTide(sumOfColumns, settings, false);
+
+
+	/**
+	 * Moves every grid line found on the downsampled picture to the darkest row (column) of the full resolution picture
+	 * within the block the line was found in, or half a block away from it: that's the middle of the darkest run of rows (columns)
+	 * as long as a block. Of equally dark runs, the first one is kept.
+	 * @param gridLines: the rows (columns) of the downsampled picture
+	 * @param downsamplingFactor
+	 * @param pixels: the full resolution picture
+	 * @param width
+	 * @param height
+	 * @param isRows
+	 * @return the rows (columns) of the full resolution picture
+	 */
+	private static ArrayList<Integer> refineGridLines(ArrayList<Integer> gridLines, int downsamplingFactor,
+			byte[] pixels, int width, int height, boolean isRows){
+
+		int length = isRows ? height : width;
+		ArrayList<Integer> refinedGridLines = new ArrayList<Integer>(gridLines.size());
+
+		for(int gridLine : gridLines){
+			//the block the line was found in, and half a block on either side
+			int windowStart = Math.max(0, gridLine*downsamplingFactor - downsamplingFactor/2);
+			int windowEnd = Math.min(length, (gridLine+1)*downsamplingFactor + downsamplingFactor/2);
+
+			//sum up the brightness of the rows (columns) within the window only
+			long[] sumOfBrightness = new long[windowEnd-windowStart];
+
+			if(isRows){
+				for(int y=windowStart; y<windowEnd; y++){
+					int offset = y*width;
+					long sum = 0;
+					for(int x=0; x<width; x++){
+						sum += pixels[offset+x]&0xff;
+					}
+					sumOfBrightness[y-windowStart] = sum;
+				}
+			}
+			else{
+				for(int y=0; y<height; y++){
+					int offset = y*width;
+					for(int x=windowStart; x<windowEnd; x++){
+						sumOfBrightness[x-windowStart] += pixels[offset+x]&0xff;
+					}
+				}
+			}
+
+			//find the darkest run of rows (columns) as wide as a block, so that noise doesn't pull the line
+			//to the edge of the gap between the colonies, and take its middle
+			int runLength = Math.min(downsamplingFactor, sumOfBrightness.length);
+			long sumOfRun = 0;
+			for(int i=0; i<runLength; i++){
+				sumOfRun += sumOfBrightness[i];
+			}
+
+			long darkestRun = sumOfRun;
+			int darkestRunStart = 0;
+			for(int i=runLength; i<sumOfBrightness.length; i++){
+				sumOfRun += sumOfBrightness[i] - sumOfBrightness[i-runLength];
+				if(sumOfRun<darkestRun){
+					darkestRun = sumOfRun;
+					darkestRunStart = i-runLength+1;
+				}
+			}
+			refinedGridLines.add(windowStart + darkestRunStart + runLength/2);
+		}
+
+		return(refinedGridLines);
+	}
+
+
+
+	/**
+	 * Checks the rows and columns found by the rising tide algorithm, and turns them into the grid of tiles
+	 * @param minimaBagRows
+	 * @param minimaBagColumns
+	 * @param input
+	 * @return
+	 */
+	private static BasicImageSegmenterOutput getGrid(ArrayList<Integer> minimaBagRows, ArrayList<Integer> minimaBagColumns,
+			BasicImageSegmenterInput input){
+
+		BasicSettings settings = input.settings;
+
+		//set up an output object
+		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
 
 
 		//5. check how many minima did rising tide return
@@ -168,13 +304,15 @@ public class RisingTideSegmenter {
 
 	/**
 	 * This function implements the rising tide algorithm to find local minima in the
-	 * sum of light intensities, that are distant by at least a minimum distance, defined in the settings
-	 * @param sumOfBrightness : an array of integers that is calculated by summing the brightness of all the pixels in an image row-wise or column-wise 
+	 * sum of light intensities, that are distant by at least a minimum distance, defined in the settings.
+	 * The tide rises through the positions sorted by brightness once, instead of looking for the global minimum
+	 * all over again after every minimum found; the positions already under the tide are kept in a bitset.
+	 * @param sumOfBrightness : an array of integers that is calculated by summing the brightness of all the pixels in an image row-wise or column-wise (this is not changed)
 	 * @param settings : pointer to a settings object, which can be used to fine-tune the algorithm
 	 * @param isRows : a boolean that shows whether this call is meant to find minima of rows or columns
 	 * @return a list of first X minima that were found while the threshold was rising
 	 */
-	private static ArrayList<Integer> risingTide(ArrayList<Integer> sumOfBrightness, BasicSettings settings, boolean isRows){
+	static ArrayList<Integer> risingTide(int[] sumOfBrightness, BasicSettings settings, boolean isRows){
 
 		//calculate the number of rows and columns we should reach
 		int targetMinimaNumber;
@@ -188,32 +326,77 @@ public class RisingTideSegmenter {
 		//start with an empty bag
 		ArrayList<Integer> minimaBag = new ArrayList<Integer>();
 
+		int length = sumOfBrightness.length;
 
-		//limit this loop to a trillion iterations
-		int iterations=0;
-		while(iterations<Math.pow(10, 9)){
 
-			iterations++;
+		//sort the positions by their brightness, and equally bright positions from left to right:
+		//this is the order in which the tide reaches them
+		//(the brightness goes in the high bits and the position in the low bits, so that we can sort primitives)
+		long[] tideOrder = new long[length];
+		for(int i=0; i<length; i++){
+			tideOrder[i] = ((long) sumOfBrightness[i] << 32) | i;
+		}
+		Arrays.sort(tideOrder);
 
-			//Step 1: find the current global minimum and it's index
-			Integer indexOfCurrentMinimum = new Integer(getMinimumAndIndexBW(sumOfBrightness));
-			if(indexOfCurrentMinimum<0){
-				//an error occurred
-				return(minimaBag);
-			}
 
-			Integer currentMinimum = new Integer(sumOfBrightness.get(indexOfCurrentMinimum));
+		//also keep the positions with a brightness of zero or less, from left to right, see Step 1
+		int numberOfNonPositive = 0;
+		for(int i=0; i<length; i++){
+			if(sumOfBrightness[i]<=0)
+				numberOfNonPositive++;
+		}
+		int[] nonPositive = new int[numberOfNonPositive];
+		for(int i=0, j=0; i<length; i++){
+			if(sumOfBrightness[i]<=0)
+				nonPositive[j++] = i;
+		}
+
 
-			//Step 2: check: if everything is now under the tide (was assigned a max value), the algorithm has to end
-			if(currentMinimum==Integer.MAX_VALUE){		
+		//positions that are within reach of a minimum already found are under the tide
+		BitSet underTheTide = new BitSet(length);
+		int nextInTideOrder = 0;
+		int nextNonPositive = 0;
+
+
+		while(true){
+
+			//Step 1: find the current global minimum and it's index
+			//that's the first position in the tide order that is not yet under the tide
+			while(nextInTideOrder<length && underTheTide.get((int) tideOrder[nextInTideOrder]))
+				nextInTideOrder++;
+
+			if(nextInTideOrder>=length){
+				//everything is now under the tide, the algorithm has to end
 				//this check is now delegated to the caller of rising tide, since the caller also knows
 				//the number of minima that need to be returned, and probably has better access to notify the user
 				//even by GUI
-				return(minimaBag); 
+				return(minimaBag);
+			}
+
+			int indexOfCurrentMinimum = (int) tideOrder[nextInTideOrder];
+
+			//Step 2: positions of maximum brightness are never picked, same as the ones under the tide
+			if(sumOfBrightness[indexOfCurrentMinimum]==Integer.MAX_VALUE){
+				return(minimaBag);
 			}
 
+			//nothing can go lower than zero: if, going from left to right, we reach a zero before anything lower,
+			//we count how many consecutive zeros we find and take the mean point between the first and last of them
+			while(nextNonPositive<nonPositive.length && underTheTide.get(nonPositive[nextNonPositive]))
+				nextNonPositive++;
+
+			if(nextNonPositive<nonPositive.length && sumOfBrightness[nonPositive[nextNonPositive]]==0){
+				int originalZero = nonPositive[nextNonPositive];
+				int lastZero = originalZero;
+
+				while(lastZero<length && sumOfBrightness[lastZero]==0 && !underTheTide.get(lastZero))
+					lastZero++;
+
+				indexOfCurrentMinimum = (lastZero-originalZero)/2 + originalZero;
+			}
 
-			//Step 3: set everything that is within reach (left and right) of the current minimum to MAX_INT
+
+			//Step 3: put everything that is within reach (left and right) of the current minimum under the tide
 			//INCLUDING this minimum: it's fate is decided on the next step
 			//we have to go as far as the distance in the settings mandates
 
@@ -225,12 +408,11 @@ public class RisingTideSegmenter {
 				leftMostIndex = 0;		
 
 			//we cannot go over the maximum index, so set rightMost to maxIndex if that would have been the case
-			if(rightMostIndex>sumOfBrightness.size()-1)
-				rightMostIndex = sumOfBrightness.size()-1;
+			if(rightMostIndex>length-1)
+				rightMostIndex = length-1;
 
-			for(int i=leftMostIndex; i<=rightMostIndex; i++){
-				sumOfBrightness.set(i, Integer.MAX_VALUE);
-			}
+			if(leftMostIndex<=rightMostIndex)
+				underTheTide.set(leftMostIndex, rightMostIndex+1);
 
 
 
@@ -251,64 +433,7 @@ public class RisingTideSegmenter {
 
 				return(minimaBag);
 			}
-
-
 		}
-		return(minimaBag);
-	}
-
-
-
-
-
-	/**
-	 * This function is the same as above for black/white pictures.
-	 * The difference is that it finds the first zero it can get it's hands on
-	 * then it counts how many consecutive zeros it finds and it returns the mean point between 
-	 * the first and last encountered zero
-	 * @param list_input
-	 * @param min_out
-	 * @param index_out
-	 */
-	private static int getMinimumAndIndexBW(ArrayList<Integer> list_input){
-
-		//initialize the output to something exotic
-		int min_out = Integer.MAX_VALUE;
-		int index_out = -1;
-
-
-		for(int i=0; i<list_input.size(); i++){
-
-			//in case a list that 2 total minima (of the same low number, but in other places)
-			//we arbitrarily pick the first one.
-			//this algorithm will run again, after the currently selected minima (one of the 2)
-			//has been set to MAX_INT, so the other minima (of the 2) will have it's chance
-			if(list_input.get(i)<min_out){
-
-				min_out = list_input.get(i);
-				index_out = i;
-
-				if(min_out==0){//nothing can go lower than zero
-
-					int originalZero = i;
-					int lastZero = i;
-
-					//we found our first zero, now count consequtive zeros
-					for(;i<list_input.size(); i++){
-						if(list_input.get(i)==0){
-							lastZero++;
-						}
-						else
-							break;
-					}
-					index_out = Math.round((lastZero-originalZero)/2)+originalZero;			
-					break;	
-				}
-			}	
-
-		}
-		return(index_out);
-
 	}
 
 
@@ -366,77 +491,6 @@ public class RisingTideSegmenter {
 	}
 
 
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's columns (for every x)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
-	}
-
-
-
-
-
-	/**
-	 * Takes the grayscale cropped image and calculates the sum of the
-	 * light intensity of it's rows (for every y)
-	 * @param croppedImage
-	 * @return
-	 */
-	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
-	}
-
-
-
 	/**
 	 * This function takes a picture and draws lines in the coordinates of the rows and columns given as arguments
 	 * the input picture will not change, we will retr
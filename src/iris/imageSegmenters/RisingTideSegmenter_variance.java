@@ -13,7 +13,7 @@ import ij.process.ImageStatistics;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
 import iris.utils.StdStats;
 
 import java.util.ArrayList;
@@ -35,7 +35,7 @@ public class RisingTideSegmenter_variance {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 		
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -71,16 +71,16 @@ public class RisingTideSegmenter_variance {
 
 
 		//3. the next step includes calculating the sum of the row/column brightness
-		ArrayList<Integer> varOfColumns = varianceOfColumns(BW_croppedImage);
-		ArrayList<Integer> varOfRows = varianceOfRows(BW_croppedImage);
+		int[] varOfColumns = varianceOfColumns(BW_croppedImage);
+		int[] varOfRows = varianceOfRows(BW_croppedImage);
 
 		BW_croppedImage.flush();//flush the BW picture, we took the measurements we needed from it
 
 
 		//4. in this step, we apply the rising tide algorithm 
 		//first to the sum of rows, then to the sum of columns
-		ArrayList<Integer> minimaBagRows = risingTide(varOfRows, settings, true);
-		ArrayList<Integer> minimaBagColumns = risingTide(varOfColumns, settings, false);
+		ArrayList<Integer> minimaBagRows = RisingTideSegmenter.risingTide(varOfRows, settings, true);
+		ArrayList<Integer> minimaBagColumns = RisingTideSegmenter.risingTide(varOfColumns, settings, false);
 
 
 		//5. check how many minima did rising tide return
@@ -166,155 +166,6 @@ public class RisingTideSegmenter_variance {
 
 
 
-	/**
-	 * This function implements the rising tide algorithm to find local minima in the
-	 * sum of light intensities, that are distant by at least a minimum distance, defined in the settings
-	 * @param sumOfBrightness : an array of integers that is calculated by summing the brightness of all the pixels in an image row-wise or column-wise 
-	 * @param settings : pointer to a settings object, which can be used to fine-tune the algorithm
-	 * @param isRows : a boolean that shows whether this call is meant to find minima of rows or columns
-	 * @return a list of first X minima that were found while the threshold was rising
-	 */
-	private static ArrayList<Integer> risingTide(ArrayList<Integer> sumOfBrightness, BasicSettings settings, boolean isRows){
-
-		//calculate the number of rows and columns we should reach
-		int targetMinimaNumber;
-		if(isRows)
-			targetMinimaNumber = settings.numberOfRowsOfColonies+1;
-		else//is colonies
-			targetMinimaNumber = settings.numberOfColumnsOfColonies+1;
-
-
-
-		//start with an empty bag
-		ArrayList<Integer> minimaBag = new ArrayList<Integer>();
-
-
-		//limit this loop to a trillion iterations
-		int iterations=0;
-		while(iterations<Math.pow(10, 9)){
-
-			iterations++;
-
-			//Step 1: find the current global minimum and it's index
-			Integer indexOfCurrentMinimum = new Integer(getMinimumAndIndexBW(sumOfBrightness));
-			if(indexOfCurrentMinimum<0){
-				//an error occurred
-				return(minimaBag);
-			}
-
-			Integer currentMinimum = new Integer(sumOfBrightness.get(indexOfCurrentMinimum));
-
-			//Step 2: check: if everything is now under the tide (was assigned a max value), the algorithm has to end
-			if(currentMinimum==Integer.MAX_VALUE){		
-				//this check is now delegated to the caller of rising tide, since the caller also knows
-				//the number of minima that need to be returned, and probably has better access to notify the user
-				//even by GUI
-				return(minimaBag); 
-			}
-
-
-			//Step 3: set everything that is within reach (left and right) of the current minimum to MAX_INT
-			//INCLUDING this minimum: it's fate is decided on the next step
-			//we have to go as far as the distance in the settings mandates
-
-			int leftMostIndex = indexOfCurrentMinimum - settings.minimumDistanceBetweenRows;
-			int rightMostIndex = indexOfCurrentMinimum + settings.minimumDistanceBetweenRows;
-
-			//we cannot go lower than 0, so set leftMost to 0 if that would have been the case
-			if(leftMostIndex<0)
-				leftMostIndex = 0;		
-
-			//we cannot go over the maximum index, so set rightMost to maxIndex if that would have been the case
-			if(rightMostIndex>sumOfBrightness.size()-1)
-				rightMostIndex = sumOfBrightness.size()-1;
-
-			for(int i=leftMostIndex; i<=rightMostIndex; i++){
-				sumOfBrightness.set(i, Integer.MAX_VALUE);
-			}
-
-
-
-			//Step 4: check whether our bag of minimas already has a nearby minima there
-			//this check is redundant, I'll skip it
-			//------------------------------
-
-
-
-			//Step 5: add this minima into the minima bag and check the bag's size
-			//if the size is equal to the one we want (from settings), then the function is done
-			minimaBag.add(indexOfCurrentMinimum);
-
-			if(minimaBag.size()>=targetMinimaNumber){
-				//we've reached our goal
-
-				Collections.sort(minimaBag);
-
-				return(minimaBag);
-			}
-
-
-		}
-		return(minimaBag);
-	}
-
-
-
-
-
-	/**
-	 * This function is the same as above for black/white pictures.
-	 * The difference is that it finds the first zero it can get it's hands on
-	 * then it counts how many consecutive zeros it finds and it returns the mean point between 
-	 * the first and last encountered zero
-	 * @param list_input
-	 * @param min_out
-	 * @param index_out
-	 */
-	private static int getMinimumAndIndexBW(ArrayList<Integer> list_input){
-
-		//initialize the output to something exotic
-		int min_out = Integer.MAX_VALUE;
-		int index_out = -1;
-
-
-		for(int i=0; i<list_input.size(); i++){
-
-			//in case a list that 2 total minima (of the same low number, but in other places)
-			//we arbitrarily pick the first one.
-			//this algorithm will run again, after the currently selected minima (one of the 2)
-			//has been set to MAX_INT, so the other minima (of the 2) will have it's chance
-			if(list_input.get(i)<min_out){
-
-				min_out = list_input.get(i);
-				index_out = i;
-
-				if(min_out==0){//nothing can go lower than zero
-
-					int originalZero = i;
-					int lastZero = i;
-
-					//we found our first zero, now count consequtive zeros
-					for(;i<list_input.size(); i++){
-						if(list_input.get(i)==0){
-							lastZero++;
-						}
-						else
-							break;
-					}
-					index_out = Math.round((lastZero-originalZero)/2)+originalZero;			
-					break;	
-				}
-			}	
-
-		}
-		return(index_out);
-
-	}
-
-
-
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using the Otsu method. This version will also return the threshold found.
@@ -372,10 +223,10 @@ public class RisingTideSegmenter_variance {
 	 * @param croppedImage
 	 * @return
 	 */
-	private static ArrayList<Integer> varianceOfRows(ImagePlus croppedImage){
+	private static int[] varianceOfRows(ImagePlus croppedImage){
 		int dimensions[] = croppedImage.getDimensions();
 
-		ArrayList<Integer> varOfRows = new ArrayList<Integer>(dimensions[1]);
+		int[] varOfRows = new int[dimensions[1]];
 
 
 		int[] myVector = new int[dimensions[0]];
@@ -393,7 +244,7 @@ public class RisingTideSegmenter_variance {
 
 			//variance complete, add it to the list
 			int variance = (int)Math.round(1e4 * StdStats.varp(myVector) / StdStats.mean(myVector));
-			varOfRows.add(variance);
+			varOfRows[y] = variance;
 		}
 
 		return(varOfRows);
@@ -409,11 +260,11 @@ public class RisingTideSegmenter_variance {
 	 * @param croppedImage
 	 * @return
 	 */
-	private static ArrayList<Integer> varianceOfColumns(ImagePlus croppedImage){
+	private static int[] varianceOfColumns(ImagePlus croppedImage){
 		int dimensions[] = croppedImage.getDimensions();
 
 		//make the sum of rows and columns
-		ArrayList<Integer> varOfColumns = new ArrayList<Integer>(dimensions[0]);
+		int[] varOfColumns = new int[dimensions[0]];
 
 		int[] myVector = new int[dimensions[1]];
 
@@ -429,7 +280,7 @@ public class RisingTideSegmenter_variance {
 			}
 
 			int variance = (int)Math.round(1e4 * StdStats.varp(myVector) / StdStats.mean(myVector));
-			varOfColumns.add(variance);
+			varOfColumns[x] = variance;
 		}
 
 		return(varOfColumns);
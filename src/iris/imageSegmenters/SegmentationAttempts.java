@@ -0,0 +1,343 @@
+/**
+ *
+ */
+package iris.imageSegmenters;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import iris.imageCroppers.GenericImageCropper;
+import iris.imageCroppers.GenericImageCropper2;
+import iris.imageCroppers.NaiveImageCropper;
+import iris.imageCroppers.PlateProjections;
+import iris.imageSegmenterInput.BasicImageSegmenterInput;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.settings.BasicSettings;
+import iris.settings.CameraCalibration;
+import iris.settings.PictureSettings;
+import iris.utils.RotatedPlate;
+import iris.utils.Toolbox;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class crops and segments a rotated plate picture, trying out one cropper after the other until the
+ * segmentation works (a failed segmentation is usually down to a bad crop).
+ *
+ * All croppers work on the same sums of brightness of the plate (see PlateProjections), calculated once per plate.
+ * A crop that was already tried on this plate is not segmented again.
+ * When Iris learns from the plates it has seen (calibrate, see CameraCalibration), the cropper that worked is remembered,
+ * so that the next plates of the same batch (same profile, same picture size, i.e. usually the same camera and plate holder)
+ * try it first, and if the camera was calibrated, its crop borders are tried before any cropper.
+ * Otherwise the croppers are always tried in the order the profile gives, so that a plate is cropped the same way
+ * no matter which plates were analyzed before it (or at the same time).
+ *
+ * The picture that is segmented is the HSB brightness of the cropped plate, or that thresholded using a local algorithm
+ * (see localThresholdRadius).
+ * A later picture of a time series takes the grid of the reference picture instead, if the two match (see timeSeriesReference).
+ *
+ * @author George Kritikos
+ *
+ */
+public class SegmentationAttempts {
+
+	/**
+	 * The croppers that can be tried
+	 */
+	public static enum Cropper { GENERIC_CROPPER_2, GENERIC_CROPPER, NAIVE_CROPPER }
+
+
+	/**
+	 * A cropped picture, and how its segmentation went
+	 */
+	public static class Attempt {
+		public ImagePlus colourCroppedImage;
+		public ImagePlus grayscaleCroppedImage;
+		public BasicImageSegmenterInput segmentationInput;
+		public BasicImageSegmenterOutput segmentationOutput;
+
+		/**
+		 * the cropper used, null if the picture was cropped by the profile or at the calibrated crop borders
+		 */
+		public Cropper cropper = null;
+
+		/**
+		 * the part of the rotated plate that was kept, null if the picture was cropped by the profile
+		 */
+		public Rectangle crop = null;
+
+		/**
+		 * true if the grid was that of the reference picture of a time series (see TimeSeriesGrids)
+		 */
+		public boolean gridFromTimeSeries = false;
+	}
+
+
+	/**
+	 * the cropper that worked last, for every batch; only used if CameraCalibration is enabled
+	 */
+	private static final ConcurrentHashMap<String, Cropper> winningCroppers = new ConcurrentHashMap<String, Cropper>();
+
+
+	/**
+	 * if this is set, the brightness of the cropped plate is thresholded using a local algorithm with this radius
+	 * (see Toolbox.turnImageBW_Local_auto_mean) before it is segmented
+	 */
+	public int localThresholdRadius = 0;
+
+
+	/**
+	 * if this is set, the plate is matched to this earlier picture of the same plate instead of being segmented,
+	 * and its grid is used (see TimeSeriesGrids); crops that don't match fail like a failed segmentation.
+	 * The plate was rotated by the angle of the reference, so if no crop matches, the profile should start over
+	 * without the reference.
+	 */
+	public TimeSeriesGrids.Reference timeSeriesReference = null;
+
+
+	/**
+	 * the camera that took the picture (see CameraCalibration), if this is set,
+	 * the crop borders of the plates that are segmented correctly are learned, and once calibrated, tried first
+	 */
+	public String cameraName = null;
+
+
+	private final String batchName;
+	private final BasicSettings settings;
+	private final RotatedPlate rotatedPlate;
+
+	/**
+	 * the rotated picture, if the profile made one; null if the plate is only rotated as it is read
+	 */
+	private final ImagePlus rotatedImage;
+
+	private PlateProjections plateProjections = null;
+
+	/**
+	 * the crops already segmented on this plate
+	 */
+	private final ArrayList<Rectangle> cropsTried = new ArrayList<Rectangle>();
+
+	/**
+	 * the last attempt made
+	 */
+	private Attempt lastAttempt = null;
+
+
+
+	/**
+	 * @param profileName: plates analyzed with the same profile, and of the same size, are taken to be of the same batch
+	 * @param rotatedPlate: the plate picture, rotated as it is read
+	 * @param settings
+	 */
+	public SegmentationAttempts(String profileName, RotatedPlate rotatedPlate, BasicSettings settings){
+		this.batchName = profileName + " " + rotatedPlate.getWidth() + "x" + rotatedPlate.getHeight();
+		this.settings = settings;
+		this.rotatedPlate = rotatedPlate;
+		this.rotatedImage = null;
+	}
+
+
+	/**
+	 * @param profileName: plates analyzed with the same profile, and of the same size, are taken to be of the same batch
+	 * @param rotatedImage: the plate picture, already rotated (see Toolbox.rotateImage); this must be a colour picture
+	 * @param settings
+	 */
+	public SegmentationAttempts(String profileName, ImagePlus rotatedImage, BasicSettings settings){
+		this.batchName = profileName + " " + rotatedImage.getWidth() + "x" + rotatedImage.getHeight();
+		this.settings = settings;
+		this.rotatedPlate = new RotatedPlate(rotatedImage, 0);
+		this.rotatedImage = rotatedImage;
+	}
+
+
+
+	/**
+	 * @param grayscaleCroppedImage
+	 * @return the picture to segment
+	 */
+	private ImagePlus getPictureToSegment(ImagePlus grayscaleCroppedImage){
+		if(localThresholdRadius>0)
+			return(Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, localThresholdRadius));
+		return(grayscaleCroppedImage);
+	}
+
+
+
+	/**
+	 * Segments a plate picture that the profile cropped itself (e.g. as the user asked it to)
+	 * @param colourCroppedImage
+	 * @return the attempt
+	 */
+	public Attempt segment(ImagePlus colourCroppedImage){
+		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
+		return(segment(colourCroppedImage, grayscaleCroppedImage, null));
+	}
+
+
+
+	/**
+	 * Tries out the given croppers, in the given order, until the segmentation works.
+	 * If Iris learns from earlier plates (CameraCalibration.enabled) and one of them worked for the previous plate
+	 * of this batch, that one is tried first, and if the camera was calibrated, its crop borders are tried before any of them.
+	 * @param croppers
+	 * @return the attempt that worked, or the last one made if none did
+	 */
+	public Attempt segment(Cropper... croppers){
+
+		//1. try the calibrated crop borders, if any
+		Rectangle calibratedCrop = CameraCalibration.getCrop(cameraName);
+
+		if(calibratedCrop!=null && PictureSettings.current().singleColonyRun==false){
+			cropsTried.add(calibratedCrop);
+			Attempt attempt = segment(calibratedCrop, null);
+
+			//a crop that doesn't match a time series reference wasn't segmented, so it tells nothing about the calibration
+			if(timeSeriesReference==null)
+				CameraCalibration.reportCrop(cameraName, !attempt.segmentationOutput.errorOccurred);
+			if(!attempt.segmentationOutput.errorOccurred)
+				return(attempt);
+		}
+
+
+		//2. put the cropper that worked last first
+		ArrayList<Cropper> croppersToTry = new ArrayList<Cropper>();
+		Cropper winningCropper = CameraCalibration.enabled ? winningCroppers.get(batchName) : null;
+
+		for(Cropper cropper : croppers){
+			if(cropper==winningCropper)
+				croppersToTry.add(0, cropper);
+			else
+				croppersToTry.add(cropper);
+		}
+
+
+		//3. try them out
+		for(Cropper cropper : croppersToTry){
+
+			Rectangle crop = getCrop(cropper);
+
+			//no need to segment the same picture twice
+			if(cropsTried.contains(crop))
+				continue;
+			cropsTried.add(crop);
+
+			Attempt attempt = segment(crop, cropper);
+
+			if(!attempt.segmentationOutput.errorOccurred){
+				if(CameraCalibration.enabled)
+					winningCroppers.put(batchName, cropper);
+				CameraCalibration.learnCrop(cameraName, attempt.crop);
+				return(attempt);
+			}
+		}
+
+		return(lastAttempt);
+	}
+
+
+
+	/**
+	 * @param cropper
+	 * @return the part of the rotated plate the cropper would keep
+	 */
+	private Rectangle getCrop(Cropper cropper){
+
+		//if user has cropped the picture, no need to re-crop
+		if(PictureSettings.current().singleColonyRun==true){
+			return(new Rectangle(0, 0, rotatedPlate.getWidth(), rotatedPlate.getHeight()));
+		}
+
+		if(plateProjections==null && cropper!=Cropper.NAIVE_CROPPER)
+			plateProjections = new PlateProjections(rotatedPlate);
+
+		Roi roi = null;
+		switch(cropper){
+		case GENERIC_CROPPER_2:
+			roi = GenericImageCropper2.findCropBorders(plateProjections);
+			break;
+		case GENERIC_CROPPER:
+			roi = GenericImageCropper.findCropBorders(plateProjections);
+			break;
+		case NAIVE_CROPPER:
+			roi = NaiveImageCropper.getCropBorders();
+			break;
+		}
+
+		//an empty Roi keeps the whole picture, as in Toolbox.cropImage
+		Rectangle crop = roi.getBounds();
+		if(crop.width==0 && crop.height==0)
+			crop = new Rectangle(0, 0, rotatedPlate.getWidth(), rotatedPlate.getHeight());
+		return(crop);
+	}
+
+
+
+	/**
+	 * Crops the plate and segments it
+	 * @param crop
+	 * @param cropper
+	 * @return
+	 */
+	private Attempt segment(Rectangle crop, Cropper cropper){
+		ImagePlus colourCroppedImage;
+		ImagePlus grayscaleCroppedImage;
+
+		if(PictureSettings.current().singleColonyRun==true && rotatedImage!=null){
+			//keep the user's selection
+			colourCroppedImage = rotatedImage.duplicate();
+			colourCroppedImage.setRoi(rotatedImage.getRoi());
+			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
+		}
+		else{
+			ImagePlus[] croppedImages = rotatedPlate.cropAndGetBrightness(crop);
+			colourCroppedImage = croppedImages[0];
+			grayscaleCroppedImage = croppedImages[1];
+		}
+
+		Attempt attempt = segment(colourCroppedImage, grayscaleCroppedImage, cropper);
+		attempt.crop = crop.intersection(new Rectangle(0, 0, rotatedPlate.getWidth(), rotatedPlate.getHeight()));
+		return(attempt);
+	}
+
+
+
+	/**
+	 * Segments the cropped plate, the pictures of the previous attempt that failed are let go
+	 * @param colourCroppedImage
+	 * @param grayscaleCroppedImage
+	 * @param cropper
+	 * @return
+	 */
+	private Attempt segment(ImagePlus colourCroppedImage, ImagePlus grayscaleCroppedImage, Cropper cropper){
+		if(lastAttempt!=null){
+			lastAttempt.colourCroppedImage.flush();
+			lastAttempt.grayscaleCroppedImage.flush();
+			if(lastAttempt.segmentationInput.imageToSegment!=lastAttempt.grayscaleCroppedImage)
+				lastAttempt.segmentationInput.imageToSegment.flush();
+		}
+
+		Attempt attempt = new Attempt();
+		attempt.cropper = cropper;
+		attempt.colourCroppedImage = colourCroppedImage;
+		attempt.grayscaleCroppedImage = grayscaleCroppedImage;
+		attempt.segmentationInput = new BasicImageSegmenterInput(getPictureToSegment(grayscaleCroppedImage), settings);
+
+		if(timeSeriesReference!=null){
+			attempt.segmentationOutput = TimeSeriesGrids.segmentPicture(timeSeriesReference, attempt.segmentationInput);
+			attempt.gridFromTimeSeries = attempt.segmentationOutput!=null;
+
+			if(!attempt.gridFromTimeSeries){
+				attempt.segmentationOutput = new BasicImageSegmenterOutput();
+				attempt.segmentationOutput.errorOccurred = true;
+			}
+		}
+		else
+			attempt.segmentationOutput = RisingTideSegmenter.segmentPicture(attempt.segmentationInput);
+
+		lastAttempt = attempt;
+		return(attempt);
+	}
+
+}
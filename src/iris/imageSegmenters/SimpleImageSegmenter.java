@@ -9,22 +9,16 @@ import ij.process.ImageProcessor;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
 
 
 /**
  * This class holds methods that implement a simple image segmenter that will just cut the picture into equal pieces
- * given the number of desired rows and columns, as well as the desired image padding (which is known for 384 plates)
+ * given the number of desired rows and columns, as well as the desired image padding (which is known for 384 plates, see BasicSettings.gridOffset)
  *
  */
 public class SimpleImageSegmenter {
 
-	/**this is used for image padding, so that we leave some space before the colonies actually start*/
-	public static int offset = 20; //20 is actually used for UCSF E.coli experiments (e.g. CPRG)
-
-
-
-
 	/**
 	 * This function will segment the picture according to it's size and the number of rows and columns
 	 * that it should have at the end.
@@ -36,7 +30,7 @@ public class SimpleImageSegmenter {
 	public static BasicImageSegmenterOutput segmentPicture(BasicImageSegmenterInput input){
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -55,6 +49,8 @@ public class SimpleImageSegmenter {
 		//get input values
 		ImagePlus croppedImage = input.imageToSegment;
 		BasicSettings settings = input.settings;
+		//image padding, so that we leave some space before the colonies actually start
+		int offset = settings.gridOffset;
 
 		//set up an output object
 		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -117,7 +113,7 @@ public class SimpleImageSegmenter {
 
 
 		//if user has made the cropping, return one tile equal to the entire (single-colony) picture
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 
 			//set up an output object
 			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -137,6 +133,8 @@ public class SimpleImageSegmenter {
 		//get input values
 		ImagePlus croppedImage = input.imageToSegment;
 		BasicSettings settings = input.settings;
+		//image padding, so that we leave some space before the colonies actually start
+		int offset = settings.gridOffset;
 
 		//set up an output object
 		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
@@ -200,6 +198,8 @@ public class SimpleImageSegmenter {
 		//get input values
 		ImagePlus croppedImage = input.imageToSegment;
 		BasicSettings settings = input.settings;
+		//image padding, so that we leave some space before the colonies actually start
+		int offset = settings.gridOffset;
 
 		//set up an output object
 		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
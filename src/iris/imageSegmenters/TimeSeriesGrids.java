@@ -0,0 +1,334 @@
+/**
+ *
+ */
+package iris.imageSegmenters;
+
+import ij.gui.Roi;
+import iris.imageSegmenterInput.BasicImageSegmenterInput;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.settings.PictureSettings;
+import iris.utils.IntegralImage;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class lets the pictures of a time series (the same plate, pictured again and again, e.g. for growth curves)
+ * reuse the grid of the first picture that was segmented, instead of rotating and segmenting every picture anew.
+ * Plates barely move between pictures, and the later pictures, with bigger colonies, are usually harder to segment.
+ *
+ * The pictures of a series are told apart by their filename: by default, only pictures whose name ends in a timepoint
+ * (_t, -t, .t or a space, followed by a number, e.g. plate12_t001.jpg, plate12_t002.jpg) are part of a series,
+ * that of the pictures with the same name before the timepoint. Other pictures (plate1.jpg, plate2.jpg, IMG_0001.jpg ...)
+ * are never matched to one another, as they could well be different plates.
+ * Otherwise a pattern is needed: the pictures whose first group (or whole match) is the same are one series.
+ *
+ * The first picture of a series that is analyzed correctly becomes the reference: its rotation, its grid
+ * (as found by the rising tide segmenter, before the colonies breathe) and the sums of the brightness of the rows
+ * and columns of its cropped picture are kept.
+ * The next pictures of the series are rotated by the same angle and cropped as usual, then the sums of the rows and
+ * columns of their cropped picture are cross-correlated with those of the reference, for shifts smaller than half a tile.
+ * If both correlate well, the grid of the reference is moved by the best shifts and used as is; otherwise,
+ * the picture is analyzed again from the start, with its own rotation, and segmented as usual
+ * (see Profile.analyzeWithoutTimeSeries); it then becomes the new reference of the series.
+ *
+ * When several pictures are analyzed at the same time, pictures of the same series can be too:
+ * which of them becomes the reference then depends on which one is done first.
+ *
+ * Only the references of the series seen last are kept (see maximumNumberOfSeries), so that a program that keeps
+ * running (e.g. IrisDaemon) doesn't hold on to the grid of every plate it ever saw; they are all dropped
+ * once a folder is done (see forgetAllSeries).
+ *
+ * @author George Kritikos
+ *
+ */
+public class TimeSeriesGrids {
+
+	/**
+	 * this is turned on by the timeSeries command line option
+	 */
+	public static boolean enabled = false;
+
+	/**
+	 * if this is set (timeSeries=PATTERN), the pictures whose filenames match it and have the same first group
+	 * (or the same match, if there are no groups) are one series
+	 */
+	public static Pattern seriesPattern = null;
+
+	/**
+	 * without a pattern, the name (without the extension) of a picture of a series ends in its timepoint,
+	 * what comes before that is the name of the series
+	 */
+	private static final Pattern timepointSuffix = Pattern.compile("^(.+)[_\\-. ][tT]\\d+$");
+
+	/**
+	 * the grid is never moved by more than this, in pixels
+	 */
+	private static final int maximumShift = 50;
+
+	/**
+	 * the sums of rows and of columns of a picture should correlate at least this well with those of the reference
+	 */
+	private static final double minimumCorrelation = 0.8;
+
+
+	/**
+	 * The first picture of a series that was segmented
+	 */
+	public static class Reference {
+
+		/**
+		 * the rotation of the reference picture, in degrees
+		 */
+		public final double angle;
+
+		private final Roi[][] ROImatrix;
+		private final double[] sumOfColumns;
+		private final double[] sumOfRows;
+
+		private Reference(double angle, Roi[][] ROImatrix, double[] sumOfColumns, double[] sumOfRows){
+			this.angle = angle;
+			this.ROImatrix = ROImatrix;
+			this.sumOfColumns = sumOfColumns;
+			this.sumOfRows = sumOfRows;
+		}
+	}
+
+
+	/**
+	 * at most this many series are remembered, the one used least recently is forgotten first
+	 */
+	private static final int maximumNumberOfSeries = 100;
+
+
+	/**
+	 * the reference of every series, in the order they were last used
+	 */
+	private static final Map<String, Reference> references = Collections.synchronizedMap(
+			new LinkedHashMap<String, Reference>(16, 0.75f, true){
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, Reference> eldest){
+					return(size()>maximumNumberOfSeries);
+				}
+			});
+
+
+
+	/**
+	 * @param profileName
+	 * @param filename
+	 * @return the name of the series the picture is part of, null if it is not part of one
+	 */
+	static String getSeriesName(String profileName, String filename){
+		File file = new File(filename);
+		String name = file.getName();
+
+		if(seriesPattern!=null){
+			Matcher matcher = seriesPattern.matcher(name);
+			if(!matcher.find())
+				return(null);
+			name = matcher.groupCount()>0 ? matcher.group(1) : matcher.group();
+		}
+		else{
+			//leave out the extension and the timepoint
+			int extension = name.lastIndexOf('.');
+			if(extension>0)
+				name = name.substring(0, extension);
+			Matcher matcher = timepointSuffix.matcher(name);
+			if(!matcher.matches())
+				return(null);
+			name = matcher.group(1);
+		}
+
+		//pictures analyzed with different profiles are segmented differently
+		return(profileName + " " + file.getAbsoluteFile().getParent() + File.separator + name);
+	}
+
+
+
+	/**
+	 * @param profileName
+	 * @param filename
+	 * @return the reference of the series the picture is part of, null if there's none yet
+	 * (or if time series are not analyzed)
+	 */
+	public static Reference getReference(String profileName, String filename){
+		if(!enabled || PictureSettings.current().singleColonyRun)
+			return(null);
+
+		String seriesName = getSeriesName(profileName, filename);
+		if(seriesName==null)
+			return(null);
+
+		return(references.get(seriesName));
+	}
+
+
+
+	/**
+	 * Keeps this picture as the reference of its series, this should only be called once the picture was analyzed correctly
+	 * @param profileName
+	 * @param filename
+	 * @param angle: the rotation of the picture
+	 * @param segmentationInput
+	 * @param segmentationOutput: the output of the segmenter, before the colonies breathe
+	 */
+	public static void setReference(String profileName, String filename, double angle,
+			BasicImageSegmenterInput segmentationInput, BasicImageSegmenterOutput segmentationOutput){
+
+		if(!enabled || PictureSettings.current().singleColonyRun || segmentationOutput.errorOccurred)
+			return;
+
+		String seriesName = getSeriesName(profileName, filename);
+		if(seriesName==null)
+			return;
+
+		references.put(seriesName, new Reference(angle,
+				segmentationOutput.copyRoiMatrix(),
+				IntegralImage.toDoubleArray(segmentationInput.getSumOfColumns()),
+				IntegralImage.toDoubleArray(segmentationInput.getSumOfRows())));
+	}
+
+
+
+	/**
+	 * Forgets the references of all series, this is called once all the pictures of a folder were analyzed
+	 */
+	public static void forgetAllSeries(){
+		references.clear();
+	}
+
+
+
+	/**
+	 * Moves the grid of the reference onto the given (cropped) picture of the same series
+	 * @param reference
+	 * @param segmentationInput
+	 * @return the grid of the reference, moved to where the colonies are on this picture,
+	 * or null if the picture doesn't match the reference well enough (then it should be segmented as usual)
+	 */
+	public static BasicImageSegmenterOutput segmentPicture(Reference reference, BasicImageSegmenterInput segmentationInput){
+
+		int rows = segmentationInput.settings.numberOfRowsOfColonies;
+		int columns = segmentationInput.settings.numberOfColumnsOfColonies;
+
+		//1. check that it's the same kind of plate
+		if(reference.ROImatrix.length!=rows || reference.ROImatrix[0].length!=columns)
+			return(null);
+
+		int width = segmentationInput.imageToSegment.getWidth();
+		int height = segmentationInput.imageToSegment.getHeight();
+
+
+		//2. find the shifts, less than half a tile so that the grid can't slip by a whole row or column
+		int maximumShiftX = Math.min(maximumShift, reference.sumOfColumns.length/columns/2);
+		int maximumShiftY = Math.min(maximumShift, reference.sumOfRows.length/rows/2);
+
+		Integer shiftX = findShift(reference.sumOfColumns, IntegralImage.toDoubleArray(segmentationInput.getSumOfColumns()), maximumShiftX);
+		if(shiftX==null)
+			return(null);
+
+		Integer shiftY = findShift(reference.sumOfRows, IntegralImage.toDoubleArray(segmentationInput.getSumOfRows()), maximumShiftY);
+		if(shiftY==null)
+			return(null);
+
+
+		//3. move the grid, the tiles at the edges of the grid lose what falls outside the picture
+		Rectangle picture = new Rectangle(0, 0, width, height);
+		Roi[][] ROImatrix = new Roi[rows][columns];
+
+		for(int i=0; i<rows; i++){
+			for(int j=0; j<columns; j++){
+				Rectangle bounds = reference.ROImatrix[i][j].getBounds();
+				bounds.translate(shiftX, shiftY);
+				bounds = bounds.intersection(picture);
+
+				if(bounds.isEmpty())
+					return(null);
+
+				ROImatrix[i][j] = new Roi(bounds);
+			}
+		}
+
+		BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+		output.ROImatrix = ROImatrix;
+		return(output);
+	}
+
+
+
+	/**
+	 * Finds the shift of the profile that correlates best with the reference profile
+	 * @param referenceProfile
+	 * @param profile
+	 * @param maximumShift
+	 * @return the shift, i.e. profile[i+shift] corresponds to referenceProfile[i],
+	 * or null if no shift correlates well enough
+	 */
+	private static Integer findShift(double[] referenceProfile, double[] profile, int maximumShift){
+
+		int bestShift = 0;
+		double bestCorrelation = -Double.MAX_VALUE;
+
+		for(int shift=-maximumShift; shift<=maximumShift; shift++){
+
+			//only the part of the profiles that overlaps
+			int start = Math.max(0, -shift);
+			int end = Math.min(referenceProfile.length, profile.length-shift);
+
+			//too little left to tell
+			if(end-start < referenceProfile.length/2)
+				continue;
+
+			double correlation = getCorrelation(referenceProfile, profile, start, end, shift);
+			if(correlation>bestCorrelation){
+				bestCorrelation = correlation;
+				bestShift = shift;
+			}
+		}
+
+		if(bestCorrelation<minimumCorrelation)
+			return(null);
+
+		return(bestShift);
+	}
+
+
+
+	/**
+	 * @return the Pearson correlation of referenceProfile[start..end) and profile[start+shift..end+shift)
+	 */
+	private static double getCorrelation(double[] referenceProfile, double[] profile, int start, int end, int shift){
+		int n = end-start;
+
+		double sumX = 0, sumY = 0;
+		for(int i=start; i<end; i++){
+			sumX += referenceProfile[i];
+			sumY += profile[i+shift];
+		}
+		double meanX = sumX/n;
+		double meanY = sumY/n;
+
+		double covariance = 0, varianceX = 0, varianceY = 0;
+		for(int i=start; i<end; i++){
+			double dx = referenceProfile[i]-meanX;
+			double dy = profile[i+shift]-meanY;
+			covariance += dx*dy;
+			varianceX += dx*dx;
+			varianceY += dy*dy;
+		}
+
+		if(varianceX==0 || varianceY==0)
+			return(0);
+
+		return(covariance/Math.sqrt(varianceX*varianceY));
+	}
+
+}
@@ -25,11 +25,12 @@ import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.BasicTileReader;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -54,7 +55,7 @@ public class BasicProfile extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
 
 	/**
 	 * This function will analyze the picture using the basic profile
@@ -79,7 +80,7 @@ public class BasicProfile extends Profile {
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -160,7 +161,7 @@ public class BasicProfile extends Profile {
 
 			//save the grid before exiting
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 
 			croppedImageColor.flush();
 			paintedImage.flush();
@@ -187,21 +188,22 @@ public class BasicProfile extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] readerOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
+		final ImagePlus grayscaleCroppedImage = croppedImage;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				readerOutputs[i][j] = BasicTileReader.processTile(
-						new BasicTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(grayscaleCroppedImage, gridOutput.ROImatrix[i][j], settings));
 
 				if(readerOutputs[i][j].colonySize>0){
 
 					opacityReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], 
+							new OpacityTileReaderInput(grayscaleCroppedImage, gridOutput.ROImatrix[i][j], 
 									readerOutputs[i][j].colonyROI, readerOutputs[i][j].colonySize, settings));
 				}
 				else
@@ -210,7 +212,7 @@ public class BasicProfile extends Profile {
 				}
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -226,7 +228,7 @@ public class BasicProfile extends Profile {
 			
 			croppedImageColor = ColonyBreathing.paintSegmentedImage(croppedImageColor, segmentationOutput);
 			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
+			saveGridImage(croppedImageColor, filename + ".grid.jpg");
 
 			return;
 		}
@@ -252,6 +254,11 @@ public class BasicProfile extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+		recordTileReaderOutputs("opacityReaderOutputs", opacityReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -271,7 +278,7 @@ public class BasicProfile extends Profile {
 			///ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
 
 			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
+			saveGridImage(croppedImageColor, filename + ".grid.jpg");
 		}
 
 	}
@@ -324,28 +331,6 @@ public class BasicProfile extends Profile {
 		return(false);
 	}
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -358,59 +343,7 @@ public class BasicProfile extends Profile {
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -453,16 +386,12 @@ public class BasicProfile extends Profile {
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -474,30 +403,7 @@ public class BasicProfile extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -511,29 +417,7 @@ public class BasicProfile extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
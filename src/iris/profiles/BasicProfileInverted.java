@@ -19,6 +19,7 @@ import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.SimpleImageSegmenter;
 import iris.settings.BasicSettings;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
@@ -27,13 +28,13 @@ import iris.tileReaders.BasicTileReaderInverted;
 import iris.tileReaders.BasicTileReader_Bsu;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -58,7 +59,7 @@ public class BasicProfileInverted extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = IrisFrontend.settings;
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
 
 
 	/**
@@ -69,7 +70,7 @@ public class BasicProfileInverted extends Profile {
 	 */
 	public void analyzePicture(String filename){
 
-		if(IrisFrontend.singleColonyRun==false){
+		if(PictureSettings.current().singleColonyRun==false){
 			settings.numberOfColumnsOfColonies = 24;
 			settings.numberOfRowsOfColonies = 16;
 		}
@@ -88,7 +89,7 @@ public class BasicProfileInverted extends Profile {
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -160,7 +161,7 @@ public class BasicProfileInverted extends Profile {
 		//			segmentationOutput = SimpleImageSegmenter.segmentPicture_colonyDistance(segmentationInput, 170);
 		//		}
 		//		else{
-		SimpleImageSegmenter.offset=35;
+		settings.gridOffset = 35;
 		//ColonyBreathing.breathingSpace = 20;
 		segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
 		//		}
@@ -195,7 +196,7 @@ public class BasicProfileInverted extends Profile {
 			//croppedImageColor = Toolbox.invertImage(croppedImageColor);
 
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 
 			croppedImageColor.flush();
 			paintedImage.flush();
@@ -291,7 +292,7 @@ public class BasicProfileInverted extends Profile {
 
 		//in Mori's paper they used 17px diameter (fishy at best, since diameter is 2*radius and radius is an integer)
 		//they mention this corresponds to 1mm, but 1mm in our camera corresponds to 37.5 pixels 
-		OpacityTileReader.diameter = 38;
+		settings.centerAreaDiameter = 38;
 
 		//for all rows
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
@@ -335,7 +336,7 @@ public class BasicProfileInverted extends Profile {
 			Toolbox.drawColonyBounds(croppedImageColor, segmentationOutput, readerOutputs);
 			croppedImageColor = Toolbox.invertImage(croppedImageColor);
 
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
+			saveGridImage(croppedImageColor, filename + ".grid.jpg");
 
 			return;
 			 */
@@ -367,6 +368,12 @@ public class BasicProfileInverted extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputsCenters", basicTileReaderOutputsCenters);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+		recordTileReaderOutputs("opacityReaderOutputs", opacityReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -393,7 +400,7 @@ public class BasicProfileInverted extends Profile {
 			drawCenterRoiBounds(croppedImageColor, segmentationOutput, opacityReaderOutputs);
 			croppedImageColor = Toolbox.invertImage(croppedImageColor);
 
-			Toolbox.savePicture(croppedImageColor, filename + ".grid.jpg");
+			saveGridImage(croppedImageColor, filename + ".grid.jpg");
 		}
 
 	}
@@ -446,28 +453,6 @@ public class BasicProfileInverted extends Profile {
 		return(false);
 	}
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -480,59 +465,7 @@ public class BasicProfileInverted extends Profile {
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -575,16 +508,12 @@ public class BasicProfileInverted extends Profile {
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -596,30 +525,7 @@ public class BasicProfileInverted extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -633,29 +539,7 @@ public class BasicProfileInverted extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -813,9 +697,7 @@ public class BasicProfileInverted extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
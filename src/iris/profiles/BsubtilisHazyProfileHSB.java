@@ -11,7 +11,6 @@ import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
-import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
@@ -23,11 +22,12 @@ import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.OpacityTileReaderForBsuColonies;
 import iris.ui.IrisFrontend;
+import iris.utils.HSBConverter;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -55,7 +55,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
 
 
 	/**
@@ -80,7 +80,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -138,13 +138,11 @@ public class BsubtilisHazyProfileHSB extends Profile {
 		int height = croppedImage.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
 		croppedImage = new ImagePlus(croppedImage.getTitle(), bpBri);
@@ -190,7 +188,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 
 			//save the grid before exiting
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			saveGridImage(croppedImage, filename + ".grid.jpg");
 
 			return;
 		}
@@ -242,7 +240,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 			//calculate and save grid image
 			//RisingTideSegmenter.paintSegmentedImage(croppedImage, segmentationOutput);
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 			
 			//return;
 		}
@@ -270,6 +268,10 @@ public class BsubtilisHazyProfileHSB extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -287,7 +289,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 		if(settings.saveGridImage){
 			//calculate grid image
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -408,59 +410,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -503,16 +453,12 @@ public class BsubtilisHazyProfileHSB extends Profile {
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -524,30 +470,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -561,29 +484,7 @@ public class BsubtilisHazyProfileHSB extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -611,28 +512,6 @@ public class BsubtilisHazyProfileHSB extends Profile {
 		return(threshold);
 	}
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -13,7 +13,6 @@ import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
-import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.imageCroppers.GenericImageCropper;
@@ -23,6 +22,7 @@ import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput;
@@ -31,13 +31,15 @@ import iris.tileReaderOutputs.ColorTileReaderOutput;
 import iris.tileReaders.BasicTileReader_Bsu;
 import iris.tileReaders.ColorTileReaderHSB;
 import iris.ui.IrisFrontend;
+import iris.utils.HSBConverter;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -62,7 +64,7 @@ public class BsubtilisSporulationProfile extends Profile{
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -88,7 +90,7 @@ public class BsubtilisSporulationProfile extends Profile{
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -106,17 +108,15 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 
@@ -129,7 +129,7 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//2. rotate the whole image
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
+		if(userProfileSettings==null || PictureSettings.current().singleColonyRun){ 
 			//if no settings loaded
 			//or if this is a single colony image
 			imageAngle = Toolbox.calculateImageRotation(originalImage);
@@ -156,7 +156,7 @@ public class BsubtilisSporulationProfile extends Profile{
 		if(userProfileSettings==null){ //default behavior
 			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
 		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
+		else if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
 			//perform no cropping if the user already cropped the picture
 			//or if this is a single-colony picture
 			croppedImage = rotatedImage.duplicate();
@@ -168,8 +168,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
 			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
 		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
 			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
@@ -201,13 +200,11 @@ public class BsubtilisSporulationProfile extends Profile{
 		int height = croppedImage.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
 		croppedImage = new ImagePlus("", bpBri);
@@ -230,7 +227,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 
@@ -260,7 +257,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
 
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
+			saveGridImage(croppedImageSegmented, filename + ".grid.jpg");
 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
@@ -304,23 +301,25 @@ public class BsubtilisSporulationProfile extends Profile{
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];	
+		final BasicTileReaderOutput [][] basicTileReaderOutputsCenters = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];	
 
 
 
 		//6.0 do a pre-run to get the centers of the colonies
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus grayscaleImage = grayscaleCroppedImage;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				basicTileReaderOutputsCenters[i][j] = BasicTileReader_Bsu.getColonyCenter(
-						new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 
 			}
-		}
+		});
 
 		//get the medians of all the rows and columns, ignore zeroes
 		//for all rows
@@ -351,8 +350,8 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//save the pre-calculated colony centers in a matrix of input to basic tile reader
 		//all the tile readers will get it from there
-		BasicTileReaderInput [][] centeredTileReaderInput = new BasicTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderInput [][] centeredColorTileReaderInput = new ColorTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderInput [][] centeredTileReaderInput = new BasicTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderInput [][] centeredColorTileReaderInput = new ColorTileReaderInput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
 			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
 				centeredTileReaderInput[i][j] = new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings,
@@ -370,18 +369,20 @@ public class BsubtilisSporulationProfile extends Profile{
 
 		//6.1 now actually analyze all the tiles
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 
 				//first get the colony size (so that the user doesn't have to run 2 profiles for this)
 				basicTileReaderOutputs[i][j] = BasicTileReader_Bsu.processTile(centeredTileReaderInput[i][j]);
 
 				
 				//colony QC
-				if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						basicTileReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(basicTileReaderOutputs[i][j].colonySize<minimumColonySize ||
+						basicTileReaderOutputs[i][j].circularity<minimumColonyCircularity){
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 				}
 				
@@ -398,7 +399,7 @@ public class BsubtilisSporulationProfile extends Profile{
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -415,7 +416,7 @@ public class BsubtilisSporulationProfile extends Profile{
 
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
 			drawCenterRoiBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
@@ -463,6 +464,12 @@ public class BsubtilisSporulationProfile extends Profile{
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputsCenters", basicTileReaderOutputsCenters);
+		recordTileReaderOutputs("basicTileReaderOutputs", basicTileReaderOutputs);
+		recordTileReaderOutputs("colourTileReaderOutputs", colourTileReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -485,7 +492,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
 			drawCenterRoiBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
 			drawColonyRoundBounds(colourCroppedImage, segmentationOutput, colourTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			grayscaleCroppedImage.flush();
 		}
@@ -563,9 +570,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -661,9 +666,7 @@ public class BsubtilisSporulationProfile extends Profile{
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -706,59 +709,7 @@ public class BsubtilisSporulationProfile extends Profile{
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -830,16 +781,12 @@ public class BsubtilisSporulationProfile extends Profile{
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -851,30 +798,7 @@ public class BsubtilisSporulationProfile extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -888,29 +812,7 @@ public class BsubtilisSporulationProfile extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -1004,28 +906,6 @@ public class BsubtilisSporulationProfile extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
@@ -4,8 +4,6 @@
 package iris.profiles;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 import ij.IJ;
@@ -27,6 +25,7 @@ import iris.imageSegmenters.RisingTideSegmenter;
 import iris.imageSegmenters.SimpleImageSegmenter;
 import iris.settings.BasicSettings;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.OpacityTileReaderInput;
@@ -36,6 +35,9 @@ import iris.tileReaders.CPRGColorTileReader;
 import iris.tileReaders.CPRGColorTileReaderHSV;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 /**
@@ -63,8 +65,8 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
-	private ColorSettings colorSettings = new ColorSettings(IrisFrontend.settings);
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
+	private ColorSettings colorSettings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 	/**
@@ -96,7 +98,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -114,17 +116,15 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 
@@ -139,7 +139,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 		//2. rotate the whole image
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
+		if(userProfileSettings==null || PictureSettings.current().singleColonyRun){ 
 			//if no settings loaded
 			//or if this is a single colony image
 			imageAngle = Toolbox.calculateImageRotation(originalImage);
@@ -175,10 +175,9 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			int y_start = 325;
 			int y_end = 2770;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
+		else if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
 			//perform no cropping if the user already cropped the picture
 			//or if this is a single-colony picture
 			croppedImage = rotatedImage.duplicate();
@@ -190,8 +189,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
 			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
 		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
 			croppedImage = GenericImageCropper2.cropPlate(rotatedImage);
@@ -242,7 +240,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 
@@ -269,7 +267,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 			//save the grid before exiting
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage_duplicate, filename + ".grid.jpg");
 
 			return;
 		}
@@ -305,19 +303,24 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputs = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final CPRGTileReaderOutput [][] cprgTileReaderOutputsHSV = new CPRGTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
 
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus colourImage = colourCroppedImage;
+		final ImagePlus tileSourceImage = croppedImage;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				try{
 					opacityReaderOutputs[i][j] = OpacityTileReader.processTile(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new OpacityTileReaderInput(tileSourceImage, gridOutput.ROImatrix[i][j], settings));
 				} catch(Exception e){
 					IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 					opacityReaderOutputs[i][j] = new OpacityTileReaderOutput();
@@ -325,8 +328,8 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				//each generated tile image is cleaned up inside the tile reader
 
 				//colony QC
-				if(opacityReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						opacityReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(opacityReaderOutputs[i][j].colonySize<minimumColonySize ||
+						opacityReaderOutputs[i][j].circularity<minimumColonyCircularity){
 					opacityReaderOutputs[i][j] = new OpacityTileReaderOutput();
 				}
 
@@ -334,7 +337,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				if(opacityReaderOutputs[i][j].colonySize>0){
 					try{
 						cprgTileReaderOutputs[i][j] = CPRGColorTileReader.processTile(
-								new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+								new ColorTileReaderInput(colourImage, gridOutput.ROImatrix[i][j], colorSettings));
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						cprgTileReaderOutputs[i][j] = new CPRGTileReaderOutput();
@@ -342,7 +345,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 					try{
 						cprgTileReaderOutputsHSV[i][j] = CPRGColorTileReaderHSV.processTile(
-								new ColorTileReaderInput(colourCroppedImage, segmentationOutput.ROImatrix[i][j], colorSettings));
+								new ColorTileReaderInput(colourImage, gridOutput.ROImatrix[i][j], colorSettings));
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						cprgTileReaderOutputsHSV[i][j] = new CPRGTileReaderOutput();
@@ -359,7 +362,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 				}
 
 			}
-		}
+		});
 
 
 
@@ -376,7 +379,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			/* ///HACK commenting-out the following block will make Iris print out the result even though the gridding failed
 			//calculate and save grid image
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 
 			return;
@@ -414,6 +417,12 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("opacityReaderOutputs", opacityReaderOutputs);
+		recordTileReaderOutputs("cprgTileReaderOutputs", cprgTileReaderOutputs);
+		recordTileReaderOutputs("cprgTileReaderOutputsHSV", cprgTileReaderOutputsHSV);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -432,7 +441,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 			//calculate grid image
 			colourCroppedImage_duplicate = ColonyBreathing.paintSegmentedImage(colourCroppedImage_duplicate, segmentationOutput);
 			Toolbox.drawColonyBounds(colourCroppedImage_duplicate, segmentationOutput, opacityReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage_duplicate, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage_duplicate, filename + ".grid.jpg");
 		}
 
 	}
@@ -556,59 +565,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -651,16 +608,12 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -672,30 +625,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -709,29 +639,7 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -759,28 +667,6 @@ public class CPRGProfile384_ourCamera2 extends Profile {
 		return(threshold);
 	}
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
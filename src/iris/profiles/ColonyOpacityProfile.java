@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -14,17 +13,19 @@ import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.imageSegmenters.TimeSeriesGrids;
 import iris.settings.BasicSettings;
+import iris.settings.CameraCalibration;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -46,10 +47,30 @@ public class ColonyOpacityProfile extends Profile {
 	public static String profileNotes = "This profile is calibrated for use in measuring colony size, density, and opacity";
 
 
+	/**
+	 * the name the pictures are analyzed under: profileName, unless another profile analyzes its pictures
+	 * through this one (see ColonyOpacityProfileInverted)
+	 */
+	private final String analysisName;
+
+
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
+
+
+	public ColonyOpacityProfile(){
+		this(profileName);
+	}
+
+
+	/**
+	 * @param analysisName: the name the pictures are analyzed under
+	 */
+	ColonyOpacityProfile(String analysisName){
+		this.analysisName = analysisName;
+	}
 
 	/**
 	 * This function will analyze the picture using the basic profile
@@ -62,18 +83,18 @@ public class ColonyOpacityProfile extends Profile {
 		File file = new File(filename);
 		String justFilename = file.getName();
 
-		System.out.println("\n\n[" + profileName + "] analyzing picture:\n  "+justFilename);
+		System.out.println("\n\n[" + analysisName + "] analyzing picture:\n  "+justFilename);
 
 		//initialize results file output
 		StringBuffer output = new StringBuffer();
 		output.append("#Iris output\n");
-		output.append("#Profile: " + profileName + "\n");
+		output.append("#Profile: " + analysisName + "\n");
 		output.append("#Iris version: " + IrisFrontend.IrisVersion + ", revision id: " + IrisFrontend.IrisBuild + "\n");
 		output.append("#"+filename+"\n");
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -86,22 +107,20 @@ public class ColonyOpacityProfile extends Profile {
 		//find any user settings pertaining to this profile
 		ProfileSettings userProfileSettings = null;
 		if(IrisFrontend.userSettings!=null){
-			userProfileSettings = IrisFrontend.userSettings.getProfileSettings(profileName);
+			userProfileSettings = IrisFrontend.userSettings.getProfileSettings(analysisName);
 		}
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 
@@ -113,14 +132,24 @@ public class ColonyOpacityProfile extends Profile {
 		//
 
 		//2. rotate the whole image
+		TimeSeriesGrids.Reference timeSeriesReference = getTimeSeriesReference(analysisName, filename);
+
+		//the camera, in case its rotation and crop borders are calibrated
+		String cameraName = CameraCalibration.getCameraName(filename, originalImage);
+
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
+		if(timeSeriesReference!=null){
+			//a later picture of a plate already analyzed is rotated the same way, and takes the same grid if it matches
+			//(if it doesn't, it's analyzed again without the reference, see below)
+			imageAngle = timeSeriesReference.angle;
+		}
+		else if(userProfileSettings==null || PictureSettings.current().singleColonyRun){ 
 			//if no settings loaded
 			//or if this is a single colony image
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
+			imageAngle = CameraCalibration.calculateImageRotation(cameraName, originalImage);
 		}
 		else if(userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
+			imageAngle = CameraCalibration.calculateImageRotation(cameraName, originalImage);
 		}
 		else if(!userProfileSettings.rotationSettings.autoRotateImage){
 			imageAngle = userProfileSettings.rotationSettings.manualImageRotationDegrees;
@@ -150,7 +179,7 @@ public class ColonyOpacityProfile extends Profile {
 		if(userProfileSettings==null){ //default behavior
 			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
 		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
+		else if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
 			//perform no cropping if the user already cropped the picture
 			//or if this is a single-colony picture
 			croppedImage = rotatedImage.duplicate();
@@ -162,8 +191,7 @@ public class ColonyOpacityProfile extends Profile {
 			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
 			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
 		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
 			croppedImage = GenericImageCropper.cropPlate(rotatedImage);
@@ -198,17 +226,36 @@ public class ColonyOpacityProfile extends Profile {
 
 		//5. segment the cropped picture
 		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(croppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		BasicImageSegmenterOutput segmentationOutput = null;
+		if(timeSeriesReference!=null){
+			segmentationOutput = TimeSeriesGrids.segmentPicture(timeSeriesReference, segmentationInput);
+
+			//the picture was rotated by the angle of the reference of its time series, but it doesn't match it:
+			//start over, finding its own rotation and segmenting it as usual
+			if(segmentationOutput==null){
+				croppedImage.flush();
+				colourCroppedImage.flush();
+				analyzeWithoutTimeSeries(filename);
+				return;
+			}
+		}
+
+		//the grid found by segmenting this picture, kept for the next pictures of its time series
+		BasicImageSegmenterOutput timeSeriesGrid = null;
+		if(segmentationOutput==null){
+			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+			timeSeriesGrid = segmentationOutput;
+		}
 
 
 		//let the tile boundaries "breathe"
 		if(userProfileSettings==null){//default behavior
-			ColonyBreathing.breathingSpace = 8;
+			settings.colonyBreathingSpace = 8;
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 
@@ -217,7 +264,7 @@ public class ColonyOpacityProfile extends Profile {
 		//check if something went wrong
 		if(segmentationOutput.errorOccurred){
 
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
+			System.err.println("\n"+analysisName+": unable to process picture " + justFilename);
 
 			System.err.print("Image segmentation algorithm failed:\n");
 
@@ -237,7 +284,7 @@ public class ColonyOpacityProfile extends Profile {
 
 			//save the grid before exiting
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 
 			return;
 		}
@@ -276,26 +323,30 @@ public class ColonyOpacityProfile extends Profile {
 		//7. analyze each tile
 
 		//create an array of measurement outputs
-		OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] readerOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus tileSourceImage = croppedImage;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				readerOutputs[i][j] = OpacityTileReader.processTile(
-						new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+						new OpacityTileReaderInput(tileSourceImage, gridOutput.ROImatrix[i][j], settings));
 
 				//each generated tile image is cleaned up inside the tile reader
 				
 				//colony QC
-				if(readerOutputs[i][j].colonySize<minimumValidColonySize ||
-						readerOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(readerOutputs[i][j].colonySize<minimumColonySize ||
+						readerOutputs[i][j].circularity<minimumColonyCircularity){
 					readerOutputs[i][j] = new OpacityTileReaderOutput();
 				}
 
 				
 			}
-		}
+		});
 
 
 
@@ -304,13 +355,13 @@ public class ColonyOpacityProfile extends Profile {
 		if(checkRowsColumnsIncorrectGridding(readerOutputs)){
 			//something was wrong with the gridding.
 			//just print an error message, save grid for debugging reasons and exit
-			System.err.println("\n"+profileName+": unable to process picture " + justFilename);
+			System.err.println("\n"+analysisName+": unable to process picture " + justFilename);
 			System.err.print("Image segmentation algorithm failed:\n");
 			System.err.println("\ttoo many empty rows/columns");
 
 			//calculate and save grid image
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			return;
 		}
@@ -318,6 +369,12 @@ public class ColonyOpacityProfile extends Profile {
 
 
 
+		//keep this picture as the reference of its time series, unless its grid came from the reference already
+		if(timeSeriesGrid!=null){
+			TimeSeriesGrids.setReference(analysisName, filename, imageAngle, segmentationInput, timeSeriesGrid);
+		}
+
+
 		//8. output the results
 
 		//8.1 output the colony measurements as a text file
@@ -333,6 +390,10 @@ public class ColonyOpacityProfile extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -351,7 +412,7 @@ public class ColonyOpacityProfile extends Profile {
 			//calculate grid image
 			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, readerOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -438,28 +499,6 @@ public class ColonyOpacityProfile extends Profile {
 
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -5,6 +5,11 @@ package iris.profiles;
 
 import ij.IJ;
 import ij.ImagePlus;
+import iris.settings.BasicSettings;
+import iris.utils.Toolbox;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -28,6 +33,12 @@ public class ColonyOpacityProfileInverted extends Profile {
 					"for colonies that are darker than their background e.g. using backlight";
 
 
+	/**
+	 * the normal opacity profile, which analyzes the inverted pictures under the name of this profile
+	 */
+	private final ColonyOpacityProfile normalOpacityProfile = new ColonyOpacityProfile(profileName);
+
+
 	/**
 	 * This function will analyze the picture using the basic profile
 	 * The end result will be a file with the same name as the input filename,
@@ -36,10 +47,10 @@ public class ColonyOpacityProfileInverted extends Profile {
 	 */
 	public void analyzePicture(String filename){
 
-		//just invert picture, save it as temp, and then feed it to the normal opacity profile
+		//just invert picture, and then feed it to the normal opacity profile
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -49,20 +60,65 @@ public class ColonyOpacityProfileInverted extends Profile {
 		}
 		
 		
-		//2. invert the picture, and save it under a new filename
+		//2. invert the picture, the results are written under this filename
 		String invertedFilename = filename+".inverted.jpg";
-		originalImage.getProcessor().invert();
-		IJ.saveAs(originalImage, "jpg", invertedFilename);
+		ImagePlus invertedImage = invertAsJpeg(originalImage, new File(invertedFilename).getName());
+		originalImage.flush();
+
+		if(invertedImage==null){
+			System.err.println("Could not invert image file: " + filename);
+			return;
+		}
 		
 
-		//3. pass it to the normal opacity profile to analyze
-		ColonyOpacityProfile normalOpacityProfile = new ColonyOpacityProfile();
-		ColonyOpacityProfile.profileName = ColonyOpacityProfileInverted.profileName;
+		//3. pass it to the normal opacity profile to analyze, under the name of this profile
+		PlateResult result = normalOpacityProfile.analyzeImage(invertedImage, invertedFilename, writesOutputFiles(), true);
+		invertedImage.flush();
+
+		if(isAnalyzingInMemory()){
+			result.imageName = filename;
+			currentResult = result;
+		}
 
-		normalOpacityProfile.analyzePicture(invertedFilename);
+	}
 
 
+	/**
+	 * The settings of this profile are those of the normal opacity profile that does the analysis
+	 */
+	@Override
+	void resetSettings(BasicSettings resolvedSettings){
+		super.resetSettings(resolvedSettings);
+		normalOpacityProfile.resetSettings(resolvedSettings);
+	}
 
+
+	/**
+	 * Inverts the picture, and returns it the way it is read back once saved as a JPEG file:
+	 * the inverted picture used to be saved next to the original and analyzed from there, this way
+	 * the results stay the same, whether the picture is analyzed from disk or in memory
+	 * @param image: this is inverted
+	 * @param title: the title of the inverted picture
+	 * @return the inverted picture, or null if the JPEG file couldn't be written or read
+	 */
+	private static ImagePlus invertAsJpeg(ImagePlus image, String title){
+		image.getProcessor().invert();
+
+		File jpegFile = null;
+		try {
+			jpegFile = File.createTempFile("iris.inverted", ".jpg");
+			Toolbox.savePicture(image, jpegFile.getPath());
+
+			ImagePlus invertedImage = IJ.openImage(jpegFile.getPath());
+			if(invertedImage!=null)
+				invertedImage.setTitle(title);
+			return(invertedImage);
+		} catch (IOException e) {
+			return(null);
+		} finally {
+			if(jpegFile!=null)
+				jpegFile.delete();
+		}
 	}
 
 
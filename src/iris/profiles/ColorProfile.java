@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.process.ImageConverter;
 import iris.imageCroppers.NaiveImageCropper;
@@ -21,8 +20,6 @@ import iris.ui.IrisFrontend;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * @author George Kritikos
@@ -44,7 +41,7 @@ public class ColorProfile extends Profile{
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -70,7 +67,7 @@ public class ColorProfile extends Profile{
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -135,7 +132,7 @@ public class ColorProfile extends Profile{
 
 			//save the grid before exiting
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			saveGridImage(croppedImage, filename + ".grid.jpg");
 
 			return;
 		}
@@ -199,7 +196,7 @@ public class ColorProfile extends Profile{
 
 			//calculate and save grid image
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			return;
 		}
@@ -241,6 +238,11 @@ public class ColorProfile extends Profile{
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputs", basicTileReaderOutputs);
+		recordTileReaderOutputs("colourTileReaderOutputs", colourTileReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -258,7 +260,7 @@ public class ColorProfile extends Profile{
 		if(settings.saveGridImage){
 			//calculate grid image
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -313,28 +315,6 @@ public class ColorProfile extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
@@ -4,8 +4,6 @@
 package iris.profiles;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 import fiji.threshold.Auto_Local_Threshold;
@@ -16,31 +14,35 @@ import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
-import iris.imageCroppers.GenericImageCropper;
-import iris.imageCroppers.GenericImageCropper2;
-import iris.imageCroppers.NaiveImageCropper;
 import iris.imageCroppers.NaiveImageCropper3;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.imageSegmenters.SegmentationAttempts;
+import iris.imageSegmenters.SegmentationAttempts.Cropper;
+import iris.imageSegmenters.TimeSeriesGrids;
+import iris.settings.CameraCalibration;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
-import iris.tileReaderInputs.ColorTileReaderInput3;
-import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderInputs.CombinedTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
+import iris.tileReaderOutputs.CombinedTileReaderOutput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
 import iris.tileReaders.BasicTileReaderHSB;
 import iris.tileReaders.BasicTileReaderHSB_darkColonies;
-import iris.tileReaders.ColorTileReaderHSB;
+import iris.tileReaders.CombinedTileReader;
 import iris.tileReaders.LaplacianFilterTileReader;
-import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.RotatedPlate;
+import iris.utils.RotationEstimator;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 /**
  * @author George Kritikos
@@ -62,7 +64,7 @@ public class ColorProfileEcoli extends Profile{
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -91,7 +93,7 @@ public class ColorProfileEcoli extends Profile{
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -108,17 +110,15 @@ public class ColorProfileEcoli extends Profile{
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		//
@@ -127,24 +127,30 @@ public class ColorProfileEcoli extends Profile{
 		//
 
 		//2. rotate the whole image
+		TimeSeriesGrids.Reference timeSeriesReference = getTimeSeriesReference(profileName, filename);
+
+		//the camera, in case its rotation and crop borders are calibrated
+		String cameraName = CameraCalibration.getCameraName(filename, originalImage);
+
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
+		if(timeSeriesReference!=null){
+			//a later picture of a plate already analyzed is rotated the same way, and takes the same grid if it matches
+			//(if it doesn't, it's analyzed again without the reference, see below)
+			imageAngle = timeSeriesReference.angle;
+		}
+		else if(userProfileSettings==null || PictureSettings.current().singleColonyRun){ 
 			//if no settings loaded
 			//or if this is a single colony image
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
+			imageAngle = CameraCalibration.calculateImageRotation(cameraName, originalImage);
 		}
 		else if(userProfileSettings.rotationSettings.autoRotateImage){
-			imageAngle = Toolbox.calculateImageRotation(originalImage);
+			imageAngle = CameraCalibration.calculateImageRotation(cameraName, originalImage);
 		}
 		else if(!userProfileSettings.rotationSettings.autoRotateImage){
 			imageAngle = userProfileSettings.rotationSettings.manualImageRotationDegrees;
 		}
 
 
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
-
 		//output how much the image needed to be rotated
 		if(imageAngle!=0){
 			System.out.println("Image had to be rotated by  " + imageAngle + " degrees");
@@ -152,76 +158,85 @@ public class ColorProfileEcoli extends Profile{
 
 
 		//3. crop the plate to keep only the colonies
-
-		ImagePlus colourCroppedImage = null;
-		if(userProfileSettings==null){ //default behavior
-			colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
-			//perform no cropping if the user already cropped the picture
-			//or if this is a single-colony picture
-			colourCroppedImage = rotatedImage.duplicate();
-			colourCroppedImage.setRoi(rotatedImage.getRoi());
-		}
-		else if(userProfileSettings.croppingSettings.UseFixedCropping){
-			int x_start = userProfileSettings.croppingSettings.FixedCropping_X_Start;
-			int x_end = userProfileSettings.croppingSettings.FixedCropping_X_End;
-			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
-			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
-
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			colourCroppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
-		}
-		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
-			colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-		}
-
-
-
-
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
 		//4. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		//This is how you do it the HSB way		
-		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
+		//This is how you do it the HSB way
+		//5. segment the cropped picture, if something goes wrong, try out different croppers
 
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//5. segment the cropped picture
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		boolean defaultCropping = userProfileSettings==null || 
+				(!userProfileSettings.croppingSettings.UserCroppedImage && !userProfileSettings.croppingSettings.UseFixedCropping);
 
-		//check if something went wrong with the segmenting process, then try out different croppers
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
+		ImagePlus rotatedImage = null;
+		SegmentationAttempts segmentationAttempts = null;
+		SegmentationAttempts.Attempt attempt = null;
 
-			colourCroppedImage = GenericImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);			
-			segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		if(defaultCropping){
+			if(!PictureSettings.current().singleColonyRun && RotatedPlate.canRotate(originalImage)){
+				//rotate the picture as it is read, without making a rotated copy of the whole picture
+				//(the original is kept until the segmentation is done)
+				segmentationAttempts = new SegmentationAttempts(profileName, new RotatedPlate(originalImage, imageAngle), settings);
+			}
+			else{
+				//create a copy of the original image and rotate it, then clear the original picture
+				rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
+				originalImage.flush();
+				segmentationAttempts = new SegmentationAttempts(profileName, rotatedImage, settings);
+			}
+			segmentationAttempts.timeSeriesReference = timeSeriesReference;
+			segmentationAttempts.cameraName = cameraName;
 
+			attempt = segmentationAttempts.segment(Cropper.GENERIC_CROPPER_2, Cropper.GENERIC_CROPPER, Cropper.NAIVE_CROPPER);
 		}
+		else{
+			//create a copy of the original image and rotate it, then clear the original picture
+			rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
+			originalImage.flush();
+			segmentationAttempts = new SegmentationAttempts(profileName, rotatedImage, settings);
+
+			ImagePlus userCroppedImage = null;
+			if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
+				//perform no cropping if the user already cropped the picture
+				//or if this is a single-colony picture
+				userCroppedImage = rotatedImage.duplicate();
+				userCroppedImage.setRoi(rotatedImage.getRoi());
+			}
+			else{
+				int x_start = userProfileSettings.croppingSettings.FixedCropping_X_Start;
+				int x_end = userProfileSettings.croppingSettings.FixedCropping_X_End;
+				int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
+				int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
 
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
+				userCroppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
+			}
 
-			colourCroppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			segmentationInput = new BasicImageSegmenterInput(grayscaleCroppedImage, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+			segmentationAttempts.timeSeriesReference = timeSeriesReference;
+			segmentationAttempts.cameraName = cameraName;
+			attempt = segmentationAttempts.segment(userCroppedImage);
 
+			if(attempt.segmentationOutput.errorOccurred){
+				//before giving up, try again with a different cropper (this is usually why the segmentation fails)
+				attempt = segmentationAttempts.segment(Cropper.GENERIC_CROPPER, Cropper.NAIVE_CROPPER);
+			}
 		}
+
+		ImagePlus colourCroppedImage = attempt.colourCroppedImage;
+		ImagePlus grayscaleCroppedImage = attempt.grayscaleCroppedImage;
+		BasicImageSegmenterInput segmentationInput = attempt.segmentationInput;
+		BasicImageSegmenterOutput segmentationOutput = attempt.segmentationOutput;
+
 		//flush the original pictures, we won't be needing them anymore
-		rotatedImage.flush();
+		if(rotatedImage!=null)
+			rotatedImage.flush();
 		originalImage.flush();
 
+		//the picture was rotated by the angle of the reference of its time series, but it doesn't match it:
+		//start over, finding its own rotation and segmenting it as usual
+		if(timeSeriesReference!=null && !attempt.gridFromTimeSeries){
+			colourCroppedImage.flush();
+			grayscaleCroppedImage.flush();
+			analyzeWithoutTimeSeries(filename);
+			return;
+		}
+
 		//check if something went wrong
 		if(segmentationOutput.errorOccurred){
 
@@ -248,7 +263,7 @@ public class ColorProfileEcoli extends Profile{
 			croppedImageSegmented.setRoi(grayscaleCroppedImage.getRoi());
 
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
+			saveGridImage(croppedImageSegmented, filename + ".grid.jpg");
 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
@@ -270,7 +285,7 @@ public class ColorProfileEcoli extends Profile{
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 
@@ -306,14 +321,19 @@ public class ColorProfileEcoli extends Profile{
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput [][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colourTileReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput [][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus colourImage = colourCroppedImage;
+		final ImagePlus grayscaleImage = grayscaleCroppedImage;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 
 				//first get the colony size using one method
 
@@ -321,7 +341,7 @@ public class ColorProfileEcoli extends Profile{
 				//v60 (or v66, it's the same)
 				try{
 					basicTileReaderOutputs[i][j] = BasicTileReaderHSB_darkColonies.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 				} catch (Exception e){
 					IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -336,7 +356,7 @@ public class ColorProfileEcoli extends Profile{
 
 					try{
 						basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-								new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+								new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 					} catch (Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -346,7 +366,7 @@ public class ColorProfileEcoli extends Profile{
 					if(basicTileReaderOutputs[i][j].colonySize==0){
 						try{
 							basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-									new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+									new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 						} catch(Exception e){
 							IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 							basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
@@ -360,47 +380,40 @@ public class ColorProfileEcoli extends Profile{
 				/*
 				 * for the record, this is how v0.9.6.1 worked
 				basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-						new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));
+						new BasicTileReaderInput(BW_local_thresholded_picture, gridOutput.ROImatrix[i][j], settings));
 
 				//try once more using the other
 				if(basicTileReaderOutputs[i][j].colonySize==0){
 					//					basicTileReaderOutputs[i][j] = BasicTileReaderHSB_darkColonies.processTile(
-					//							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+					//							new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 
 					basicTileReaderOutputs[i][j] = LaplacianFilterTileReader.processTile(
-							new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 
 				}
 				 */
 
 				//colony QC -- user thresholds
-				if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize ||
-						basicTileReaderOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(basicTileReaderOutputs[i][j].colonySize<minimumColonySize ||
+						basicTileReaderOutputs[i][j].circularity<minimumColonyCircularity){
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 				}
 
 
 				//only run the color analysis if there is a colony in the tile
 				if(basicTileReaderOutputs[i][j].colonySize>0){
-					//colour
+					//colour and opacity, in one pass over the tile -- opacity to check if colony darkness correlates with colour information
+					//opacities can get negative, this is a fix for very dark colonies
 					try{
-						colourTileReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-								new ColorTileReaderInput3(colourCroppedImage, segmentationOutput.ROImatrix[i][j], 
+						CombinedTileReaderOutput combinedOutput = CombinedTileReader.processDefinedColonyTile(
+								new CombinedTileReaderInput(grayscaleImage, colourImage, gridOutput.ROImatrix[i][j], 
 										basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, 
 										basicTileReaderOutputs[i][j].colonyCenter, settings));
+						colourTileReaderOutputs[i][j] = combinedOutput.colourOutput;
+						opacityTileReaderOutputs[i][j] = combinedOutput.opacityOutput;
 					} catch(Exception e){
 						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						colourTileReaderOutputs[i][j] = new ColorTileReaderOutput();
-					}
-
-					//opacity -- to check if colony darkness correlates with colour information -- true means opacities can get negative
-					//this is a fix for very dark colonies
-					try{
-						opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-								new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
-										basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings), true);
-					} catch(Exception e){
-						IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
 						opacityTileReaderOutputs[i][j] = new OpacityTileReaderOutput();
 					}
 				}
@@ -427,7 +440,7 @@ public class ColorProfileEcoli extends Profile{
 				//each generated tile image is cleaned up inside the tile reader
 
 			}
-		}
+		});
 
 
 
@@ -474,7 +487,7 @@ public class ColorProfileEcoli extends Profile{
 
 				//third round of filtering: remove colonies that are too close to the background
 				//EDIT: ignore this if the user defined the colony
-				if( SNO < 0.5 && SNO > -0.5 && !IrisFrontend.settings.userDefinedRoi)
+				if( SNO < 0.5 && SNO > -0.5 && !PictureSettings.current().userDefinedRoi)
 				{
 					colony_flagged=true;
 				}
@@ -520,7 +533,7 @@ public class ColorProfileEcoli extends Profile{
 			croppedImageSegmented.setRoi(colourCroppedImage.getRoi());
 
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
@@ -531,6 +544,12 @@ public class ColorProfileEcoli extends Profile{
 
 
 
+		//keep this picture as the reference of its time series, unless its grid came from the reference already
+		if(!attempt.gridFromTimeSeries){
+			TimeSeriesGrids.setReference(profileName, filename, imageAngle, attempt.segmentationInput, attempt.segmentationOutput);
+		}
+
+
 		//7. output the results
 
 		//7.1 output the colony measurements as a text file
@@ -576,6 +595,12 @@ public class ColorProfileEcoli extends Profile{
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputs", basicTileReaderOutputs);
+		recordTileReaderOutputs("colourTileReaderOutputs", colourTileReaderOutputs);
+		recordTileReaderOutputs("opacityTileReaderOutputs", opacityTileReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -598,7 +623,7 @@ public class ColorProfileEcoli extends Profile{
 			//now paint also the tile bounds 
 			//the original picture will be untouched
 			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			grayscaleCroppedImage.flush();
 		}
@@ -658,59 +683,7 @@ public class ColorProfileEcoli extends Profile{
 	 * @return the angle of this picture's rotation 
 	 */
 	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -782,16 +755,12 @@ public class ColorProfileEcoli extends Profile{
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -803,30 +772,7 @@ public class ColorProfileEcoli extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -840,29 +786,7 @@ public class ColorProfileEcoli extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -956,28 +880,6 @@ public class ColorProfileEcoli extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
@@ -10,17 +10,18 @@ import ij.gui.Roi;
 import ij.measure.Calibration;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
-import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
-import iris.imageCroppers.GenericImageCropper;
-import iris.imageCroppers.GenericImageCropper2;
-import iris.imageCroppers.NaiveImageCropper;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.RisingTideSegmenter;
+import iris.imageSegmenters.SegmentationAttempts;
+import iris.imageSegmenters.SegmentationAttempts.Cropper;
+import iris.imageSegmenters.TimeSeriesGrids;
+import iris.settings.CameraCalibration;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput2;
 import iris.tileReaderInputs.OpacityTileReaderInput;
@@ -31,11 +32,12 @@ import iris.tileReaders.BasicTileReaderHSB;
 import iris.tileReaders.ColorTileReaderHSB;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.IntegralImage;
+import iris.utils.RotatedPlate;
+import iris.utils.RotationEstimator;
 import iris.utils.Toolbox;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -58,7 +60,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -87,7 +89,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -101,11 +103,18 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 		//
 
 		//2. rotate the whole image
-		double imageAngle = calculateImageRotation(originalImage);
+		//a later picture of a plate already analyzed is rotated the same way, and takes the same grid if it matches
+		//(if it doesn't, it's analyzed again without the reference, see below)
+		TimeSeriesGrids.Reference timeSeriesReference = getTimeSeriesReference(profileName, filename);
 
-		//create a copy of the original image and rotate it, then clear the original picture
-		ImagePlus rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
-		originalImage.flush();
+		//the camera, in case its rotation and crop borders are calibrated
+		String cameraName = CameraCalibration.getCameraName(filename, originalImage);
+
+		double imageAngle;
+		if(timeSeriesReference!=null)
+			imageAngle = timeSeriesReference.angle;
+		else
+			imageAngle = calculateImageRotation(cameraName, originalImage);
 
 		//output how much the image needed to be rotated
 		if(imageAngle!=0){
@@ -114,57 +123,45 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 
 
 		//3. crop the plate to keep only the colonies
-		//		ImagePlus croppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-		ImagePlus colourCroppedImage = GenericImageCropper2.cropPlate(rotatedImage);
-
-		//
-		//--------------------------------------------------
-		//
-		//
-
 		//4. pre-process the picture (i.e. make it grayscale), but keep a copy so that we have the colour information
-		//This is how you do it the HSB way		
-		ImagePlus grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-				
-		//get a copy of the picture thresholded using a local algorithm
-		ImagePlus BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
-
-		
-		//
-		//--------------------------------------------------
-		//
-		//
-
-		//5. segment the cropped picture
-//		if(IrisFrontend.singleColonyRun==false){
-//		settings.numberOfColumnsOfColonies = 24;
-//		settings.numberOfRowsOfColonies = 16;
-//		}
-		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-		BasicImageSegmenterOutput segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
+		//This is how you do it the HSB way, then get a copy of the picture thresholded using a local algorithm
+		//5. segment the cropped picture, if something goes wrong, try out different croppers
+		ImagePlus rotatedImage = null;
+		SegmentationAttempts segmentationAttempts = null;
+
+		if(!PictureSettings.current().singleColonyRun && RotatedPlate.canRotate(originalImage)){
+			//rotate the picture as it is read, without making a rotated copy of the whole picture
+			segmentationAttempts = new SegmentationAttempts(profileName, new RotatedPlate(originalImage, imageAngle), settings);
+		}
+		else{
+			//create a copy of the original image and rotate it, then clear the original picture
+			rotatedImage = Toolbox.rotateImage(originalImage, imageAngle);
+			originalImage.flush();
+			segmentationAttempts = new SegmentationAttempts(profileName, rotatedImage, settings);
+		}
+		segmentationAttempts.localThresholdRadius = 65;
+		segmentationAttempts.timeSeriesReference = timeSeriesReference;
+		segmentationAttempts.cameraName = cameraName;
 
+		SegmentationAttempts.Attempt attempt = segmentationAttempts.segment(Cropper.GENERIC_CROPPER_2, Cropper.GENERIC_CROPPER, Cropper.NAIVE_CROPPER);
+		originalImage.flush();
 
-		//check if something went wrong with the segmenting process, then try out different croppers
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-			
-			colourCroppedImage = GenericImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
-			segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-			
-		}
-		
-		if(segmentationOutput.errorOccurred){
-			//before giving up, try again with a different cropper (this is usually why the segmentation fails)
-			
-			colourCroppedImage = NaiveImageCropper.cropPlate(rotatedImage);
-			grayscaleCroppedImage = Toolbox.getHSBgrayscaleImageBrightness(colourCroppedImage);
-			BW_local_thresholded_picture = Toolbox.turnImageBW_Local_auto_mean(grayscaleCroppedImage, 65);
-			segmentationInput = new BasicImageSegmenterInput(BW_local_thresholded_picture, settings);
-			segmentationOutput = RisingTideSegmenter.segmentPicture(segmentationInput);
-			
+		ImagePlus colourCroppedImage = attempt.colourCroppedImage;
+		ImagePlus grayscaleCroppedImage = attempt.grayscaleCroppedImage;
+		ImagePlus BW_local_thresholded_picture = attempt.segmentationInput.imageToSegment;
+		BasicImageSegmenterInput segmentationInput = attempt.segmentationInput;
+		BasicImageSegmenterOutput segmentationOutput = attempt.segmentationOutput;
+
+		//the picture was rotated by the angle of the reference of its time series, but it doesn't match it:
+		//start over, finding its own rotation and segmenting it as usual
+		if(timeSeriesReference!=null && !attempt.gridFromTimeSeries){
+			if(rotatedImage!=null)
+				rotatedImage.flush();
+			colourCroppedImage.flush();
+			grayscaleCroppedImage.flush();
+			BW_local_thresholded_picture.flush();
+			analyzeWithoutTimeSeries(filename);
+			return;
 		}
 		
 		if(segmentationOutput.errorOccurred){			
@@ -191,9 +188,10 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 			ImagePlus croppedImageSegmented = grayscaleCroppedImage.duplicate();
 
 			RisingTideSegmenter.paintSegmentedImage(colourCroppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(croppedImageSegmented, filename + ".grid.jpg");
+			saveGridImage(croppedImageSegmented, filename + ".grid.jpg");
 
-			rotatedImage.flush();//12.01.2014: moved from above 
+			if(rotatedImage!=null)
+				rotatedImage.flush();//12.01.2014: moved from above 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
 
@@ -201,7 +199,8 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 		}
 		
 
-		rotatedImage.flush();//12.01.2014: moved from above 
+		if(rotatedImage!=null)
+			rotatedImage.flush();//12.01.2014: moved from above 
 
 		//
 		//--------------------------------------------------
@@ -289,7 +288,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 			ImagePlus croppedImageSegmented = colourCroppedImage.duplicate();
 
 			Toolbox.drawColonyBounds(colourCroppedImage, segmentationOutput, basicTileReaderOutputs);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			croppedImageSegmented.flush();
 			grayscaleCroppedImage.flush();
@@ -300,6 +299,12 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 
 
 
+		//keep this picture as the reference of its time series, unless its grid came from the reference already
+		if(!attempt.gridFromTimeSeries){
+			TimeSeriesGrids.setReference(profileName, filename, imageAngle, attempt.segmentationInput, attempt.segmentationOutput);
+		}
+
+
 		//7. output the results
 
 		//7.1 output the colony measurements as a text file
@@ -339,6 +344,12 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputs", basicTileReaderOutputs);
+		recordTileReaderOutputs("colourTileReaderOutputs", colourTileReaderOutputs);
+		recordTileReaderOutputs("opacityTileReaderOutputs", opacityTileReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -366,7 +377,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 			//now paint also the tile bounds 
 			//the original picture will be untouched
 			colourCroppedImage = ColonyBreathing.paintSegmentedImage(colourCroppedImage, segmentationOutput);
-			Toolbox.savePicture(colourCroppedImage, filename + ".grid.jpg");
+			saveGridImage(colourCroppedImage, filename + ".grid.jpg");
 
 			grayscaleCroppedImage.flush();
 		}
@@ -435,63 +446,15 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 	 * using an OCR-derived method. The method applied here rotates the image, attempting to maximize
 	 * the variance of the sums of row and column brightnesses. This is in direct analogy to detecting skewed text
 	 * in a scanned document, as part of the OCR procedure.
+	 * If the camera is calibrated, the rotation is only searched for around the calibrated one (see CameraCalibration).
+	 * @param cameraName
 	 * @param originalImage
 	 * @return the angle of this picture's rotation 
 	 */
-	private double calculateImageRotation(ImagePlus originalImage) {
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
-
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
-
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
-
-
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
-
-
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
-
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
-
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
-
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
-
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
-
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
-		}
-
-		return(bestAngle);			
+	private double calculateImageRotation(String cameraName, ImagePlus originalImage) {
+		if(CameraCalibration.enabled)
+			return(CameraCalibration.calculateImageRotation(cameraName, originalImage));
+		return(RotationEstimator.estimateRotation(originalImage));
 	}
 
 
@@ -563,16 +526,12 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 
 	/**
 	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
+	 * It copies the given area of interest to a new ImagePlus object.
 	 * @param originalPicture
 	 * @return
 	 */
 	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
+		ImagePlus croppedImage = Toolbox.cropImage(originalImage, roi);
 		return(croppedImage);
 
 	}
@@ -584,30 +543,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -621,29 +557,7 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -737,28 +651,6 @@ public class ColorProfileEcoliNaturalIsolates extends Profile{
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 }
 
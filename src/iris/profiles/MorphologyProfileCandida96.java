@@ -5,10 +5,7 @@ package iris.profiles;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -22,11 +19,13 @@ import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.SimpleImageSegmenter;
 import iris.settings.BasicSettings;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
 import iris.tileReaders.MorphologyTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 /**
@@ -55,7 +54,7 @@ public class MorphologyProfileCandida96 extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private BasicSettings settings = new BasicSettings(IrisFrontend.settings);
+	private BasicSettings settings = settingsCopy(new BasicSettings(IrisFrontend.settings));
 
 
 
@@ -83,7 +82,7 @@ public class MorphologyProfileCandida96 extends Profile {
 
 
 		//1. open the image file, and check if it was opened correctly
-		ImagePlus originalImage = IJ.openImage(filename);
+		ImagePlus originalImage = openImage(filename);
 
 		//check that file was opened successfully
 		if(originalImage==null){
@@ -100,17 +99,15 @@ public class MorphologyProfileCandida96 extends Profile {
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 
@@ -123,7 +120,7 @@ public class MorphologyProfileCandida96 extends Profile {
 
 		//2. rotate the whole image
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){
+		if(userProfileSettings==null || PictureSettings.current().singleColonyRun){
 			//default behavior
 			//if no settings loaded
 			//or if this is a single colony image
@@ -158,10 +155,9 @@ public class MorphologyProfileCandida96 extends Profile {
 			int y_start = 260;
 			int y_end = 2870;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
+		else if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
 			//perform no cropping if the user already cropped the picture
 			//or if this is a single-colony picture
 			croppedImage = rotatedImage.duplicate();
@@ -173,8 +169,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			int y_start = userProfileSettings.croppingSettings.FixedCropping_Y_Start;
 			int y_end = userProfileSettings.croppingSettings.FixedCropping_Y_End;
 
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
 		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
 			croppedImage = GenericImageCropper2.cropPlate(rotatedImage);
@@ -210,7 +205,7 @@ public class MorphologyProfileCandida96 extends Profile {
 
 		//5. segment the cropped picture
 		//first change the settings, to get a 96 plate segmentation
-		SimpleImageSegmenter.offset = 10;
+		settings.gridOffset = 10;
 		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BWimageToSegment, settings);
 		BasicImageSegmenterOutput segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
 
@@ -227,7 +222,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			//segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
@@ -255,7 +250,7 @@ public class MorphologyProfileCandida96 extends Profile {
 
 			//save the grid before exiting
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 			croppedImage.flush();
 			BWimageToSegment.flush();
 			return;
@@ -288,27 +283,31 @@ public class MorphologyProfileCandida96 extends Profile {
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] readerOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		final ImagePlus tileSourceImage = croppedImage;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				try{
 					readerOutputs[i][j] = MorphologyTileReader.processTileWrinkly(
-							new OpacityTileReaderInput(croppedImage, segmentationOutput.ROImatrix[i][j], settings));
+							new OpacityTileReaderInput(tileSourceImage, gridOutput.ROImatrix[i][j], settings));
 				}catch(Exception e){
 					System.err.print("\tError getting morphology at tile "+ Integer.toString(i+1) +" "+ Integer.toString(j+1) + "\n");
 					readerOutputs[i][j] = new MorphologyTileReaderOutput();
 				}
 				//each generated tile image is cleaned up inside the tile reader
 				
-				if(readerOutputs[i][j].colonySize<minimumValidColonySize ||
-						readerOutputs[i][j].circularity<minimumValidColonyCircularity){
+				if(readerOutputs[i][j].colonySize<minimumColonySize ||
+						readerOutputs[i][j].circularity<minimumColonyCircularity){
 					readerOutputs[i][j] = new MorphologyTileReaderOutput();
 				}
 			}
-		}
+		});
 
 
 
@@ -327,7 +326,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			 * 
 			//calculate and save grid image
 			ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			saveGridImage(croppedImage, filename + ".grid.jpg");
 
 			return;
 			 */
@@ -372,6 +371,10 @@ public class MorphologyProfileCandida96 extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -394,7 +397,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			//calculate grid image
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
 
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -471,9 +474,7 @@ public class MorphologyProfileCandida96 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -552,28 +553,6 @@ public class MorphologyProfileCandida96 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
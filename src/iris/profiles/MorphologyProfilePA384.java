@@ -6,10 +6,7 @@ package iris.profiles;
 import java.awt.Color;
 import java.awt.Point;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
@@ -23,6 +20,7 @@ import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.SimpleImageSegmenter;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.settings.UserSettings.ProfileSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput;
@@ -39,6 +37,7 @@ import iris.tileReaders.MorphologyTileReader;
 import iris.tileReaders.MorphologyTileReaderStm;
 import iris.tileReaders.OpacityTileReader;
 import iris.ui.IrisFrontend;
+import iris.utils.TileLoop;
 import iris.utils.Toolbox;
 
 /**
@@ -64,7 +63,7 @@ public class MorphologyProfilePA384 extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -94,7 +93,7 @@ public class MorphologyProfilePA384 extends Profile {
 		//1. open the image file, and check if it was opened correctly
 		ImagePlus originalImage;
 		try {
-			originalImage  = IJ.openImage(filename);
+			originalImage  = openImage(filename);
 		} catch (Exception e) {
 			originalImage = null;
 		}		
@@ -116,17 +115,15 @@ public class MorphologyProfilePA384 extends Profile {
 
 		//set flag to honour a possible user-set ROI
 		if(filename.contains("colony_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=true; //doesn't hurt to re-set it
+			setSingleColonyPicture(true);
 			originalImage.setRoi(new OvalRoi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 		else if(filename.contains("tile_")){
-			IrisFrontend.singleColonyRun=true;
 			settings.numberOfColumnsOfColonies=1;
 			settings.numberOfRowsOfColonies=1;
-			IrisFrontend.settings.userDefinedRoi=false; //doesn't hurt to re-set it
+			setSingleColonyPicture(false);
 			originalImage.setRoi(new Roi(0,0,originalImage.getWidth(),originalImage.getHeight()));
 		}
 
@@ -140,7 +137,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 		//2. rotate the whole image
 		double imageAngle = 0;
-		if(userProfileSettings==null || IrisFrontend.singleColonyRun){ 
+		if(userProfileSettings==null || PictureSettings.current().singleColonyRun){ 
 			//if no settings loaded
 			//or if this is a single colony image
 			imageAngle = Toolbox.calculateImageRotation(originalImage);
@@ -190,7 +187,7 @@ public class MorphologyProfilePA384 extends Profile {
 		if(userProfileSettings==null){ //default behavior
 			croppedImage = GenericImageCropper2.cropPlate(rotatedImage);
 		}
-		else if(userProfileSettings.croppingSettings.UserCroppedImage || IrisFrontend.singleColonyRun){
+		else if(userProfileSettings.croppingSettings.UserCroppedImage || PictureSettings.current().singleColonyRun){
 			//perform no cropping if the user already cropped the picture
 			//or if this is a single-colony picture
 			croppedImage = rotatedImage.duplicate();
@@ -204,8 +201,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 			//HACK for PA Ornithine screen
 			//NaiveImageCropper3.keepOnlyColoniesROI = new Roi(470, 330, 4140, 2750);
-			NaiveImageCropper3.keepOnlyColoniesROI = new Roi(x_start, y_start, x_end, y_end);
-			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+			croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(x_start, y_start, x_end, y_end));
 		}
 		else if(!userProfileSettings.croppingSettings.UseFixedCropping){
 			croppedImage = GenericImageCropper2.cropPlate(rotatedImage);
@@ -248,7 +244,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 
 		//5. segment the cropped picture
-		SimpleImageSegmenter.offset = 10;
+		settings.gridOffset = 10;
 
 		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BWimageToSegment, settings);
 		BasicImageSegmenterOutput segmentationOutput = SimpleImageSegmenter.segmentPicture_width(segmentationInput);
@@ -258,7 +254,7 @@ public class MorphologyProfilePA384 extends Profile {
 			//do nothing more
 		}
 		else if(userProfileSettings.segmentationSettings.ColonyBreathing){
-			ColonyBreathing.breathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
+			settings.colonyBreathingSpace = userProfileSettings.segmentationSettings.ColonyBreathingSpace;
 			segmentationInput = new BasicImageSegmenterInput(croppedImage.duplicate(), settings);
 			segmentationOutput = ColonyBreathing.segmentPicture(segmentationOutput, segmentationInput);
 		}
@@ -285,7 +281,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 			//save the grid before exiting
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 			croppedImage.flush();
 			BWimageToSegment.flush();
 			return;
@@ -318,25 +314,31 @@ public class MorphologyProfilePA384 extends Profile {
 
 
 		//precalculate the colony centers
-		ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
+		final ColorTileReaderInput [][] colonyCenteredInput = Toolbox.precalculateColonyCenters(colorCroppedImage, segmentationOutput, settings);
 
 		//6. analyze each tile
 
 		//create an array of measurement outputs
-		BasicTileReaderOutput[][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		OpacityTileReaderOutput[][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		MorphologyTileReaderOutput [][] morphologyReaderOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		MorphologyTileReaderOutput [][] morphologyReaderOutputs_wholeTile = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
-		ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final BasicTileReaderOutput[][] basicTileReaderOutputs = new BasicTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final OpacityTileReaderOutput[][] opacityTileReaderOutputs = new OpacityTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] morphologyReaderOutputs = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final MorphologyTileReaderOutput [][] morphologyReaderOutputs_wholeTile = new MorphologyTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
+		final ColorTileReaderOutput [][] colorReaderOutputs = new ColorTileReaderOutput[settings.numberOfRowsOfColonies][settings.numberOfColumnsOfColonies];
 
 
 		//colonies are smaller here, so we need to start with tiny circles
-		MorphologyTileReader.initialRadius = 15;
-
-		//for all rows
-		for(int i=0;i<settings.numberOfRowsOfColonies;i++){
-			//for all columns
-			for (int j = 0; j < settings.numberOfColumnsOfColonies; j++) {
+		settings.morphologyInitialRadius = 15;
+
+		final ImagePlus thresholdedImage = BW_local_thresholded_picture;
+		final ImagePlus colorImage = colorCroppedImage;
+		final ImagePlus grayscaleImage = grayscaleCroppedImage;
+		final float minimumColonyCircularity = minimumValidColonyCircularity;
+		final int minimumColonySize = minimumValidColonySize;
+		final BasicImageSegmenterOutput gridOutput = segmentationOutput;
+
+		//for all tiles, possibly in parallel
+		TileLoop.forEachTile(settings.numberOfRowsOfColonies, settings.numberOfColumnsOfColonies, new TileLoop.TileTask() {
+			public void processTile(int i, int j) {
 				try{
 					//try 3 colony definition algorithms and pick the one who found the largest colony
 
@@ -344,27 +346,27 @@ public class MorphologyProfilePA384 extends Profile {
 					basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 					try{
 						basicTileReaderOutputs[i][j] = BasicTileReaderHSB.processTile(
-								new BasicTileReaderInput(BW_local_thresholded_picture, segmentationOutput.ROImatrix[i][j], settings));
+								new BasicTileReaderInput(thresholdedImage, gridOutput.ROImatrix[i][j], settings));
 					} catch(Exception e){}; 
 
 					BasicTileReaderOutput laplacianReaderOutput = new BasicTileReaderOutput();
 					try{
 						laplacianReaderOutput = LaplacianFilterTileReader.processTile(
-								new BasicTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], settings));
+								new BasicTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], settings));
 					} catch(Exception e){};
 
 					BasicTileReaderOutput stmMorphologyReaderOutput = new BasicTileReaderOutput();
 					try{stmMorphologyReaderOutput = MorphologyTileReaderStm.processTileOverAgarOnly(colonyCenteredInput[i][j]);} catch(Exception e){};
 
-					if(basicTileReaderOutputs[i][j].colonySize<laplacianReaderOutput.colonySize && laplacianReaderOutput.circularity>minimumValidColonyCircularity){
+					if(basicTileReaderOutputs[i][j].colonySize<laplacianReaderOutput.colonySize && laplacianReaderOutput.circularity>minimumColonyCircularity){
 						basicTileReaderOutputs[i][j] = laplacianReaderOutput;
 					}
-					if(basicTileReaderOutputs[i][j].colonySize<stmMorphologyReaderOutput.colonySize && stmMorphologyReaderOutput.circularity>minimumValidColonyCircularity){
+					if(basicTileReaderOutputs[i][j].colonySize<stmMorphologyReaderOutput.colonySize && stmMorphologyReaderOutput.circularity>minimumColonyCircularity){
 						basicTileReaderOutputs[i][j] = stmMorphologyReaderOutput;
 					}
 
 					//if colony smaller than user-defined minimum
-					if(basicTileReaderOutputs[i][j].colonySize<minimumValidColonySize){
+					if(basicTileReaderOutputs[i][j].colonySize<minimumColonySize){
 						basicTileReaderOutputs[i][j] = new BasicTileReaderOutput();
 					}
 
@@ -382,7 +384,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 						try{
 							morphologyReaderOutputs[i][j] = MorphologyTileReader.processDefinedColonyTile(
-									new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+									new OpacityTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], 
 											basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 						} catch(Exception e){ 
 							IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
@@ -393,7 +395,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 						try{
 							colorReaderOutputs[i][j] = ColorTileReaderHSB.processDefinedColonyTile(
-									new ColorTileReaderInput3(colorCroppedImage, segmentationOutput.ROImatrix[i][j], 
+									new ColorTileReaderInput3(colorImage, gridOutput.ROImatrix[i][j], 
 											basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, basicTileReaderOutputs[i][j].colonyCenter, settings));
 						} catch(Exception e){ 
 							IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
@@ -403,7 +405,7 @@ public class MorphologyProfilePA384 extends Profile {
 						//opacity -- to check if colony darkness correlates with colour information -- true means opacities can get negative
 						try{
 							opacityTileReaderOutputs[i][j] = OpacityTileReader.processDefinedColonyTile(
-									new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+									new OpacityTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], 
 											basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings), true);
 						} catch(Exception e){ 
 							IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
@@ -429,7 +431,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 				try{
 					//in any case (e.g. even if no colony was found there), opacityTileReaderOutputs should contain the tile opacity
-					OpacityTileReaderOutput opacityWholeTileOutput = OpacityTileReader.getWholeTileOpacity(new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+					OpacityTileReaderOutput opacityWholeTileOutput = OpacityTileReader.getWholeTileOpacity(new OpacityTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], 
 							basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 					opacityTileReaderOutputs[i][j].wholeTileOpacity = opacityWholeTileOutput.wholeTileOpacity;
 					opacityTileReaderOutputs[i][j].wholeTileSize = opacityWholeTileOutput.wholeTileSize;
@@ -439,7 +441,7 @@ public class MorphologyProfilePA384 extends Profile {
 				}
 
 				try{
-					morphologyReaderOutputs_wholeTile[i][j] = MorphologyTileReader.getWholeTileMorphology(new OpacityTileReaderInput(grayscaleCroppedImage, segmentationOutput.ROImatrix[i][j], 
+					morphologyReaderOutputs_wholeTile[i][j] = MorphologyTileReader.getWholeTileMorphology(new OpacityTileReaderInput(grayscaleImage, gridOutput.ROImatrix[i][j], 
 							basicTileReaderOutputs[i][j].colonyROI, basicTileReaderOutputs[i][j].colonySize, settings));
 				} catch(Exception e){
 					morphologyReaderOutputs_wholeTile[i][j] = new MorphologyTileReaderOutput();
@@ -448,7 +450,7 @@ public class MorphologyProfilePA384 extends Profile {
 
 				//each generated tile image is cleaned up inside the tile reader
 			}
-		}
+		});
 
 
 		//check if a row or a column has most of it's tiles empty (then there was a problem with gridding)
@@ -466,7 +468,7 @@ public class MorphologyProfilePA384 extends Profile {
 			 * 
 			//calculate and save grid image
 			ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			saveGridImage(croppedImage, filename + ".grid.jpg");
 
 			return;
 			 */
@@ -535,6 +537,14 @@ public class MorphologyProfilePA384 extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("basicTileReaderOutputs", basicTileReaderOutputs);
+		recordTileReaderOutputs("opacityTileReaderOutputs", opacityTileReaderOutputs);
+		recordTileReaderOutputs("morphologyReaderOutputs", morphologyReaderOutputs);
+		recordTileReaderOutputs("morphologyReaderOutputs_wholeTile", morphologyReaderOutputs_wholeTile);
+		recordTileReaderOutputs("colorReaderOutputs", colorReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -570,7 +580,7 @@ public class MorphologyProfilePA384 extends Profile {
 			//calculate grid image
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
 
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -647,9 +657,7 @@ public class MorphologyProfilePA384 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -688,7 +696,7 @@ public class MorphologyProfilePA384 extends Profile {
 	private boolean checkRowsColumnsIncorrectGridding(
 			BasicTileReaderOutput[][] readerOutputs) {
 
-		if(IrisFrontend.singleColonyRun){
+		if(PictureSettings.current().singleColonyRun){
 			return(false); //don't check the gridding if this is the only colony
 		}
 
@@ -732,28 +740,6 @@ public class MorphologyProfilePA384 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
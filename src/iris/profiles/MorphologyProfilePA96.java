@@ -3,7 +3,6 @@
  */
 package iris.profiles;
 
-import ij.IJ;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import ij.process.ByteProcessor;
@@ -15,6 +14,7 @@ import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenters.ColonyBreathing;
 import iris.imageSegmenters.SimpleImageSegmenter;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput3;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
@@ -26,8 +26,6 @@ import iris.utils.Toolbox;
 
 import java.awt.Color;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
 
 /**
  * This profile is calibrated for use in measuring the colony sizes of E. coli or Salmonella 1536 plates
@@ -52,7 +50,7 @@ public class MorphologyProfilePA96 extends Profile {
 	/**
 	 * This holds access to the settings object
 	 */
-	private ColorSettings settings = new ColorSettings(IrisFrontend.settings);
+	private ColorSettings settings = settingsCopy(new ColorSettings(IrisFrontend.settings));
 
 
 
@@ -82,7 +80,7 @@ public class MorphologyProfilePA96 extends Profile {
 		//1. open the image file, and check if it was opened correctly
 		ImagePlus originalImage;
 		try {
-			originalImage  = IJ.openImage(filename);
+			originalImage  = openImage(filename);
 		} catch (Exception e) {
 			originalImage = null;
 		}		
@@ -134,8 +132,7 @@ public class MorphologyProfilePA96 extends Profile {
 
 
 		//HACK for PA Ornithine screen
-		NaiveImageCropper3.keepOnlyColoniesROI = new Roi(470, 330, 4140, 2750);
-		ImagePlus croppedImage = NaiveImageCropper3.cropPlate(rotatedImage);
+		ImagePlus croppedImage = NaiveImageCropper3.cropPlate(rotatedImage, new Roi(470, 330, 4140, 2750));
 
 
 		ImagePlus colorCroppedImage = croppedImage.duplicate(); //it's already rotated
@@ -165,11 +162,11 @@ public class MorphologyProfilePA96 extends Profile {
 
 		//5. segment the cropped picture
 		//first change the settings, to get a 96 plate segmentation
-		if(IrisFrontend.singleColonyRun==false){
+		if(PictureSettings.current().singleColonyRun==false){
 			settings.numberOfRowsOfColonies = 8;
 			settings.numberOfColumnsOfColonies = 12;
 		}
-		SimpleImageSegmenter.offset = 10;
+		settings.gridOffset = 10;
 		BasicImageSegmenterInput segmentationInput = new BasicImageSegmenterInput(BWimageToSegment, settings);
 		//
 
@@ -209,7 +206,7 @@ public class MorphologyProfilePA96 extends Profile {
 
 			//save the grid before exiting
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput); //calculate grid image
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 			croppedImage.flush();
 			BWimageToSegment.flush();
 			return;
@@ -280,7 +277,7 @@ public class MorphologyProfilePA96 extends Profile {
 			 * 
 			//calculate and save grid image
 			ColonyBreathing.paintSegmentedImage(croppedImage, segmentationOutput);
-			Toolbox.savePicture(croppedImage, filename + ".grid.jpg");
+			saveGridImage(croppedImage, filename + ".grid.jpg");
 
 			return;
 			 */
@@ -333,6 +330,11 @@ public class MorphologyProfilePA96 extends Profile {
 			}
 		}
 
+		//keep the results, if the picture is analyzed in memory
+		recordSegmentation(segmentationOutput);
+		recordTileReaderOutputs("readerOutputs", readerOutputs);
+		recordTileReaderOutputs("colorReaderOutputs", colorReaderOutputs);
+
 		//check if writing to disk was successful
 		String outputFilename = filename + ".iris";
 		if(!writeOutputFile(outputFilename, output)){
@@ -369,7 +371,7 @@ public class MorphologyProfilePA96 extends Profile {
 			//calculate grid image
 			ImagePlus paintedImage = ColonyBreathing.paintSegmentedImage(colorCroppedImage, segmentationOutput);
 
-			Toolbox.savePicture(paintedImage, filename + ".grid.jpg");
+			saveGridImage(paintedImage, filename + ".grid.jpg");
 		}
 
 	}
@@ -446,9 +448,7 @@ public class MorphologyProfilePA96 extends Profile {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = Toolbox.cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -527,28 +527,6 @@ public class MorphologyProfilePA96 extends Profile {
 	}
 
 
-	/**
-	 * This function writes the contents of the string buffer to the file with the given filename.
-	 * This function was written solely to hide the ugliness of the Exception catching from the Profile code.
-	 * @param outputFilename
-	 * @param output
-	 * @return
-	 */
-	private boolean writeOutputFile(String outputFilename, StringBuffer output) {
-
-		FileWriter writer;
-
-		try {
-			writer = new FileWriter(outputFilename);
-			writer.write(output.toString());
-			writer.close();
-
-		} catch (IOException e) {
-			return(false); //operation failed
-		}
-
-		return(true); //operation succeeded
-	}
 
 
 
@@ -0,0 +1,148 @@
+/**
+ *
+ */
+package iris.profiles;
+
+import ij.ImagePlus;
+import ij.io.Opener;
+import iris.settings.BasicSettings;
+import iris.ui.IrisFrontend;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This is the entry point for programs that use Iris as a library: it analyzes a picture already in memory
+ * with the profile of the given name, and returns the results as a PlateResult, without writing any files
+ * unless asked to.
+ *
+ * The global settings (IrisFrontend.settings, e.g. the number of rows and columns) and the user settings
+ * (IrisFrontend.userSettings, see UserSettings.loadUserSettings and applyUserSettings) are used as in
+ * the command line version.
+ * Pictures can be analyzed from several threads at the same time, each thread uses its own profile instances.
+ *
+ * @author George Kritikos
+ *
+ */
+public class PlateAnalyzer {
+
+	/**
+	 * Analyzes the picture with the given profile
+	 * @param profileName: one of the names in IrisFrontend.profileCollection
+	 * @param image: this is not changed
+	 * @param imageName: the name of the picture, also the base name of the files written, if any
+	 * @param writeOutputFiles: if true, the .iris and .grid.jpg files are written as well
+	 * @return the results, or null if there is no profile with this name
+	 */
+	public static PlateResult analyze(String profileName, ImagePlus image, String imageName, boolean writeOutputFiles){
+		return(analyze(profileName, IrisFrontend.settings, image, imageName, writeOutputFiles));
+	}
+
+
+	/**
+	 * Analyzes the picture with the given profile, using the given settings instead of the global ones
+	 * (e.g. to analyze plates of different formats at the same time)
+	 * @param profileName
+	 * @param settings: these are not changed
+	 * @param image
+	 * @param imageName
+	 * @param writeOutputFiles
+	 * @return the results, or null if there is no profile with this name
+	 */
+	public static PlateResult analyze(String profileName, BasicSettings settings, ImagePlus image, String imageName, boolean writeOutputFiles){
+		Profile profile = ProfileRegistry.getProfile(profileName, settings);
+		if(profile==null){
+			System.err.println("Unknown profile name: " + profileName);
+			return(null);
+		}
+
+		PlateResult result = profile.analyzeImage(image, imageName, writeOutputFiles);
+		result.profileName = profileName;
+		return(result);
+	}
+
+
+	/**
+	 * Same as above, without writing any files
+	 */
+	public static PlateResult analyze(String profileName, ImagePlus image, String imageName){
+		return(analyze(profileName, image, imageName, false));
+	}
+
+
+	/**
+	 * Analyzes the picture held in the given buffer (e.g. the contents of a JPEG file) with the given profile
+	 * @param profileName
+	 * @param imageBytes
+	 * @param imageName
+	 * @param writeOutputFiles
+	 * @return the results, or null if there is no profile with this name
+	 * @throws IOException if the picture could not be decoded
+	 */
+	public static PlateResult analyze(String profileName, byte[] imageBytes, String imageName, boolean writeOutputFiles) throws IOException{
+		if(!ProfileRegistry.isKnownProfile(profileName)){
+			System.err.println("Unknown profile name: " + profileName);
+			return(null);
+		}
+		return(analyze(profileName, decodeImage(imageBytes, imageName), imageName, writeOutputFiles));
+	}
+
+
+	/**
+	 * Same as above, without writing any files
+	 */
+	public static PlateResult analyze(String profileName, byte[] imageBytes, String imageName) throws IOException{
+		return(analyze(profileName, imageBytes, imageName, false));
+	}
+
+
+	/**
+	 * Decodes a picture held in memory the same way ImageJ decodes a picture file,
+	 * so that the results are the same as if the picture was read from disk
+	 * @param imageBytes
+	 * @param imageName
+	 * @return the picture
+	 * @throws IOException if the picture could not be decoded
+	 */
+	public static ImagePlus decodeImage(byte[] imageBytes, String imageName) throws IOException{
+		if(imageBytes==null || imageBytes.length<4)
+			throw new IOException("Not a picture: " + imageName);
+
+		int byte0 = imageBytes[0]&0xff;
+		int byte1 = imageBytes[1]&0xff;
+
+		//JPEG and GIF files are opened by ImageJ through the AWT toolkit
+		boolean jpeg = byte0==0xFF && byte1==0xD8;
+		boolean gif = byte0=='G' && byte1=='I' && (imageBytes[2]&0xff)=='F';
+		if(jpeg || gif){
+			Image awtImage = Toolkit.getDefaultToolkit().createImage(imageBytes);
+			ImagePlus image = new ImagePlus(imageName, awtImage);
+			if(image.getWidth()<=0 || image.getProcessor()==null)
+				throw new IOException("Could not decode picture: " + imageName);
+			if(jpeg && image.getType()==ImagePlus.COLOR_RGB)
+				Opener.convertGrayJpegTo8Bits(image);
+			return(image);
+		}
+
+		//TIFF files
+		boolean tiff = (byte0=='I' && byte1=='I') || (byte0=='M' && byte1=='M');
+		if(tiff){
+			ImagePlus image = new Opener().openTiff(new ByteArrayInputStream(imageBytes), imageName);
+			if(image==null)
+				throw new IOException("Could not decode picture: " + imageName);
+			return(image);
+		}
+
+		//anything else Java can read (e.g. PNG, BMP)
+		BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(imageBytes));
+		if(bufferedImage==null)
+			throw new IOException("Could not decode picture: " + imageName);
+		return(new ImagePlus(imageName, bufferedImage));
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ *
+ */
+package iris.profiles;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.Toolbox;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * This holds the results of a picture analyzed in memory (see Profile.analyzeImage and PlateAnalyzer),
+ * i.e. everything that would otherwise only be available through the .iris and .grid.jpg files.
+ *
+ * @author George Kritikos
+ *
+ */
+public class PlateResult {
+
+	/**
+	 * the name of the profile used
+	 */
+	public String profileName = null;
+
+	/**
+	 * the name of the picture analyzed
+	 */
+	public String imageName;
+
+	/**
+	 * true if the analysis went through and the results table is available;
+	 * if false, the reason was reported on the standard error
+	 */
+	public boolean analyzed = false;
+
+	/**
+	 * the contents of the .iris file
+	 */
+	public String irisTable = null;
+
+	/**
+	 * the column names of the results table (e.g. row, column, size, ...)
+	 */
+	public String[] columnNames = new String[0];
+
+	/**
+	 * the rows of the results table, one for each colony, as in the .iris file
+	 */
+	public ArrayList<String[]> rows = new ArrayList<String[]>();
+
+	/**
+	 * the ROIs of the grid tiles, by row and column of the plate
+	 */
+	public Roi[][] tileRois = null;
+
+	/**
+	 * the number of rows and columns of the grid
+	 */
+	public int numberOfRows = 0;
+	public int numberOfColumns = 0;
+
+	/**
+	 * the bounds of the top left and bottom right tiles of the grid, in the coordinates of the cropped picture
+	 */
+	public Rectangle topLeftTile = null;
+	public Rectangle bottomRightTile = null;
+
+	/**
+	 * the outputs of the tile readers of the profile, by the name the profile gave them;
+	 * every array is indexed by row and column of the plate
+	 */
+	public LinkedHashMap<String, BasicTileReaderOutput[][]> tileReaderOutputs = new LinkedHashMap<String, BasicTileReaderOutput[][]>();
+
+	/**
+	 * the cropped picture with the grid drawn on it (what would be saved as .grid.jpg), or null if not produced
+	 */
+	public ImagePlus gridImage = null;
+
+	/**
+	 * where the profile would write the .iris file and the grid picture, or null if it wouldn't
+	 */
+	public String irisFilename = null;
+	public String gridImageFilename = null;
+
+
+
+	public PlateResult(String imageName){
+		this.imageName = imageName;
+	}
+
+
+	/**
+	 * Keeps the contents of the .iris file, splitting the results table in column names and rows.
+	 * Lines starting with # are comments, the first line after those holds the column names.
+	 * @param irisTable
+	 */
+	void setIrisTable(String irisTable){
+		this.irisTable = irisTable;
+		this.analyzed = true;
+		rows.clear();
+		columnNames = new String[0];
+
+		boolean headerRead = false;
+		for(String line : irisTable.split("\n")){
+			if(line.length()==0 || line.startsWith("#"))
+				continue;
+			if(!headerRead){
+				columnNames = line.split("\t");
+				headerRead = true;
+			}
+			else{
+				rows.add(line.split("\t"));
+			}
+		}
+	}
+
+
+	/**
+	 * Keeps the grid found by the segmentation
+	 * @param segmentationOutput
+	 */
+	void setSegmentation(BasicImageSegmenterOutput segmentationOutput){
+		if(segmentationOutput==null || segmentationOutput.ROImatrix==null)
+			return;
+		tileRois = segmentationOutput.ROImatrix;
+		numberOfRows = tileRois.length;
+		numberOfColumns = numberOfRows>0 ? tileRois[0].length : 0;
+		if(numberOfRows>0 && numberOfColumns>0){
+			topLeftTile = segmentationOutput.getTopLeftRoi().getBounds();
+			bottomRightTile = segmentationOutput.getBottomRightRoi().getBounds();
+		}
+	}
+
+
+	/**
+	 * Writes the .iris file and the grid picture, where the profile would have written them
+	 * @return false if the .iris file could not be written
+	 */
+	public boolean writeOutputFiles(){
+		boolean written = true;
+		if(irisTable!=null && irisFilename!=null){
+			written = Toolbox.writeTextFile(irisFilename, irisTable);
+		}
+		if(gridImage!=null && gridImageFilename!=null){
+			Toolbox.savePicture(gridImage, gridImageFilename);
+		}
+		return(written);
+	}
+
+
+	/**
+	 * @param columnName
+	 * @return the index of the column with this name in the results table, or -1 if there is no such column
+	 */
+	public int getColumnIndex(String columnName){
+		for(int i=0; i<columnNames.length; i++){
+			if(columnNames[i].equals(columnName))
+				return(i);
+		}
+		return(-1);
+	}
+
+}
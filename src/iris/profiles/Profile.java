@@ -3,20 +3,38 @@
  */
 package iris.profiles;
 
+import ij.IJ;
 import ij.ImagePlus;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.imageSegmenterOutput.ImageSegmenterOutput;
+import iris.imageSegmenters.TimeSeriesGrids;
+import iris.settings.BasicSettings;
+import iris.settings.PictureSettings;
 import iris.settings.Settings;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
 import iris.tileReaderOutputs.TileReaderOutput;
+import iris.utils.Toolbox;
 
 import java.util.ArrayList;
 
 /**
  * 
+ * This is the base class of all profiles.
+ * Profile instances are created through the ProfileRegistry and reused for all the pictures
+ * a thread analyzes with the same profile, so anything a profile keeps in its fields
+ * should be set again at the start of analyzePicture.
+ * Values a profile tunes for its pictures (e.g. the colony breathing space) go in its settings copy
+ * (see settingsCopy), not in static fields of the segmenters and tile readers: several profiles can be
+ * analyzing pictures at the same time in one program (e.g. in the Iris service).
+ * 
+ * Profiles open their picture through openImage, and write their results through writeOutputFile
+ * and saveGridImage. This way, when a picture is analyzed in memory (see analyzeImage), the results
+ * are collected in a PlateResult instead, and files are only written if requested.
  * 
  * @author george
  *
  */
-abstract class Profile {
+public abstract class Profile {
 	
 	/**
 	 * this holds the image given to this profile for processing
@@ -43,7 +61,260 @@ abstract class Profile {
 	public ArrayList<ArrayList<TileReaderOutput>> tileReaderOutput;
 	
 	
+	/**
+	 * These are the private settings copies of this profile, which are reset before every picture
+	 */
+	private ArrayList<BasicSettings> settingsCopies = new ArrayList<BasicSettings>();
+	
+	
+	/**
+	 * The picture given to analyzeImage, or null if the picture is read from disk
+	 */
+	private ImagePlus inputImage = null;
+	
+	
+	/**
+	 * If true, the picture given to analyzeImage was handed over to this profile, which can change and flush it
+	 */
+	private boolean inputImageHandedOver = false;
+	
+	
+	/**
+	 * This collects the results of the picture analyzed by analyzeImage, or is null if the picture is analyzed
+	 * through analyzePicture
+	 */
+	PlateResult currentResult = null;
+	
+	
+	/**
+	 * If false, analyzeImage keeps the results in memory only, without writing the .iris and .grid.jpg files
+	 */
+	private boolean writeOutputFiles = true;
+	
+	
+	/**
+	 * If true, the picture is analyzed without the reference of its time series (see analyzeWithoutTimeSeries)
+	 */
+	private boolean ignoreTimeSeries = false;
+	
+	
+	/**
+	 * This function will analyze the picture using this profile
+	 * The end result will be a file with the same name as the input filename,
+	 * after the addition of a .iris ending
+	 * @param filename
+	 */
+	public abstract void analyzePicture(String filename);
+	
+	
+	/**
+	 * This function will analyze a picture that is already in memory, returning the results
+	 * instead of (or, if writeOutputFiles is set, as well as) writing them to files.
+	 * The image given is not changed, unless it is handed over.
+	 * @param image: if null, the picture is read from disk
+	 * @param imageName: the name of the picture, used in the results and as the base name of any files written
+	 * @param writeOutputFiles: if true, the .iris and .grid.jpg files are written as in analyzePicture
+	 * @param handOverImage: if true, the image is analyzed as is, instead of a copy of it, so it can be changed
+	 * and flushed: the caller should not use it afterwards
+	 * @return the results, check PlateResult.analyzed to see if the analysis went through
+	 */
+	public PlateResult analyzeImage(ImagePlus image, String imageName, boolean writeOutputFiles, boolean handOverImage){
+		currentResult = new PlateResult(imageName);
+		inputImage = image;
+		inputImageHandedOver = handOverImage;
+		this.writeOutputFiles = writeOutputFiles;
+		PictureSettings previousPictureSettings = PictureSettings.setCurrent(PictureSettings.forPicture(imageName));
+		try{
+			analyzePicture(imageName);
+			return(currentResult);
+		}
+		finally{
+			PictureSettings.setCurrent(previousPictureSettings);
+			currentResult = null;
+			inputImage = null;
+			inputImageHandedOver = false;
+			this.writeOutputFiles = true;
+		}
+	}
+	
+	
+	/**
+	 * Same as above, the image given is not changed
+	 */
+	public PlateResult analyzeImage(ImagePlus image, String imageName, boolean writeOutputFiles){
+		return(analyzeImage(image, imageName, writeOutputFiles, false));
+	}
+	
+	
+	/**
+	 * Same as above, without writing any files
+	 */
+	public PlateResult analyzeImage(ImagePlus image, String imageName){
+		return(analyzeImage(image, imageName, false));
+	}
+	
+	
+	/**
+	 * @return true if the picture is being analyzed by analyzeImage
+	 */
+	protected boolean isAnalyzingInMemory(){
+		return(currentResult!=null);
+	}
+	
+	
+	/**
+	 * @return true if the .iris and .grid.jpg files should be written
+	 */
+	protected boolean writesOutputFiles(){
+		return(writeOutputFiles);
+	}
+	
+	
+	/**
+	 * @param profileName
+	 * @param filename
+	 * @return the reference of the time series the picture is part of (see TimeSeriesGrids),
+	 * null if there's none, or if the picture is being analyzed without it
+	 */
+	protected TimeSeriesGrids.Reference getTimeSeriesReference(String profileName, String filename){
+		if(ignoreTimeSeries)
+			return(null);
+		return(TimeSeriesGrids.getReference(profileName, filename));
+	}
+	
+	
+	/**
+	 * Starts the analysis of the picture over, without the reference of its time series.
+	 * A picture that has a reference is rotated by the angle of the reference; if it doesn't match the reference,
+	 * its own rotation has to be found and it has to be segmented as usual.
+	 * @param filename
+	 */
+	protected void analyzeWithoutTimeSeries(String filename){
+		ignoreTimeSeries = true;
+		try{
+			analyzePicture(filename);
+		}
+		finally{
+			ignoreTimeSeries = false;
+		}
+	}
+	
+	
+	/**
+	 * Marks the picture being analyzed as holding a single colony (see PictureSettings)
+	 * @param userDefinedRoi: true if the colony area was defined by the user
+	 */
+	protected void setSingleColonyPicture(boolean userDefinedRoi){
+		PictureSettings pictureSettings = PictureSettings.current();
+		pictureSettings.singleColonyRun = true;
+		pictureSettings.userDefinedRoi = userDefinedRoi;
+	}
+
+
+	/**
+	 * Opens the picture to be analyzed: this is the picture given to analyzeImage if there is one,
+	 * otherwise the picture is read from disk
+	 * @param filename
+	 * @return the picture, or null if it couldn't be opened
+	 */
+	protected ImagePlus openImage(String filename){
+		if(inputImage!=null){
+			//a picture handed over is used as is, unless the analysis may have to start over from it
+			//(see analyzeWithoutTimeSeries)
+			if(inputImageHandedOver && !TimeSeriesGrids.enabled)
+				return(inputImage);
+			
+			//profiles flush the pictures they're done with, so they get their own copy
+			return(new ImagePlus(inputImage.getTitle(), inputImage.getProcessor().duplicate()));
+		}
+		return(IJ.openImage(filename));
+	}
+	
+	
+	/**
+	 * This function writes the contents of the string buffer to the file with the given filename.
+	 * If the picture is analyzed in memory, the contents are kept in the results, and only written
+	 * to the file if requested.
+	 * @param outputFilename
+	 * @param output
+	 * @return false if the file could not be written
+	 */
+	protected boolean writeOutputFile(String outputFilename, StringBuffer output) {
+		
+		if(currentResult!=null){
+			currentResult.setIrisTable(output.toString());
+			currentResult.irisFilename = outputFilename;
+			if(!writeOutputFiles)
+				return(true);
+		}
+
+		return(Toolbox.writeTextFile(outputFilename, output.toString()));
+	}
+	
+	
+	/**
+	 * Saves the picture with the grid drawn on it. If the picture is analyzed in memory, the grid picture is kept
+	 * in the results, and only saved if requested.
+	 * @param gridImage
+	 * @param path
+	 */
+	protected void saveGridImage(ImagePlus gridImage, String path){
+		if(currentResult!=null){
+			//profiles flush their pictures once saved, so keep a copy
+			currentResult.gridImage = new ImagePlus(gridImage.getTitle(), gridImage.getProcessor().duplicate());
+			currentResult.gridImageFilename = path;
+			if(!writeOutputFiles)
+				return;
+		}
+		Toolbox.savePicture(gridImage, path);
+	}
+	
+	
+	/**
+	 * Keeps the grid found in the results, if the picture is analyzed in memory
+	 * @param segmentationOutput
+	 */
+	protected void recordSegmentation(BasicImageSegmenterOutput segmentationOutput){
+		if(currentResult!=null){
+			currentResult.setSegmentation(segmentationOutput);
+		}
+	}
+	
+	
+	/**
+	 * Keeps the outputs of a tile reader in the results, if the picture is analyzed in memory
+	 * @param name: the name the outputs are found under in PlateResult.tileReaderOutputs
+	 * @param tileReaderOutputs
+	 */
+	protected void recordTileReaderOutputs(String name, BasicTileReaderOutput[][] tileReaderOutputs){
+		if(currentResult!=null){
+			currentResult.tileReaderOutputs.put(name, tileReaderOutputs);
+		}
+	}
+	
 	
+	/**
+	 * Profiles that keep their own copy of the settings should get it through this function,
+	 * so that the changes they make to it for one picture (e.g. a single colony picture)
+	 * are not carried over to the next picture
+	 * @param settingsCopy
+	 * @return the same settings object
+	 */
+	protected <T extends BasicSettings> T settingsCopy(T settingsCopy){
+		settingsCopies.add(settingsCopy);
+		return(settingsCopy);
+	}
+	
+	
+	/**
+	 * Sets all the settings copies of this profile back to the given settings
+	 * @param resolvedSettings
+	 */
+	void resetSettings(BasicSettings resolvedSettings){
+		for(BasicSettings settingsCopy : settingsCopies){
+			settingsCopy.copyFrom(resolvedSettings);
+		}
+	}
 		
 }
 	
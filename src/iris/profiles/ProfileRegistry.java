@@ -0,0 +1,199 @@
+/**
+ *
+ */
+package iris.profiles;
+
+import java.util.HashMap;
+
+import iris.settings.BasicSettings;
+import iris.ui.IrisFrontend;
+
+/**
+ * This class maps profile names to the profiles that analyze them.
+ * Every thread gets its own instance of each profile, created the first time the thread
+ * needs it and reused for all the next pictures, so that profiles don't have to be
+ * re-created (and their settings re-copied) for every picture of a folder.
+ * Since the instances are never shared between threads, profiles need no synchronization
+ * and are free to keep work buffers in their fields between pictures.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ProfileRegistry {
+
+	/**
+	 * This creates a new instance of a profile
+	 */
+	public static abstract class ProfileFactory {
+		public abstract Profile createProfile();
+	}
+
+
+	/**
+	 * profile name -> factory of the profile that analyzes it
+	 */
+	private static HashMap<String, ProfileFactory> profileFactories = new HashMap<String, ProfileFactory>();
+
+
+	/**
+	 * the profile instances of each thread, by profile name
+	 */
+	private static ThreadLocal<HashMap<String, Profile>> threadProfiles = new ThreadLocal<HashMap<String, Profile>>(){
+		@Override
+		protected HashMap<String, Profile> initialValue() {
+			return(new HashMap<String, Profile>());
+		}
+	};
+
+
+	static{
+		ProfileFactory basicProfile = new ProfileFactory() {
+			public Profile createProfile() { return(new BasicProfile()); }
+		};
+		ProfileFactory colonyOpacityProfile = new ProfileFactory() {
+			public Profile createProfile() { return(new ColonyOpacityProfile()); }
+		};
+		ProfileFactory cprgProfile = new ProfileFactory() {
+			public Profile createProfile() { return(new CPRGProfile384_ourCamera2()); }
+		};
+		ProfileFactory colorProfileEcoli = new ProfileFactory() {
+			public Profile createProfile() { return(new ColorProfileEcoli()); }
+		};
+		ProfileFactory morphologyProfileCandida96 = new ProfileFactory() {
+			public Profile createProfile() { return(new MorphologyProfileCandida96()); }
+		};
+		ProfileFactory morphologyProfilePA384 = new ProfileFactory() {
+			public Profile createProfile() { return(new MorphologyProfilePA384()); }
+		};
+
+		profileFactories.put("Stm growth", basicProfile);
+		profileFactories.put("Ecoli growth -- no empty check", new ProfileFactory() {
+			public Profile createProfile() { return(new BasicProfileNoEmptyCheck()); }
+		});
+		profileFactories.put("Ecoli opacity 1536", colonyOpacityProfile);
+		profileFactories.put("B.subtilis Opacity (HSB)", new ProfileFactory() {
+			public Profile createProfile() { return(new BsubtilisHazyProfileHSB()); }
+		});
+		profileFactories.put("B.subtilis sporulation", new ProfileFactory() {
+			public Profile createProfile() { return(new BsubtilisSporulationProfile()); }
+		});
+		profileFactories.put("Ecoli growth", new ProfileFactory() {
+			public Profile createProfile() { return(new EcoliGrowthProfile()); }
+		});
+		profileFactories.put("Ecoli opacity 384", new ProfileFactory() {
+			public Profile createProfile() { return(new EcoliOpacityProfile384()); }
+		});
+		profileFactories.put("Ecoli opacity 384 - hazy colonies", new ProfileFactory() {
+			public Profile createProfile() { return(new EcoliOpacityProfile384_HazyColonies()); }
+		});
+		profileFactories.put("Ecoli opacity 96", new ProfileFactory() {
+			public Profile createProfile() { return(new EcoliOpacityProfile96()); }
+		});
+		profileFactories.put("Colony growth", colonyOpacityProfile);
+		profileFactories.put("Xgal assay", new ProfileFactory() {
+			public Profile createProfile() { return(new XgalProfile()); }
+		});
+		profileFactories.put("CPRG 384", cprgProfile);
+		profileFactories.put("CPRG profile", cprgProfile);
+		profileFactories.put("Biofilm formation", colorProfileEcoli);
+		profileFactories.put("Biofilm formation PA", new ProfileFactory() {
+			public Profile createProfile() { return(new ColorProfilePA()); }
+		});
+		profileFactories.put("Biofilm formation Ecoli", colorProfileEcoli);
+		profileFactories.put("Biofilm formation Ecoli Natural Isolates", new ProfileFactory() {
+			public Profile createProfile() { return(new ColorProfileEcoliNaturalIsolates()); }
+		});
+		profileFactories.put("Biofilm formation - Simple Grid", new ProfileFactory() {
+			public Profile createProfile() { return(new ColorProfile_SimpleSegmentation()); }
+		});
+		profileFactories.put("Opacity", new ProfileFactory() {
+			public Profile createProfile() { return(new OpacityProfile()); }
+		});
+		profileFactories.put("Opacity (fixed grid)", new ProfileFactory() {
+			public Profile createProfile() { return(new OpacityProfile2()); }
+		});
+		profileFactories.put("Morphology Profile [Candida 96-plates]", morphologyProfileCandida96);
+		profileFactories.put("Morphology profile", morphologyProfileCandida96);
+		profileFactories.put("Morphology Profile [Pseudomonas 96-plates]", new ProfileFactory() {
+			public Profile createProfile() { return(new MorphologyProfilePA96()); }
+		});
+		profileFactories.put("Morphology Profile [Pseudomonas 384-plates]", morphologyProfilePA384);
+		profileFactories.put("Morphology&Color profile", morphologyProfilePA384);//pseudomonas colonies but it'll work for more than that
+		profileFactories.put("Morphology Profile [Salmonella 96-plates]", new ProfileFactory() {
+			public Profile createProfile() { return(new MorphologyProfileStm96()); }
+		});
+		profileFactories.put("Growth profile inverted", new ProfileFactory() {
+			public Profile createProfile() { return(new BasicProfileInverted()); }
+		});
+		profileFactories.put("Colony growth inverted", new ProfileFactory() {
+			public Profile createProfile() { return(new ColonyOpacityProfileInverted()); }
+		});
+	}
+
+
+	/**
+	 * Returns the name the profile is registered under, or null if there is no such profile.
+	 * Any profile name containing "Xgal assay" is analyzed by the Xgal profile.
+	 * @param profileName
+	 * @return
+	 */
+	private static String getRegisteredName(String profileName){
+		if(profileFactories.containsKey(profileName))
+			return(profileName);
+		if(profileName.contains("Xgal assay"))
+			return("Xgal assay");
+		return(null);
+	}
+
+
+	/**
+	 * @param profileName
+	 * @return true if there is a profile for this name
+	 */
+	public static boolean isKnownProfile(String profileName){
+		return(profileName!=null && getRegisteredName(profileName)!=null);
+	}
+
+
+	/**
+	 * Returns this thread's instance of the profile with the given name, ready to analyze a new picture
+	 * with the current settings.
+	 * The instance must not be handed over to other threads.
+	 * @param profileName
+	 * @return the profile, or null if there is no profile with this name
+	 */
+	public static Profile getProfile(String profileName){
+		return(getProfile(profileName, IrisFrontend.settings));
+	}
+
+
+	/**
+	 * Same as above, with the given settings instead of the current ones (e.g. a different number of rows and columns)
+	 * @param profileName
+	 * @param settings
+	 * @return the profile, or null if there is no profile with this name
+	 */
+	public static Profile getProfile(String profileName, BasicSettings settings){
+		if(profileName==null)
+			return(null);
+
+		String registeredName = getRegisteredName(profileName);
+		if(registeredName==null)
+			return(null);
+
+		HashMap<String, Profile> profiles = threadProfiles.get();
+		Profile profile = profiles.get(registeredName);
+		if(profile==null){
+			profile = profileFactories.get(registeredName).createProfile();
+			profiles.put(registeredName, profile);
+			if(settings!=IrisFrontend.settings)
+				profile.resetSettings(settings);
+		}
+		else{
+			//undo whatever the previous picture changed in the profile's settings
+			profile.resetSettings(settings);
+		}
+		return(profile);
+	}
+
+}
@@ -40,6 +40,14 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 	 * it should be the same in both axes, so it's set here only once 
 	 */
 	public int maximumDistanceBetweenRows = 108;
+
+
+	/**
+	 * If this is more than 1, the grid is first found on the picture downsampled this many times,
+	 * and then each grid line is moved to the darkest row or column nearby at full resolution (see RisingTideSegmenter).
+	 * 1 finds the grid on the full resolution picture.
+	 */
+	public int segmentationDownsampling = 1;
 	
 	
 	/**
@@ -53,6 +61,37 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 	public int threshold = -1;
 	
 	
+	/**
+	 * The maximum distance (+/-) a tile border can travel from where the image segmenter put it,
+	 * when letting the tiles breathe (see ColonyBreathing)
+	 * THIS SHOULD NOT BE EXPOSED TO THE USER VIA THE SETTINGS WINDOW
+	 */
+	public int colonyBreathingSpace = 15;
+	
+	
+	/**
+	 * The distance in pixels of the first row and column of tiles from the top left of the picture,
+	 * used by the SimpleImageSegmenter. 20 is actually used for UCSF E.coli experiments (e.g. CPRG)
+	 * THIS SHOULD NOT BE EXPOSED TO THE USER VIA THE SETTINGS WINDOW
+	 */
+	public int gridOffset = 20;
+	
+	
+	/**
+	 * The diameter of the area around the colony center whose opacity is measured by the OpacityTileReader
+	 * THIS SHOULD NOT BE EXPOSED TO THE USER VIA THE SETTINGS WINDOW
+	 */
+	public int centerAreaDiameter = 16;
+	
+	
+	/**
+	 * The radius of the innermost circle the MorphologyTileReader counts elevations on;
+	 * 30 is an empirically defined good value for the Candida 96-plate readout
+	 * THIS SHOULD NOT BE EXPOSED TO THE USER VIA THE SETTINGS WINDOW
+	 */
+	public int morphologyInitialRadius = 30;
+	
+	
 	/**
 	 * This setting enables the use of Hough circles if no better colony selection can be made
 	 * by using the standard thresholding methods. Has been shown to perform rather poorly, but
@@ -70,13 +109,6 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 	public boolean saveGridImage = true;
 
 
-	/**
-	 * If the user used the ColonyPicker to define a ROI (region of interest defining a colony). 
-	 * In this case, the user-defined ROI will be honoured instead of the iris-detected colony ROI.
-	 */
-	public boolean userDefinedRoi = false;
-	
-	
 	
 
 	/**
@@ -89,12 +121,26 @@ public class BasicSettings /*extends Settings*/ implements Serializable{
 	}
 	
 	public BasicSettings(BasicSettings that){
+		copyFrom(that);
+	}
+	
+	/**
+	 * Overwrites these settings with the values of the given settings
+	 * @param that
+	 */
+	public void copyFrom(BasicSettings that){
+		if(that==this) return;
 		this.maximumDistanceBetweenRows = that.maximumDistanceBetweenRows;
 		this.minimumDistanceBetweenRows = that.minimumDistanceBetweenRows;
 		this.numberOfColumnsOfColonies = that.numberOfColumnsOfColonies;
 		this.numberOfRowsOfColonies = that.numberOfRowsOfColonies;
 		this.saveGridImage = that.saveGridImage;
 		this.threshold = that.threshold;
+		this.segmentationDownsampling = that.segmentationDownsampling;
+		this.colonyBreathingSpace = that.colonyBreathingSpace;
+		this.gridOffset = that.gridOffset;
+		this.centerAreaDiameter = that.centerAreaDiameter;
+		this.morphologyInitialRadius = that.morphologyInitialRadius;
 	}
 
 }
@@ -0,0 +1,501 @@
+/**
+ *
+ */
+package iris.settings;
+
+import ij.ImagePlus;
+import iris.utils.RotationEstimator;
+import iris.utils.Toolbox;
+
+import java.awt.Rectangle;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+
+/**
+ * This class learns the rotation and the crop borders of the plates pictured by a fixed-mount camera,
+ * so that these don't need to be tuned by hand (see RoatationSettings and CroppingSettings).
+ * The first pictures of every camera are analyzed as usual, and their rotation and crop borders are kept;
+ * once enough pictures were analyzed, the camera is calibrated to their median rotation and crop borders.
+ *
+ * The next pictures of a calibrated camera only search for their rotation around the calibrated one
+ * (see RotationEstimator), and are first cropped at the calibrated borders (see SegmentationAttempts):
+ * if either doesn't work out (the rotation seems further away, or the segmentation fails), the full search
+ * or the croppers are used instead. If this keeps happening, the camera is learned anew.
+ *
+ * Cameras are told apart by the size of their pictures and by the make and model found in their EXIF information.
+ * The calibrations are kept in the iris.calibration.json file, next to the iris.user.settings.json file.
+ * The file is only written when a camera is calibrated or learned anew (the pictures it is being learned from
+ * are written along then), and it is replaced in one go, so that it's never left half-written.
+ *
+ * @author George Kritikos
+ *
+ */
+public class CameraCalibration {
+
+	/**
+	 * this is turned on by the calibrate command line option
+	 */
+	public static boolean enabled = false;
+
+	/**
+	 * how many pictures a camera is learned from, as well as how many pictures in a row should fail
+	 * with the calibrated geometry before it is learned anew
+	 */
+	public static int picturesToLearnFrom = 5;
+
+	private static final String calibrationFilename = "iris.calibration.json";
+
+
+	/**
+	 * What was learned for one camera
+	 */
+	static class Camera {
+		String name;
+
+		ArrayList<Double> learnedAngles = new ArrayList<Double>();
+		ArrayList<int[]> learnedCrops = new ArrayList<int[]>();
+
+		/**
+		 * the calibrated rotation and crop borders (x, y, width, height), null while they're learned
+		 */
+		Double angle = null;
+		int[] crop = null;
+
+		/**
+		 * how many pictures in a row didn't work with the calibrated rotation and crop borders
+		 */
+		int rotationFailures = 0;
+		int cropFailures = 0;
+	}
+
+
+	/**
+	 * the calibrations of all cameras, this is what is written to the file
+	 */
+	private ArrayList<Camera> cameras = new ArrayList<Camera>();
+
+	/**
+	 * the calibrations as they were last read from or written to the file, these are not written again
+	 */
+	private transient String writtenJsonString = null;
+
+	/**
+	 * the calibrations, loaded from the file the first time they are needed
+	 */
+	private static CameraCalibration calibration = null;
+
+
+
+	/**
+	 * @param filename: the picture file, this is where the EXIF information is read from
+	 * @param originalImage: the picture
+	 * @return the name of the camera that took the picture, null if cameras are not calibrated
+	 */
+	public static String getCameraName(String filename, ImagePlus originalImage){
+		if(!enabled)
+			return(null);
+
+		String cameraName = originalImage.getWidth() + "x" + originalImage.getHeight();
+
+		String model = readCameraModel(filename);
+		if(model!=null)
+			cameraName += " " + model;
+
+		return(cameraName);
+	}
+
+
+
+	/**
+	 * Finds the rotation of the picture: around the calibrated one, if the camera was calibrated,
+	 * otherwise as usual (see Toolbox.calculateImageRotation), learning it
+	 * @param cameraName
+	 * @param originalImage
+	 * @return the angle in degrees that the picture should be rotated by
+	 */
+	public static double calculateImageRotation(String cameraName, ImagePlus originalImage){
+		if(!enabled || PictureSettings.current().singleColonyRun)
+			return(Toolbox.calculateImageRotation(originalImage));
+
+		Double calibratedAngle = getAngle(cameraName);
+		if(calibratedAngle!=null){
+			double angle = RotationEstimator.estimateRotation(originalImage, calibratedAngle);
+			reportRotation(cameraName, !Double.isNaN(angle));
+			if(!Double.isNaN(angle))
+				return(angle);
+		}
+
+		double angle = Toolbox.calculateImageRotation(originalImage);
+		learnAngle(cameraName, angle);
+		return(angle);
+	}
+
+
+
+	/**
+	 * @param cameraName
+	 * @return the calibrated rotation of the camera, null if it isn't calibrated (yet)
+	 */
+	private static synchronized Double getAngle(String cameraName){
+		Camera camera = getCamera(cameraName, false);
+		if(camera==null)
+			return(null);
+		return(camera.angle);
+	}
+
+
+	/**
+	 * @param cameraName
+	 * @return the calibrated crop borders of the camera, null if it isn't calibrated (yet)
+	 */
+	public static synchronized Rectangle getCrop(String cameraName){
+		if(!enabled || cameraName==null)
+			return(null);
+
+		Camera camera = getCamera(cameraName, false);
+		if(camera==null || camera.crop==null)
+			return(null);
+		return(new Rectangle(camera.crop[0], camera.crop[1], camera.crop[2], camera.crop[3]));
+	}
+
+
+
+	/**
+	 * Keeps the rotation of a picture of a camera not calibrated yet
+	 * @param cameraName
+	 * @param angle
+	 */
+	private static synchronized void learnAngle(String cameraName, double angle){
+		Camera camera = getCamera(cameraName, true);
+		if(camera.angle!=null)
+			return;
+
+		camera.learnedAngles.add(angle);
+		if(camera.learnedAngles.size()>=picturesToLearnFrom){
+			double[] angles = new double[camera.learnedAngles.size()];
+			for(int i=0; i<angles.length; i++){
+				angles[i] = camera.learnedAngles.get(i);
+			}
+			camera.angle = getMedian(angles);
+			camera.learnedAngles.clear();
+			camera.rotationFailures = 0;
+			System.out.println("Camera " + cameraName + " calibrated, rotation: " + camera.angle + " degrees");
+			calibration.write();
+		}
+	}
+
+
+	/**
+	 * Keeps the crop borders of a picture of a camera not calibrated yet, these should be those of a picture segmented correctly
+	 * @param cameraName
+	 * @param crop
+	 */
+	public static synchronized void learnCrop(String cameraName, Rectangle crop){
+		if(!enabled || cameraName==null || PictureSettings.current().singleColonyRun)
+			return;
+
+		Camera camera = getCamera(cameraName, true);
+		if(camera.crop!=null)
+			return;
+
+		camera.learnedCrops.add(new int[]{crop.x, crop.y, crop.width, crop.height});
+		if(camera.learnedCrops.size()>=picturesToLearnFrom){
+			//the median of every border on its own
+			camera.crop = new int[4];
+			for(int j=0; j<4; j++){
+				double[] values = new double[camera.learnedCrops.size()];
+				for(int i=0; i<values.length; i++){
+					values[i] = camera.learnedCrops.get(i)[j];
+				}
+				camera.crop[j] = (int) Math.round(getMedian(values));
+			}
+			camera.learnedCrops.clear();
+			camera.cropFailures = 0;
+			System.out.println("Camera " + cameraName + " calibrated, crop borders: " + Arrays.toString(camera.crop));
+			calibration.write();
+		}
+	}
+
+
+
+	/**
+	 * Keeps track of whether the calibrated rotation worked out, the camera's rotation is learned anew if it keeps not working
+	 * @param cameraName
+	 * @param worked
+	 */
+	private static synchronized void reportRotation(String cameraName, boolean worked){
+		Camera camera = getCamera(cameraName, true);
+
+		if(worked){
+			camera.rotationFailures = 0;
+			return;
+		}
+
+		camera.rotationFailures++;
+		if(camera.rotationFailures>=picturesToLearnFrom){
+			System.out.println("Camera " + cameraName + " rotation calibration doesn't fit any more, learning it again");
+			camera.angle = null;
+			camera.rotationFailures = 0;
+			calibration.write();
+		}
+	}
+
+
+	/**
+	 * Keeps track of whether the calibrated crop borders worked out, the camera's crop borders are learned anew if they keep not working
+	 * @param cameraName
+	 * @param worked
+	 */
+	public static synchronized void reportCrop(String cameraName, boolean worked){
+		if(!enabled || cameraName==null)
+			return;
+
+		Camera camera = getCamera(cameraName, true);
+
+		if(worked){
+			camera.cropFailures = 0;
+			return;
+		}
+
+		camera.cropFailures++;
+		if(camera.cropFailures>=picturesToLearnFrom){
+			System.out.println("Camera " + cameraName + " crop calibration doesn't fit any more, learning it again");
+			camera.crop = null;
+			camera.cropFailures = 0;
+			calibration.write();
+		}
+	}
+
+
+
+	/**
+	 * @param cameraName
+	 * @param create: if true, a camera not seen before is added
+	 * @return the calibration of the camera, null if there's none and it shouldn't be created
+	 */
+	private static Camera getCamera(String cameraName, boolean create){
+		if(calibration==null)
+			calibration = read();
+
+		for(Camera camera : calibration.cameras){
+			if(camera.name.equals(cameraName))
+				return(camera);
+		}
+
+		if(!create)
+			return(null);
+
+		Camera camera = new Camera();
+		camera.name = cameraName;
+		calibration.cameras.add(camera);
+		return(camera);
+	}
+
+
+
+	/**
+	 * @param values
+	 * @return the median of the values
+	 */
+	private static double getMedian(double[] values){
+		double[] sorted = values.clone();
+		Arrays.sort(sorted);
+		int middle = sorted.length/2;
+		if(sorted.length%2==1)
+			return(sorted[middle]);
+		return((sorted[middle-1]+sorted[middle])/2.0);
+	}
+
+
+
+	/**
+	 * @return the calibrations kept in the file, none if there's no file or it can't be read
+	 */
+	private static CameraCalibration read(){
+		File file = new File(calibrationFilename);
+		if(!file.exists())
+			return(new CameraCalibration());
+
+		CameraCalibration loadedCalibration = null;
+		Reader reader = null;
+		try {
+			reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+			loadedCalibration = new Gson().fromJson(reader, CameraCalibration.class);
+		} catch (IOException e) {
+			System.err.println("could not read camera calibration file, calibrating anew");
+		} catch (JsonParseException e) {
+			System.err.println("could not read camera calibration file, calibrating anew");
+		} finally {
+			try { if(reader!=null) reader.close(); } catch (IOException e) {}
+		}
+
+		if(loadedCalibration==null || loadedCalibration.cameras==null)
+			return(new CameraCalibration());
+		loadedCalibration.writtenJsonString = toJsonString(loadedCalibration);
+		return(loadedCalibration);
+	}
+
+
+	/**
+	 * @param calibration
+	 * @return the calibrations, as they are written to the file
+	 */
+	private static String toJsonString(CameraCalibration calibration){
+		Gson gson = new GsonBuilder().setPrettyPrinting().create();
+		return(gson.toJson(calibration));
+	}
+
+
+	/**
+	 * writes the calibrations to the file, if they changed since it was last read or written.
+	 * They are written to a temporary file first, which then replaces the calibration file,
+	 * so that a crash or another Iris writing it at the same time can't leave it half-written
+	 */
+	private void write(){
+		String calibrationJsonString = toJsonString(this);
+		if(calibrationJsonString.equals(writtenJsonString))
+			return;
+
+		File calibrationFile = new File(calibrationFilename).getAbsoluteFile();
+		File temporaryFile = null;
+		OutputStream outputStream = null;
+		try {
+			temporaryFile = File.createTempFile(calibrationFilename, ".tmp", calibrationFile.getParentFile());
+			outputStream = new FileOutputStream(temporaryFile);
+			outputStream.write(calibrationJsonString.getBytes("UTF-8"));
+			outputStream.close();
+			outputStream = null;
+
+			try {
+				Files.move(temporaryFile.toPath(), calibrationFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporaryFile.toPath(), calibrationFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			writtenJsonString = calibrationJsonString;
+		} catch (IOException e) {
+			System.err.println("could not write camera calibration file: " + e.getMessage());
+		} finally {
+			try { if(outputStream!=null) outputStream.close(); } catch (IOException e) {}
+			if(temporaryFile!=null && temporaryFile.exists())
+				temporaryFile.delete();
+		}
+	}
+
+
+
+	/**
+	 * Reads the camera make and model from the EXIF information of a JPEG file
+	 * @param filename
+	 * @return the make and model, null if the file has none
+	 */
+	private static String readCameraModel(String filename){
+		if(filename==null || !new File(filename).isFile())
+			return(null);
+
+		DataInputStream input = null;
+		try {
+			input = new DataInputStream(new FileInputStream(filename));
+
+			//JPEG files start with a start of image marker
+			if(input.readUnsignedShort()!=0xFFD8)
+				return(null);
+
+			//go through the segments until the EXIF one (APP1), these come before the picture itself
+			while(true){
+				int marker = input.readUnsignedShort();
+				int length = input.readUnsignedShort()-2;
+
+				if((marker&0xFF00)!=0xFF00 || marker==0xFFDA || length<0)
+					return(null);
+
+				byte[] segment = new byte[length];
+				input.readFully(segment);
+
+				if(marker==0xFFE1 && length>6 && new String(segment, 0, 6, "ISO-8859-1").equals("Exif\0\0"))
+					return(readCameraModel(segment, 6));
+			}
+		} catch (IOException e) {
+			return(null);
+		} finally {
+			try { if(input!=null) input.close(); } catch (IOException e) {}
+		}
+	}
+
+
+	/**
+	 * Reads the make and model tags of the first directory of the TIFF structure of the EXIF information
+	 * @param exif
+	 * @param start: where the TIFF structure starts
+	 * @return the make and model, null if there's none
+	 */
+	private static String readCameraModel(byte[] exif, int start){
+		try {
+			boolean littleEndian = exif[start]=='I';
+			int directory = start + readInt(exif, start+4, 4, littleEndian);
+			int entries = readInt(exif, directory, 2, littleEndian);
+
+			String make = null;
+			String model = null;
+
+			for(int i=0; i<entries; i++){
+				int entry = directory + 2 + 12*i;
+				int tag = readInt(exif, entry, 2, littleEndian);
+				int type = readInt(exif, entry+2, 2, littleEndian);
+				int count = readInt(exif, entry+4, 4, littleEndian);
+
+				//make and model are ASCII strings, kept in the entry itself if they are short enough
+				if((tag!=0x010F && tag!=0x0110) || type!=2)
+					continue;
+
+				int offset = count<=4 ? entry+8 : start + readInt(exif, entry+8, 4, littleEndian);
+				String value = new String(exif, offset, count, "ISO-8859-1").replace("\0", "").trim();
+
+				if(tag==0x010F)
+					make = value;
+				else
+					model = value;
+			}
+
+			//models often start with the make already
+			if(make==null || (model!=null && model.startsWith(make)))
+				return(model);
+			if(model==null)
+				return(make);
+			return(make + " " + model);
+
+		} catch (IndexOutOfBoundsException e) {
+			return(null);
+		} catch (IOException e) {
+			return(null);
+		}
+	}
+
+
+	/**
+	 * @return the unsigned number of the given length (in bytes) at the given offset
+	 */
+	private static int readInt(byte[] bytes, int offset, int length, boolean littleEndian){
+		int value = 0;
+		for(int i=0; i<length; i++){
+			int b = bytes[littleEndian ? offset+length-1-i : offset+i]&0xff;
+			value = (value<<8) | b;
+		}
+		return(value);
+	}
+
+}
@@ -0,0 +1,87 @@
+/**
+ *
+ */
+package iris.settings;
+
+import iris.ui.IrisFrontend;
+
+/**
+ * This class holds the settings that belong to the picture being analyzed, rather than to the whole run:
+ * whether the picture holds a single colony, and whether the colony area in it was defined by the user (ColonyPicker).
+ * Several pictures can be analyzed at the same time, so these are kept per picture: they are set up
+ * for the thread analyzing the picture when the analysis starts (see Profile.analyzeImage and ProcessFolderWorker),
+ * and TileLoop hands them on to the threads reading the tiles of that picture.
+ * @author George Kritikos
+ *
+ */
+public class PictureSettings {
+
+	/**
+	 * If the picture holds a single colony (single colony runs, or pictures named colony_ or tile_ in some profiles)
+	 */
+	public boolean singleColonyRun = false;
+
+
+	/**
+	 * If the user used the ColonyPicker to define a ROI (region of interest defining a colony).
+	 * In this case, the user-defined ROI will be honoured instead of the iris-detected colony ROI.
+	 */
+	public boolean userDefinedRoi = false;
+
+
+	/**
+	 * the settings of the picture each thread is analyzing
+	 */
+	private static final ThreadLocal<PictureSettings> currentPicture = new ThreadLocal<PictureSettings>();
+
+
+	public PictureSettings(boolean singleColonyRun, boolean userDefinedRoi){
+		this.singleColonyRun = singleColonyRun;
+		this.userDefinedRoi = userDefinedRoi;
+	}
+
+
+	/**
+	 * Returns the settings for the picture with the given filename: in single colony runs,
+	 * pictures named colony_ hold a colony area defined by the user
+	 * @param filename
+	 * @return
+	 */
+	public static PictureSettings forPicture(String filename){
+		boolean singleColonyRun = IrisFrontend.singleColonyRun;
+		boolean userDefinedRoi = singleColonyRun && filename!=null && filename.contains("colony_");
+		return(new PictureSettings(singleColonyRun, userDefinedRoi));
+	}
+
+
+	/**
+	 * If this thread is not analyzing a picture that was set up (e.g. a profile's analyzePicture was called directly),
+	 * the ones of the run are set up for it, so that changes to them (see Profile.setSingleColonyPicture)
+	 * are seen by the rest of the analysis; they are kept until setCurrent is called
+	 * @return the settings of the picture this thread is analyzing
+	 */
+	public static PictureSettings current(){
+		PictureSettings settings = currentPicture.get();
+		if(settings==null){
+			settings = new PictureSettings(IrisFrontend.singleColonyRun, false);
+			currentPicture.set(settings);
+		}
+		return(settings);
+	}
+
+
+	/**
+	 * Sets the settings of the picture this thread is about to analyze
+	 * @param settings: null goes back to the ones of the run
+	 * @return the settings this thread had so far, to be set back once the picture is done
+	 */
+	public static PictureSettings setCurrent(PictureSettings settings){
+		PictureSettings previous = currentPicture.get();
+		if(settings==null)
+			currentPicture.remove();
+		else
+			currentPicture.set(settings);
+		return(previous);
+	}
+
+}
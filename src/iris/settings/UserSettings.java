@@ -31,6 +31,9 @@ public class UserSettings {
 	private boolean DebugMode = false;
 	private ProfileSettings profileSettings[] = new ProfileSettings[0];
 	public int ArrayFormat = 1536;
+	private int NumberOfThreads = 0; //number of pictures processed in parallel, 0 means: keep the default
+	private int NumberOfTileThreads = 0; //number of threads analyzing the tiles of one picture, 0 means: keep the default
+	private int SegmentationDownsampling = 0; //find the grid on the picture downsampled this many times first, 0 means: keep the default
 
 	public class ProfileSettings {
 		private String ProfileName = "";
@@ -127,6 +130,15 @@ public class UserSettings {
 		if(loadedSettings.DebugMode)
 			IrisFrontend.debug = true;
 
+		//set the number of worker threads
+		if(loadedSettings.NumberOfThreads>0)
+			IrisFrontend.setNumberOfThreads(loadedSettings.NumberOfThreads);
+		if(loadedSettings.NumberOfTileThreads>0)
+			IrisFrontend.setNumberOfTileThreads(loadedSettings.NumberOfTileThreads);
+
+		if(loadedSettings.SegmentationDownsampling>0)
+			IrisFrontend.settings.segmentationDownsampling = loadedSettings.SegmentationDownsampling;
+
 
 		//set number of rows and columns
 		if(loadedSettings.SingleColony){
@@ -197,6 +209,9 @@ public class UserSettings {
 		oneProfileUserSettings.ArrayFormat = this.ArrayFormat;
 		oneProfileUserSettings.DebugMode = this.DebugMode;
 		oneProfileUserSettings.SingleColony = this.SingleColony;
+		oneProfileUserSettings.NumberOfThreads = this.NumberOfThreads;
+		oneProfileUserSettings.NumberOfTileThreads = this.NumberOfTileThreads;
+		oneProfileUserSettings.SegmentationDownsampling = this.SegmentationDownsampling;
 		
 		oneProfileUserSettings.profileSettings = new ProfileSettings[1];
 		oneProfileUserSettings.profileSettings[0] = getProfileSettings(profileName);
@@ -0,0 +1,392 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.OvalRoi;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.gui.Wand;
+import ij.process.ByteProcessor;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares the opacity functions of OpacityTileReader and LaplacianFilterTileReader, which read a
+ * BrightnessHistogram, with the ones they replaced, which filled FloatProcessor copies of the tile
+ * and sorted boxed pixel lists. The old versions are kept below as the reference.
+ * It runs both on seeded random tiles, with the colony Rois the readers are given (traced outlines,
+ * see ParticleLabeller, as well as ovals and rectangles), with and without a Roi on the tile,
+ * and prints the number of values that differ, which should be none.
+ * @author George Kritikos
+ *
+ */
+public class TestBrightnessHistogram {
+
+	/**
+	 * the new functions (all private) and the old ones they are compared with, by name
+	 */
+	private static final String[][] functions = {
+		{"iris.tileReaders.OpacityTileReader", "totalColonyBrightnessMinusBackground"},
+		{"iris.tileReaders.OpacityTileReader", "getLargestTenPercentOpacityMedian"},
+		{"iris.tileReaders.OpacityTileReader", "getBiggestParticleOpacity"},
+		{"iris.tileReaders.OpacityTileReader", "getBiggestParticleOpacity_darkColonies"},
+		{"iris.tileReaders.LaplacianFilterTileReader", "totalColonyBrightnessMinusBackground"}};
+
+
+	/**
+	 * @param args : optionally, the number of tiles to test (default 3000)
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int numberOfTiles = 3000;
+		if(args.length>0)
+			numberOfTiles = Integer.parseInt(args[0]);
+
+		Method[] newFunctions = new Method[functions.length];
+		Method[] oldFunctions = new Method[functions.length];
+		for(int f=0; f<functions.length; f++){
+			newFunctions[f] = Class.forName(functions[f][0]).getDeclaredMethod(functions[f][1], ImagePlus.class, Roi.class);
+			newFunctions[f].setAccessible(true);
+			//both readers had the same totalColonyBrightnessMinusBackground
+			oldFunctions[f] = TestBrightnessHistogram.class.getDeclaredMethod(functions[f][1], ImagePlus.class, Roi.class);
+		}
+
+		Random random = new Random(11);
+		int values = 0;
+		int mismatches = 0;
+
+		for(int t=0; t<numberOfTiles; t++){
+
+			int width = 30+random.nextInt(50), height = 30+random.nextInt(50);
+			ByteProcessor tile = new ByteProcessor(width, height);
+			byte[] pixels = (byte[]) tile.getPixels();
+
+			//a bright disc on a noisy background, with some black and white specks
+			int radius = 3+random.nextInt(20), noise = 1+random.nextInt(120), background = random.nextInt(140);
+			for(int i=0; i<pixels.length; i++){
+				int x = i%width-width/2, y = i/width-height/2;
+				int value = (x*x+y*y<radius*radius ? background+100 : background) + random.nextInt(noise);
+				if(random.nextInt(20)==0)
+					value = random.nextBoolean() ? 0 : 255;
+				pixels[i] = (byte) Math.min(255, value);
+			}
+
+			Roi colonyRoi;
+			int kind = t%4;
+			if(kind==0){
+				tile.setThreshold(background+100, 255, ImageProcessor.NO_LUT_UPDATE);
+				Wand wand = new Wand(tile);
+				wand.autoOutline(width/2, height/2, (double)background+100, 255.0, Wand.LEGACY_MODE);
+				if(wand.npoints>0)
+					colonyRoi = new PolygonRoi(wand.xpoints, wand.ypoints, wand.npoints, Roi.TRACED_ROI);
+				else
+					colonyRoi = new OvalRoi(3, 3, 10, 10);
+				tile.resetThreshold();
+			}
+			else if(kind==1)
+				colonyRoi = new OvalRoi(random.nextInt(width)-10, random.nextInt(height)-10, 1+random.nextInt(40), 1+random.nextInt(40));
+			else if(kind==2)
+				colonyRoi = new Roi(random.nextInt(width)-5, random.nextInt(height)-5, 1+random.nextInt(30), 1+random.nextInt(30));
+			else
+				colonyRoi = new OvalRoi(width/2-radius, height/2-radius, 2*radius, 2*radius);
+
+			Roi tileRoi = random.nextInt(3)==0 ? new OvalRoi(2, 2, width-4, height-5) : null;
+
+			for(int f=0; f<functions.length; f++){
+
+				String expected = call(oldFunctions[f], tile, tileRoi, colonyRoi);
+				String found = call(newFunctions[f], tile, tileRoi, colonyRoi);
+				values++;
+
+				if(!expected.equals(found)){
+					mismatches++;
+					if(mismatches<=5)
+						System.out.println(functions[f][1] + " of tile " + t + ": expected " + expected + ", found " + found);
+				}
+			}
+		}
+
+		System.out.println("tiles: " + numberOfTiles + ", values: " + values + ", mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * Calls this function on a fresh copy of the tile and the colony Roi, as the old functions change them
+	 * @return the value returned, or the exception thrown
+	 */
+	private static String call(Method function, ByteProcessor tile, Roi tileRoi, Roi colonyRoi) throws IllegalAccessException {
+		ImagePlus image = new ImagePlus("tile", tile.duplicate());
+		if(tileRoi!=null)
+			image.setRoi((Roi) tileRoi.clone());
+
+		try{
+			return(String.valueOf(function.invoke(null, image, (Roi) colonyRoi.clone())));
+		}
+		catch(InvocationTargetException e){
+			return("exception: " + e.getCause());
+		}
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.totalColonyBrightnessMinusBackground, verbatim
+	 * (LaplacianFilterTileReader had the same)
+	 */
+	private static int totalColonyBrightnessMinusBackground(ImagePlus tileImage, Roi colonyROI) {
+
+		try{
+			FloatProcessor backgroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
+			backgroundPixels.setRoi(colonyROI);
+			backgroundPixels.setValue(0);
+			backgroundPixels.setBackgroundValue(0);
+
+			backgroundPixels.fill(backgroundPixels.getMask());
+
+			FloatProcessor foregroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
+			foregroundPixels.setRoi(colonyROI);
+			foregroundPixels.setValue(0);
+			foregroundPixels.setBackgroundValue(0);
+
+			foregroundPixels.fillOutside(colonyROI);
+
+			int backgroundMedian = getBackgroundMedian(backgroundPixels);
+
+			int sumColonyBrightness = sumPixelOverBackgroundBrightness(foregroundPixels, backgroundMedian);
+
+			return(sumColonyBrightness);
+		} catch (Exception e){
+			return(0);
+		}
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.sumPixelOverBackgroundBrightness, verbatim
+	 */
+	private static int sumPixelOverBackgroundBrightness(FloatProcessor ip, int backgroundMedian) {
+
+		float[] pixels = (float[]) ip.getPixels();
+
+		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
+		ArrayList<Float> zeroPixels = new ArrayList<Float>();
+		ArrayList<Float> onePixels = new ArrayList<Float>();
+
+		for(float thisPixel : pixels){
+			if(thisPixel==255)
+				onePixels.add(thisPixel);
+			else if(thisPixel==0)
+				zeroPixels.add(thisPixel);
+			else
+				nonZeroPixels.add(thisPixel);
+		}
+
+		int sum = 0;
+		for(Float thisPixel : nonZeroPixels){
+			sum += Math.round(thisPixel)-backgroundMedian;
+		}
+
+		return(sum);
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.getBackgroundMedian, verbatim
+	 */
+	private static int getBackgroundMedian(FloatProcessor ip) {
+
+		float[] pixels = (float[]) ip.getPixels();
+
+		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
+		ArrayList<Float> zeroPixels = new ArrayList<Float>();
+		ArrayList<Float> onePixels = new ArrayList<Float>();
+
+		for(float thisPixel : pixels){
+			if(thisPixel==255)
+				onePixels.add(thisPixel);
+			else if(thisPixel==0)
+				zeroPixels.add(thisPixel);
+			else
+				nonZeroPixels.add(thisPixel);
+		}
+
+		return(Math.round(getMedian(nonZeroPixels.toArray(new Float[nonZeroPixels.size()]))));
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.getMedian, verbatim
+	 */
+	private static float getMedian(Float[] inputArray){
+
+		if(inputArray.length==0)
+			return(0);
+
+		Arrays.sort(inputArray);
+		double median;
+		if (inputArray.length % 2 == 0)
+			median = ((double)inputArray[inputArray.length/2] + (double)inputArray[inputArray.length/2 - 1])/2;
+		else
+			median = (double) inputArray[inputArray.length/2];
+
+		return((float)median);
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.getLargestTenPercentOpacityMedian, verbatim
+	 */
+	private static double getLargestTenPercentOpacityMedian(ImagePlus grayscaleTile, Roi colonyRoi) {
+
+		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+
+		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
+		backgroundPixels.setRoi(colonyRoi);
+		backgroundPixels.setValue(0);
+		backgroundPixels.setBackgroundValue(0);
+		int background_level = getBackgroundMedian(backgroundPixels);
+
+		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
+			return(0);
+		}
+
+		grayscaleTileCopy.setRoi(colonyRoi);
+		try {
+			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+		} catch (Exception e) {
+			return(0);
+		}
+
+		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
+		byte[] imageBytes = (byte[]) processor.getPixels();
+
+		int size = imageBytes.length;
+
+		Arrays.sort(imageBytes);
+		ArrayList<Integer> pixelIntValues = new ArrayList<Integer>();
+
+		for(int i=0;i<size;i++){
+			int pixelValue = imageBytes[i]&0xFF;
+			pixelIntValues.add(pixelValue);
+		}
+
+		Collections.sort(pixelIntValues, Collections.reverseOrder());
+		int sumOfBrightness = 0;
+		int size_subset = (int)Math.ceil((double)size/(double)10);
+		for(int i=0;i<size_subset;i++){
+			sumOfBrightness += Math.max(0, pixelIntValues.get(i)-background_level);
+		}
+		double top10percentMean = (double)sumOfBrightness/(double)size_subset;
+
+		grayscaleTileCopy.flush();
+		return(top10percentMean);
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.getBiggestParticleOpacity, verbatim
+	 */
+	private static int getBiggestParticleOpacity(ImagePlus grayscaleTile, Roi colonyRoi) {
+
+		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+
+		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
+		backgroundPixels.setRoi(colonyRoi);
+		backgroundPixels.setValue(0);
+		backgroundPixels.setBackgroundValue(0);
+
+		backgroundPixels.fill(backgroundPixels.getMask());
+		int background_level = getBackgroundMedian(backgroundPixels);
+
+		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
+			return(0);
+		}
+
+		grayscaleTileCopy.setRoi(colonyRoi);
+		try {
+			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+		} catch (Exception e) {
+			return(0);
+		}
+
+		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
+		byte[] imageBytes = (byte[]) processor.getPixels();
+
+		int size = imageBytes.length;
+
+		int sumOfBrightness = 0;
+
+		for(int i=0;i<size;i++){
+			int pixelValue = imageBytes[i]&0xFF;
+			sumOfBrightness += Math.max(0, pixelValue-background_level);
+		}
+
+		grayscaleTileCopy.flush();
+
+		return (sumOfBrightness);
+	}
+
+
+
+	/**
+	 * The previous OpacityTileReader.getBiggestParticleOpacity_darkColonies, verbatim
+	 */
+	private static int getBiggestParticleOpacity_darkColonies(ImagePlus grayscaleTile, Roi colonyRoi) {
+
+		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+
+		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
+		backgroundPixels.setRoi(colonyRoi);
+		backgroundPixels.setValue(0);
+		backgroundPixels.setBackgroundValue(0);
+		int background_level = getBackgroundMedian(backgroundPixels);
+
+		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
+			return(0);
+		}
+
+		grayscaleTileCopy.setRoi(colonyRoi);
+		try {
+			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+		} catch (Exception e) {
+			return(0);
+		}
+
+		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
+		byte[] imageBytes = (byte[]) processor.getPixels();
+
+		int size = imageBytes.length;
+
+		int sumOfBrightness = 0;
+
+		for(int i=0;i<size;i++){
+			int pixelValue = imageBytes[i]&0xFF;
+
+			if(pixelValue==0){
+				continue;
+			}
+
+			sumOfBrightness += pixelValue-background_level;
+		}
+
+		grayscaleTileCopy.flush();
+
+		return (sumOfBrightness);
+	}
+
+}
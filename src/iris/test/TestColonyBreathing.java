@@ -0,0 +1,277 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import iris.imageSegmenterInput.BasicImageSegmenterInput;
+import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
+import iris.imageSegmenters.ColonyBreathing;
+import iris.settings.BasicSettings;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares ColonyBreathing.segmentPicture with the colony breathing it replaced,
+ * which moved Roi objects around and summed the pixels with ImagePlus.getPixel.
+ * The old version is kept below as the reference. It runs both on seeded random
+ * plates and grids (including tiles that fall off the plate or have no width),
+ * grayscale and RGB, with and without an integral image, and prints the number
+ * of tiles whose bounds differ.
+ * @author George Kritikos
+ *
+ */
+public class TestColonyBreathing {
+
+	/**
+	 * the breathing space of the plate being tested, which the old colony breathing read from a global
+	 */
+	private static int breathingSpace;
+
+	/**
+	 * @param args : optionally, the number of plates to test (default 300)
+	 */
+	public static void main(String[] args) {
+
+		int numberOfPlates = 300;
+		if(args.length>0)
+			numberOfPlates = Integer.parseInt(args[0]);
+
+		Random random = new Random(7);
+		int tiles = 0;
+		int mismatches = 0;
+
+		for(int p=0; p<numberOfPlates; p++){
+
+			int width = 200+random.nextInt(800);
+			int height = 200+random.nextInt(600);
+			byte[] pixels = new byte[width*height];
+			for(int i=0; i<pixels.length; i++)
+				pixels[i] = (byte) random.nextInt(256);
+
+			BasicSettings settings = new BasicSettings();
+			settings.numberOfRowsOfColonies = 2+random.nextInt(8);
+			settings.numberOfColumnsOfColonies = 2+random.nextInt(12);
+			int rows = settings.numberOfRowsOfColonies;
+			int columns = settings.numberOfColumnsOfColonies;
+
+			//a regular grid, jittered, sometimes shifted off the plate or with empty tiles
+			BasicImageSegmenterOutput grid = new BasicImageSegmenterOutput();
+			grid.ROImatrix = new Roi[rows][columns];
+			for(int i=0; i<rows; i++){
+				for(int j=0; j<columns; j++){
+					int x = j*width/columns + random.nextInt(5)-2 - (p%10==0 ? 50 : 0);
+					int y = i*height/rows + random.nextInt(5)-2;
+					int w = width/columns + random.nextInt(5)-2 - (p%7==0 ? width/columns : 0);
+					int h = height/rows + random.nextInt(5)-2;
+					grid.ROImatrix[i][j] = new Roi(x, y, w, h);
+				}
+			}
+
+			breathingSpace = 5+random.nextInt(20);
+			settings.colonyBreathingSpace = breathingSpace;
+
+			//every third plate is in colour, the red channel is the brightness
+			ImageProcessor plate = new ByteProcessor(width, height, pixels, null);
+			if(p%3==1){
+				int[] rgbPixels = new int[pixels.length];
+				for(int i=0; i<pixels.length; i++)
+					rgbPixels[i] = 0xff000000 | (pixels[i]&0xff)<<16 | ((i*7)&0xff)<<8 | (i&0xff);
+				plate = new ColorProcessor(width, height, rgbPixels);
+			}
+
+			BasicImageSegmenterInput input = new BasicImageSegmenterInput(new ImagePlus("plate", plate), settings);
+
+			//every other plate comes with an integral image, as after the rising tide segmenter
+			if(p%2==0)
+				input.getIntegralImage();
+
+			Roi[][] expected = oldSegmentPicture(grid, input);
+			Roi[][] found = ColonyBreathing.segmentPicture(grid, input).ROImatrix;
+
+			for(int i=0; i<rows; i++){
+				for(int j=0; j<columns; j++){
+					tiles++;
+					if(!expected[i][j].getBounds().equals(found[i][j].getBounds())){
+						mismatches++;
+						if(mismatches<=5)
+							System.out.println("plate " + p + " tile " + i + "," + j + " expected=" + expected[i][j].getBounds()
+									+ " found=" + found[i][j].getBounds());
+					}
+				}
+			}
+		}
+
+		System.out.println("plates: " + numberOfPlates + ", tiles: " + tiles + ", mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.segmentPicture, verbatim apart from the
+	 * single colony check.
+	 */
+	private static Roi[][] oldSegmentPicture(BasicImageSegmenterOutput originalSegmentation, BasicImageSegmenterInput input){
+		try{
+			BasicImageSegmenterOutput output = new BasicImageSegmenterOutput();
+			output.ROImatrix = originalSegmentation.copyRoiMatrix();
+
+			for(int i=0;i<input.settings.numberOfRowsOfColonies-1; i++){
+				for (int j = 0; j < input.settings.numberOfColumnsOfColonies-1; j++) {
+
+					Roi newRoi = oldColonyBreathe(output.ROImatrix[i][j], input.imageToSegment);
+
+					int heightDifference = newRoi.getBounds().height - output.ROImatrix[i][j].getBounds().height;
+
+					int bottomsNewTop = output.ROImatrix[i+1][j].getBounds().y + heightDifference;
+					int bottomsNewHeight = output.ROImatrix[i+1][j].getBounds().height - heightDifference;
+
+					int x = output.ROImatrix[i+1][j].getBounds().x;
+					int y = bottomsNewTop;
+					int width = output.ROImatrix[i+1][j].getBounds().width;
+					int height = bottomsNewHeight;
+
+					output.ROImatrix[i+1][j] = new Roi(new Rectangle(x, y, width, height));
+
+					int widthDifference = newRoi.getBounds().width - output.ROImatrix[i][j].getBounds().width;
+
+					int rightsNewLeft = output.ROImatrix[i][j+1].getBounds().x + widthDifference;
+					int rightsNewWidth = output.ROImatrix[i][j+1].getBounds().width - widthDifference;
+
+					x = rightsNewLeft;
+					y = output.ROImatrix[i][j+1].getBounds().y;
+					width = rightsNewWidth;
+					height = output.ROImatrix[i][j+1].getBounds().height;
+
+					output.ROImatrix[i][j+1] = new Roi(new Rectangle(x, y, width, height));
+
+					output.ROImatrix[i][j] = newRoi;
+				}
+			}
+
+			return(output.ROImatrix);
+		}
+		catch(Exception e){
+			return(originalSegmentation.ROImatrix);
+		}
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.colonyBreathe, verbatim.
+	 */
+	private static Roi oldColonyBreathe(Roi originalTileRectangle, ImagePlus bigPicture){
+
+		int left = originalTileRectangle.getBounds().x;
+		int oldRight = left + originalTileRectangle.getBounds().width;
+		int top = originalTileRectangle.getBounds().y;
+		int oldBottom = top + originalTileRectangle.getBounds().height;
+
+		int newBottom = oldColonyBreatheBotom(left, oldRight, oldBottom, bigPicture) + oldBottom;
+		int newRight = oldColonyBreatheRight(top, newBottom, oldRight, bigPicture) + oldRight;
+
+		int newHeight = newBottom - top;
+		int newWidth = newRight - left;
+
+		return(new Roi(new Rectangle(left, top, newWidth, newHeight)));
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.colonyBreatheBotom, verbatim.
+	 */
+	private static int oldColonyBreatheBotom(int left, int right, int initialBottom, ImagePlus bigPicture){
+		try{
+			ArrayList<Integer> sumOfRows_ = oldSumOfRows(bigPicture, left, right, initialBottom);
+			int minimumBrightnessSumLocation = oldGetIndexOfMinimumElement(sumOfRows_);
+			return(minimumBrightnessSumLocation - breathingSpace);
+		}
+		catch(Exception e){
+			//do nothing
+		}
+		return(initialBottom);
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.colonyBreatheRight, verbatim.
+	 */
+	private static int oldColonyBreatheRight(int top, int bottom, int initialRight, ImagePlus bigPicture){
+		try{
+			ArrayList<Integer> sumOfColumns_ = oldSumOfColumns(bigPicture, top, bottom, initialRight);
+			int minimumBrightnessSumLocation = oldGetIndexOfMinimumElement(sumOfColumns_);
+			return(minimumBrightnessSumLocation - breathingSpace);
+		}
+		catch(Exception e){
+			//do nothing
+		}
+		return(initialRight);
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.sumOfRows, verbatim.
+	 */
+	private static ArrayList<Integer> oldSumOfRows(ImagePlus croppedImage, int left, int right, int initialBottom){
+		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(2*breathingSpace+1);
+
+		for(int y=initialBottom-breathingSpace; y<=initialBottom+breathingSpace; y++ ){
+			int sum = 0;
+			for(int x=left; x<=right; x++ ){
+				sum += croppedImage.getPixel(x, y)[0];
+			}
+			sumOfRows.add(sum);
+		}
+
+		return(sumOfRows);
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.sumOfColumns, verbatim.
+	 */
+	private static ArrayList<Integer> oldSumOfColumns(ImagePlus croppedImage, int top, int bottom, int initialRight){
+		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(2*breathingSpace+1);
+
+		for(int x=initialRight-breathingSpace; x<=initialRight+breathingSpace; x++ ){
+			int sum = 0;
+			for(int y=top; y<=bottom; y++ ){
+				sum += croppedImage.getPixel(x, y)[0];
+			}
+			sumOfColumns.add(sum);
+		}
+
+		return(sumOfColumns);
+	}
+
+
+
+	/**
+	 * The previous ColonyBreathing.getIndexOfMinimumElement, verbatim.
+	 */
+	private static int oldGetIndexOfMinimumElement(ArrayList<Integer> list) {
+		int index = -1;
+		int min = Integer.MAX_VALUE;
+
+		for (int i = 0; i < list.size(); i++) {
+			if(list.get(i)<min){
+				min = list.get(i);
+				index = i;
+			}
+		}
+
+		return(index);
+	}
+
+}
@@ -0,0 +1,160 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ColorProcessor;
+import iris.settings.ColorSettings;
+import iris.tileReaderInputs.BasicTileReaderInput;
+import iris.tileReaderInputs.ColorTileReaderInput3;
+import iris.tileReaderInputs.CombinedTileReaderInput;
+import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.tileReaderOutputs.CombinedTileReaderOutput;
+import iris.tileReaders.BasicTileReaderHSB_darkColonies;
+import iris.tileReaders.ColorTileReaderHSB;
+import iris.tileReaders.CombinedTileReader;
+import iris.tileReaders.OpacityTileReader;
+
+import java.awt.Point;
+import java.lang.reflect.Field;
+import java.util.Random;
+
+/**
+ * Compares CombinedTileReader with the two readers it stands in for in ColorProfileEcoli,
+ * ColorTileReaderHSB.processDefinedColonyTile and OpacityTileReader.processDefinedColonyTile.
+ * It draws seeded random plates of coloured colonies, finds the colonies the way ColorProfileEcoli does,
+ * and compares every output field of both readers, colony by colony. It prints the number of fields that differ.
+ * @author George Kritikos
+ *
+ */
+public class TestCombinedTileReader {
+
+	/**
+	 * @param args : optionally, the number of plates to test (default 4)
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int numberOfPlates = 4;
+		if(args.length>0)
+			numberOfPlates = Integer.parseInt(args[0]);
+
+		int colonies = 0;
+		int mismatches = 0;
+
+		for(int plate=1; plate<=numberOfPlates; plate++){
+
+			Random random = new Random(plate);
+			int columns = 12, rows = 8;
+			int tileSize = 60+random.nextInt(20);
+			int width = columns*tileSize+7, height = rows*tileSize+5;
+
+			//a dark, noisy plate
+			ColorProcessor colourProcessor = new ColorProcessor(width, height);
+			int[] pixels = (int[]) colourProcessor.getPixels();
+			for(int i=0; i<pixels.length; i++){
+				int value = 20+random.nextInt(30);
+				pixels[i] = 0xff000000 | (value<<16) | (value<<8) | value;
+			}
+
+			//most tiles get a round colony of a random colour, with ragged edges
+			for(int i=0; i<rows; i++){
+				for(int j=0; j<columns; j++){
+					if(random.nextInt(6)==0)
+						continue;
+
+					int centerX = j*tileSize+tileSize/2+random.nextInt(11)-5;
+					int centerY = i*tileSize+tileSize/2+random.nextInt(11)-5;
+					int radius = 6+random.nextInt(tileSize/2-4);
+					int red = 100+random.nextInt(155), green = random.nextInt(200), blue = random.nextInt(200);
+					int noise = 1+random.nextInt(60);
+
+					for(int y=centerY-radius-2; y<=centerY+radius+2; y++){
+						for(int x=centerX-radius-2; x<=centerX+radius+2; x++){
+							if(x<0 || y<0 || x>=width || y>=height)
+								continue;
+							double distance = Math.hypot(x-centerX, y-centerY)+random.nextGaussian()*0.7;
+							if(distance<radius){
+								int r = Math.min(255, red+random.nextInt(noise));
+								int g = Math.min(255, green+random.nextInt(noise));
+								int b = Math.min(255, blue+random.nextInt(noise));
+								pixels[y*width+x] = 0xff000000 | (r<<16) | (g<<8) | b;
+							}
+						}
+					}
+				}
+			}
+
+			ImagePlus colourImage = new ImagePlus("colour", colourProcessor);
+			ImagePlus grayscaleImage = new ImagePlus("grayscale", colourProcessor.convertToByte(false));
+			ColorSettings settings = new ColorSettings();
+
+			for(int i=0; i<rows; i++){
+				for(int j=0; j<columns; j++){
+
+					Roi tileRoi = new Roi(j*tileSize, i*tileSize, tileSize+random.nextInt(3)-1, tileSize);
+
+					//find the colony first, as ColorProfileEcoli does
+					BasicTileReaderOutput basicOutput = BasicTileReaderHSB_darkColonies.processTile(
+							new BasicTileReaderInput(grayscaleImage, tileRoi, settings));
+					if(basicOutput.colonySize<=0)
+						continue;
+
+					//sometimes without a colony center, so that the readers have to find it
+					Point colonyCenter = random.nextInt(4)==0 ? null : basicOutput.colonyCenter;
+
+					CombinedTileReaderOutput combined = CombinedTileReader.processDefinedColonyTile(
+							new CombinedTileReaderInput(grayscaleImage, colourImage, tileRoi,
+									basicOutput.colonyROI, basicOutput.colonySize, colonyCenter, settings));
+
+					Object colourOutput = ColorTileReaderHSB.processDefinedColonyTile(
+							new ColorTileReaderInput3(colourImage, tileRoi,
+									basicOutput.colonyROI, basicOutput.colonySize, colonyCenter, settings));
+
+					Object opacityOutput = OpacityTileReader.processDefinedColonyTile(
+							new OpacityTileReaderInput(grayscaleImage, tileRoi,
+									basicOutput.colonyROI, basicOutput.colonySize, settings), true);
+
+					colonies++;
+					mismatches += compareFields("plate " + plate + " colony " + i + "," + j + " colour", colourOutput, combined.colourOutput);
+					mismatches += compareFields("plate " + plate + " colony " + i + "," + j + " opacity", opacityOutput, combined.opacityOutput);
+				}
+			}
+		}
+
+		System.out.println("plates: " + numberOfPlates + ", colonies: " + colonies + ", mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * Compares all the public fields of two tile reader outputs; Rois are compared by their type and bounds
+	 * @return the number of fields that differ
+	 */
+	private static int compareFields(String what, Object expected, Object found) throws IllegalAccessException {
+		int mismatches = 0;
+
+		for(Field field : expected.getClass().getFields()){
+			String expectedValue = describe(field.get(expected));
+			String foundValue = describe(field.get(found));
+
+			if(!expectedValue.equals(foundValue)){
+				mismatches++;
+				System.out.println(what + " " + field.getName() + ": expected " + expectedValue + ", found " + foundValue);
+			}
+		}
+
+		return(mismatches);
+	}
+
+
+
+	private static String describe(Object value){
+		if(value instanceof Roi)
+			return(value.getClass().getSimpleName() + ((Roi)value).getBounds());
+		return(String.valueOf(value));
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.process.ColorProcessor;
+import iris.utils.HSBConverter;
+
+import java.awt.Color;
+
+/**
+ * Compares HSBConverter with the conversions it replaced, ColorProcessor.getHSB
+ * (8-bit channels) and java.awt.Color.RGBtoHSB (float channels), on all 2^24 colours,
+ * and prints the number of colours for which any channel differs.
+ * @author George Kritikos
+ *
+ */
+public class TestHSBConverter {
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		//the colours are converted 65536 at a time, as one 256x256 picture
+		int width = 256, height = 256;
+		int[] pixels = new int[width*height];
+		byte[] hue = new byte[pixels.length], saturation = new byte[pixels.length], brightness = new byte[pixels.length];
+		byte[] expectedHue = new byte[pixels.length], expectedSaturation = new byte[pixels.length], expectedBrightness = new byte[pixels.length];
+		float[] floatHue = new float[pixels.length];
+		float[] expectedHSB = new float[3];
+
+		long byteMismatches = 0;
+		long floatMismatches = 0;
+
+		for(int red=0; red<256; red++){
+
+			for(int i=0; i<pixels.length; i++)
+				pixels[i] = 0xff000000 | (red<<16) | i;
+
+			ColorProcessor colorProcessor = new ColorProcessor(width, height, pixels);
+			colorProcessor.getHSB(expectedHue, expectedSaturation, expectedBrightness);
+			HSBConverter.getHSB(pixels, hue, saturation, brightness);
+			HSBConverter.getHue(pixels, floatHue);
+
+			for(int i=0; i<pixels.length; i++){
+
+				if(hue[i]!=expectedHue[i] || saturation[i]!=expectedSaturation[i] || brightness[i]!=expectedBrightness[i]){
+					byteMismatches++;
+					if(byteMismatches<=5)
+						System.out.println("8-bit HSB of " + Integer.toHexString(pixels[i]&0xffffff) + " differs");
+				}
+
+				int green = (i>>8)&0xff, blue = i&0xff;
+				Color.RGBtoHSB(red, green, blue, expectedHSB);
+
+				if(Float.floatToIntBits(floatHue[i])!=Float.floatToIntBits(expectedHSB[0])
+						|| Float.floatToIntBits(HSBConverter.getHue(red, green, blue))!=Float.floatToIntBits(expectedHSB[0])
+						|| Float.floatToIntBits(HSBConverter.getSaturation(red, green, blue))!=Float.floatToIntBits(expectedHSB[1])
+						|| Float.floatToIntBits(HSBConverter.getBrightness(red, green, blue))!=Float.floatToIntBits(expectedHSB[2])){
+					floatMismatches++;
+					if(floatMismatches<=5)
+						System.out.println("float HSB of " + Integer.toHexString(pixels[i]&0xffffff) + " differs");
+				}
+			}
+		}
+
+		System.out.println("colours: " + (1<<24) + ", 8-bit mismatches: " + byteMismatches + ", float mismatches: " + floatMismatches);
+	}
+
+}
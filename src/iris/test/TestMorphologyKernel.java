@@ -0,0 +1,322 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.OvalRoi;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.gui.Wand;
+import ij.process.ByteProcessor;
+import iris.tileReaders.MorphologyTileReader;
+
+import java.awt.Point;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares the elevation counts of MorphologyTileReader and MorphologyTileReaderStm, which now come from
+ * MorphologyKernel, with the circle scan they replaced, and MorphologyTileReader.getCircleCoordinates
+ * with the Bresenham code it replaced. The old versions are kept below as the reference.
+ * It runs both on seeded random tiles, with traced outlines, ovals, rectangles and polygons as colony Rois,
+ * some with black pixels, and prints the number of results that differ.
+ * @author George Kritikos
+ *
+ */
+public class TestMorphologyKernel {
+
+	/**
+	 * the circle scan settings, the same in both readers
+	 */
+	private static final int initialRadius = 30;
+	private static final int radiusStep = 5;
+	private static final int minimumBrightnessStep = 5;
+	private static final int maximumNumberOfCircles = 50;
+
+
+	/**
+	 * @param args : optionally, the number of tiles to test (default 3000)
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int numberOfTiles = 3000;
+		if(args.length>0)
+			numberOfTiles = Integer.parseInt(args[0]);
+
+		int mismatches = 0;
+
+		//the circle coordinates
+		for(int radius=0; radius<200; radius++){
+			Point center = new Point(3, -4);
+			if(!oldGetCircleCoordinates(center, radius).equals(MorphologyTileReader.getCircleCoordinates(center, radius))){
+				mismatches++;
+				System.out.println("the circle of radius " + radius + " differs");
+			}
+		}
+
+		//the elevation counts (private in both readers, MorphologyTileReader takes the initial radius from its settings)
+		String[] readers = {"iris.tileReaders.MorphologyTileReader", "iris.tileReaders.MorphologyTileReaderStm"};
+		Method[] elevationCounts = new Method[readers.length];
+		elevationCounts[0] = Class.forName(readers[0])
+				.getDeclaredMethod("getBiggestParticleElevationCounts", ImagePlus.class, Roi.class, Point.class, int.class);
+		elevationCounts[1] = Class.forName(readers[1])
+				.getDeclaredMethod("getBiggestParticleElevationCounts", ImagePlus.class, Roi.class, Point.class);
+		for(int r=0; r<readers.length; r++){
+			elevationCounts[r].setAccessible(true);
+		}
+
+		Random random = new Random(5);
+		int nonEmpty = 0;
+
+		for(int t=0; t<numberOfTiles; t++){
+
+			int width = 60+random.nextInt(200), height = 60+random.nextInt(200);
+			ByteProcessor tile = new ByteProcessor(width, height);
+			byte[] pixels = (byte[]) tile.getPixels();
+
+			//a wavy, noisy tile, one in three with black specks
+			int noise = 1+random.nextInt(60);
+			int base = random.nextInt(3)==0 ? 0 : 40;
+			for(int i=0; i<pixels.length; i++){
+				if(random.nextInt(5)==0 && base==0)
+					pixels[i] = 0;
+				else
+					pixels[i] = (byte) Math.min(255, base+random.nextInt(noise)
+							+(int)(40*Math.sin((i%width)*0.3)*Math.cos((i/width)*0.2))+40);
+			}
+
+			int centerX = width/2+random.nextInt(21)-10, centerY = height/2+random.nextInt(21)-10;
+			int kind = random.nextInt(5);
+			Roi colonyRoi;
+
+			if(kind==0){
+				ByteProcessor mask = new ByteProcessor(width, height);
+				int radius = 10+random.nextInt(Math.min(width, height)/2+20);
+				for(int y=0; y<height; y++)
+					for(int x=0; x<width; x++)
+						if((x-centerX)*(x-centerX)+(y-centerY)*(y-centerY)<radius*radius+random.nextInt(radius*6))
+							mask.set(x, y, 255);
+				Wand wand = new Wand(mask);
+				wand.autoOutline(centerX, centerY, 255, 255, Wand.EIGHT_CONNECTED);
+				colonyRoi = new PolygonRoi(wand.xpoints, wand.ypoints, wand.npoints, Roi.TRACED_ROI);
+			}
+			else if(kind==1)
+				colonyRoi = new OvalRoi(random.nextInt(40)-20, random.nextInt(40)-20, width+random.nextInt(40)-20, height+random.nextInt(40)-20);
+			else if(kind==2)
+				colonyRoi = new Roi(0, 0, width, height);
+			else if(kind==3)
+				colonyRoi = new Roi(random.nextInt(40)-20, random.nextInt(40)-20, width+random.nextInt(40), height+random.nextInt(40));
+			else{
+				int corners = 5+random.nextInt(8);
+				int[] xs = new int[corners], ys = new int[corners];
+				for(int i=0; i<corners; i++){
+					double angle = 2*Math.PI*i/corners;
+					double radius = 30+random.nextInt(Math.max(width, height));
+					xs[i] = (int)(centerX+radius*Math.cos(angle));
+					ys[i] = (int)(centerY+radius*Math.sin(angle));
+				}
+				colonyRoi = new PolygonRoi(xs, ys, corners, Roi.POLYGON);
+			}
+
+			Point colonyCenter = new Point(centerX, centerY);
+			int reader = random.nextInt(2);
+			ImagePlus image = new ImagePlus("tile", tile);
+
+			ArrayList<Integer> expected = oldGetBiggestParticleElevationCounts(image, colonyRoi, colonyCenter);
+			Object found = reader==0
+					? elevationCounts[reader].invoke(null, image, colonyRoi, colonyCenter, initialRadius)
+					: elevationCounts[reader].invoke(null, image, colonyRoi, colonyCenter);
+
+			if(!expected.isEmpty())
+				nonEmpty++;
+
+			if(!expected.equals(found)){
+				mismatches++;
+				if(mismatches<=5)
+					System.out.println(readers[reader] + ", tile " + t + ": expected " + expected + ", found " + found);
+			}
+		}
+
+		System.out.println("circles: 200, tiles: " + numberOfTiles + " (" + nonEmpty + " with elevation counts), mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * The previous MorphologyTileReader.getBiggestParticleElevationCounts, verbatim apart from boxing
+	 * (MorphologyTileReaderStm had the same)
+	 */
+	private static ArrayList<Integer> oldGetBiggestParticleElevationCounts(ImagePlus grayscale_image, Roi colonyRoi, Point colonyCenter){
+
+		int number_of_circles = 0;
+
+		ArrayList<Integer> elevationCounts = new ArrayList<Integer>();
+
+		while(number_of_circles<maximumNumberOfCircles){
+
+			int radius = initialRadius + number_of_circles * radiusStep;
+
+			ArrayList<Point> circleCoordinates = oldGetCircleCoordinates(colonyCenter, radius);
+			ArrayList<Integer> meanPixelValues = new ArrayList<Integer>();
+
+			for (Point point : circleCoordinates) {
+				if(!colonyRoi.contains(point.x, point.y)){
+					return(elevationCounts);
+				}
+				meanPixelValues.add(oldGetBrightnessAverage9pixels(grayscale_image, point));
+			}
+
+			elevationCounts.add(Integer.valueOf(oldCountBrightnessChanges(meanPixelValues, minimumBrightnessStep, 2)));
+
+			number_of_circles++;
+		}
+
+		return(elevationCounts);
+	}
+
+
+
+	/**
+	 * The previous MorphologyTileReader.countBrightnessChanges, verbatim
+	 */
+	private static int oldCountBrightnessChanges(ArrayList<Integer> series, int threshold, int offset){
+
+		int changesOverThreshold = 0;
+
+		for (int i = 0; i < series.size()-offset; i++) {
+			int difference = Math.abs(series.get(i+offset) - series.get(i));
+			if(difference>threshold){
+				changesOverThreshold++;
+			}
+		}
+
+		return(changesOverThreshold);
+	}
+
+
+
+	/**
+	 * The previous MorphologyTileReader.getBrightnessAverage9pixels, verbatim
+	 */
+	private static int oldGetBrightnessAverage9pixels(ImagePlus grayscale_image, Point pixelToGet){
+
+		int pixelsAdded = 0;
+		int sumOfPixelIntensity = 0;
+
+		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();
+
+		for (int x = -1; x <= 1; x++) {
+			for (int y = -1; y <= 1; y++) {
+				int pixelIntensity = 0;
+				try{
+					pixelIntensity = grayscale_image_ip.getPixel(pixelToGet.x + x, pixelToGet.y + y);
+				}
+				catch(Exception e){
+					continue;
+				}
+
+				if(pixelIntensity==0){
+					continue;
+				}
+
+				pixelsAdded++;
+				sumOfPixelIntensity += pixelIntensity;
+			}
+		}
+
+		return (int) (Math.round( (double)sumOfPixelIntensity / (double)pixelsAdded ));
+	}
+
+
+
+	/**
+	 * The previous MorphologyTileReader.getCircleCoordinates, verbatim
+	 */
+	private static ArrayList<Point> oldGetCircleCoordinates(Point center, int radius){
+		int octant_size = (int) Math.floor((Math.sqrt(2)*(radius-1)+4)/2);
+		int n_points = 8 * octant_size;
+
+		int x0 = center.x;
+		int y0 = center.y;
+
+		int[] xc = new int[n_points+1];
+		int[] yc = new int[n_points+1];
+
+		int x = 0;
+		int y = radius;
+		int f = 1 - radius;
+		int dx = 1;
+		int dy = - 2 * radius;
+
+		xc[1] = x0 + x;
+		yc[1] = y0 + y;
+
+		xc[8 * octant_size] = x0 - x;
+		yc[8 * octant_size] = y0 + y;
+
+		xc[4 * octant_size] = x0 + x;
+		yc[4 * octant_size] = y0 - y;
+
+		xc[4 * octant_size + 1] = x0 - x;
+		yc[4 * octant_size + 1] = y0 - y;
+
+		xc[2 * octant_size] = x0 + y;
+		yc[2 * octant_size] = y0 + x;
+
+		xc[6 * octant_size + 1] = x0 - y;
+		yc[6 * octant_size + 1] = y0 + x;
+
+		xc[2 * octant_size + 1] = x0 + y;
+		yc[2 * octant_size + 1] = y0 - x;
+
+		xc[6 * octant_size] = x0 - y;
+		yc[6 * octant_size] = y0 - x;
+
+		for(int i=2; i<=n_points/8; i++){
+
+			if (f > 0){
+				y = y - 1;
+				dy = dy + 2;
+				f = f + dy;
+			}
+			x = x + 1;
+			dx = dx + 2;
+			f = f + dx;
+
+			xc[i] = x0 + x;
+			yc[i] = y0 + y;
+
+			xc[8 * octant_size - i + 1] = x0 - x;
+			yc[8 * octant_size - i + 1] = y0 + y;
+
+			xc[4 * octant_size - i + 1] = x0 + x;
+			yc[4 * octant_size - i + 1] = y0 - y;
+
+			xc[4 * octant_size + i] = x0 - x;
+			yc[4 * octant_size + i] = y0 - y;
+
+			xc[2 * octant_size - i + 1] = x0 + y;
+			yc[2 * octant_size - i + 1] = y0 + x;
+
+			xc[6 * octant_size + i] = x0 - y;
+			yc[6 * octant_size + i] = y0 + x;
+
+			xc[2 * octant_size + i] = x0 + y;
+			yc[2 * octant_size + i] = y0 - x;
+
+			xc[6 * octant_size - i + 1] = x0 - y;
+			yc[6 * octant_size - i + 1] = y0 - x;
+		}
+
+		ArrayList<Point> pointsToReturn = new ArrayList<Point>();
+
+		for(int i=1; i<n_points+1; i++){
+			pointsToReturn.add(new Point(xc[i], yc[i]));
+		}
+
+		return(pointsToReturn);
+	}
+
+}
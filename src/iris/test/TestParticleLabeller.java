@@ -0,0 +1,201 @@
+/**
+ * 
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.OvalRoi;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.measure.Measurements;
+import ij.measure.ResultsTable;
+import ij.plugin.filter.ParticleAnalyzer;
+import ij.process.AutoThresholder;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import ij.process.ImageStatistics;
+import iris.utils.ParticleLabeller;
+import iris.utils.Toolbox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares ParticleLabeller with the particle analyzer it replaced in BasicTileReader and OpacityTileReader.
+ * It runs both on seeded random tiles (noisy backgrounds with ellipses, rings and lines, thresholded
+ * in the ways the tile readers do it) and checks every particle: the results table columns the tile
+ * readers used, and the traced outline. It prints the number of values that differ.
+ * @author George Kritikos
+ *
+ */
+public class TestParticleLabeller {
+
+	/**
+	 * the measurements the tile readers asked the particle analyzer for
+	 */
+	private static final int measurements = Measurements.CENTER_OF_MASS+Measurements.AREA+Measurements.CIRCULARITY
+			+Measurements.RECT+Measurements.PERIMETER;
+
+	/**
+	 * the results table columns compared, in the order of the values returned by getValues
+	 */
+	private static final String[] columns = {"Area", "BX", "BY", "Width", "Height", "XM", "YM", "AR", "Perim.", "Circ."};
+
+	private static int mismatches = 0;
+	private static int particles = 0;
+
+
+	/**
+	 * @param args : optionally, the number of tiles to test (default 3000)
+	 */
+	public static void main(String[] args) {
+
+		int numberOfTiles = 3000;
+		if(args.length>0)
+			numberOfTiles = Integer.parseInt(args[0]);
+
+		Random random = new Random(1);
+
+		for(int t=0; t<numberOfTiles; t++){
+
+			int width = 20+random.nextInt(80), height = 20+random.nextInt(80);
+			ByteProcessor tile = new ByteProcessor(width, height);
+
+			//a noisy background, the noise level changes from pixel to pixel
+			int background = 60+random.nextInt(140);
+			for(int i=0; i<width*height; i++)
+				tile.set(i, clamp(background+(int)(random.nextGaussian()*(5+random.nextInt(40)))));
+
+			//a few rotated ellipses or rings, some with a line dropping off them
+			int numberOfBlobs = random.nextInt(6);
+			for(int b=0; b<numberOfBlobs; b++){
+				int centerX = random.nextInt(width), centerY = random.nextInt(height);
+				double radiusX = 1+random.nextInt(width/2), radiusY = 1+random.nextInt(height/2);
+				int brightness = random.nextInt(256);
+				double angle = random.nextDouble()*Math.PI;
+				boolean ring = random.nextInt(4)==0;
+
+				for(int y=0; y<height; y++){
+					for(int x=0; x<width; x++){
+						double dx = (x-centerX)*Math.cos(angle)+(y-centerY)*Math.sin(angle);
+						double dy = -(x-centerX)*Math.sin(angle)+(y-centerY)*Math.cos(angle);
+						double distance = dx*dx/(radiusX*radiusX)+dy*dy/(radiusY*radiusY);
+						if(distance<1 && (!ring || distance>0.4))
+							tile.set(x, y, clamp(brightness+(int)(random.nextGaussian()*10)));
+					}
+				}
+
+				if(random.nextInt(5)==0){
+					int lineX = random.nextInt(width);
+					for(int y=random.nextInt(height); y<height; y++)
+						tile.set(lineX, y, brightness);
+				}
+			}
+
+			ImagePlus image = new ImagePlus("tile", tile);
+
+			//thresholded to black and white, binary with an inverted LUT, or with a threshold range set
+			int mode = random.nextInt(3);
+			if(mode==0)
+				Toolbox.turnImageBW_Otsu_auto(image);
+			else if(mode==1){
+				tile.threshold(Toolbox.getThreshold(image, AutoThresholder.Method.Otsu));
+				if(random.nextBoolean())
+					tile.invertLut();
+			}
+			else{
+				int lower = random.nextInt(200);
+				tile.setThreshold(lower, lower+random.nextInt(256-lower), ImageProcessor.NO_LUT_UPDATE);
+			}
+
+			if(t%10==9)
+				image.setRoi(new OvalRoi(2, 2, width-4, height-4));
+
+			compare(image, 1+random.nextInt(8));
+		}
+
+		System.out.println("tiles: " + numberOfTiles + ", particles: " + particles + ", mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * Runs both on this tile and compares every particle found
+	 */
+	private static void compare(ImagePlus image, int minimumSize){
+
+		ResultsTable resultsTable = new ResultsTable();
+		OutlineKeepingParticleAnalyzer particleAnalyzer = new OutlineKeepingParticleAnalyzer(resultsTable, minimumSize);
+
+		ParticleLabeller labeller = new ParticleLabeller(image, minimumSize);
+		particleAnalyzer.analyze(image);
+
+		ParticleLabeller.Particle[] found = labeller.getParticles();
+		int numberOfParticles = resultsTable.getCounter();
+
+		if(numberOfParticles!=found.length){
+			mismatches++;
+			System.out.println("the particle analyzer found " + numberOfParticles + " particles, the labeller " + found.length);
+			return;
+		}
+
+		for(int i=0; i<numberOfParticles; i++){
+
+			ParticleLabeller.Particle particle = found[i];
+			labeller.traceOutline(particle);
+			particles++;
+
+			float[] values = {particle.area, particle.bounds.x, particle.bounds.y, particle.bounds.width, particle.bounds.height,
+					particle.xCenterOfMass, particle.yCenterOfMass, particle.aspectRatio, particle.perimeter, particle.circularity};
+
+			for(int c=0; c<columns.length; c++){
+				float expected = resultsTable.getColumn(resultsTable.getColumnIndex(columns[c]))[i];
+				if(Float.floatToIntBits(expected)!=Float.floatToIntBits(values[c])){
+					mismatches++;
+					if(mismatches<=5)
+						System.out.println(columns[c] + " of particle " + i + ": expected " + expected + ", found " + values[c]);
+				}
+			}
+
+			PolygonRoi outline = (PolygonRoi) particle.outline;
+			if(!Arrays.equals(particleAnalyzer.xCoordinates.get(i), Arrays.copyOf(outline.getXCoordinates(), outline.getNCoordinates()))
+					|| !Arrays.equals(particleAnalyzer.yCoordinates.get(i), Arrays.copyOf(outline.getYCoordinates(), outline.getNCoordinates()))){
+				mismatches++;
+				if(mismatches<=5)
+					System.out.println("the outline of particle " + i + " differs");
+			}
+		}
+	}
+
+
+
+	private static int clamp(int value){
+		return(Math.max(0, Math.min(255, value)));
+	}
+
+
+
+	/**
+	 * A particle analyzer that keeps a copy of every outline's coordinates,
+	 * because the Wand reuses its arrays for the next particle
+	 */
+	private static class OutlineKeepingParticleAnalyzer extends ParticleAnalyzer {
+
+		ArrayList<int[]> xCoordinates = new ArrayList<int[]>();
+		ArrayList<int[]> yCoordinates = new ArrayList<int[]>();
+
+		OutlineKeepingParticleAnalyzer(ResultsTable resultsTable, int minimumSize) {
+			super(SHOW_NONE, measurements, resultsTable, minimumSize, Integer.MAX_VALUE);
+		}
+
+		@Override
+		protected void saveResults(ImageStatistics stats, Roi roi) {
+			super.saveResults(stats, roi);
+			PolygonRoi outline = (PolygonRoi) roi;
+			xCoordinates.add(Arrays.copyOf(outline.getXCoordinates(), outline.getNCoordinates()));
+			yCoordinates.add(Arrays.copyOf(outline.getYCoordinates(), outline.getNCoordinates()));
+		}
+	}
+
+}
@@ -0,0 +1,156 @@
+/**
+ *
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.process.ColorProcessor;
+import iris.profiles.PlateAnalyzer;
+import iris.profiles.PlateResult;
+import iris.settings.BasicSettings;
+
+import java.util.Random;
+
+/**
+ * Checks that the results of a profile don't depend on the profiles that analyzed pictures before it
+ * in the same program (e.g. in the Iris service, see IrisServer).
+ * It draws a seeded random 384 plate, analyzes it with each profile in turn, then again in reverse order,
+ * with the plate format given per call rather than in the global settings,
+ * so that every profile runs once before and once after the others, and compares the .iris tables of both rounds.
+ * It prints the number of profiles whose results differ, or that could not analyze the plate.
+ * @author George Kritikos
+ *
+ */
+public class TestProfileIsolation {
+
+	/**
+	 * the profile for colonies darker than their background, which is given the plate inverted
+	 */
+	private static final String invertedProfileName = "Colony growth inverted";
+
+
+	/**
+	 * the profiles tested, each of them changes some of the segmentation or tile reader settings for its pictures
+	 */
+	private static final String[] profileNames = {
+		"Colony growth",
+		"Ecoli opacity 384",
+		"Morphology&Color profile",
+		"Growth profile inverted",
+		"CPRG 384",
+		invertedProfileName
+	};
+
+
+	/**
+	 * @param args : optionally, the seed of the plate drawn (default 1)
+	 */
+	public static void main(String[] args) {
+
+		long seed = 1;
+		if(args.length>0)
+			seed = Long.parseLong(args[0]);
+
+		ImagePlus plate = drawPlate(new Random(seed));
+		ImagePlus invertedPlate = new ImagePlus("plate.jpg", plate.getProcessor().duplicate());
+		invertedPlate.getProcessor().invert();
+
+		BasicSettings settings = new BasicSettings();
+		settings.numberOfRowsOfColonies = 16;
+		settings.numberOfColumnsOfColonies = 24;
+
+		String[] firstRound = new String[profileNames.length];
+		for(int p=0; p<profileNames.length; p++){
+			firstRound[p] = analyze(profileNames[p], settings, profileNames[p].equals(invertedProfileName) ? invertedPlate : plate);
+		}
+
+		int analyzed = 0;
+		int mismatches = 0;
+		for(int p=profileNames.length-1; p>=0; p--){
+			String secondRound = analyze(profileNames[p], settings, profileNames[p].equals(invertedProfileName) ? invertedPlate : plate);
+
+			//every profile should analyze the plate, with the plate format it's given
+			if(firstRound[p]==null){
+				mismatches++;
+				System.out.println(profileNames[p] + ": could not analyze the plate");
+				continue;
+			}
+			analyzed++;
+
+			if(!firstRound[p].equals(secondRound)){
+				mismatches++;
+				System.out.println(profileNames[p] + ": the results differ once the other profiles have run");
+			}
+		}
+
+		System.out.println("profiles: " + profileNames.length + " (" + analyzed + " analyzed the plate), mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * @return the .iris table of the plate, or null if the profile could not analyze it
+	 */
+	private static String analyze(String profileName, BasicSettings settings, ImagePlus plate){
+		PlateResult result = PlateAnalyzer.analyze(profileName, settings, plate, "plate.jpg", false);
+		if(result==null || !result.analyzed)
+			return(null);
+		return(result.irisTable);
+	}
+
+
+
+	/**
+	 * Draws a picture of a 384 plate the size of the robot camera's pictures: a dark, noisy plate with a bright rim,
+	 * and round, ragged colonies of random sizes and colours, some of them missing, where the croppers expect them
+	 * @param random
+	 * @return the picture
+	 */
+	private static ImagePlus drawPlate(Random random){
+		int width = 5184, height = 3456;
+		int plateLeft = 300, plateTop = 200, plateRight = 4790, plateBottom = 3250, rim = 40;
+		int left = 524, top = 352, right = 4566, bottom = 3098;
+		int rows = 16, columns = 24;
+		double tileWidth = (right-left)/(double)columns, tileHeight = (bottom-top)/(double)rows;
+
+		ColorProcessor processor = new ColorProcessor(width, height);
+		int[] pixels = (int[]) processor.getPixels();
+		for(int i=0; i<pixels.length; i++){
+			int x = i%width, y = i/width;
+			boolean inPlate = x>=plateLeft && x<plateRight && y>=plateTop && y<plateBottom;
+			boolean onRim = !inPlate && x>=plateLeft-rim && x<plateRight+rim && y>=plateTop-rim && y<plateBottom+rim;
+			int value = (onRim ? 200 : inPlate ? 20 : 5)+random.nextInt(30);
+			pixels[i] = 0xff000000 | (value<<16) | (value<<8) | value;
+		}
+
+		for(int i=0; i<rows; i++){
+			for(int j=0; j<columns; j++){
+				if(random.nextInt(10)==0)
+					continue;
+
+				int centerX = (int)(left+(j+0.5)*tileWidth)+random.nextInt(11)-5;
+				int centerY = (int)(top+(i+0.5)*tileHeight)+random.nextInt(11)-5;
+				int radius = 25+random.nextInt(40);
+				int red = 120+random.nextInt(120), green = 80+random.nextInt(150), blue = 60+random.nextInt(150);
+				int noise = 1+random.nextInt(40);
+
+				for(int y=centerY-radius-2; y<=centerY+radius+2; y++){
+					for(int x=centerX-radius-2; x<=centerX+radius+2; x++){
+						double distance = Math.hypot(x-centerX, y-centerY)+random.nextGaussian()*0.7;
+						if(distance>=radius)
+							continue;
+						//brighter and wrinkly towards the center
+						double shade = 1-0.4*distance/radius + 0.1*Math.sin(distance);
+						int r = Math.min(255, (int)(red*shade)+random.nextInt(noise));
+						int g = Math.min(255, (int)(green*shade)+random.nextInt(noise));
+						int b = Math.min(255, (int)(blue*shade)+random.nextInt(noise));
+						pixels[y*width+x] = 0xff000000 | (r<<16) | (g<<8) | b;
+					}
+				}
+			}
+		}
+
+		return(new ImagePlus("plate.jpg", processor));
+	}
+
+}
@@ -0,0 +1,172 @@
+/**
+ * 
+ */
+package iris.test;
+
+import iris.settings.BasicSettings;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares RisingTideSegmenter.risingTide with the rising tide it replaced,
+ * which searched the whole boxed list for the global minimum on every step.
+ * The old version is kept below as the reference. It runs both on seeded
+ * random arrays (runs of zeros, negative values, Integer.MAX_VALUE entries,
+ * zero or negative distances) and prints the number of mismatches.
+ * @author George Kritikos
+ *
+ */
+public class TestRisingTide {
+
+	/**
+	 * @param args : optionally, the number of arrays to test (default 20000)
+	 */
+	public static void main(String[] args) throws Exception {
+
+		int numberOfCases = 20000;
+		if(args.length>0)
+			numberOfCases = Integer.parseInt(args[0]);
+
+		//the new rising tide is package-private
+		Method risingTide = Class.forName("iris.imageSegmenters.RisingTideSegmenter")
+				.getDeclaredMethod("risingTide", int[].class, BasicSettings.class, boolean.class);
+		risingTide.setAccessible(true);
+
+		Random random = new Random(3);
+		int mismatches = 0;
+
+		for(int c=0; c<numberOfCases; c++){
+
+			int length = random.nextInt(200);
+			int[] sums = new int[length];
+			int mode = random.nextInt(5);
+			for(int i=0; i<length; i++){
+				switch(mode){
+				case 0: sums[i] = random.nextInt(5); break;
+				case 1: sums[i] = random.nextInt(3)==0 ? 0 : random.nextInt(1000); break;
+				case 2: sums[i] = random.nextInt(7)-2; break;
+				case 3: sums[i] = random.nextBoolean() ? Integer.MAX_VALUE : random.nextInt(4); break;
+				default: sums[i] = random.nextInt();
+				}
+			}
+
+			BasicSettings settings = new BasicSettings();
+			settings.numberOfRowsOfColonies = random.nextInt(20);
+			settings.numberOfColumnsOfColonies = settings.numberOfRowsOfColonies;
+			settings.minimumDistanceBetweenRows = random.nextInt(12)-1;
+			boolean isRows = random.nextBoolean();
+
+			ArrayList<Integer> sumsList = new ArrayList<Integer>();
+			for(int sum : sums)
+				sumsList.add(sum);
+
+			ArrayList<Integer> expected = oldRisingTide(sumsList, settings, isRows);
+			Object found = risingTide.invoke(null, sums.clone(), settings, isRows);
+
+			if(!expected.equals(found)){
+				mismatches++;
+				if(mismatches<=5)
+					System.out.println(Arrays.toString(sums) + " distance=" + settings.minimumDistanceBetweenRows
+							+ " expected=" + expected + " found=" + found);
+			}
+		}
+
+		System.out.println("arrays: " + numberOfCases + ", mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * The previous RisingTideSegmenter.risingTide, verbatim apart from boxing.
+	 */
+	private static ArrayList<Integer> oldRisingTide(ArrayList<Integer> sumOfBrightness, BasicSettings settings, boolean isRows){
+
+		int targetMinimaNumber;
+		if(isRows)
+			targetMinimaNumber = settings.numberOfRowsOfColonies+1;
+		else
+			targetMinimaNumber = settings.numberOfColumnsOfColonies+1;
+
+		ArrayList<Integer> minimaBag = new ArrayList<Integer>();
+
+		int iterations=0;
+		while(iterations<Math.pow(10, 9)){
+
+			iterations++;
+
+			Integer indexOfCurrentMinimum = Integer.valueOf(oldGetMinimumAndIndexBW(sumOfBrightness));
+			if(indexOfCurrentMinimum<0){
+				return(minimaBag);
+			}
+
+			Integer currentMinimum = Integer.valueOf(sumOfBrightness.get(indexOfCurrentMinimum));
+
+			if(currentMinimum==Integer.MAX_VALUE){
+				return(minimaBag);
+			}
+
+			int leftMostIndex = indexOfCurrentMinimum - settings.minimumDistanceBetweenRows;
+			int rightMostIndex = indexOfCurrentMinimum + settings.minimumDistanceBetweenRows;
+
+			if(leftMostIndex<0)
+				leftMostIndex = 0;
+
+			if(rightMostIndex>sumOfBrightness.size()-1)
+				rightMostIndex = sumOfBrightness.size()-1;
+
+			for(int i=leftMostIndex; i<=rightMostIndex; i++){
+				sumOfBrightness.set(i, Integer.MAX_VALUE);
+			}
+
+			minimaBag.add(indexOfCurrentMinimum);
+
+			if(minimaBag.size()>=targetMinimaNumber){
+				Collections.sort(minimaBag);
+				return(minimaBag);
+			}
+		}
+		return(minimaBag);
+	}
+
+
+
+	/**
+	 * The previous RisingTideSegmenter.getMinimumAndIndexBW, verbatim.
+	 */
+	private static int oldGetMinimumAndIndexBW(ArrayList<Integer> list_input){
+
+		int min_out = Integer.MAX_VALUE;
+		int index_out = -1;
+
+		for(int i=0; i<list_input.size(); i++){
+
+			if(list_input.get(i)<min_out){
+
+				min_out = list_input.get(i);
+				index_out = i;
+
+				if(min_out==0){
+
+					int originalZero = i;
+					int lastZero = i;
+
+					for(;i<list_input.size(); i++){
+						if(list_input.get(i)==0){
+							lastZero++;
+						}
+						else
+							break;
+					}
+					index_out = Math.round((lastZero-originalZero)/2)+originalZero;
+					break;
+				}
+			}
+		}
+		return(index_out);
+	}
+
+}
@@ -0,0 +1,257 @@
+/**
+ *
+ */
+package iris.test;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ColorProcessor;
+import ij.process.ImageConverter;
+import iris.utils.IntegralImage;
+import iris.utils.RotationEstimator;
+import iris.utils.Toolbox;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Compares RotationEstimator with the rotation estimation it replaced (Toolbox.calculateImageRotation),
+ * which rotated an interpolated copy of the black and white center of the plate for every angle,
+ * in steps of 0.25 degrees. The old version is kept below as the reference.
+ * It draws seeded random 384 plates the size of the robot camera's pictures, turned by known angles,
+ * half of them with small colonies (early timepoints) and half with grown ones, and prints for each
+ * how far the estimates are from the known angles (at most, and on average), how many of the new estimates
+ * are within 0.03 degrees, and how long both took.
+ * The mismatches are the plates whose new estimate is further off than the old one.
+ * @author George Kritikos
+ *
+ */
+public class TestRotationEstimator {
+
+	/**
+	 * the size of the colonies drawn, smallest and largest radius in pixels, for each kind of plate
+	 */
+	private static final String[] plateKinds = {"small colonies", "grown colonies"};
+	private static final int[][] colonyRadius = {{10, 25}, {30, 70}};
+
+	/**
+	 * the new estimates should be this close to the known angle, in degrees
+	 */
+	private static final double tolerance = 0.03;
+
+	/**
+	 * the step of the new estimates, in degrees: they're not further off than the old ones if within this
+	 */
+	private static final double step = 0.01;
+
+
+	/**
+	 * @param args : optionally, the number of plates of each kind to test (default 10)
+	 */
+	public static void main(String[] args) {
+
+		int numberOfPlates = 10;
+		if(args.length>0)
+			numberOfPlates = Integer.parseInt(args[0]);
+
+		Random random = new Random(13);
+		int mismatches = 0;
+
+		for(int k=0; k<plateKinds.length; k++){
+
+			double oldMaximumError = 0, newMaximumError = 0;
+			double oldTotalError = 0, newTotalError = 0;
+			long oldTime = 0, newTime = 0;
+			int withinTolerance = 0;
+
+			for(int p=0; p<numberOfPlates; p++){
+
+				double angle = Math.round((random.nextDouble()*3.8-1.9)*100)/100.0;
+				ImagePlus plate = drawPlate(random, angle, colonyRadius[k][0], colonyRadius[k][1]);
+
+				long start = System.nanoTime();
+				double expected = oldCalculateImageRotation(plate);
+				oldTime += System.nanoTime()-start;
+
+				start = System.nanoTime();
+				double found = RotationEstimator.estimateRotation(plate);
+				newTime += System.nanoTime()-start;
+
+				double oldError = Math.abs(expected-angle);
+				double newError = Math.abs(found-angle);
+				oldMaximumError = Math.max(oldMaximumError, oldError);
+				newMaximumError = Math.max(newMaximumError, newError);
+				oldTotalError += oldError;
+				newTotalError += newError;
+
+				if(newError<=tolerance+1e-9)
+					withinTolerance++;
+
+				if(newError>oldError+step+1e-9){
+					mismatches++;
+					System.out.println(plateKinds[k] + ", plate " + p + ": angle " + angle
+							+ ", old estimate " + expected + ", new estimate " + found);
+				}
+
+				plate.flush();
+			}
+
+			System.out.println(plateKinds[k] + ": plates: " + numberOfPlates
+					+ ", maximum error: old " + String.format("%.2f", oldMaximumError) + ", new " + String.format("%.2f", newMaximumError)
+					+ ", mean error: old " + String.format("%.3f", oldTotalError/numberOfPlates)
+					+ ", new " + String.format("%.3f", newTotalError/numberOfPlates)
+					+ ", new within " + tolerance + ": " + withinTolerance
+					+ ", time: old " + oldTime/1000000 + "ms, new " + newTime/1000000 + "ms");
+		}
+
+		System.out.println("mismatches: " + mismatches);
+	}
+
+
+
+	/**
+	 * Draws a 384 plate the size of the robot camera's pictures: a dark, noisy plate
+	 * with round colonies of random sizes, some of them missing.
+	 * The colonies are drawn where they would be on the straight plate turned the other way round the center
+	 * of the picture, rather than rotating a picture of the straight plate, which would blur it
+	 * @param random
+	 * @param angle: in degrees, clockwise, rotating the picture by this straightens the plate (see Toolbox.rotateImage)
+	 * @param minimumRadius
+	 * @param maximumRadius
+	 * @return the picture
+	 */
+	private static ImagePlus drawPlate(Random random, double angle, int minimumRadius, int maximumRadius){
+		int width = 4900, height = 3700;
+		int left = 300, top = 250, right = 4600, bottom = 3450;
+		int rows = 16, columns = 24;
+		double tileWidth = (right-left)/(double)columns, tileHeight = (bottom-top)/(double)rows;
+		double cosine = Math.cos(Math.toRadians(-angle)), sine = Math.sin(Math.toRadians(-angle));
+
+		ColorProcessor processor = new ColorProcessor(width, height);
+		int[] pixels = (int[]) processor.getPixels();
+		for(int i=0; i<pixels.length; i++){
+			int value = 20+random.nextInt(30);
+			pixels[i] = 0xff000000 | (value<<16) | (value<<8) | value;
+		}
+
+		for(int i=0; i<rows; i++){
+			for(int j=0; j<columns; j++){
+				if(random.nextInt(10)==0)
+					continue;
+
+				double straightX = left+(j+0.5)*tileWidth - width/2.0;
+				double straightY = top+(i+0.5)*tileHeight - height/2.0;
+				int centerX = (int)Math.round(width/2.0 + straightX*cosine - straightY*sine);
+				int centerY = (int)Math.round(height/2.0 + straightX*sine + straightY*cosine);
+				int radius = minimumRadius+random.nextInt(maximumRadius-minimumRadius+1);
+				int brightness = 150+random.nextInt(100);
+
+				for(int y=centerY-radius; y<=centerY+radius; y++){
+					for(int x=centerX-radius; x<=centerX+radius; x++){
+						if((x-centerX)*(x-centerX)+(y-centerY)*(y-centerY)>=radius*radius)
+							continue;
+						int value = Math.min(255, brightness+random.nextInt(20));
+						pixels[y*width+x] = 0xff000000 | (value<<16) | (value<<8) | value;
+					}
+				}
+			}
+		}
+
+		return(new ImagePlus("plate.jpg", processor));
+	}
+
+
+
+	/**
+	 * The previous Toolbox.calculateImageRotation, verbatim apart from the single colony check
+	 */
+	private static double oldCalculateImageRotation(ImagePlus originalImage) {
+
+		//1. get a subset of that picture
+		int width = originalImage.getWidth();
+		int height = originalImage.getHeight();
+
+		int roiX = (int)Math.round(3.0*width/8.0);
+		int roiY = (int)Math.round(3.0*height/8.0);
+		int roiWidth = (int)Math.round(1.0*width/4.0);
+		int roiHeight = (int)Math.round(1.0*height/4.0);
+
+		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
+		ImagePlus imageSubset = Toolbox.cropImage(originalImage, centerRectangle);
+
+
+		//2. make grayscale, then auto-threshold to get black/white picture
+		ImageConverter imageConverter = new ImageConverter(imageSubset);
+		imageConverter.convertToGray8();
+
+		//convert to b/w
+		Toolbox.turnImageBW_Otsu(imageSubset);
+
+
+		//3. iterate over different angles
+		double initialAngle = -2;
+		double finalAngle = 2;
+		double angleIncrements = 0.25;
+
+
+		double bestAngle = 0;
+		double bestVariance = -Double.MAX_VALUE;
+
+		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
+			//3.1 rotate the b/w picture
+			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);
+
+			//3.2 calculate sums of rows and columns
+			ArrayList<Integer> sumOfColumns = IntegralImage.toIntegerList(IntegralImage.sumOfColumns(rotatedImage));
+			ArrayList<Integer> sumOfRows = IntegralImage.toIntegerList(IntegralImage.sumOfRows(rotatedImage));
+
+			//3.3 calculate their variances
+			double varianceColumns = getVariance(sumOfColumns);
+			double varianceRows = getVariance(sumOfRows);
+			double varianceSum = varianceColumns + varianceRows;
+
+			//3.4 pick the best (biggest) variance, store it's angle
+			if(varianceSum > bestVariance){
+				bestAngle = angle;
+				bestVariance = varianceSum;
+			}
+
+			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
+		}
+
+		return(bestAngle);
+	}
+
+
+	/**
+	 * The previous Toolbox.getMean, verbatim
+	 */
+	private static double getMean(ArrayList<Integer> list){
+
+		int sum = 0;
+
+		for(int i=0;i<list.size();i++){
+			sum += list.get(i);
+		}
+
+		return(sum/list.size());
+	}
+
+
+	/**
+	 * The previous Toolbox.getVariance, verbatim
+	 */
+	private static double getVariance(ArrayList<Integer> list){
+		double mean = getMean(list);
+
+		double sum = 0;
+
+		for(int i=0;i<list.size();i++){
+			sum += Math.pow(list.get(i)-mean, 2);
+		}
+
+		return(sum/(list.size()-1));
+
+	}
+
+}
@@ -6,7 +6,8 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -23,30 +24,25 @@ public class BasicTileReaderInput extends TileReaderInput {
 	/**
 	 * Creates a BasicTileReaderInput obect, given the cropped, grayscaled whole image and the ROI
 	 * corresponding to the image tile to be processed.
-	 * The Roi is applied to the image, and then the ROI is copied to a new ImagePlus
-	 * object, which is saved in this BasicTileReaderInput object.
+	 * The area under the Roi is copied to a new ImagePlus object (see Toolbox.cropImage),
+	 * which is saved in this BasicTileReaderInput object.
 	 * @param croppedImage
 	 * @param roi
 	 * @param settings_
 	 */
 	public BasicTileReaderInput(ImagePlus croppedImage, Roi roi, BasicSettings settings_){
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			//single colony: tile is the croppedImage itself
 			this.tileImage = croppedImage.duplicate(); 
 
-			if(IrisFrontend.settings.userDefinedRoi==true){
+			if(PictureSettings.current().userDefinedRoi==true){
 				//preserve the user-defined ROI
 				this.tileImage.setRoi(croppedImage.getRoi());
 			}
 		}
 		else{		
-			synchronized(settings_){
-				croppedImage.setRoi(roi);
-				croppedImage.copy(false);
-
-				this.tileImage = ImagePlus.getClipboard();
-			}
+			this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		}
 		this.settings = settings_;
 	}
@@ -81,12 +77,7 @@ public class BasicTileReaderInput extends TileReaderInput {
 	 */
 	public BasicTileReaderInput(ImagePlus croppedImage, Roi roi,
 			BasicSettings settings_, Point colonyCenter_) {
-		synchronized(settings_){
-			croppedImage.setRoi(roi);
-			croppedImage.copy(false);
-
-			this.tileImage = ImagePlus.getClipboard();
-		}
+		this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		this.settings = settings_;
 
 		colonyCenter = new Point(colonyCenter_);
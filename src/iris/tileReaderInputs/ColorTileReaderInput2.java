@@ -6,6 +6,7 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.ColorSettings;
+import iris.utils.Toolbox;
 
 import java.awt.Point;
 
@@ -35,15 +36,9 @@ public class ColorTileReaderInput2 extends TileReaderInput {
 	 * @param settings_
 	 */
 	public ColorTileReaderInput2(ImagePlus croppedImage, ImagePlus thresholdedImage, Roi roi, ColorSettings settings_){
-		croppedImage.setRoi(roi);
-		croppedImage.copy(false);
-		this.tileImage = ImagePlus.getClipboard();
-		ImagePlus.resetClipboard();
+		this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		
-		thresholdedImage.setRoi(roi);
-		thresholdedImage.copy(false);
-		this.thresholdedTileImage = ImagePlus.getClipboard();
-		ImagePlus.resetClipboard();
+		this.thresholdedTileImage = Toolbox.cropImage(thresholdedImage, roi);
 		
 		this.settings = settings_;
 	}
@@ -60,15 +55,9 @@ public class ColorTileReaderInput2 extends TileReaderInput {
 	 * @param settings_
 	 */
 	public ColorTileReaderInput2(ImagePlus croppedImage, ImagePlus thresholdedImage, Roi roi, ColorSettings settings_, Point colonyCenter_){
-		croppedImage.setRoi(roi);
-		croppedImage.copy(false);
-		this.tileImage = ImagePlus.getClipboard();
-		ImagePlus.resetClipboard();
+		this.tileImage = Toolbox.cropImage(croppedImage, roi);
 		
-		thresholdedImage.setRoi(roi);
-		thresholdedImage.copy(false);
-		this.thresholdedTileImage = ImagePlus.getClipboard();
-		ImagePlus.resetClipboard();
+		this.thresholdedTileImage = Toolbox.cropImage(thresholdedImage, roi);
 		
 		this.settings = settings_;
 		
@@ -0,0 +1,71 @@
+/**
+ *
+ */
+package iris.tileReaderInputs;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import iris.settings.ColorSettings;
+import iris.utils.TileView;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+
+/**
+ * This class holds the input of the CombinedTileReader: the tile, in both the grayscale and the colour picture of the plate,
+ * and the colony that a size tile reader (e.g. BasicTileReaderHSB) has already found in it.
+ *
+ * The tile is not copied out of the plate pictures, it is only viewed (see TileView);
+ * the plate pictures are kept for the cases the CombinedTileReader leaves to the separate tile readers.
+ * @author George Kritikos
+ *
+ */
+public class CombinedTileReaderInput extends TileReaderInput {
+	public ColorSettings settings;
+
+	public ImagePlus grayscaleCroppedImage;
+	public ImagePlus colourCroppedImage;
+	public Roi tileRoi;
+
+	/**
+	 * the tile, in the grayscale and the colour picture, null if the tile Roi is not a plain rectangle
+	 */
+	public TileView grayscaleTile = null;
+	public TileView colourTile = null;
+
+	public Roi colonyRoi;
+	public int colonySize;
+	public Point colonyCenter;
+
+
+	/**
+	 * @param grayscaleCroppedImage_: the grayscale picture of the plate, the one the opacity is measured on
+	 * @param colourCroppedImage_: the colour picture of the plate
+	 * @param tileRoi_: the tile, as the grid gives it
+	 * @param colonyRoi_: the colony, in the coordinates of the tile
+	 * @param colonySize_
+	 * @param colonyCenter_: in the coordinates of the tile
+	 * @param settings_
+	 */
+	public CombinedTileReaderInput(ImagePlus grayscaleCroppedImage_, ImagePlus colourCroppedImage_, Roi tileRoi_,
+			Roi colonyRoi_, int colonySize_, Point colonyCenter_, ColorSettings settings_){
+
+		this.grayscaleCroppedImage = grayscaleCroppedImage_;
+		this.colourCroppedImage = colourCroppedImage_;
+		this.tileRoi = tileRoi_;
+		this.colonyRoi = colonyRoi_;
+		this.colonySize = colonySize_;
+		this.colonyCenter = colonyCenter_;
+		this.settings = settings_;
+
+		//view the same part of the pictures that Toolbox.cropImage would copy for a rectangular tile
+		if(tileRoi!=null && tileRoi.getType()==Roi.RECTANGLE){
+			Rectangle bounds = tileRoi.getBounds();
+			if(bounds.width!=0 || bounds.height!=0){
+				this.grayscaleTile = new TileView(grayscaleCroppedImage, bounds);
+				this.colourTile = new TileView(colourCroppedImage, bounds);
+			}
+		}
+	}
+
+}
@@ -6,7 +6,7 @@ package iris.tileReaderInputs;
 import ij.ImagePlus;
 import ij.gui.Roi;
 import iris.settings.BasicSettings;
-import iris.ui.IrisFrontend;
+import iris.settings.PictureSettings;
 
 import java.awt.Point;
 
@@ -48,7 +48,7 @@ public class OpacityTileReaderInput extends BasicTileReaderInput {
 		this.colonyRoi = colonyRoi_;
 		this.colonySize = colonySize_;
 		
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(PictureSettings.current().userDefinedRoi){
 			//get the user-defined ROI from the tile image 
 			//(this is where its normally saved when user selects the roi
 			this.colonyRoi = this.tileImage.getRoi(); 
@@ -0,0 +1,18 @@
+/**
+ *
+ */
+package iris.tileReaderOutputs;
+
+/**
+ * This class holds the outputs of the CombinedTileReader, which are the same as those the
+ * ColorTileReaderHSB and the OpacityTileReader give for a colony that's already been found
+ * @author George Kritikos
+ *
+ */
+public class CombinedTileReaderOutput extends TileReaderOutput {
+
+	public ColorTileReaderOutput colourOutput = new ColorTileReaderOutput();
+
+	public OpacityTileReaderOutput opacityOutput = new OpacityTileReaderOutput();
+
+}
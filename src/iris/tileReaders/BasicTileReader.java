@@ -3,15 +3,12 @@
  */
 package iris.tileReaders;
 
-import ij.ImagePlus;
-import ij.gui.Roi;
-import ij.measure.Measurements;
-import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.ParticleLabeller;
+import iris.utils.ParticleLabeller.Particle;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 /**
@@ -33,47 +30,40 @@ public class BasicTileReader {
 
 
 		//1. apply a threshold at the tile, using the Otsu algorithm
-		ImagePlus originalTileImage = input.tileImage.duplicate();
+		//thresholding doesn't change the pixels, so the tile is measured in place to check whether it's empty, instead of on a copy
+		TileView originalTile = new TileView(input.tileImage);
+		int threshold = Toolbox.getThreshold(input.tileImage, Method.Otsu);
 		Toolbox.turnImageBW_Otsu_auto(input.tileImage);
 
 
 
-		//2. perform particle analysis on the thresholded tile
+		//2. find the particles of the thresholded tile, at least 5 pixels big
+		//these are the same as the ParticleAnalyzer would find, but only the outline of the biggest one gets traced
+		ParticleLabeller particleLabeller = new ParticleLabeller(input.tileImage, 5);
+		Particle[] particles = particleLabeller.getParticles();
 
-		//create the results table, where the results of the particle analysis will be shown
-		ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
-		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-				resultsTable, 5, Integer.MAX_VALUE);
-		
-		ParticleAnalyzer.setRoiManager(roiManager);
-
-		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
-
-		Roi[] rois = roiManager.getRoisAsArray();
-
-
-		//3.1 check if the returned results table is empty
-		if(resultsTable.getCounter()==0){
+		//3.1 check if there were any particles found
+		if(particles.length==0){
 			output.emptyResulsTable = true; // this is highly abnormal
 			output.colonySize = 0;//return a colony size of zero
 
 			input.cleanup(); //clear the tile image here, since we don't need it anymore
-			originalTileImage.flush();
 			
 			return(output);
 		}
 
+		//the biggest particle is the one reported, its outline is needed to tell whether it's round enough to be a colony
+		int indexOfBiggestParticle = particleLabeller.getIndexOfBiggestParticle();
+		Particle biggestParticle = particles[indexOfBiggestParticle];
+		particleLabeller.traceOutline(biggestParticle);
+
 		//3.2 check to see if the tile was empty. If so, return a colony size of zero
-		if(isTileEmpty(resultsTable, originalTileImage)){
+		if(isTileEmpty(particles, biggestParticle, originalTile, threshold)){
 			output.emptyTile = true;
 			output.colonySize = 0;//return a colony size of zero
 
 			input.cleanup(); //clear the tile image here, since we don't need it anymore
-			originalTileImage.flush();
 			
 			return(output);
 		}
@@ -83,19 +73,15 @@ public class BasicTileReader {
 		//3.2 if there was a colony there, return the area of the biggest particle
 		//this should also clear away contaminations, because normally the contamination
 		//area will be smaller than the colony area, so the contamination will never be reported
-		int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
-		output.colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
-		output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-		output.colonyROI = rois[indexOfBiggestParticle];
-		
-		
-		originalTileImage.flush();
+		output.colonySize = getBiggestParticleAreaPlusPerimeter(biggestParticle);
+		output.circularity = biggestParticle.circularity;
+		output.colonyROI = biggestParticle.outline;
 		
 		return(output);//returns the biggest result
 
 
 		//TODO: still there is no way to filter out contaminations in case the tile is empty
-		//this should be straight forward to do, since the center of mass (see ResultsTable) of the contamination
+		//this should be straight forward to do, since the center of mass (see ParticleLabeller.Particle) of the contamination
 		//should be very far from the center of the tile
 
 	}
@@ -103,28 +89,20 @@ public class BasicTileReader {
 
 
 	/**
-	 * This function uses the results table produced by the particle analyzer to
+	 * This function uses the particles found in the tile to
 	 * find out whether this tile has a colony in it or it's empty.
 	 * This function uses 3 sorts of filters, trying to pick up empty spots:
 	 * 1. how many particles were found
 	 * 2. the circularity of the biggest particle
 	 * 3. the coordinates of the bounding rectangle of the biggest particle
 	 * Returns true if the tile was empty, false if there is a colony in it.
+	 * @param biggestParticle: its outline must have been traced
+	 * @param threshold: the Otsu threshold of the tile
 	 */
-	private static boolean isTileEmpty(ResultsTable resultsTable, ImagePlus tile) {
-
-		//get the columns that we're interested in out of the results table
-		int numberOfParticles = resultsTable.getCounter();
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));//get the areas of all the particles the particle analyzer has found
-		float X_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BX"));//get the X of the bounding rectangles of all the particles
-		float Y_bounding_rectangles[] = resultsTable.getColumn(resultsTable.getColumnIndex("BY"));//get the Y of the bounding rectangles of all the particles
-		float X_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("XM"));//get the X of the center of mass of all the particles
-		float Y_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("YM"));//get the Y of the center of mass of all the particles
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));//get the circularities of all the particles
-		float aspect_ratios[] = resultsTable.getColumn(resultsTable.getColumnIndex("AR"));//get the aspect ratios of all the particles
-
-		int threshold = Toolbox.getThreshold(tile, Method.Otsu);
-		
+	private static boolean isTileEmpty(Particle[] particles, Particle biggestParticle, TileView tile, int threshold) {
+
+		int numberOfParticles = particles.length;
+
 		/**
 		 * Penalty is a number given to this tile if some of it's attributes (e.g. circularity of biggest particle)
 		 * are borderline to being considered that of an empty tile.
@@ -135,9 +113,8 @@ public class BasicTileReader {
 
 
 		//get the width and height of the tile
-		int tileDimensions[] = tile.getDimensions();
-		int tileWidth = tileDimensions[0];
-		int tileHeight = tileDimensions[1];
+		int tileWidth = tile.getWidth();
+		int tileHeight = tile.getHeight();
 
 
 		//check for the number of detected particles. 
@@ -166,19 +143,18 @@ public class BasicTileReader {
 
 		//for the following, we only check the largest particle
 		//which is the one who would be reported either way if we decide that this spot is not empty
-		int indexOfMax = getIndexOfMaximumElement(areas);
 
 
 		//check for unusually high aspect ratio
 		//Normal colonies would have an aspect ratio around 1, but contaminations have much higher aspect ratios (around 4)
-		if(aspect_ratios[indexOfMax]>2){
+		if(biggestParticle.aspectRatio>2){
 			return(true); 
 			//the tile is empty, the particle was just a contamination
 			//TODO: notify the user that there has been a contamination in the plate in this spot
 		}
 
 		//borderline situation
-		if(aspect_ratios[indexOfMax]>1.2){
+		if(biggestParticle.aspectRatio>1.2){
 			penalty++;
 		}
 
@@ -190,7 +166,7 @@ public class BasicTileReader {
 		//where it reached 0.17.
 		//Since this threshold would characterize a spot as empty, we will be more relaxed and set it at 0.20
 		//everything below that, gets characterized as an empty spot
-		if(circularities[indexOfMax]<0.20){
+		if(biggestParticle.circularity<0.20){
 			return(true); //it's empty
 		}
 
@@ -220,11 +196,11 @@ public class BasicTileReader {
 		//it would be extremely difficult for the colony to be overgrowing on both the left and top borders, because of the way the
 		//image segmentation works
 		//So, I'll only characterize a spot to be empty if both X and Y are zero.
-		if(X_bounding_rectangles[indexOfMax]==0 && Y_bounding_rectangles[indexOfMax]==0){
+		if(biggestParticle.bounds.x==0 && biggestParticle.bounds.y==0){
 
 			//it's growing near the border, but how round is it?
 			//if it's circularity is above 0.5, then we conclude that this is a colony
-			if(circularities[indexOfMax]>0.5){
+			if(biggestParticle.circularity>0.5){
 				return(false); //it's a normal colony
 			}
 
@@ -236,37 +212,8 @@ public class BasicTileReader {
 	}
 
 	
-	private static int getIndexOfBiggestParticle(ResultsTable resultsTable){
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = getIndexOfMaximumElement(areas);
-		
-		return(indexOfMax);
-	}
-
-
-	/**
-	 * Returns the area of the biggest particle in the results table
-	 */
-	private static int getBiggestParticleArea(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-		
-		
-		int largestParticleArea = Math.round(areas[indexOfBiggestParticle]);
-
-		return(largestParticleArea);
-	}
-	
-	
 	/**
-	 * Returns the area of the biggest particle in the results table.
+	 * Returns the area of the biggest particle (its outline must have been traced).
 	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
 	 * in which it is known that the outer pixels of the colony are missing.
 	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
@@ -274,57 +221,13 @@ public class BasicTileReader {
 	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
 	 * thus overcorrecting the stringency of the thresholding algorithm. 
 	 */
-	private static int getBiggestParticleAreaPlusPerimeter(ResultsTable resultsTable, int indexOfBiggestParticle) {
+	private static int getBiggestParticleAreaPlusPerimeter(Particle biggestParticle) {
 
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-		
 		//get the area and perimeter of the biggest particle
-		int largestParticleArea = Math.round(areas[indexOfMax]);
-		int largestParticlePerimeter = Math.round(perimeters[indexOfMax]);
+		int largestParticleArea = Math.round(biggestParticle.area);
+		int largestParticlePerimeter = Math.round(biggestParticle.perimeter);
 
 		return(largestParticleArea+largestParticlePerimeter);
 	}
-	
-	
-	
-	/**
-	 * Returns the circularity of the biggest particle in the results table.
-	 */
-	private static float getBiggestParticleCircularity(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));
-		
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		return(circularities[indexOfMax]);
-	}
-
-
-
-	/**
-	 * This method simply iterates through this array and finds the index
-	 * of the largest element
-	 */
-	private static int getIndexOfMaximumElement(float[] areas) {
-		int index = -1;
-		float max = -Float.MAX_VALUE;
-
-		for (int i = 0; i < areas.length; i++) {
-			if(areas[i]>max){
-				max = areas[i];
-				index = i;
-			}
-		}
-
-		return(index);
-	}
 
 }
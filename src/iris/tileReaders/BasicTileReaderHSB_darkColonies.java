@@ -13,14 +13,15 @@ import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.Binary;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HeadlessParticleAnalyzer;
+import iris.utils.IntegralImage;
 import iris.utils.StdStats;
 import iris.utils.Toolbox;
 
@@ -58,7 +59,7 @@ public class BasicTileReaderHSB_darkColonies {
 		BasicTileReaderOutput output = new BasicTileReaderOutput();
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 			//1. check if the tile is empty or not
 			boolean emptyTile_simple = isTileEmpty_simple(tileCopy);
@@ -83,19 +84,17 @@ public class BasicTileReaderHSB_darkColonies {
 
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = new RoiManager(true);
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
 			//old//ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER,
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/,
 					//new, showing results //ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_OUTLINES +ParticleAnalyzer.SHOW_RESULTS /*+ ParticleAnalyzer.EXCLUDE_EDGE_PARTICLES*/ +ParticleAnalyzer.ADD_TO_MANAGER,
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-			ParticleAnalyzer.setRoiManager(roiManager);
 			particleAnalyzer.analyze(tileCopy); //it gets the image processor internally
 
-			Roi[] rois = roiManager.getRoisAsArray();
+			Roi[] rois = particleAnalyzer.getRois();
 
 			//3.1 check if the returned results table is empty
 			if(resultsTable.getCounter()==0){
@@ -191,30 +190,7 @@ public class BasicTileReaderHSB_darkColonies {
 	 * @return
 	 */
 	private static double[] sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toDoubleArray(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
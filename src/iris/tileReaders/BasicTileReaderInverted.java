@@ -9,13 +9,13 @@ import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
+import iris.utils.HeadlessParticleAnalyzer;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -48,18 +48,16 @@ public class BasicTileReaderInverted {
 
 		//create the results table, where the results of the particle analysis will be shown
 		ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
+		HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
 		
-		ParticleAnalyzer.setRoiManager(roiManager);
 
 		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
 
-		Roi[] rois = roiManager.getRoisAsArray();
+		Roi[] rois = particleAnalyzer.getRois();
 
 
 		//3.1 check if the returned results table is empty
@@ -11,16 +11,18 @@ import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HeadlessParticleAnalyzer;
+import iris.utils.IntegralImage;
 import iris.utils.StdStats;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -64,7 +66,7 @@ public class BasicTileReader_Bsu {
 		BasicTileReaderOutput output = new BasicTileReaderOutput();
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 			//1. apply a threshold at the tile, using a local thresholding algorithm
 			
@@ -80,17 +82,15 @@ public class BasicTileReader_Bsu {
 
 			//create the results table, where the results of the particle analysis will be shown
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = new RoiManager(true);
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER, 
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
 
-			ParticleAnalyzer.setRoiManager(roiManager);
 			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
 
-			Roi[] rois = roiManager.getRoisAsArray();
+			Roi[] rois = particleAnalyzer.getRois();
 
 
 
@@ -151,7 +151,7 @@ public class BasicTileReader_Bsu {
 		}
 
 		//get minimum radius
-		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(input.tileImage.duplicate(), output.colonyROI);
+		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(new TileView(input.tileImage).toImage(), output.colonyROI);
 		double minimumDistance = Toolbox.getMinimumPointDistance(output.colonyCenter, colonyRoiPerimeter);
 		//double medianDistance = Toolbox.getMedianPointDistance(output.colonyCenter, colonyRoiPerimeter);
 
@@ -214,17 +214,15 @@ public class BasicTileReader_Bsu {
 
 		//create the results table, where the results of the particle analysis will be shown
 		ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES+ParticleAnalyzer.ADD_TO_MANAGER, 
+		HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
 
-		ParticleAnalyzer.setRoiManager(roiManager);
 		particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
 
-		Roi[] rois = roiManager.getRoisAsArray();
+		Roi[] rois = particleAnalyzer.getRois();
 
 
 
@@ -339,30 +337,7 @@ public class BasicTileReader_Bsu {
 	 * @return
 	 */
 	private static double[] sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toDoubleArray(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -9,14 +9,14 @@ import ij.ImagePlus;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.CPRGTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HeadlessParticleAnalyzer;
 
 /**
  * This class provides with methods that output the color of a colony.
@@ -61,7 +61,7 @@ public class CPRGColorTileReader {
 		//
 		//
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 
 
@@ -87,11 +87,9 @@ public class CPRGColorTileReader {
 			ResultsTable resultsTable = new ResultsTable();
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE, 
 					Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 
 			particleAnalyzer.analyze(grayTile); //it gets the image processor internally
 			grayTile.flush();//we don't need it anymore
@@ -108,7 +106,7 @@ public class CPRGColorTileReader {
 
 
 			//4. remove the background to measure color only from the colony
-			output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+			output.colonyROI = particleAnalyzer.getRois()[biggestParticleIndex];
 			//first check that there is actually a selection there..
 			if(output.colonyROI.getBounds().width<=0 || output.colonyROI.getBounds().height<=0){
 				output.colorSumInTile=0;
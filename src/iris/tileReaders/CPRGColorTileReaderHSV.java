@@ -7,16 +7,16 @@ import ij.ImagePlus;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.CPRGTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HSBConverter;
+import iris.utils.HeadlessParticleAnalyzer;
 
-import java.util.ArrayList;
 
 /**
  * This class provides with methods that output the color of a colony.
@@ -62,7 +62,7 @@ public class CPRGColorTileReaderHSV {
 		//
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 
 
@@ -89,11 +89,9 @@ public class CPRGColorTileReaderHSV {
 		ResultsTable resultsTable = new ResultsTable();
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
+		HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE, 
 				Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
 
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
 
 		particleAnalyzer.analyze(grayTile); //it gets the image processor internally
 		grayTile.flush();//we don't need it anymore
@@ -110,7 +108,7 @@ public class CPRGColorTileReaderHSV {
 
 
 		//4. remove the background to measure color only from the colony
-		output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+		output.colonyROI = particleAnalyzer.getRois()[biggestParticleIndex];
 		//first check that there is actually a selection there..
 		if(output.colonyROI.getBounds().width<=0||output.colonyROI.getBounds().height<=0){
 			output.colorSumInTile=0;
@@ -210,61 +208,20 @@ public class CPRGColorTileReaderHSV {
 
 		ColorProcessor processor = (ColorProcessor) tile.getProcessor();
 
-		//get the 8-bit (1 byte) channels, each value in that array corresponds to one pixel
-		byte[] red_byte = processor.getChannel(1);
-		byte[] green_byte = processor.getChannel(2);
-		byte[] blue_byte = processor.getChannel(3);
-		
-	
-		int sizeInPixels = blue_byte.length;
-		
-		//convert them into int arrays to have more headroom to perform math operations
-		int[] red_int = convertByteArrayToIntArray(red_byte);
-		int[] green_int = convertByteArrayToIntArray(green_byte);
-		int[] blue_int = convertByteArrayToIntArray(blue_byte);
-		
-		/**
-		 * This variable will now hold all the HSV values 
-		 * (HSV is a synonym to HSB that sounds a bit better)
-		 */
-		ArrayList<float[]> HSVimage = new ArrayList<float[]>();
-		
-		//for each pixel in the image
-		for (int i = 0; i < sizeInPixels; i++) {
-			//get it's hsb values
-			float[] hsbvals = new float[3];
-			java.awt.Color.RGBtoHSB(red_int[i], green_int[i], blue_int[i], hsbvals);
-			
-			//transform the Hue into 0-360 space (from 0-1)
-			hsbvals[0] = hsbvals[0]*360;
-			
-			//add it to our list of HSB pixels
-			HSVimage.add(hsbvals);
-		}
-		
-		
-//		//we're only interested in Hue (which is the first hsb value)
-//		//but we want to get it in 0-360 space, now it's 0-1
-//		for (int i = 0; i < HSVimage.size(); i++) {
-//			//get this HSV, transform it to 360 and put it back into place
-//			float[] thisHSV = HSVimage.get(i);
-//			thisHSV[0] = thisHSV[0]*360;
-//			
-//			HSVimage.set(i, thisHSV);
-//		}
+		//we're only interested in Hue, no need to calculate the saturation and brightness
+		int[] pixels = (int[]) processor.getPixels();
+		int sizeInPixels = pixels.length;
+
+		float[] hues = new float[sizeInPixels];
+		HSBConverter.getHue(pixels, hues);
 		
 		
 		//calculate our measure of how positive a pixel is
 		int[] relative_colour_intensity = new int[sizeInPixels];
 		
-		float[] angles = new float[HSVimage.size()];
-		
-		for (int i = 0; i < HSVimage.size(); i++) {
-			angles[i] = HSVimage.get(i)[0];
-		}
-
 		for (int i = 0; i < relative_colour_intensity.length; i++) {
-			float angle = HSVimage.get(i)[0];
+			//transform the Hue into 0-360 space (from 0-1)
+			float angle = hues[i]*360;
 			relative_colour_intensity[i] = Math.round( (2*360+(-290-angle)) % 360);
 			
 			//check if this value is more than the maximum we can get.
@@ -283,24 +240,6 @@ public class CPRGColorTileReaderHSV {
 		return relative_colour_intensity;
 	}
 
-
-	/**
-	 * This function converts a byte array into an int array
-	 * just because Java doesn't have a cool solution for this
-	 * @param byteArray
-	 * @return
-	 */
-	private static int[] convertByteArrayToIntArray(byte[] byteArray){
-
-		int[] intArray = new int[byteArray.length];
-
-		for(int i=0; i<byteArray.length; i++){
-			intArray[i] = byteArray[i] & 0xFF;
-		}
-
-		return(intArray);
-	}
-
 	/**
 	 * This helper function multiplies an array by a constant factor
 	 * @param factor
@@ -10,17 +10,19 @@ import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ColorProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput2;
 import iris.tileReaderInputs.ColorTileReaderInput3;
 import iris.tileReaderOutputs.ColorTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HSBConverter;
+import iris.utils.HeadlessParticleAnalyzer;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -48,6 +50,15 @@ public class ColorTileReaderHSB {
 	private static int diameter = 24;
 
 
+	/**
+	 * the gains of the colour (biofilm) score, the same in all the functions that use it (also used by the CombinedTileReader)
+	 */
+	static final float red_gain = 2;
+	static final float blue_green_gain = 1;
+	static final float color_gain = 1;
+	static final float brightness_gain = 2;
+
+
 
 	public static ColorTileReaderOutput processTile(ColorTileReaderInput input){
 
@@ -68,13 +79,11 @@ public class ColorTileReaderHSB {
 		int height = grayTile.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		//creates a new image using the bSource (brightness)
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
@@ -119,7 +128,7 @@ public class ColorTileReaderHSB {
 		ImageConverter imageConverter = new ImageConverter(grayscaleTileCopy);
 		imageConverter.convertToGray8();
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 			
 			//1. get the thresholded tile ready from the input
 			ImagePlus BW_tile = input.thresholdedTileImage;
@@ -132,18 +141,16 @@ public class ColorTileReaderHSB {
 			ResultsTable resultsTable = new ResultsTable();
 
 			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS+Measurements.AREA+Measurements.PERIMETER, resultsTable, 5, Integer.MAX_VALUE);
 
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 
 			particleAnalyzer.analyze(BW_tile); //it gets the image processor internally
 
 			//2.2 pick the largest particle, the check if there is something in the tile has already been performed
 			int biggestParticleIndex = getBiggestParticleAreaIndex(resultsTable);
 
-			output.colonyROI = manager.getRoisAsArray()[biggestParticleIndex];//RoiManager.getInstance().getRoisAsArray()[biggestParticleIndex];
+			output.colonyROI = particleAnalyzer.getRois()[biggestParticleIndex];
 
 
 			int colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, biggestParticleIndex);
@@ -200,7 +207,7 @@ public class ColorTileReaderHSB {
 		//
 
 		//4. separate the color channels, calculate relative color intensity of red
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(input.tileImage, 2, 1, (float)1, (float)2); ///
+		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(input.tileImage, red_gain, blue_green_gain, color_gain, brightness_gain); ///
 		//byte[] relativeColorIntensity_includingBrightness = calculateRelativeColorIntensity(input.tileImage, 2, 1);
 
 		//but because colonies get darker with accumulation of congo red..		
@@ -266,7 +273,7 @@ public class ColorTileReaderHSB {
 				diameter, diameter);
 
 		//get minimum radius
-		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(input.tileImage.duplicate(), output.colonyROI);
+		Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(new TileView(input.tileImage).toImage(), output.colonyROI);
 		double minimumDistance = Toolbox.getMinimumPointDistance(output.colonyCenter, colonyRoiPerimeter);
 		//double medianDistance = Toolbox.getMedianPointDistance(output.colonyCenter, colonyRoiPerimeter);
 
@@ -305,7 +312,8 @@ public class ColorTileReaderHSB {
 	 */
 	private static double getAverageCenterAreaOpacity(ImagePlus grayscaleTile, Point colonyCenter, int diameter) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
+		//the tile is only read, no need for a copy of it
+		TileView grayscaleTileView = new TileView(grayscaleTile);
 
 		//1. find the background level, which is the threshold set by Otsu
 		//EDIT: don't correct for background level here, this is mainly to account for lighting spatial effects and can be corrected for later
@@ -319,26 +327,16 @@ public class ColorTileReaderHSB {
 				colonyCenter.y -diameter/2, 
 				diameter, diameter);
 
-		//4. set the center Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(centerRoi);
-		try {
-			grayscaleTileCopy.getProcessor().fillOutside(centerRoi);
-		} catch (Exception e) {
-			return(0);
-		}
-
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
+		//4. get the pixel values inside the center Roi, everything outside it would count as black
+		int[] centerPixels = grayscaleTileView.getPixelsInside(centerRoi);
 
-		int size = imageBytes.length;
+		int size = grayscaleTileView.getWidth()*grayscaleTileView.getHeight();
 
 		int sumOfBrightness = 0;
 		//		int sumOfPixelsOverZero = 0;
 
-		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = imageBytes[i]&0xFF;
+		for(int i=0;i<centerPixels.length;i++){
+			int pixelValue = centerPixels[i];
 
 			//subtract the threshold and put the pixels in the sum
 			//every pixel inside the colony should normally be above the threshold
@@ -353,8 +351,6 @@ public class ColorTileReaderHSB {
 			sumOfBrightness += Math.max(0, pixelValue-background_level);
 		}
 
-		grayscaleTileCopy.flush();
-
 		return ((double)sumOfBrightness/(double)size);
 	}
 
@@ -431,7 +427,7 @@ public class ColorTileReaderHSB {
 
 
 		//get pixel color values again, this time by means of integer values
-		Float[] pixelBiofilmScores_float = calculateRelativeColorIntensityUsingSaturationAndBrightness_float(tileImageCopy, input.colonyRoi, 2, 1, (float)1, (float)2);
+		float[] pixelBiofilmScores_float = calculateRelativeColorIntensityUsingSaturationAndBrightness_float(tileImageCopy, input.colonyRoi, red_gain, blue_green_gain, color_gain, brightness_gain);
 
 		//		for(int i=0;i<pixelBiofilmScores_float.length;i++){
 		//
@@ -451,7 +447,7 @@ public class ColorTileReaderHSB {
 		//		}
 
 
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(tileImageCopy, 2, 1, (float)1, (float)2); ///
+		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(tileImageCopy, red_gain, blue_green_gain, color_gain, brightness_gain); ///
 
 		for(int i=0;i<pixelBiofilmScores.length;i++){
 
@@ -473,32 +469,7 @@ public class ColorTileReaderHSB {
 
 
 		//7. also get an estimate of the colony color, through random pixel sampling, this should be 1000 pixels 
-		int maxSamples = Math.min(1000, input.colonySize);
-		//int maxSamples = 1000;
-		double sampleColorSum = 0;
-		int numerOfSamplesInBounds = 0;
-
-		Random myrandom = new Random((long) 762827825);// this is a seed I picked at random, but it has to be the same always to get the same results with every Iris run 
-		for(int i=0; i<maxSamples; i++){
-			try {		
-
-				//pixelID is an integer from 0 to pixelBiofilmScores.length-1 (pixelBiofilmScores[pixelBiofilmScores.length] is out of bounds)
-				int pixelID = (int)Math.round(myrandom.nextDouble()*(double)(pixelBiofilmScores_float.length-1));
-				numerOfSamplesInBounds++;
-
-				if(pixelBiofilmScores_float[pixelID]==0){
-					//pixel was outside the (eroded) colony bounds
-					continue;
-				}
-
-				sampleColorSum += pixelBiofilmScores_float[pixelID];				
-			} catch (Exception e) {				
-				System.out.println(e.getMessage());
-				// otherwise do nothing, this is just in case the pixelID is out of bounds
-			}
-		}
-		//divide by the number of samples
-		double meanSampleColor = sampleColorSum/(double)numerOfSamplesInBounds;
+		double meanSampleColor = getMeanSampleColor(pixelBiofilmScores_float, input.colonySize);
 
 
 
@@ -561,7 +532,8 @@ public class ColorTileReaderHSB {
 	 */
 	private static double getAverageCenterAreaColor(ImagePlus colorTile, Point colonyCenter, int diameter) {
 
-		ImagePlus colorTileCopy = colorTile.duplicate();
+		//the tile is only read, no need for a copy of it
+		TileView colorTileView = new TileView(colorTile);
 
 
 		//3. get the colony center of mass, this will be the center of the circle
@@ -571,24 +543,18 @@ public class ColorTileReaderHSB {
 				colonyCenter.y -diameter/2, 
 				diameter, diameter);
 
-		//4. set the center Roi and paint eveything outside it as black
-		colorTileCopy.setRoi(centerRoi);
-		try {
-			colorTileCopy.getProcessor().fillOutside(centerRoi);
-		} catch (Exception e) {
-			return(0);
-		}
-
+		//4. only score the pixels inside the center Roi, everything outside it would be black, which scores 0
+		int[] centerPixels = colorTileView.getPixelsInside(centerRoi);
 
-		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(colorTileCopy, 2, 1, (float)1, (float)2); ///
+		byte[] pixelBiofilmScores = calculateRelativeColorIntensityUsingSaturationAndBrightness(centerPixels, red_gain, blue_green_gain, color_gain, brightness_gain); ///
 
 
-		int size = pixelBiofilmScores.length;
+		int size = colorTileView.getWidth()*colorTileView.getHeight();
 
 		int sumOfColor = 0;
 		//		int sumOfNonZeroColorPixels = 0;
 
-		for(int i=0;i<size;i++){
+		for(int i=0;i<pixelBiofilmScores.length;i++){
 			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
 			int pixelValue = pixelBiofilmScores[i]&0xFF;
 
@@ -600,8 +566,6 @@ public class ColorTileReaderHSB {
 		}
 
 
-		colorTileCopy.flush();
-
 		return ((double)sumOfColor/(double)size);
 	}
 
@@ -666,48 +630,47 @@ public class ColorTileReaderHSB {
 	 * @return
 	 */
 	private static byte[] calculateRelativeColorIntensityUsingSaturationAndBrightness(ImagePlus tile, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
-		ColorProcessor processor = (ColorProcessor) tile.getProcessor();
-
-		byte[] red = processor.getChannel(1);
-		byte[] green = processor.getChannel(2);
-		byte[] blue = processor.getChannel(3);
-
-
-		byte[] redWithGain = multiply(red_gain,red);
-		byte[] green_and_blue = multiply(blue_green_gain, add(green, blue));
-		byte[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
-
-
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
+		return(calculateRelativeColorIntensityUsingSaturationAndBrightness((int[]) tile.getProcessor().getPixels(),
+				red_gain, blue_green_gain, color_gain, brightness_gain));
+	}
 
-		ImageProcessor ip =  tile.getProcessor();
-		ColorProcessor cp = (ColorProcessor)ip;
 
-		//get the number of pixels in the tile
-		int width = tile.getWidth();
-		int height = tile.getHeight();
-		int numPixels = width*height;
-
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
+	/**
+	 * Same as above, for the given RGB pixels
+	 * @param pixels
+	 * @return
+	 */
+	private static byte[] calculateRelativeColorIntensityUsingSaturationAndBrightness(int[] pixels, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+		byte[] total_biofilm_score = new byte[pixels.length];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		for(int i=0; i<pixels.length; i++){
+			int red = (pixels[i]>>16)&0xff, green = (pixels[i]>>8)&0xff, blue = pixels[i]&0xff;
+			total_biofilm_score[i] = (byte) getBiofilmScore(red, green, blue, red_gain, blue_green_gain, color_gain, brightness_gain);
+		}
 
-		byte[] saturationMinusBrightness = subtract(sSource, bSource);
+		return total_biofilm_score;
+	}
 
-		byte[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		byte[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationMinusBrightness);
 
-		byte[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
+	/**
+	 * The biofilm score of one pixel, as above: every step is kept within 0 to 255, as if it was done on 8-bit channels
+	 * (also used by the CombinedTileReader)
+	 * @return the score, from 0 to 255
+	 */
+	static int getBiofilmScore(int red, int green, int blue, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+		int redWithGain = (int) Math.min(red*red_gain, 255);
+		int green_and_blue = (int) Math.min(Math.min(green+blue, 255)*blue_green_gain, 255);
+		int relative_colour_intensity = Math.max(redWithGain-green_and_blue, 0);
 
+		//brightness contribution
+		int saturation = (int)(HSBConverter.getSaturation(red, green, blue)*255.0);
+		int brightness = Math.max(red, Math.max(green, blue));
+		int saturationMinusBrightness = Math.max(saturation-brightness, 0);
 
+		int relative_colour_intensity_with_gain = (int) Math.min(relative_colour_intensity*color_gain, 255);
+		int colonySaturationBrightness_with_gain = (int) Math.min(saturationMinusBrightness*brightness_gain, 255);
 
-		return total_biofilm_score;
+		return(Math.min(relative_colour_intensity_with_gain+colonySaturationBrightness_with_gain, 255));
 	}
 
 
@@ -742,40 +705,83 @@ public class ColorTileReaderHSB {
 	 * @param channels
 	 * @return
 	 */
-	private static Float[] calculateRelativeColorIntensityUsingSaturationAndBrightness_float(ImagePlus tile, Roi colonyRoi, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+	private static float[] calculateRelativeColorIntensityUsingSaturationAndBrightness_float(ImagePlus tile, Roi colonyRoi, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
 
-		//Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'l');
 		Float[] roiPixels_red = Toolbox.getRoiPixels(tile, colonyRoi, 'r');
 		Float[] roiPixels_green = Toolbox.getRoiPixels(tile, colonyRoi, 'g');
 		Float[] roiPixels_blue = Toolbox.getRoiPixels(tile, colonyRoi, 'b');
 
-		Float[] redWithGain = multiply(red_gain, roiPixels_red);
-		Float[] green_and_blue = multiply(blue_green_gain, add(roiPixels_green, roiPixels_blue));
-		Float[] relative_colour_intensity = subtract(redWithGain, green_and_blue);
+		float[] total_biofilm_score = new float[roiPixels_red.length];
+		for(int i=0; i<roiPixels_red.length; i++){
+			total_biofilm_score[i] = getBiofilmScore_float(roiPixels_red[i].intValue(), roiPixels_green[i].intValue(), roiPixels_blue[i].intValue(),
+					red_gain, blue_green_gain, color_gain, brightness_gain);
+		}
 
+		return total_biofilm_score;
+	}
 
-		//end of color calculations
-		//------
-		//start calculating brightness contribution
 
+	/**
+	 * The biofilm score of one pixel, as above, in floating point arithmetic (also used by the CombinedTileReader)
+	 * @return the score
+	 */
+	static float getBiofilmScore_float(int red, int green, int blue, float red_gain, float blue_green_gain, float color_gain, float brightness_gain) {
+		float redWithGain = (float)red*red_gain;
+		float green_and_blue = ((float)green+(float)blue)*blue_green_gain;
+		float relative_colour_intensity = Math.max(redWithGain-green_and_blue, 0);
 
-		Float[] roiPixels_saturation = Toolbox.getRoiPixels(tile, colonyRoi, 'S');
-		Float[] roiPixels_brightness = Toolbox.getRoiPixels(tile, colonyRoi, 'B');
+		//brightness contribution: saturation and darkness (255 - brightness)
+		float saturation = HSBConverter.getSaturation(red, green, blue)*(float)255;
+		float brightness = HSBConverter.getBrightness(red, green, blue)*(float)255;
+		float darkness = Math.max(Math.min(255-brightness, 255), 0);
 
-		Float[] roiPixels_darkness = negate_skippingZeros(roiPixels_brightness);
+		return(relative_colour_intensity*color_gain + (saturation+darkness)*brightness_gain);
+	}
 
-		Float[] saturationAndDarkness = add(roiPixels_saturation, roiPixels_darkness);
 
-		//		Float[] saturationMinusBrightness = subtract(roiPixels_saturation, roiPixels_brightness);
-		//				
-		Float[] relative_colour_intensity_with_gain = multiply(color_gain, relative_colour_intensity);
-		Float[] colonySaturationBrightness_with_gain = multiply(brightness_gain, saturationAndDarkness);//saturationMinusBrightness);
+	/**
+	 * Estimates the colony color through random pixel sampling, this should be 1000 pixels (fewer in smaller colonies)
+	 * (also used by the CombinedTileReader)
+	 * @param pixelBiofilmScores: the (float) biofilm scores of the colony pixels
+	 * @param colonySize
+	 * @return the mean score of the samples
+	 */
+	static double getMeanSampleColor(float[] pixelBiofilmScores, int colonySize){
+		int maxSamples = Math.min(1000, colonySize);
+		double sampleColorSum = 0;
+		int numerOfSamplesInBounds = 0;
+
+		Random myrandom = new Random((long) 762827825);// this is a seed I picked at random, but it has to be the same always to get the same results with every Iris run 
+		for(int i=0; i<maxSamples; i++){
+			numerOfSamplesInBounds++;
 
-		Float[] total_biofilm_score = add(relative_colour_intensity_with_gain, colonySaturationBrightness_with_gain);
+			//no colony pixels to sample, the sample counts as 0
+			if(pixelBiofilmScores.length==0)
+				continue;
 
+			//pixelID is an integer from 0 to pixelBiofilmScores.length-1 (pixelBiofilmScores[pixelBiofilmScores.length] is out of bounds)
+			int pixelID = (int)Math.round(myrandom.nextDouble()*(double)(pixelBiofilmScores.length-1));
 
+			if(pixelBiofilmScores[pixelID]==0){
+				//pixel was outside the (eroded) colony bounds
+				continue;
+			}
 
-		return total_biofilm_score;
+			sampleColorSum += pixelBiofilmScores[pixelID];
+		}
+
+		//divide by the number of samples
+		return(sampleColorSum/(double)numerOfSamplesInBounds);
+	}
+
+
+	/**
+	 * @param colonyCenter
+	 * @return the area around the colony center the "center color" and "center opacity" are measured in
+	 * (also used by the CombinedTileReader)
+	 */
+	static Roi getCenterAreaRoi(Point colonyCenter){
+		return(new OvalRoi(colonyCenter.x-diameter/2, colonyCenter.y-diameter/2, diameter, diameter));
 	}
 
 
@@ -832,13 +838,11 @@ public class ColorTileReaderHSB {
 		int height = tile.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
+		//we need this to save into
 		byte[] sSource = new byte[numPixels];
-		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the saturation channel of the cp into the sSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, sSource, null);
 
 		byte[] relative_colour_intensity_with_gain = multiply(color_gain,relative_colour_intensity);
 		byte[] colonySaturation_with_gain = multiply(brightness_gain,sSource);
@@ -884,13 +888,11 @@ public class ColorTileReaderHSB {
 		int height = tile.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		byte[] colonyDarkness = negate_skippingZeros(bSource); //get directly the Brightness value calculated earlier for the HSB
 
@@ -1022,29 +1024,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function will return the negative of the given array: 255-array[i].
-	 * At the same time, it will skip zeros, meaning that the pixels outside of the colony will
-	 * remain 0. This is because afterwards we will add those values together with the color intensity values.
-	 * @param array
-	 * @return
-	 */
-	private static Float[] negate_skippingZeros(Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			if(array[i]==(int)0)
-				result[i]=(float)0; //keep it zero
-
-			result[i] =  Math.min(255-array[i], 255);
-			result[i] = Math.max(result[i], 0); //make sure the result is positive
-		}
-		return(result);
-	}
-
-
-
 	/**
 	 * This helper function multiplies a int array by a constant factor
 	 * @param factor
@@ -1062,24 +1041,6 @@ public class ColorTileReaderHSB {
 		return(result);
 	}
 
-	/**
-	 * This helper function multiplies a int array by a constant factor
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] multiply(float factor, Float[] array){
-		Float[] result = new Float[array.length];
-
-		for(int i=0;i<array.length;i++){
-
-			result[i] =  (Float)(array[i]*factor);
-
-		}
-		return(result);
-	}
-
-
 	/**
 	 * This helper function adds 2 int arrays
 	 * @param factor
@@ -1101,27 +1062,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function adds 2 int arrays
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] add(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//just add the values
-			result[i] = array1[i] + array2[i];
-		}
-
-		return(result);
-	}
-
-
 	/**
 	 * This helper function subtracts 2 int arrays, taking into account that
 	 * negative values are given the minimum value (0)
@@ -1145,30 +1085,6 @@ public class ColorTileReaderHSB {
 	}
 
 
-	/**
-	 * This helper function subtracts 2 int arrays, taking into account that
-	 * negative values are given the minimum value (0)
-	 * @param factor
-	 * @param array
-	 * @return
-	 */
-	private static Float[] subtract(Float[] array1, Float[] array2){
-
-		//if the 2 arrays are not of equal length, this will crash..
-
-		Float[] result = new Float[array1.length];
-		for(int i=0;i<array1.length;i++){
-
-			//subtract the values, but avoid underflow
-			result[i] = (Math.max( array1[i] - array2[i] , 0));
-
-		}
-
-		return(result);
-	}
-
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using a fancy local thresholding algorithm, as described here:
@@ -0,0 +1,392 @@
+/**
+ *
+ */
+package iris.tileReaders;
+
+import ij.Prefs;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageProcessor;
+import ij.ImagePlus;
+import iris.settings.PictureSettings;
+import iris.tileReaderInputs.ColorTileReaderInput3;
+import iris.tileReaderInputs.CombinedTileReaderInput;
+import iris.tileReaderInputs.OpacityTileReaderInput;
+import iris.tileReaderOutputs.ColorTileReaderOutput;
+import iris.tileReaderOutputs.CombinedTileReaderOutput;
+import iris.tileReaderOutputs.OpacityTileReaderOutput;
+import iris.ui.IrisFrontend;
+import iris.utils.BrightnessHistogram;
+import iris.utils.HSBConverter;
+import iris.utils.TileView;
+import iris.utils.Toolbox;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * This tile reader measures a colony that's already been found (by a size tile reader, e.g. BasicTileReaderHSB),
+ * giving the same outputs as ColorTileReaderHSB.processDefinedColonyTile and OpacityTileReader.processDefinedColonyTile.
+ *
+ * Run one after the other, those two copy the tile out of the plate twice, copy it again to fill in everything
+ * around the colony, lay the colony Roi over it once for every measurement, and go through the pixels
+ * once for every measurement too.
+ * This one views the tile in the plate pictures (see TileView), lays the colony Roi over it once,
+ * and gets the opacity, the background level, the brightest 10% of the colony, the colour sums, the biofilm area,
+ * the saturation and the center area measurements all in the same pass over the pixels.
+ * Only the colour tile is copied, since it has to be dilated (as in ColorTileReaderHSB) before the pass.
+ *
+ * User-defined colonies, single colony runs and tiles that aren't plain rectangles are left to the two tile readers.
+ *
+ * @author George Kritikos
+ *
+ */
+public class CombinedTileReader {
+
+	/**
+	 * Measures the colour and opacity of the given colony
+	 * @param input
+	 * @return
+	 */
+	public static CombinedTileReaderOutput processDefinedColonyTile(CombinedTileReaderInput input){
+
+		if(PictureSettings.current().singleColonyRun || PictureSettings.current().userDefinedRoi || input.colonyRoi==null
+				|| input.grayscaleTile==null || input.grayscaleTile.isColour() || !input.colourTile.isColour()
+				|| input.grayscaleTile.getWidth()==0 || input.grayscaleTile.getHeight()==0
+				|| input.grayscaleTile.getWidth()!=input.colourTile.getWidth()
+				|| input.grayscaleTile.getHeight()!=input.colourTile.getHeight()){
+			return(processWithSeparateReaders(input));
+		}
+
+		//0. create the output object
+		CombinedTileReaderOutput output = new CombinedTileReaderOutput();
+
+		TileView grayscaleTile = input.grayscaleTile;
+		int width = grayscaleTile.getWidth();
+		int height = grayscaleTile.getHeight();
+
+		//1. lay the colony Roi over the tile
+		Rectangle colonyBounds = input.colonyRoi.getBounds();
+		ImageProcessor colonyMaskProcessor = input.colonyRoi.getMask();
+		byte[] colonyMask = colonyMaskProcessor==null ? null : (byte[]) colonyMaskProcessor.getPixels();
+
+
+		//2. fill everything around the colony in the colour tile with black,
+		//and dilate 3 times to remove the colony periphery, as in ColorTileReaderHSB
+		//if this fails, the colour is reported as an error (as in ColorTileReaderHSB) and the opacity is still measured
+		int[] colourPixels = null;
+		try{
+			colourPixels = getDilatedColonyPixels(input.colourTile, input.colonyRoi);
+		} catch(Exception e){
+			IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
+		}
+		boolean measureColour = colourPixels!=null;
+
+
+		//3. the part of the tile in the colony's bounding box
+		//the separate tile readers got the brightest 10% of the colony and the center area measurements
+		//from copies of the tile with the colony Roi set, i.e. copies of just this part of the tile
+		//the colony Roi and the center Roi are laid over this part as if it were the whole tile
+		Rectangle colonyBox = colonyBounds.intersection(new Rectangle(0, 0, width, height));
+		if(colonyBox.width<=0 || colonyBox.height<=0)
+			colonyBox = new Rectangle(0, 0, 0, 0);
+
+
+		//4. get the colony center, if it's not preset for us
+		Point colonyCenter = null;
+		if(!measureColour){
+			colonyCenter = null;
+		}
+		else if(input.colonyCenter!=null){
+			colonyCenter = new Point(input.colonyCenter);
+		}
+		else{
+			try{ colonyCenter = Toolbox.getParticleUltimateErosionPoint(getGrayscaleImage(colourPixels, width, colonyBox)); }
+			catch(Exception e){ colonyCenter = null; }
+		}
+
+		Rectangle centerBounds = new Rectangle(0, 0, 0, 0);
+		byte[] centerMask = null;
+		if(colonyCenter!=null){
+			Roi centerRoi = ColorTileReaderHSB.getCenterAreaRoi(colonyCenter);
+			centerBounds = centerRoi.getBounds();
+			centerMask = (byte[]) centerRoi.getMask().getPixels();
+		}
+
+		double[] grayWeights = ColorProcessor.getWeightingFactors();
+
+
+		//5. go through the tile (and any part of the colony Roi outside it) once
+		BrightnessHistogram colonyBrightness = new BrightnessHistogram();
+		BrightnessHistogram backgroundBrightness = new BrightnessHistogram();
+		BrightnessHistogram colonyBoxBrightness = new BrightnessHistogram();
+
+		int colonyColorSum = 0;
+		int biofilmPixelCount = 0;
+		int biofilmColorSum = 0;
+		int centerBrightnessSum = 0;
+		int centerColorSum = 0;
+
+		//the colour scores and saturation of the colony pixels, in the order Toolbox.getRoiPixels gives them
+		float[] colonyScores = new float[colonyBounds.width*colonyBounds.height];
+		int colonyPixelCount = 0;
+		float saturationSum = 0;
+
+		int left = Math.min(0, colonyBounds.x);
+		int top = Math.min(0, colonyBounds.y);
+		int right = Math.max(width, colonyBounds.x+colonyBounds.width);
+		int bottom = Math.max(height, colonyBounds.y+colonyBounds.height);
+
+		for(int y=top; y<bottom; y++){
+			for(int x=left; x<right; x++){
+
+				boolean inTile = x>=0 && x<width && y>=0 && y<height;
+				boolean inColony = isInside(x, y, colonyBounds, colonyMask);
+
+				//pixels outside the tile read as black, as in ColorProcessor.getPixel
+				//(all pixels do, if the colour is not measured, which leaves the colour sums at 0)
+				int colour = inTile && measureColour ? colourPixels[y*width+x] : 0;
+				int red = (colour>>16)&0xff, green = (colour>>8)&0xff, blue = colour&0xff;
+
+				if(inTile){
+					int brightness = grayscaleTile.getPixel(x, y);
+
+					//opacity and background level
+					if(inColony)
+						colonyBrightness.add(brightness);
+					else
+						backgroundBrightness.add(brightness);
+
+					//colour sums and biofilm area, the scores above 127 were taken to be negative
+					int score = getColourScore(red, green, blue);
+					float signedScore = (byte) score;
+
+					if(signedScore>0){
+						colonyColorSum += Math.round(signedScore);
+
+						if(signedScore>input.settings.colorThreshold){
+							biofilmPixelCount++;
+							biofilmColorSum += Math.round(signedScore);
+						}
+					}
+
+					//brightest 10% and center area
+					if(colonyBox.contains(x, y)){
+						int boxX = x-colonyBox.x;
+						int boxY = y-colonyBox.y;
+
+						if(isInside(boxX, boxY, colonyBounds, colonyMask))
+							colonyBoxBrightness.add(brightness);
+
+						if(isInside(boxX, boxY, centerBounds, centerMask)){
+							centerBrightnessSum += getGrayValue(red, green, blue, grayWeights);
+							centerColorSum += score;
+						}
+					}
+				}
+
+				//colour samples and saturation
+				if(inColony && measureColour){
+					colonyScores[colonyPixelCount++] = getColourScore_float(red, green, blue);
+					saturationSum += HSBConverter.getSaturation(red, green, blue)*(float)255;
+				}
+			}
+		}
+
+		colonyScores = Arrays.copyOf(colonyScores, colonyPixelCount);
+		int colonyBoxSize = colonyBox.width*colonyBox.height;
+
+
+		//6. colour
+		ColorTileReaderOutput colourOutput = output.colourOutput;
+		colourOutput.colonyROI = input.colonyRoi;
+
+		if(!measureColour){
+			colourOutput.biofilmArea=0;
+			colourOutput.colorIntensitySum=0;
+			colourOutput.colorIntensitySumInBiofilmArea=0;
+			colourOutput.relativeColorIntensity=0;
+			colourOutput.errorOccurred=true;
+		}
+		else{
+			colourOutput.colorIntensitySum = colonyColorSum;
+			colourOutput.biofilmArea = biofilmPixelCount;
+			colourOutput.colorIntensitySumInBiofilmArea = biofilmColorSum;
+			colourOutput.meanSampleColor = ColorTileReaderHSB.getMeanSampleColor(colonyScores, input.colonySize);
+
+			if(input.colonySize!=0)
+				colourOutput.relativeColorIntensity = (double) colonyColorSum / (double) input.colonySize;
+
+			colourOutput.colonyCenter = colonyCenter;
+			if(colonyCenter!=null){
+				colourOutput.centerAreaOpacity = (double)centerBrightnessSum/(double)colonyBoxSize;
+				colourOutput.centerAreaColor = (double)centerColorSum/(double)colonyBoxSize;
+			}
+
+			//0 to 1
+			colourOutput.averagePixelSaturation = saturationSum/colonyPixelCount/255;
+		}
+
+
+		//7. opacity
+		OpacityTileReaderOutput opacityOutput = output.opacityOutput;
+		opacityOutput.colonySize = input.colonySize;
+		opacityOutput.circularity = 0;
+
+		int backgroundMedian = OpacityTileReader.getBackgroundMedian(backgroundBrightness);
+		opacityOutput.opacity = OpacityTileReader.sumPixelOverBackgroundBrightness(colonyBrightness, backgroundMedian);
+
+		//the mean of the brightest 10%, over the background level of the whole tile
+		if(colonyBounds.width>0 && colonyBounds.height>0){
+			BrightnessHistogram tileBrightness = new BrightnessHistogram();
+			tileBrightness.add(colonyBrightness);
+			tileBrightness.add(backgroundBrightness);
+			int tileMedian = OpacityTileReader.getBackgroundMedian(tileBrightness);
+
+			int size_subset = (int)Math.ceil((double)colonyBoxSize/(double)10);
+			opacityOutput.max10percentOpacity = (double)colonyBoxBrightness.getSumOfBrightest(size_subset, tileMedian)/(double)size_subset;
+		}
+
+		opacityOutput.colonyROI = input.colonyRoi;
+
+		if(opacityOutput.opacity==0){
+			//this cannot be zero, unless we have an empty tile,
+			//in which case this code shouldn't be reached
+			opacityOutput.errorGettingOpacity=true;
+		}
+
+		return(output);
+	}
+
+
+
+	/**
+	 * Measures the colony using ColorTileReaderHSB and OpacityTileReader, each on its own copy of the tile
+	 * @param input
+	 * @return
+	 */
+	private static CombinedTileReaderOutput processWithSeparateReaders(CombinedTileReaderInput input){
+		CombinedTileReaderOutput output = new CombinedTileReaderOutput();
+
+		try{
+			output.colourOutput = ColorTileReaderHSB.processDefinedColonyTile(
+					new ColorTileReaderInput3(input.colourCroppedImage, input.tileRoi,
+							input.colonyRoi, input.colonySize, input.colonyCenter, input.settings));
+		} catch(Exception e){
+			IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
+			output.colourOutput = new ColorTileReaderOutput();
+		}
+
+		//true means opacities can get negative, this is a fix for very dark colonies
+		try{
+			output.opacityOutput = OpacityTileReader.processDefinedColonyTile(
+					new OpacityTileReaderInput(input.grayscaleCroppedImage, input.tileRoi,
+							input.colonyRoi, input.colonySize, input.settings), true);
+		} catch(Exception e){
+			IrisFrontend.writeToLog(Toolbox.getStackTrace(e));
+			output.opacityOutput = new OpacityTileReaderOutput();
+		}
+
+		return(output);
+	}
+
+
+
+	/**
+	 * @return true if the pixel is in the Roi with these bounds and mask (null for rectangles)
+	 */
+	private static boolean isInside(int x, int y, Rectangle bounds, byte[] mask){
+		if(x<bounds.x || y<bounds.y || x>=bounds.x+bounds.width || y>=bounds.y+bounds.height)
+			return(false);
+		return(mask==null || mask[(y-bounds.y)*bounds.width + x-bounds.x]!=0);
+	}
+
+
+
+	/**
+	 * Copies the colour tile, fills everything outside the colony with black,
+	 * and dilates the copy 3 times within the colony's bounding box (same as ColorTileReaderHSB).
+	 * The copy is needed because the dilation reads the filled pixels. For colony outlines, fillOutside
+	 * leaves exactly the pixels of the colony mask (see BrightnessHistogram); it's still used here so that
+	 * other Roi types (e.g. polygons) are filled the same way as in ColorTileReaderHSB.
+	 * @param colourTile
+	 * @param colonyRoi
+	 * @return the pixels of the copy
+	 */
+	private static int[] getDilatedColonyPixels(TileView colourTile, Roi colonyRoi){
+		int width = colourTile.getWidth();
+		int height = colourTile.getHeight();
+
+		int[] pixels = new int[width*height];
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				pixels[y*width+x] = colourTile.getPixel(x, y);
+			}
+		}
+
+		ColorProcessor processor = new ColorProcessor(width, height, pixels);
+		processor.setRoi(colonyRoi.getBounds());
+		processor.fillOutside(colonyRoi);
+		processor.dilate();
+		processor.dilate();
+		processor.dilate();
+
+		return((int[]) processor.getPixels());
+	}
+
+
+
+	/**
+	 * @return the 8-bit gray value of the colour, as ImageConverter.convertToGray8 gives it
+	 */
+	private static int getGrayValue(int red, int green, int blue, double[] weights){
+		int gray = ((int)(red*weights[0] + green*weights[1] + blue*weights[2] + 0.5))&0xff;
+		if(Prefs.useInvertingLut)
+			return(255-gray);
+		return(gray);
+	}
+
+
+	/**
+	 * @param colourPixels
+	 * @param width
+	 * @param area
+	 * @return the given area of the colour pixels, converted to 8-bit grayscale
+	 */
+	private static ImagePlus getGrayscaleImage(int[] colourPixels, int width, Rectangle area){
+		double[] grayWeights = ColorProcessor.getWeightingFactors();
+		byte[] grayPixels = new byte[area.width*area.height];
+
+		for(int y=0; y<area.height; y++){
+			for(int x=0; x<area.width; x++){
+				int colour = colourPixels[(area.y+y)*width + area.x+x];
+				grayPixels[y*area.width+x] = (byte) getGrayValue((colour>>16)&0xff, (colour>>8)&0xff, colour&0xff, grayWeights);
+			}
+		}
+
+		return(new ImagePlus("grayscale colony", new ByteProcessor(area.width, area.height, grayPixels, null)));
+	}
+
+
+
+	/**
+	 * @return the colour (biofilm) score of a pixel, from 0 to 255, as ColorTileReaderHSB.processDefinedColonyTile gets it
+	 */
+	private static int getColourScore(int red, int green, int blue){
+		return(ColorTileReaderHSB.getBiofilmScore(red, green, blue, ColorTileReaderHSB.red_gain,
+				ColorTileReaderHSB.blue_green_gain, ColorTileReaderHSB.color_gain, ColorTileReaderHSB.brightness_gain));
+	}
+
+
+	/**
+	 * @return the colour (biofilm) score of a pixel, in floating point arithmetic,
+	 * as ColorTileReaderHSB.processDefinedColonyTile gets it for the colour samples
+	 */
+	private static float getColourScore_float(int red, int green, int blue){
+		return(ColorTileReaderHSB.getBiofilmScore_float(red, green, blue, ColorTileReaderHSB.red_gain,
+				ColorTileReaderHSB.blue_green_gain, ColorTileReaderHSB.color_gain, ColorTileReaderHSB.brightness_gain));
+	}
+
+}
@@ -4,23 +4,22 @@
 package iris.tileReaders;
 
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.awt.Rectangle;
 
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.RankFilters;
-import ij.plugin.frame.RoiManager;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import imagescience.feature.Laplacian;
 import imagescience.image.Image;
 import imagescience.segment.ZeroCrosser;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.BrightnessHistogram;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 /**
@@ -41,7 +40,7 @@ public class LaplacianFilterTileReader {
 
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 			//median filter radius
 			double radius = 2.0;
@@ -143,9 +142,9 @@ public class LaplacianFilterTileReader {
 
 			//analyze the particles in the image, this includes filling in holes (which we expect using the above pipeline)
 			ResultsTable resultsTable = new ResultsTable();
-			RoiManager roiManager = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
+			Roi[] particleRois = Toolbox.particleAnalysis_fillHoles(tileImageLaplacianZeroCrossed, resultsTable);
 
-			if(roiManager==null){ //no particles found
+			if(particleRois==null){ //no particles found
 				output.emptyResulsTable = true; // this is highly abnormal
 				output.colonySize = 0;//return a colony size of zero
 
@@ -160,7 +159,7 @@ public class LaplacianFilterTileReader {
 			output.colonySize = Toolbox.getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
 			output.circularity = Toolbox.getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
 			output.colonyCenter = Toolbox.getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = roiManager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = particleRois[indexOfBiggestParticle];
 
 			//input.cleanup(); //clear the tile image here, since we don't need it anymore
 			//laplacianDifference.flush();
@@ -214,24 +213,11 @@ public class LaplacianFilterTileReader {
 			ImagePlus tileImage, Roi colonyROI) {
 
 		try{
-			FloatProcessor backgroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-			backgroundPixels.setRoi(colonyROI);
-			backgroundPixels.setValue(0);
-			backgroundPixels.setBackgroundValue(0);
-
-			backgroundPixels.fill(backgroundPixels.getMask());
-			//		(new ImagePlus("keep-background mask",backgroundPixels)).show();
-
-			FloatProcessor foregroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-			foregroundPixels.setRoi(colonyROI);
-			foregroundPixels.setValue(0);
-			foregroundPixels.setBackgroundValue(0);
-
-			foregroundPixels.fillOutside(colonyROI);
-			//		(new ImagePlus("keep-foreground mask",foregroundPixels)).show();
-
-
+			TileView tile = new TileView(tileImage, new Rectangle(0, 0, tileImage.getWidth(), tileImage.getHeight()));
 
+			//the background is everything outside the colony ROI, the foreground everything inside it
+			BrightnessHistogram backgroundPixels = new BrightnessHistogram(tile, colonyROI, false);
+			BrightnessHistogram foregroundPixels = new BrightnessHistogram(tile, colonyROI, true);
 
 			int backgroundMedian = getBackgroundMedian(backgroundPixels);
 
@@ -245,80 +231,23 @@ public class LaplacianFilterTileReader {
 	}
 
 	/**
-	 * @param ip
+	 * @param pixels
 	 * @return
 	 */
-	private static int sumPixelOverBackgroundBrightness(FloatProcessor ip, int backgroundMedian) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
-
-		int sum = 0;
-		for(Float thisPixel : nonZeroPixels){
-			sum += Math.round(thisPixel)-backgroundMedian;
-		}
-
-
-		return(sum);
+	private static int sumPixelOverBackgroundBrightness(BrightnessHistogram pixels, int backgroundMedian) {
+		//pure black and pure white pixels are left out
+		return(pixels.getSum(1, 254, backgroundMedian));
 	}
 
 
 
 	/**
-	 * @param ip
-	 * @return
-	 */
-	private static int getBackgroundMedian(FloatProcessor ip) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
-
-
-		return(Math.round(getMedian(nonZeroPixels.toArray(new Float[nonZeroPixels.size()]))));
-	}
-
-	/**
-	 * just gets the median, nothing to see here
-	 * @param inputArray
+	 * @param pixels
 	 * @return
 	 */
-	private static float getMedian(Float[] inputArray){
-
-		if(inputArray.length==0)
-			return(0);
-
-		Arrays.sort(inputArray);
-		double median;
-		if (inputArray.length % 2 == 0)
-			median = ((double)inputArray[inputArray.length/2] + (double)inputArray[inputArray.length/2 - 1])/2;
-		else
-			median = (double) inputArray[inputArray.length/2];
-
-		return((float)median);
+	private static int getBackgroundMedian(BrightnessHistogram pixels) {
+		//pure black and pure white pixels are left out
+		return((int)Math.round(pixels.getMedian(1, 254)));
 	}
 
 
@@ -9,15 +9,18 @@ import ij.gui.Roi;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
 import ij.process.ImageConverter;
 import ij.process.ImageProcessor;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.MorphologyTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.HeadlessParticleAnalyzer;
+import iris.utils.IntegralImage;
+import iris.utils.MorphologyKernel;
 import iris.utils.StdStats;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 import java.awt.Point;
@@ -127,13 +130,11 @@ public class MorphologyTileReaderStm {
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
 		//this version includes flood filling for holes; this is necessary given the weird morphology of candida colonies
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+		HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
 
 
-		RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-		ParticleAnalyzer.setRoiManager(manager);
 
 		particleAnalyzer.analyze(grayscaleTileCopy); //it gets the image processor internally
 		//
@@ -196,7 +197,7 @@ public class MorphologyTileReaderStm {
 		//3.4 get the morphology score of the colony
 		//for this, we need the Roi (region of interest) that corresponds to the colony
 		//so as to exclude the brightness of any contaminations
-		Roi colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+		Roi colonyRoi = particleAnalyzer.getRois()[indexOfBiggestParticle];
 		grayscaleTileCopy.setRoi(colonyRoi);
 
 		ArrayList<Integer> elevationCounts = getBiggestParticleElevationCounts(grayscaleTileCopy, colonyRoi, output.colonyCenter);
@@ -231,7 +232,7 @@ public class MorphologyTileReaderStm {
 
 		//sometimes this fails
 		try{
-			Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(grayscaleTileCopy.duplicate(), output.colonyROI);
+			Point[] colonyRoiPerimeter = Toolbox.getRoiEdgePoints(new TileView(grayscaleTileCopy).toImage(), output.colonyROI);
 			minimumDistance = Toolbox.getMinimumPointDistance(output.colonyCenter, colonyRoiPerimeter);
 		} catch(Exception e){
 			minimumDistance = 0;
@@ -327,11 +328,9 @@ public class MorphologyTileReaderStm {
 
 			//4A. perform particle analysis on the thresholded tile
 			ResultsTable resultsTable = new ResultsTable();
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -341,7 +340,7 @@ public class MorphologyTileReaderStm {
 			int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 			output.inAgarSize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.inAgarCircularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.inAgarROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.inAgarROI = particleAnalyzer.getRois()[indexOfBiggestParticle];
 			output.inAgarOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.inAgarROI, inAgarBrightnessThreshold);
 
 
@@ -373,11 +372,9 @@ public class MorphologyTileReaderStm {
 
 			//4B. perform particle analysis on the thresholded tile
 			resultsTable = new ResultsTable();
-			particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -387,7 +384,7 @@ public class MorphologyTileReaderStm {
 			indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 			output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = particleAnalyzer.getRois()[indexOfBiggestParticle];
 			output.colonyOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.colonyROI, colonyBrightnessThreshold);
 
 
@@ -468,15 +465,13 @@ public class MorphologyTileReaderStm {
 		int colonyBrightnessThreshold = Toolbox.getThreshold(grayscaleTileCopy, Method.Minimum);
 
 
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 			//4B. perform particle analysis on the thresholded tile
 			ResultsTable resultsTable = new ResultsTable();
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+			HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 					resultsTable, 5, Integer.MAX_VALUE);
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
 			particleAnalyzer.analyze(grayscaleTileCopy);
 
 
@@ -489,7 +484,7 @@ public class MorphologyTileReaderStm {
 			}
 			output.colonySize = getBiggestParticleArea(resultsTable, indexOfBiggestParticle);
 			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
-			output.colonyROI = manager.getRoisAsArray()[indexOfBiggestParticle];
+			output.colonyROI = particleAnalyzer.getRois()[indexOfBiggestParticle];
 			output.colonyOpacity = getBiggestParticleOpacity(grayscaleTileCopy, output.colonyROI, colonyBrightnessThreshold);
 
 			
@@ -576,49 +571,11 @@ public class MorphologyTileReaderStm {
 	 */
 	private static ArrayList<Integer> getBiggestParticleElevationCounts(ImagePlus grayscale_image, Roi colonyRoi, Point colonyCenter){
 
-		//This variable will become true, once the current outmost circle has gone out of
-		//colony bounds
-		//boolean lastCircleOutOfBounds = false;
-
-		int number_of_circles = 0;
-
-		ArrayList<Integer> elevationCounts = new ArrayList<Integer>();
-
-
-		//for every circle
-		while(number_of_circles<maximumNumberOfCircles){
-
-			int radius = initialRadius + number_of_circles * radiusStep;
-
-			//first of all, we need to get the coordinates of the circle
-			ArrayList<Point> circleCoordinates = getCircleCoordinates(colonyCenter, radius);
-			ArrayList<Integer> meanPixelValues = new ArrayList<Integer>(); 
-
-			//now, we need to traverse these circle coordinates to get the brightness elevations
-			for (Point point : circleCoordinates) {
-				//first, check if the point is out of bounds
-				if(!colonyRoi.contains(point.x, point.y)){
-					//grayscale_image.show();
-					//grayscale_image.hide();
-
-					//if it was found to be out of bounds,
-					//return the sum of the elevation counts for all circles except the previous
-					//the current one is never saved, but also the one before is likely to get high elevation counts 
-					//just because colony edges tend to be really bright compared to the background
-					//return(sumElevationCounts(elevationCounts, 1));
-					return(elevationCounts);
-				}
-				meanPixelValues.add(getBrightnessAverage9pixels(grayscale_image, point));
-			}
-
-			elevationCounts.add(new Integer(countBrightnessChanges(meanPixelValues, minimumBrightnessStep, 2)));
-
-			number_of_circles++;
-		}
-
-		//return the sum of the elevation counts for all circles except the last one
-		//return(sumElevationCounts(elevationCounts, 1));
-		return(elevationCounts);
+		//the current outmost circle is never counted once it has gone out of colony bounds;
+		//the one before is likely to get high elevation counts too, just because colony edges tend to be really bright
+		//compared to the background, that's for the callers to ignore (see sumElevationCounts)
+		MorphologyKernel kernel = new MorphologyKernel(grayscale_image, colonyRoi);
+		return(kernel.getElevationCounts(colonyCenter, initialRadius, radiusStep, maximumNumberOfCircles, minimumBrightnessStep));
 
 	}
 
@@ -656,213 +613,6 @@ public class MorphologyTileReaderStm {
 	}
 
 
-	/**
-	 * This function will get a sequence of measurements and count the times there's a difference
-	 * greater or equal to threshold, when subtracting a measurement from it's previous
-	 * @param series:	the pixel brightness values
-	 * @param threshold:	above which brightness difference is it going to be picked up as a brightness change
-	 * @param offset:	skip these number of pixels. Default value is 1	
-	 * @return
-	 */
-	private static int countBrightnessChanges(ArrayList<Integer> series, int threshold, int offset){
-
-		int changesOverThreshold = 0;
-
-		for (int i = 0; i < series.size()-offset; i++) {
-			int difference = Math.abs(series.get(i+offset) - series.get(i));
-			if(difference>threshold){
-				changesOverThreshold++;
-			}
-		}
-
-		return(changesOverThreshold);
-	}
-
-
-	/**
-	 * This function will return the average brightness of +/- 1 pixels around the requested point
-	 * @param grayscale_image
-	 * @param colonyRoi
-	 * @param pixelToGet
-	 * @return
-	 */
-	private static int getBrightnessAverage9pixels(ImagePlus grayscale_image, Point pixelToGet){
-
-		//count the number of pixels actually retrieved and added to the sum		
-		int pixelsAdded = 0;
-		int sumOfPixelIntensity = 0;
-
-		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();  
-
-		for (int x = -1; x <= 1; x++) {
-			for (int y = -1; y <= 1; y++) {
-				int pixelIntensity = 0;
-				try{
-					pixelIntensity = grayscale_image_ip.getPixel(pixelToGet.x + x, pixelToGet.y + y);					
-				}
-				catch(Exception e){
-					continue;
-				}
-
-				if(pixelIntensity==0){
-					continue;//because getPixel() gives a zero if the requested pixel coordinates are out of bounds
-				}
-
-				//all went all right, we add up the pixel intensity and increase the pixelsAdded counter
-				pixelsAdded++;
-				sumOfPixelIntensity += pixelIntensity;				
-			}
-		}
-
-
-		return (int) (Math.round( (double)sumOfPixelIntensity / (double)pixelsAdded ));
-	}
-
-
-	/**
-	 * Since we have a rasterized picture with relatively small resolution,
-	 * we will use Bresenham's circle algorithm, an adaptation of Bresenham's line algorithm
-	 * to draw a rasterized circle.
-	 * Note that this implementation follows Jean-Yves Tinevez's <jeanyves.tinevez@gmail.com> 
-	 * Matlab implementation. Hence it provides us with a list of points that are sorted, as in
-	 * a circle that starts at 6 o'clock and goes counterclockwise.
-	 * This happens because the coordinate system this function was made for is
-	 * 	+
-	 * - +
-	 * 	-
-	 * whereas what happens for image coordinate systems is
-	 * 0	+
-	 * +
-	 * a.k.a
-	 * 	-
-	 * - +
-	 * 	+
-	 * @param center
-	 * @param radius
-	 * @return the circle point coordinates  
-	 * @see http://en.wikipedia.org/wiki/Midpoint_circle_algorithm
-	 */
-	private static ArrayList<Point> getCircleCoordinates(Point center, int radius){
-		// Compute first the number of points
-		int octant_size = (int) Math.floor((Math.sqrt(2)*(radius-1)+4)/2);
-		int n_points = 8 * octant_size;
-
-
-		int x0 = center.x;
-		int y0 = center.y;
-
-		// Iterate a second time, and this time retrieve coordinates.
-		// We "zig-zag" through indices, so that we reconstruct a continuous
-		// set of of x,y coordinates, starting from the top of the circle.
-
-		//Matlab uses the 1..n array notation instead of the 0...n-1 notation that Java uses
-		//an easy way to go from one to the other is make a bigger array and then "shift" all the values
-		//before moving them back into Java context
-		int[] xc = new int[n_points+1];
-		int[] yc = new int[n_points+1];
-
-		int x = 0;
-		int y = radius;
-		int f = 1 - radius;
-		int dx = 1;
-		int dy = - 2 * radius;
-
-		// Store
-
-		// 1 octant
-		xc[1] = x0 + x;
-		yc[1] = y0 + y;
-
-		// 2nd octant 
-		xc[8 * octant_size] = x0 - x;
-		yc[8 * octant_size] = y0 + y;
-
-		// 3rd octant 
-		xc[4 * octant_size] = x0 + x;
-		yc[4 * octant_size] = y0 - y;
-
-		// 4th octant 
-		xc[4 * octant_size + 1] = x0 - x;
-		yc[4 * octant_size + 1] = y0 - y;
-
-		// 5th octant 
-		xc[2 * octant_size] = x0 + y;
-		yc[2 * octant_size] = y0 + x;
-
-		// 6th octant 
-		xc[6 * octant_size + 1] = x0 - y;
-		yc[6 * octant_size + 1] = y0 + x;
-
-		// 7th octant 
-		xc[2 * octant_size + 1] = x0 + y;
-		yc[2 * octant_size + 1] = y0 - x;
-
-		// 8th octant 
-		xc[6 * octant_size] = x0 - y;
-		yc[6 * octant_size] = y0 - x;
-
-
-		for(int i=2; i<=n_points/8; i++){
-
-			// We update x & y
-			if (f > 0){
-				y = y - 1;
-				dy = dy + 2;
-				f = f + dy;
-			}
-			x = x + 1;
-			dx = dx + 2;
-			f = f + dx;
-
-			// 1 octant
-			xc[i] = x0 + x;
-			yc[i] = y0 + y;
-
-			// 2nd octant
-			xc[8 * octant_size - i + 1] = x0 - x;
-			yc[8 * octant_size - i + 1] = y0 + y;
-
-			// 3rd octant
-			xc[4 * octant_size - i + 1] = x0 + x;
-			yc[4 * octant_size - i + 1] = y0 - y;
-
-			// 4th octant
-			xc[4 * octant_size + i] = x0 - x;
-			yc[4 * octant_size + i] = y0 - y;
-
-			// 5th octant
-			xc[2 * octant_size - i + 1] = x0 + y;
-			yc[2 * octant_size - i + 1] = y0 + x;
-
-			// 6th octant
-			xc[6 * octant_size + i] = x0 - y;
-			yc[6 * octant_size + i] = y0 + x;
-
-			// 7th octant
-			xc[2 * octant_size + i] = x0 + y;
-			yc[2 * octant_size + i] = y0 - x;
-
-			// 8th octant
-			xc[6 * octant_size - i + 1] = x0 - y;
-			yc[6 * octant_size - i + 1] = y0 - x;
-
-		}
-
-		//ready, now prepare the output
-		ArrayList<Point> pointsToReturn = new ArrayList<Point>();
-
-		for(int i=1; i<n_points+1; i++){
-			pointsToReturn.add(new Point(xc[i], yc[i]));
-		}
-
-
-		return(pointsToReturn);
-
-
-	}
-
-
-
 	/**
 	 * This function will convert the given picture into black and white
 	 * using ImageProcessor's auto thresholding function, employing the Otsu algorithm. 
@@ -1117,30 +867,7 @@ public class MorphologyTileReaderStm {
 	 * @return
 	 */
 	private static double[] sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toDoubleArray(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -4,27 +4,25 @@
 package iris.tileReaders;
 
 import java.awt.Point;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
+import java.awt.Rectangle;
 
 import ij.ImagePlus;
 import ij.gui.OvalRoi;
 import ij.gui.Roi;
 import ij.measure.Calibration;
-import ij.measure.Measurements;
 import ij.measure.ResultsTable;
-import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
-import ij.process.FloatProcessor;
 import ij.process.ImageProcessor;
 import ij.process.ImageStatistics;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.OpacityTileReaderInput;
 import iris.tileReaderOutputs.OpacityTileReaderOutput;
-import iris.ui.IrisFrontend;
+import iris.utils.BrightnessHistogram;
+import iris.utils.ParticleLabeller;
+import iris.utils.ParticleLabeller.Particle;
+import iris.utils.TileView;
 import iris.utils.Toolbox;
 
 /**
@@ -33,8 +31,6 @@ import iris.utils.Toolbox;
  */
 public class OpacityTileReader {
 
-	public static int diameter = 16;
-
 	/**
 	 * This tile reader gets the size of the colony in pixels, as well as the sum of it's brightness.
 	 * 
@@ -46,6 +42,9 @@ public class OpacityTileReader {
 		//0. create the output object
 		OpacityTileReaderOutput output = new OpacityTileReaderOutput();
 
+		//the diameter of the area around the colony center whose opacity is measured
+		int diameter = input.settings.centerAreaDiameter;
+
 		//get a copy of this tile, before it gets thresholded
 		ImagePlus grayscaleTileCopy = input.tileImage.duplicate();
 		grayscaleTileCopy.setRoi(input.tileImage.getRoi());
@@ -56,7 +55,7 @@ public class OpacityTileReader {
 
 
 		Roi colonyRoi;
-		if(!IrisFrontend.settings.userDefinedRoi){
+		if(!PictureSettings.current().userDefinedRoi){
 
 
 			//1. apply a threshold at the tile, using the Otsu algorithm
@@ -66,28 +65,17 @@ public class OpacityTileReader {
 			//
 			//
 
-			//2. perform particle analysis on the thresholded tile
-
-			//create the results table, where the results of the particle analysis will be shown
-			ResultsTable resultsTable = new ResultsTable();
-
-			//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-			ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER, 
-					Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
-					resultsTable, 5, Integer.MAX_VALUE);
-
-
-			RoiManager manager = new RoiManager(true);//we do this so that the RoiManager window will not pop up
-			ParticleAnalyzer.setRoiManager(manager);
-
-			particleAnalyzer.analyze(input.tileImage); //it gets the image processor internally
+			//2. find the particles of the thresholded tile, at least 5 pixels big
+			//these are the same as the ParticleAnalyzer would find, but only the outline of the biggest one gets traced
+			ParticleLabeller particleLabeller = new ParticleLabeller(input.tileImage, 5);
+			Particle[] particles = particleLabeller.getParticles();
 			//
 			//--------------------------------------------------
 			//
 			//
 
-			//3.1 check if the returned results table is empty
-			if(resultsTable.getCounter()==0){
+			//3.1 check if there were any particles found
+			if(particles.length==0){
 				output.emptyResulsTable = true; // this is highly abnormal
 				output.colonySize = 0;//return a colony size of zero
 
@@ -97,9 +85,14 @@ public class OpacityTileReader {
 				return(output);
 			}
 
+			//the biggest particle is the one reported, its outline is needed to tell whether it's round enough to be a colony
+			int indexOfBiggestParticle = particleLabeller.getIndexOfBiggestParticle();
+			Particle biggestParticle = particles[indexOfBiggestParticle];
+			particleLabeller.traceOutline(biggestParticle);
+
 			//3.2 check to see if the tile was empty. If so, return a colony size of zero
 			//if(isTileEmpty(resultsTable, input.tileImage)){
-			if(Toolbox.isTileEmpty_simple2(resultsTable, input.tileImage)){
+			if(Toolbox.isTileEmpty_simple2(biggestParticle)){
 				//if(OpacityTileReaderForHazyColonies_old.isTileEmpty_simple(input.tileImage)){
 				output.emptyTile = true;
 				output.colonySize = 0;//return a colony size of zero
@@ -116,17 +109,16 @@ public class OpacityTileReader {
 			//3.3 if there was a colony there, return the area of the biggest particle
 			//this should also clear away contaminations, because normally the contamination
 			//area will be smaller than the colony area, so the contamination will never be reported
-			int indexOfBiggestParticle = getIndexOfBiggestParticle(resultsTable);
 			//3.4 get the opacity of the colony
 			//for this, we need the Roi (region of interest) that corresponds to the colony
 			//so as to exclude the brightness of any contaminations
-			colonyRoi = manager.getRoisAsArray()[indexOfBiggestParticle];
+			colonyRoi = biggestParticle.outline;
 
-			output.colonySize = getBiggestParticleAreaPlusPerimeter(resultsTable, indexOfBiggestParticle);
-			output.circularity = getBiggestParticleCircularity(resultsTable, indexOfBiggestParticle);
+			output.colonySize = getBiggestParticleAreaPlusPerimeter(biggestParticle);
+			output.circularity = biggestParticle.circularity;
 
 			if(input.colonyCenter==null){ //if the center's preset for us, don't recalculate it
-				output.colonyCenter = getBiggestParticleCenterOfMass(resultsTable, indexOfBiggestParticle);	
+				output.colonyCenter = getBiggestParticleCenterOfMass(biggestParticle);	
 			} else {
 				output.colonyCenter = new Point(input.colonyCenter);
 			}
@@ -217,9 +209,9 @@ public class OpacityTileReader {
 	public static OpacityTileReaderOutput processDefinedColonyTile(OpacityTileReaderInput input, boolean useDarkColonies){
 
 		//in case no-one's done this for us, get the ROI the traditional way
-		if(input.colonyRoi==null && !IrisFrontend.settings.userDefinedRoi){
+		if(input.colonyRoi==null && !PictureSettings.current().userDefinedRoi){
 			return(processTile(input));
-		} else if(IrisFrontend.settings.userDefinedRoi){
+		} else if(PictureSettings.current().userDefinedRoi){
 			input.colonyRoi=input.tileImage.getRoi();
 		}
 
@@ -292,24 +284,11 @@ public class OpacityTileReader {
 			ImagePlus tileImage, Roi colonyROI) {
 
 		try{
-			FloatProcessor backgroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-			backgroundPixels.setRoi(colonyROI);
-			backgroundPixels.setValue(0);
-			backgroundPixels.setBackgroundValue(0);
-
-			backgroundPixels.fill(backgroundPixels.getMask());
-			//		(new ImagePlus("keep-background mask",backgroundPixels)).show();
-
-			FloatProcessor foregroundPixels = (FloatProcessor) tileImage.getProcessor().convertToFloat().duplicate();
-			foregroundPixels.setRoi(colonyROI);
-			foregroundPixels.setValue(0);
-			foregroundPixels.setBackgroundValue(0);
-
-			foregroundPixels.fillOutside(colonyROI);
-			//		(new ImagePlus("keep-foreground mask",foregroundPixels)).show();
-
-
+			TileView tile = getWholeTile(tileImage);
 
+			//the background is everything outside the colony ROI, the foreground everything inside it
+			BrightnessHistogram backgroundPixels = new BrightnessHistogram(tile, colonyROI, false);
+			BrightnessHistogram foregroundPixels = new BrightnessHistogram(tile, colonyROI, true);
 
 			int backgroundMedian = getBackgroundMedian(backgroundPixels);
 
@@ -324,99 +303,42 @@ public class OpacityTileReader {
 
 
 	/**
-	 * @param ip
-	 * @return
+	 * @param tileImage
+	 * @return a view of the whole tile, regardless of any Roi set on it
 	 */
-	private static int sumPixelOverBackgroundBrightness(FloatProcessor ip, int backgroundMedian) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
-
-		int sum = 0;
-		for(Float thisPixel : nonZeroPixels){
-			sum += Math.round(thisPixel)-backgroundMedian;
-		}
-
-
-		return(sum);
+	private static TileView getWholeTile(ImagePlus tileImage){
+		return(new TileView(tileImage, new Rectangle(0, 0, tileImage.getWidth(), tileImage.getHeight())));
 	}
 
 
-
 	/**
-	 * @param ip
+	 * @param pixels
 	 * @return
 	 */
-	private static int getBackgroundMedian(FloatProcessor ip) {
-
-		float[] pixels = (float[]) ip.getPixels();
-
-		ArrayList<Float> nonZeroPixels = new ArrayList<Float>();
-		ArrayList<Float> zeroPixels = new ArrayList<Float>();
-		ArrayList<Float> onePixels = new ArrayList<Float>();
-
-		for(float thisPixel : pixels){
-			if(thisPixel==255)
-				onePixels.add(thisPixel);
-			else if(thisPixel==0)
-				zeroPixels.add(thisPixel);//don't deal with pixels inside the colony ROI
-			else
-				nonZeroPixels.add(thisPixel);
-		}
+	static int sumPixelOverBackgroundBrightness(BrightnessHistogram pixels, int backgroundMedian) {
+		//pure black and pure white pixels are left out
+		return(pixels.getSum(1, 254, backgroundMedian));
+	}
 
 
-		return(Math.round(getMedian(nonZeroPixels.toArray(new Float[nonZeroPixels.size()]))));
-	}
 
 	/**
-	 * just gets the median, nothing to see here
-	 * @param inputArray
+	 * @param pixels
 	 * @return
 	 */
-	private static float getMedian(Float[] inputArray){
-
-		if(inputArray.length==0)
-			return(0);
-
-		Arrays.sort(inputArray);
-		double median;
-		if (inputArray.length % 2 == 0)
-			median = ((double)inputArray[inputArray.length/2] + (double)inputArray[inputArray.length/2 - 1])/2;
-		else
-			median = (double) inputArray[inputArray.length/2];
-
-		return((float)median);
+	static int getBackgroundMedian(BrightnessHistogram pixels) {
+		//pure black and pure white pixels are left out
+		return((int)Math.round(pixels.getMedian(1, 254)));
 	}
 
 
 
 	/**
-	 * Returns the center of mass of the biggest particle in the results table
+	 * Returns the center of mass of the biggest particle
 	 */
-	private static Point getBiggestParticleCenterOfMass(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the coordinates of all the particles the particle analyzer has found		
-		float X_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("XM"));//get the X of the center of mass of all the particles
-		float Y_center_of_mass[] = resultsTable.getColumn(resultsTable.getColumnIndex("YM"));//get the Y of the center of mass of all the particles
-
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		return( new Point(	Math.round(X_center_of_mass[indexOfMax]),
-				Math.round(Y_center_of_mass[indexOfMax])));
+	private static Point getBiggestParticleCenterOfMass(Particle biggestParticle) {
+		return( new Point(	Math.round(biggestParticle.xCenterOfMass),
+				Math.round(biggestParticle.yCenterOfMass)));
 	}
 
 
@@ -487,54 +409,32 @@ public class OpacityTileReader {
 	 */
 	private static double getLargestTenPercentOpacityMedian(ImagePlus grayscaleTile, Roi colonyRoi) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
-
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(new BrightnessHistogram(getWholeTile(grayscaleTile)));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
+		//3. get the pixels inside the Roi, everything outside it counts as black
+		TileView grayscaleTileCopy = new TileView(grayscaleTile);
+		BrightnessHistogram colonyPixels;
 		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+			colonyPixels = new BrightnessHistogram(grayscaleTileCopy, colonyRoi, true);
 		} catch (Exception e) {
 			return(0);
 		}
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		//sort the bytes according to opacity
-		Arrays.sort(imageBytes);
-		ArrayList<Integer> pixelIntValues = new ArrayList<Integer>();
-
-		for(int i=0;i<size;i++){
-			int pixelValue = imageBytes[i]&0xFF;
-			pixelIntValues.add(pixelValue);
-		}
-
-		Collections.sort(pixelIntValues, Collections.reverseOrder());
-		//get the mean of the top 10%
-		int sumOfBrightness = 0;
+		//4. get the mean of the top 10% of the tile
+		//if the colony is smaller than that, the black pixels outside it add nothing to the sum
+		int size = grayscaleTileCopy.getWidth()*grayscaleTileCopy.getHeight();
 		int size_subset = (int)Math.ceil((double)size/(double)10);
-		for(int i=0;i<size_subset;i++){
-			sumOfBrightness += Math.max(0, pixelIntValues.get(i)-background_level);
-		}
+		int sumOfBrightness = colonyPixels.getSumOfBrightest(size_subset, background_level);
+
 		//int top10percentMean = (int) Math.round((double)sumOfBrightness/(double)size_subset);
 		double top10percentMean = (double)sumOfBrightness/(double)size_subset;
 
-		grayscaleTileCopy.flush();
 		return(top10percentMean);
 	}
 
@@ -550,54 +450,26 @@ public class OpacityTileReader {
 	 */
 	private static int getBiggestParticleOpacity(ImagePlus grayscaleTile, Roi colonyRoi) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
-
 		//1. find the background level, which is the median of the pixels not in the ROI
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-
-		backgroundPixels.fill(backgroundPixels.getMask());
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(new BrightnessHistogram(getWholeTile(grayscaleTile), colonyRoi, false));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
+		//3. get the pixels inside the Roi
+		BrightnessHistogram colonyPixels;
 		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+			colonyPixels = new BrightnessHistogram(new TileView(grayscaleTile), colonyRoi, true);
 		} catch (Exception e) {
 			return(0);
 		}
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		int sumOfBrightness = 0;
-
-		for(int i=0;i<size;i++){
-			//since our pixelValue is unsigned, this is what we need to do to get it's actual (unsigned) value
-			int pixelValue = imageBytes[i]&0xFF;
-
-			//subtract the threshold and put the pixels in the sum
-			//every pixel inside the colony should normally be above the threshold
-			//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
-			//Also all the pixels outside the Roi would have a negative value after subtraction 
-			//(they are already zero) because of the mask process
-
-			sumOfBrightness += Math.max(0, pixelValue-background_level);
-		}
-
-		grayscaleTileCopy.flush();
-
-		return (sumOfBrightness);
+		//4. subtract the threshold and put the pixels in the sum
+		//every pixel inside the colony should normally be above the threshold
+		//but just in case, we'll just take 0 if a colony pixel turns out to be below the threshold
+		return(colonyPixels.getSum(background_level+1, 255, background_level));
 	}
 
 
@@ -614,56 +486,26 @@ public class OpacityTileReader {
 	 */
 	private static int getBiggestParticleOpacity_darkColonies(ImagePlus grayscaleTile, Roi colonyRoi) {
 
-		ImagePlus grayscaleTileCopy = grayscaleTile.duplicate();
-
 		//1. find the background level
-		FloatProcessor backgroundPixels = (FloatProcessor) grayscaleTile.getProcessor().convertToFloat().duplicate();
-		backgroundPixels.setRoi(colonyRoi);
-		backgroundPixels.setValue(0);
-		backgroundPixels.setBackgroundValue(0);
-		int background_level = getBackgroundMedian(backgroundPixels);
+		int background_level = getBackgroundMedian(new BrightnessHistogram(getWholeTile(grayscaleTile)));
 
 		//2. check sanity of the given Roi
 		if(colonyRoi.getBounds().width<=0||colonyRoi.getBounds().height<=0){
 			return(0);
 		}
 
-		//3. set the Roi and paint eveything outside it as black
-		grayscaleTileCopy.setRoi(colonyRoi);
+		//3. get the pixels inside the Roi
+		BrightnessHistogram colonyPixels;
 		try {
-			grayscaleTileCopy.getProcessor().fillOutside(colonyRoi);
+			colonyPixels = new BrightnessHistogram(new TileView(grayscaleTile), colonyRoi, true);
 		} catch (Exception e) {
 			return(0);
 		}
 
-		//4. get the pixel values of the image
-		ByteProcessor processor = (ByteProcessor) grayscaleTileCopy.getProcessor();
-		byte[] imageBytes = (byte[]) processor.getPixels();
-
-		int size = imageBytes.length;
-
-		int sumOfBrightness = 0;
-
-		for(int i=0;i<size;i++){
-			int pixelValue = imageBytes[i]&0xFF;		
-
-			//if a pixel value is zero, then it's either a really dark spot in the colony --improbable--
-			//or its outside the colony (see fillOutside above) --much more probable--
-
-			if(pixelValue==0){
-				continue; //we don't want to count the background pixels
-			}
-
-			//sum up the pixel values, after subtracting the (Otsu defined background level).
-			//if a colony is darker than the background, it will get a negative value here
-
-			sumOfBrightness += pixelValue-background_level;
-		}
-
-		grayscaleTileCopy.flush();
-
-
-		return (sumOfBrightness);
+		//4. sum up the pixel values, after subtracting the background level.
+		//if a colony is darker than the background, it will get a negative value here
+		//a pixel value of zero is taken to be outside the colony, so we don't count it
+		return(colonyPixels.getSum(1, 255, background_level));
 	}
 
 
@@ -883,17 +725,6 @@ public class OpacityTileReader {
 	}
 
 
-	private static int getIndexOfBiggestParticle(ResultsTable resultsTable){
-		//get the areas of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = getIndexOfMaximumElement(areas);
-
-		return(indexOfMax);
-	}
-
-
 	/**
 	 * Returns the area of the biggest particle in the results table
 	 */
@@ -913,7 +744,7 @@ public class OpacityTileReader {
 
 
 	/**
-	 * Returns the area of the biggest particle in the results table.
+	 * Returns the area of the biggest particle (its outline must have been traced).
 	 * This function compensates for a mildly stringent thresholding algorithm (such as Otsu),
 	 * in which it is known that the outer pixels of the colony are missing.
 	 * By adding back pixels that equal the periphery in number, we compensate for those missing pixels.
@@ -921,41 +752,17 @@ public class OpacityTileReader {
 	 * shape (such as colonies that form a biofilm), this could add much more than just an outer layer of pixels,
 	 * thus overcorrecting the stringency of the thresholding algorithm. 
 	 */
-	private static int getBiggestParticleAreaPlusPerimeter(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float perimeters[] = resultsTable.getColumn(resultsTable.getColumnIndex("Perim."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
+	private static int getBiggestParticleAreaPlusPerimeter(Particle biggestParticle) {
 
 		//get the area and perimeter of the biggest particle
-		int largestParticleArea = Math.round(areas[indexOfMax]);
-		int largestParticlePerimeter = Math.round(perimeters[indexOfMax]);
+		int largestParticleArea = Math.round(biggestParticle.area);
+		int largestParticlePerimeter = Math.round(biggestParticle.perimeter);
 
 		return(largestParticleArea+largestParticlePerimeter);
 	}
 
 
 
-	/**
-	 * Returns the circularity of the biggest particle in the results table.
-	 */
-	private static float getBiggestParticleCircularity(ResultsTable resultsTable, int indexOfBiggestParticle) {
-
-		//get the areas and perimeters of all the particles the particle analyzer has found
-		float areas[] = resultsTable.getColumn(resultsTable.getColumnIndex("Area"));
-		float circularities[] = resultsTable.getColumn(resultsTable.getColumnIndex("Circ."));
-
-		//get the index of the biggest particle (in area in pixels)
-		int indexOfMax = indexOfBiggestParticle;//getIndexOfMaximumElement(areas);
-
-		return(circularities[indexOfMax]);
-	}
-
-
-
 	/**
 	 * This method simply iterates through this array and finds the index
 	 * of the largest element
@@ -7,7 +7,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
+
+import iris.imageSegmenters.TimeSeriesGrids;
+import iris.settings.CameraCalibration;
 
 /**
  * 
@@ -51,11 +56,34 @@ class IrisConsole {
 		System.out.println("\tSingle colony mode:\t"+IrisFrontend.singleColonyRun);
 		System.out.println("\tnumber of rows:\t"+IrisFrontend.settings.numberOfRowsOfColonies);
 		System.out.println("\tnumber of columns:\t"+IrisFrontend.settings.numberOfColumnsOfColonies);
+		System.out.println("\tworker threads:\t"+(IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1));
+		System.out.println("\ttile threads:\t"+IrisFrontend.numberOfTileThreads);
+		System.out.println("\tshared folder (nice) mode:\t"+IrisFrontend.nice);
+		System.out.println("\tpipelined:\t"+IrisFrontend.pipelined);
+		System.out.println("\ttime series:\t"+TimeSeriesGrids.enabled);
+		System.out.println("\tcamera calibration:\t"+CameraCalibration.enabled);
 		
 		
 		
 
 
+		//keep running, analyzing the pictures of all given folders as they come
+		if(IrisFrontend.watchFolders){
+			List<File> folders = new ArrayList<File>();
+			for(int i=1; i<args.length; i++){
+				File folder = new File(args[i]);
+				if(folder.isDirectory())
+					folders.add(folder);
+			}
+			if(folders.isEmpty()){
+				System.err.println("No folder to watch: " + folderLocation);
+				return;
+			}
+			new IrisDaemon(folders).run();
+			return;
+		}
+
+
 		//distinguish between whole-folder input and single-file input
 		File fileOrFolder = new File(folderLocation);
 		if(fileOrFolder.isDirectory()){
@@ -86,7 +114,15 @@ class IrisConsole {
 
 
 	private static void printUsage(){
-		System.out.println("Usage: Iris ProfileName FolderLocation\n");
+		System.out.println("Usage: Iris ProfileName FolderLocation [threads=N] [tileThreads=N] [nice [leaseTimeout=MINUTES]]\n");
+		System.out.println("Tip: threads=N processes N pictures in parallel, threads=auto uses all processors\n");
+		System.out.println("Tip: tileThreads=N analyzes the tiles of each picture using N threads\n");
+		System.out.println("Tip: nice skips pictures already done or being analyzed by other Iris instances sharing the folder\n");
+		System.out.println("Tip: watch keeps Iris running, analyzing new pictures as they appear in one or more folders:\n     Iris ProfileName Folder1 [Folder2 ...] watch\n");
+		System.out.println("Tip: timeSeries reuses the grid of the first picture of a plate for its later pictures (same filename but for a timepoint at the end, e.g. _t001),\n     timeSeries=PATTERN tells the pictures of a plate apart by the first group of PATTERN instead\n");
+		System.out.println("Tip: calibrate learns the rotation and crop borders of every camera from its first 5 pictures (calibrate=N: from N pictures),\n     and keeps them in iris.calibration.json for the next pictures\n");
+		System.out.println("Tip: pipeline reads the next pictures and writes the results of the previous ones while analyzing\n");
+		System.out.println("Tip: serve keeps Iris running as a local HTTP service, analyzing the pictures posted to it:\n     Iris serve [port=8080] [host=localhost] [queue=16] [threads=N]\n");
 		System.out.println("Tip: call without any arguments to invoke GUI\n");
 	}
 
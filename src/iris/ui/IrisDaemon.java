@@ -0,0 +1,317 @@
+/**
+ *
+ */
+package iris.ui;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class keeps Iris running, watching one or more folders for new pictures and analyzing them
+ * as soon as they are completely written, e.g. while a robotic imager is still taking pictures of plates.
+ * Since the same JVM and worker threads are used for all pictures, the settings are loaded only once
+ * and the profiles stay warm (see ProfileRegistry) between pictures.
+ *
+ * A picture is analyzed once its size and modification time have not changed for a while and,
+ * for JPEG files, once the end-of-image marker has been written.
+ * Pictures already in the folders when the daemon starts are analyzed too, unless they already have an .iris file.
+ *
+ * @author George Kritikos
+ *
+ */
+class IrisDaemon {
+
+	/**
+	 * a picture is considered completely written if it hasn't changed for this long
+	 */
+	static long settleMillis = 2000;
+
+	/**
+	 * pictures still changing after this long are analyzed anyway (e.g. JPEGs without an end marker)
+	 */
+	static long maximumWaitMillis = 60000;
+
+	/**
+	 * how often the pending pictures are checked
+	 */
+	private static final long pollMillis = 500;
+
+
+	/**
+	 * the folders watched
+	 */
+	private final List<File> folders;
+
+	/**
+	 * pictures seen but not yet handed to the workers
+	 */
+	private final Map<File, PendingPicture> pendingPictures = new HashMap<File, PendingPicture>();
+
+	/**
+	 * pictures handed to the workers, so that further events for them are ignored
+	 */
+	private final Set<File> submittedPictures = new HashSet<File>();
+
+	private final PicturesFilenameFilter picturesFilter = new PicturesFilenameFilter();
+
+	private ExecutorService workers;
+
+
+
+	/**
+	 * What we know about a picture that is possibly still being written
+	 */
+	private static class PendingPicture {
+		long size = -1;
+		long lastModified = -1;
+		long unchangedSince;
+		final long firstSeen;
+
+		PendingPicture(long now){
+			firstSeen = now;
+			unchangedSince = now;
+		}
+	}
+
+
+
+	IrisDaemon(List<File> folders){
+		this.folders = folders;
+	}
+
+
+	/**
+	 * Watches the folders until the process is stopped
+	 */
+	void run(){
+
+		int numberOfWorkers = IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1;
+		workers = Executors.newFixedThreadPool(numberOfWorkers);
+
+		//the log goes to the first folder
+		IrisFrontend.openLog(folders.get(0).getAbsolutePath());
+		IrisFrontend.writeToLog("--- Iris version " + IrisFrontend.IrisVersion + " log file\tbuild "+IrisFrontend.IrisBuild+" ---\n");
+		IrisFrontend.writeToLog("-- Started watching folders at "+ new Date() + " --\n");
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				IrisFrontend.writeToLog("\n\n-- Stopped watching folders at "+ new Date() + " --\n");
+				IrisFrontend.closeLog();
+			}
+		}));
+
+		WatchService watchService;
+		try {
+			watchService = FileSystems.getDefault().newWatchService();
+			for (File folder : folders) {
+				folder.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+				System.out.println("Watching folder:\n  " + folder.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			System.err.println("Could not watch folders: " + e.getMessage());
+			workers.shutdown();
+			return;
+		}
+		System.out.println("Using " + numberOfWorkers + " worker threads, stop with Ctrl+C\n");
+
+		//the pictures that are already there
+		for (File folder : folders) {
+			scanFolder(folder);
+		}
+
+		//check the pending pictures regularly, handing the ones that are complete to the workers
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try{
+					submitSettledPictures();
+				}
+				catch(Exception e){
+					e.printStackTrace(System.err);
+				}
+			}
+		}, pollMillis, pollMillis, TimeUnit.MILLISECONDS);
+
+		try{
+			while(true){
+				WatchKey key;
+				try {
+					key = watchService.take();
+				} catch (InterruptedException e) {
+					break;
+				} catch (ClosedWatchServiceException e) {
+					break;
+				}
+
+				Path folderPath = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if(event.kind()==OVERFLOW){
+						//we lost some events, look at the whole folder again
+						scanFolder(folderPath.toFile());
+						continue;
+					}
+					Path picturePath = folderPath.resolve((Path) event.context());
+					addPicture(picturePath.toFile());
+				}
+
+				if(!key.reset()){
+					System.err.println("Stopped watching folder (not accessible anymore): " + folderPath);
+				}
+			}
+		}
+		finally{
+			timer.shutdownNow();
+			workers.shutdown();
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				//nothing left to do
+			}
+		}
+	}
+
+
+	/**
+	 * Adds all pictures of the folder that are not analyzed yet
+	 * @param folder
+	 */
+	private void scanFolder(File folder){
+		File[] pictures = folder.listFiles(picturesFilter);
+		if(pictures==null)
+			return;
+		for (File picture : pictures) {
+			addPicture(picture);
+		}
+	}
+
+
+	/**
+	 * Starts tracking a picture, unless it's not a picture, or it's already analyzed or submitted
+	 * @param picture
+	 */
+	private synchronized void addPicture(File picture){
+		if(!picturesFilter.accept(picture.getParentFile(), picture.getName()))
+			return;
+		//the inverted profiles save an inverted copy of the picture next to it
+		if(picture.getName().endsWith(".inverted.jpg"))
+			return;
+		if(submittedPictures.contains(picture) || pendingPictures.containsKey(picture))
+			return;
+		if(new File(picture.getAbsolutePath()+".iris").exists())
+			return;
+
+		pendingPictures.put(picture, new PendingPicture(System.currentTimeMillis()));
+	}
+
+
+	/**
+	 * Hands the pictures that are completely written to the workers
+	 */
+	private synchronized void submitSettledPictures(){
+		long now = System.currentTimeMillis();
+
+		Iterator<Map.Entry<File, PendingPicture>> iterator = pendingPictures.entrySet().iterator();
+		while(iterator.hasNext()){
+			Map.Entry<File, PendingPicture> entry = iterator.next();
+			final File picture = entry.getKey();
+			PendingPicture pending = entry.getValue();
+
+			if(!picture.exists()){
+				iterator.remove();
+				continue;
+			}
+
+			long size = picture.length();
+			long lastModified = picture.lastModified();
+			if(size!=pending.size || lastModified!=pending.lastModified){
+				pending.size = size;
+				pending.lastModified = lastModified;
+				pending.unchangedSince = now;
+			}
+
+			boolean settled = size>0 && now-pending.unchangedSince >= settleMillis && isCompletelyWritten(picture);
+			boolean waitedTooLong = size>0 && now-pending.firstSeen >= maximumWaitMillis;
+			if(!settled && !waitedTooLong)
+				continue;
+
+			iterator.remove();
+			submittedPictures.add(picture);
+			workers.submit(new Runnable() {
+				public void run() {
+					try{
+						ProcessFolderWorker.processSingleFileSafely(picture);
+						System.out.println("...done! " + "\n\n\n");
+					}
+					finally{
+						pictureDone(picture);
+					}
+				}
+			});
+		}
+	}
+
+
+	/**
+	 * Called by the workers once a picture is analyzed; if the picture is written again, it will be analyzed again,
+	 * unless its .iris file is there
+	 * @param picture
+	 */
+	private synchronized void pictureDone(File picture){
+		submittedPictures.remove(picture);
+	}
+
+
+	/**
+	 * JPEG files end with the end-of-image marker (FF D9), which is only there once the whole file is written.
+	 * Other pictures are assumed complete.
+	 * @param picture
+	 * @return
+	 */
+	private static boolean isCompletelyWritten(File picture){
+		String filename = picture.getName().toLowerCase();
+		if(!filename.endsWith(".jpg") && !filename.endsWith(".jpeg"))
+			return(true);
+
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(picture, "r");
+			long length = file.length();
+			if(length<2)
+				return(false);
+			file.seek(length-2);
+			return(file.read()==0xFF && file.read()==0xD9);
+		} catch (IOException e) {
+			return(false);
+		} finally{
+			if(file!=null){
+				try {
+					file.close();
+				} catch (IOException e) {
+					//nothing left to do
+				}
+			}
+		}
+	}
+
+}
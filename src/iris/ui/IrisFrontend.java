@@ -9,13 +9,18 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
+import iris.imageSegmenters.TimeSeriesGrids;
 import iris.settings.BasicSettings;
+import iris.settings.CameraCalibration;
 import iris.settings.UserSettings;
+import iris.utils.FileLease;
 
 /**
  * This class acts as the decision point between console and GUI versions
@@ -42,12 +47,19 @@ public class IrisFrontend {
 
 	/**
 	 * these are added specially for the multithreading case
+	 * multiThreaded is turned on by setting NumberOfThreads in the user settings file,
+	 * or by the threads=N command line option
 	 */
 	public static boolean multiThreaded = false;
 	static ExecutorService executorService;
-	public static List<Callable<Object>> todoThread;
 	public static int numberOfThreads = 4;
 
+	/**
+	 * the number of threads used to analyze the tiles of a single picture, 1 analyzes them one after the other
+	 * this is set by NumberOfTileThreads in the user settings file, or by the tileThreads=N command line option
+	 */
+	public static int numberOfTileThreads = 1;
+
 
 	/**
 	 * This string array holds the names of all the profiles
@@ -94,6 +106,16 @@ public class IrisFrontend {
 	 */
 	static boolean nice = false;
 
+	/**
+	 * If true, the console keeps running, analyzing new pictures as they appear in the given folders
+	 */
+	static boolean watchFolders = false;
+
+	/**
+	 * If true, the pictures of a folder are read, analyzed and written in overlapping stages (see PicturePipeline)
+	 */
+	static boolean pipelined = false;
+
 
 
 	public static void main(String[] args) {
@@ -103,6 +125,13 @@ public class IrisFrontend {
 		//apply user settings
 		UserSettings.applyUserSettings(userSettings);
 
+		//the number of worker threads can be given anywhere in the arguments, take it out before parsing the rest
+		args = parseThreadsArgument(args);
+		args = parseSharedFolderArguments(args);
+		args = parseTimeSeriesArgument(args);
+		args = parseCalibrationArgument(args);
+		args = parseRunModeArguments(args);
+
 		int argumentOffset = 0;
 		//first check if we need to turn on debug mode
 		if(args.length>0 && args[args.length-1].equalsIgnoreCase("DEBUG")){
@@ -116,6 +145,12 @@ public class IrisFrontend {
 			}
 		}
 		
+		//keep running as a local HTTP service
+		if(args.length>0 && args[0].equalsIgnoreCase("serve")){
+			IrisServer.main(args);
+			return;
+		}
+
 		//if there's no more command line arguments, then it's GUI mode
 		if(args.length<2){
 			IrisGUI.main(args);
@@ -139,6 +174,203 @@ public class IrisFrontend {
 	}
 
 
+	/**
+	 * This function looks for "threads=N" and "tileThreads=N" arguments (N can also be "auto"),
+	 * sets the number of worker threads and tile threads accordingly, and returns the rest of the arguments
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseThreadsArgument(String[] args){
+		List<String> remainingArgs = new ArrayList<String>();
+
+		for (String arg : args) {
+			boolean fileThreads = arg.toLowerCase().startsWith("threads=");
+			boolean tileThreads = arg.toLowerCase().startsWith("tilethreads=");
+			if(!fileThreads && !tileThreads){
+				remainingArgs.add(arg);
+				continue;
+			}
+
+			String value = arg.substring(arg.indexOf('=')+1);
+			int requestedThreads;
+			if(value.equalsIgnoreCase("auto")){
+				requestedThreads = Runtime.getRuntime().availableProcessors();
+			}
+			else{
+				try{
+					requestedThreads = Integer.parseInt(value);
+				}catch(NumberFormatException e){
+					System.err.println("ignoring invalid number of threads: " + value);
+					continue;
+				}
+			}
+
+			if(fileThreads)
+				setNumberOfThreads(requestedThreads);
+			else
+				setNumberOfTileThreads(requestedThreads);
+		}
+
+		return(remainingArgs.toArray(new String[remainingArgs.size()]));
+	}
+
+
+	/**
+	 * This function looks for the "nice" argument, which makes Iris skip pictures that are already done
+	 * or that other Iris instances sharing the folder are working on, and for "leaseTimeout=N",
+	 * the number of minutes after which the claim of an instance that stopped responding is taken over.
+	 * Returns the rest of the arguments
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseSharedFolderArguments(String[] args){
+		List<String> remainingArgs = new ArrayList<String>();
+
+		for (String arg : args) {
+			if(arg.equalsIgnoreCase("nice")){
+				nice = true;
+			}
+			else if(arg.toLowerCase().startsWith("leasetimeout=")){
+				String value = arg.substring(arg.indexOf('=')+1);
+				try{
+					int minutes = Integer.parseInt(value);
+					if(minutes<1)
+						throw new NumberFormatException();
+					FileLease.leaseTimeoutMillis = minutes*60*1000L;
+				}catch(NumberFormatException e){
+					System.err.println("ignoring invalid lease timeout: " + value);
+				}
+			}
+			else{
+				remainingArgs.add(arg);
+			}
+		}
+
+		return(remainingArgs.toArray(new String[remainingArgs.size()]));
+	}
+
+
+	/**
+	 * This function looks for the "timeSeries" argument, which makes the later pictures of the same plate
+	 * reuse the grid of the first one (see TimeSeriesGrids), or "timeSeries=PATTERN", which also sets
+	 * the pattern used to tell which pictures are of the same plate.
+	 * Returns the rest of the arguments
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseTimeSeriesArgument(String[] args){
+		List<String> remainingArgs = new ArrayList<String>();
+
+		for (String arg : args) {
+			if(arg.equalsIgnoreCase("timeSeries")){
+				TimeSeriesGrids.enabled = true;
+			}
+			else if(arg.toLowerCase().startsWith("timeseries=")){
+				String value = arg.substring(arg.indexOf('=')+1);
+				try{
+					TimeSeriesGrids.seriesPattern = Pattern.compile(value);
+					TimeSeriesGrids.enabled = true;
+				}catch(PatternSyntaxException e){
+					System.err.println("ignoring invalid time series pattern: " + value);
+				}
+			}
+			else{
+				remainingArgs.add(arg);
+			}
+		}
+
+		return(remainingArgs.toArray(new String[remainingArgs.size()]));
+	}
+
+
+	/**
+	 * This function looks for the "calibrate" argument, which makes Iris learn the rotation and crop borders
+	 * of every camera (see CameraCalibration), or "calibrate=N", which also sets how many pictures they are learned from.
+	 * Returns the rest of the arguments
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseCalibrationArgument(String[] args){
+		List<String> remainingArgs = new ArrayList<String>();
+
+		for (String arg : args) {
+			if(arg.equalsIgnoreCase("calibrate")){
+				CameraCalibration.enabled = true;
+			}
+			else if(arg.toLowerCase().startsWith("calibrate=")){
+				String value = arg.substring(arg.indexOf('=')+1);
+				try{
+					int pictures = Integer.parseInt(value);
+					if(pictures<1)
+						throw new NumberFormatException();
+					CameraCalibration.picturesToLearnFrom = pictures;
+					CameraCalibration.enabled = true;
+				}catch(NumberFormatException e){
+					System.err.println("ignoring invalid number of calibration pictures: " + value);
+				}
+			}
+			else{
+				remainingArgs.add(arg);
+			}
+		}
+
+		return(remainingArgs.toArray(new String[remainingArgs.size()]));
+	}
+
+
+	/**
+	 * This function looks for the "watch" argument, which keeps Iris running on the given folders (see IrisDaemon),
+	 * and for the "pipeline" argument, which makes Iris process folders in overlapping stages (see PicturePipeline).
+	 * Returns the rest of the arguments, so that these are not taken for the plate format
+	 * @param args
+	 * @return
+	 */
+	private static String[] parseRunModeArguments(String[] args){
+		List<String> remainingArgs = new ArrayList<String>();
+
+		for (String arg : args) {
+			if(arg.equalsIgnoreCase("watch")){
+				watchFolders = true;
+			}
+			else if(arg.equalsIgnoreCase("pipeline")){
+				pipelined = true;
+			}
+			else{
+				remainingArgs.add(arg);
+			}
+		}
+
+		return(remainingArgs.toArray(new String[remainingArgs.size()]));
+	}
+
+
+	/**
+	 * Sets the number of files that will be processed in parallel; 1 turns multithreading off
+	 * @param requestedThreads
+	 */
+	public static void setNumberOfThreads(int requestedThreads){
+		if(requestedThreads<1){
+			System.err.println("ignoring invalid number of threads: " + requestedThreads);
+			return;
+		}
+		numberOfThreads = requestedThreads;
+		multiThreaded = requestedThreads>1;
+	}
+
+
+	/**
+	 * Sets the number of threads used to analyze the tiles of one picture; 1 analyzes them one after the other
+	 * @param requestedThreads
+	 */
+	public static void setNumberOfTileThreads(int requestedThreads){
+		if(requestedThreads<1){
+			System.err.println("ignoring invalid number of tile threads: " + requestedThreads);
+			return;
+		}
+		numberOfTileThreads = requestedThreads;
+	}
+
+
 	/**
 	 * This function will create a unique log filename and open it for writing
 	 */
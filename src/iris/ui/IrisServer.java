@@ -0,0 +1,414 @@
+/**
+ *
+ */
+package iris.ui;
+
+import ij.ImagePlus;
+import iris.profiles.PlateAnalyzer;
+import iris.profiles.PlateResult;
+import iris.profiles.ProfileRegistry;
+import iris.settings.BasicSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * This class keeps Iris running as a local HTTP service, so that pictures can be analyzed by posting them,
+ * without starting a new Iris for every batch:
+ *
+ *   POST /analyze?profile=Colony%20growth&format=1536&output=json   (body: the picture file)
+ *
+ * format is the plate format (96, 384 or 1536, default: as given in the settings), output is json (default) or tsv.
+ * The response is the .iris table of the picture, no files are written.
+ * GET /profiles lists the names of the profiles.
+ *
+ * Pictures are analyzed by a fixed number of worker threads (threads=N), while at most queue=N more wait for a free worker;
+ * pictures posted while the queue is full are turned down right away (503, Retry-After), so that clients can back off
+ * instead of piling up requests.
+ *
+ * @author George Kritikos
+ *
+ */
+class IrisServer {
+
+	/**
+	 * the port the service listens to
+	 */
+	static int port = 8080;
+
+	/**
+	 * the address the service listens to; by default only this computer can reach it
+	 */
+	static String host = "localhost";
+
+	/**
+	 * how many pictures can wait for a free worker
+	 */
+	static int queueSize = 16;
+
+	/**
+	 * pictures bigger than this are turned down
+	 */
+	private static final int maximumPictureBytes = 200*1024*1024;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+
+	private ThreadPoolExecutor workers;
+
+
+
+	/**
+	 * Starts the service, with the options given in the arguments (port=N, host=ADDRESS, queue=N)
+	 * @param args
+	 */
+	static void main(String[] args){
+		for (String arg : args) {
+			String lowerCaseArg = arg.toLowerCase();
+			String value = arg.substring(arg.indexOf('=')+1);
+			try{
+				if(lowerCaseArg.startsWith("port=")){
+					port = Integer.parseInt(value);
+				}
+				else if(lowerCaseArg.startsWith("queue=")){
+					queueSize = Integer.parseInt(value);
+					if(queueSize<1)
+						throw new NumberFormatException();
+				}
+				else if(lowerCaseArg.startsWith("host=")){
+					host = value;
+				}
+			}catch(NumberFormatException e){
+				System.err.println("ignoring invalid option: " + arg);
+			}
+		}
+
+		new IrisServer().run();
+	}
+
+
+	/**
+	 * Serves until the process is stopped
+	 */
+	void run(){
+
+		//pictures of different profiles share the workers: each worker keeps its own profile instances,
+		//and each profile keeps what it tunes for its pictures in its own settings copy (see Profile)
+		int numberOfWorkers = IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1;
+		workers = new ThreadPoolExecutor(numberOfWorkers, numberOfWorkers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), new ThreadPoolExecutor.AbortPolicy());
+
+		HttpServer server;
+		try {
+			server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		} catch (IOException e) {
+			System.err.println("Could not start the service on " + host + ":" + port + ": " + e.getMessage());
+			workers.shutdown();
+			return;
+		}
+
+		server.createContext("/analyze", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleAnalyze(exchange);
+			}
+		});
+		server.createContext("/profiles", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleProfiles(exchange);
+			}
+		});
+
+		//requests are only accepted by the server's own thread, and handed over to the workers
+		server.setExecutor(null);
+		server.start();
+
+		System.out.println("Iris service listening on http://" + host + ":" + port + "/analyze");
+		System.out.println("Using " + numberOfWorkers + " worker threads and a queue of " + queueSize + " pictures, stop with Ctrl+C\n");
+	}
+
+
+	/**
+	 * Checks the request and queues the picture for analysis, or turns it down if the queue is full
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void handleAnalyze(final HttpExchange exchange) throws IOException {
+		if(!exchange.getRequestMethod().equalsIgnoreCase("POST")){
+			exchange.getResponseHeaders().set("Allow", "POST");
+			sendError(exchange, 405, "pictures should be posted");
+			return;
+		}
+
+		final Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+
+		final String profileName = parameters.get("profile");
+		if(!ProfileRegistry.isKnownProfile(profileName)){
+			sendError(exchange, 400, "unknown profile name: " + profileName);
+			return;
+		}
+
+		final BasicSettings settings = new BasicSettings(IrisFrontend.settings);
+		String format = parameters.get("format");
+		if(format!=null && !setPlateFormat(settings, format)){
+			sendError(exchange, 400, "unknown plate format: " + format + " (should be 96, 384 or 1536)");
+			return;
+		}
+
+		String output = parameters.get("output");
+		final boolean tsv = output!=null && output.equalsIgnoreCase("tsv");
+		if(output!=null && !tsv && !output.equalsIgnoreCase("json")){
+			sendError(exchange, 400, "unknown output: " + output + " (should be json or tsv)");
+			return;
+		}
+
+		String name = parameters.get("name");
+		final String imageName = name!=null ? name : "picture";
+
+		try{
+			workers.execute(new Runnable() {
+				public void run() {
+					analyze(exchange, profileName, settings, imageName, tsv);
+				}
+			});
+		}
+		catch(RejectedExecutionException e){
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			sendError(exchange, 503, "too many pictures waiting, try again later");
+		}
+	}
+
+
+	/**
+	 * Reads the picture, analyzes it and sends back the results; this runs on a worker thread
+	 */
+	private void analyze(HttpExchange exchange, String profileName, BasicSettings settings, String imageName, boolean tsv){
+		try{
+			byte[] imageBytes = readBody(exchange);
+			if(imageBytes==null){
+				sendError(exchange, 413, "picture too big");
+				return;
+			}
+
+			ImagePlus image;
+			try{
+				image = PlateAnalyzer.decodeImage(imageBytes, imageName);
+			}catch(IOException e){
+				sendError(exchange, 400, e.getMessage());
+				return;
+			}
+
+			PlateResult result = PlateAnalyzer.analyze(profileName, settings, image, imageName, false);
+			image.flush();
+
+			if(result==null || !result.analyzed){
+				sendError(exchange, 422, "unable to process picture " + imageName);
+				return;
+			}
+
+			if(tsv)
+				send(exchange, 200, "text/tab-separated-values; charset=utf-8", result.irisTable);
+			else
+				send(exchange, 200, "application/json; charset=utf-8", toJson(result));
+		}
+		catch(Exception e){
+			e.printStackTrace(System.err);
+			try{
+				sendError(exchange, 500, "error analyzing picture " + imageName);
+			}catch(IOException e1){
+				//the client is gone
+			}
+		}
+		finally{
+			exchange.close();
+		}
+	}
+
+
+	/**
+	 * Sends back the names of the profiles, one per line
+	 * @param exchange
+	 * @throws IOException
+	 */
+	private void handleProfiles(HttpExchange exchange) throws IOException {
+		StringBuffer profiles = new StringBuffer();
+		for (String profileName : IrisFrontend.profileCollection) {
+			profiles.append(profileName).append("\n");
+		}
+		send(exchange, 200, "text/plain; charset=utf-8", profiles.toString());
+	}
+
+
+	/**
+	 * Sets the number of rows and columns of the given plate format
+	 * @param settings
+	 * @param format
+	 * @return false if the format is not known
+	 */
+	private static boolean setPlateFormat(BasicSettings settings, String format){
+		if(format.equals("96")){
+			settings.numberOfRowsOfColonies = 8;
+			settings.numberOfColumnsOfColonies = 12;
+		}
+		else if(format.equals("384")){
+			settings.numberOfRowsOfColonies = 16;
+			settings.numberOfColumnsOfColonies = 24;
+		}
+		else if(format.equals("1536")){
+			settings.numberOfRowsOfColonies = 32;
+			settings.numberOfColumnsOfColonies = 48;
+		}
+		else{
+			return(false);
+		}
+		return(true);
+	}
+
+
+	/**
+	 * Reads the request body
+	 * @param exchange
+	 * @return the body, or null if it is too big
+	 * @throws IOException
+	 */
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		InputStream body = exchange.getRequestBody();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024*1024);
+		byte[] buffer = new byte[64*1024];
+		int read;
+		while((read = body.read(buffer))!=-1){
+			bytes.write(buffer, 0, read);
+			if(bytes.size()>maximumPictureBytes)
+				return(null);
+		}
+		return(bytes.toByteArray());
+	}
+
+
+	/**
+	 * @param rawQuery
+	 * @return the parameters of the query string
+	 */
+	private static Map<String, String> parseQuery(String rawQuery){
+		Map<String, String> parameters = new HashMap<String, String>();
+		if(rawQuery==null)
+			return(parameters);
+
+		for (String pair : rawQuery.split("&")) {
+			int equals = pair.indexOf('=');
+			if(equals<1)
+				continue;
+			try {
+				parameters.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+						URLDecoder.decode(pair.substring(equals+1), "UTF-8"));
+			} catch (UnsupportedEncodingException e) {
+				//UTF-8 is always there
+			} catch (IllegalArgumentException e) {
+				//ignore badly encoded parameters
+			}
+		}
+		return(parameters);
+	}
+
+
+	/**
+	 * @param result
+	 * @return the results table as JSON: the column names, and one array of values per colony
+	 */
+	private static String toJson(PlateResult result){
+		StringBuffer json = new StringBuffer();
+		json.append("{\"profile\":").append(jsonString(result.profileName));
+		json.append(",\"image\":").append(jsonString(result.imageName));
+		json.append(",\"rows\":").append(result.numberOfRows);
+		json.append(",\"columns\":").append(result.numberOfColumns);
+
+		json.append(",\"header\":[");
+		for(int i=0; i<result.columnNames.length; i++){
+			if(i>0) json.append(',');
+			json.append(jsonString(result.columnNames[i]));
+		}
+		json.append("],\"colonies\":[");
+		for(int i=0; i<result.rows.size(); i++){
+			if(i>0) json.append(',');
+			json.append('[');
+			String[] row = result.rows.get(i);
+			for(int j=0; j<row.length; j++){
+				if(j>0) json.append(',');
+				json.append(jsonValue(row[j]));
+			}
+			json.append(']');
+		}
+		json.append("]}\n");
+		return(json.toString());
+	}
+
+
+	/**
+	 * @param value
+	 * @return the value as a JSON number if it is one, as a JSON string otherwise
+	 */
+	private static String jsonValue(String value){
+		if(value.matches("-?[0-9]+(\\.[0-9]+)?([eE][-+]?[0-9]+)?"))
+			return(value);
+		return(jsonString(value));
+	}
+
+
+	/**
+	 * @param value
+	 * @return the value as a quoted JSON string
+	 */
+	private static String jsonString(String value){
+		if(value==null)
+			return("null");
+		StringBuffer json = new StringBuffer("\"");
+		for(int i=0; i<value.length(); i++){
+			char c = value.charAt(i);
+			switch(c){
+			case '"': json.append("\\\""); break;
+			case '\\': json.append("\\\\"); break;
+			case '\n': json.append("\\n"); break;
+			case '\r': json.append("\\r"); break;
+			case '\t': json.append("\\t"); break;
+			default:
+				if(c<0x20)
+					json.append(String.format("\\u%04x", (int) c));
+				else
+					json.append(c);
+			}
+		}
+		return(json.append('"').toString());
+	}
+
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		send(exchange, status, "text/plain; charset=utf-8", message + "\n");
+		exchange.close();
+	}
+
+
+	private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+		byte[] bytes = body.getBytes(UTF8);
+		exchange.getResponseHeaders().set("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream responseBody = exchange.getResponseBody();
+		responseBody.write(bytes);
+		responseBody.close();
+	}
+
+}
@@ -0,0 +1,295 @@
+/**
+ *
+ */
+package iris.ui;
+
+import ij.IJ;
+import ij.ImagePlus;
+import iris.profiles.PlateResult;
+import iris.profiles.Profile;
+import iris.profiles.ProfileRegistry;
+import iris.utils.FileLease;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class processes the pictures of a folder in three stages, connected by small queues:
+ * 1. one thread reads the pictures from disk (and claims them, in nice mode),
+ * 2. the workers analyze them in memory, using the profile selected,
+ * 3. the calling thread writes the .iris files and grid pictures.
+ * This way, while the workers analyze pictures, the next pictures are already being read and the results of
+ * the previous ones written, so a folder takes about as long as its slowest stage instead of the sum of all stages.
+ * Since the queues are bounded, at most a few pictures are held in memory at any time.
+ *
+ * The files written are the same as when the pictures are analyzed one by one.
+ *
+ * @author George Kritikos
+ *
+ */
+class PicturePipeline {
+
+	/**
+	 * This is told how many pictures are done so far, every time one more is done
+	 */
+	static abstract class ProgressListener {
+		public abstract void picturesDone(int numberOfPicturesDone);
+	}
+
+
+	/**
+	 * A picture on its way through the stages
+	 */
+	private static class Picture {
+		final File file;
+		FileLease lease = null;
+		ImagePlus image = null;
+		PlateResult result = null;
+		/**
+		 * set if the picture is not to be analyzed (already done, or claimed by another instance)
+		 */
+		boolean skipped = false;
+
+		Picture(File file){
+			this.file = file;
+		}
+	}
+
+	/**
+	 * tells the next stage that there are no more pictures
+	 */
+	private static final Picture END = new Picture(null);
+
+
+	private final int numberOfWorkers;
+
+	/**
+	 * pictures read, waiting to be analyzed
+	 */
+	private final BlockingQueue<Picture> readPictures;
+
+	/**
+	 * pictures analyzed, waiting for their results to be written
+	 */
+	private final BlockingQueue<Picture> analyzedPictures;
+
+
+
+	PicturePipeline(int numberOfWorkers){
+		this.numberOfWorkers = numberOfWorkers;
+		//enough for every worker to find its next picture ready
+		readPictures = new ArrayBlockingQueue<Picture>(numberOfWorkers);
+		analyzedPictures = new ArrayBlockingQueue<Picture>(numberOfWorkers);
+	}
+
+
+	/**
+	 * Processes the given files, returning once they're all done
+	 * @param files
+	 * @param progressListener
+	 */
+	void process(final List<File> files, ProgressListener progressListener){
+
+		ProcessFolderWorker.applySingleColonySettings();
+
+		ExecutorService stages = Executors.newFixedThreadPool(numberOfWorkers+1);
+
+		try{
+			stages.submit(new Runnable() {
+				public void run() {
+					readStage(files);
+				}
+			});
+			for(int i=0; i<numberOfWorkers; i++){
+				stages.submit(new Runnable() {
+					public void run() {
+						analyzeStage();
+					}
+				});
+			}
+
+			writeStage(progressListener);
+		}
+		catch(InterruptedException e){
+			//we were asked to stop, drop any pictures not yet done
+			Thread.currentThread().interrupt();
+			System.out.println("Processing interrupted, skipping remaining files\n");
+			stages.shutdownNow();
+		}
+		finally{
+			stages.shutdown();
+		}
+	}
+
+
+	/**
+	 * Stage 1: reads the pictures, one after the other
+	 * @param files
+	 */
+	private void readStage(List<File> files){
+		boolean stopped = false;
+		try{
+			for (File file : files) {
+				readPictures.put(read(file));
+			}
+		}
+		catch(InterruptedException e){
+			//we were asked to stop, the workers are stopping too
+			stopped = true;
+		}
+		finally{
+			//one for each worker, even if an error got through, otherwise the workers would wait forever
+			if(!stopped){
+				putEnd(readPictures, numberOfWorkers);
+			}
+		}
+	}
+
+
+	/**
+	 * Tells the next stage that there are no more pictures
+	 * @param queue
+	 * @param numberOfEnds: one for every thread of the next stage
+	 */
+	private static void putEnd(BlockingQueue<Picture> queue, int numberOfEnds){
+		try{
+			for(int i=0; i<numberOfEnds; i++){
+				queue.put(END);
+			}
+		}
+		catch(InterruptedException e){
+			//we were asked to stop
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * Reads one picture, claiming it first in nice mode
+	 * @param file
+	 * @return the picture; its image is null if it could not be read (e.g. when out of memory),
+	 * the profile will then try again and report it
+	 */
+	private Picture read(File file){
+		Picture picture = new Picture(file);
+		String filename = file.getAbsolutePath();
+
+		try{
+			if(IrisFrontend.nice){
+				picture.lease = ProcessFolderWorker.claimPicture(file);
+				picture.skipped = picture.lease==null;
+			}
+
+			if(!picture.skipped){
+				picture.image = IJ.openImage(filename);
+			}
+		}
+		catch(Throwable e){
+			//errors too, the picture has to go on to the writer, who gives up its claim
+			picture.image = null;
+		}
+		return(picture);
+	}
+
+
+	/**
+	 * Stage 2: analyzes the pictures read, several at a time
+	 */
+	private void analyzeStage(){
+		boolean stopped = false;
+		try{
+			while(true){
+				Picture picture = readPictures.take();
+				if(picture==END)
+					break;
+
+				if(!picture.skipped){
+					analyze(picture);
+				}
+				analyzedPictures.put(picture);
+			}
+		}
+		catch(InterruptedException e){
+			//we were asked to stop, the writer is stopping too
+			stopped = true;
+		}
+		finally{
+			//even if an error got through, otherwise the writer would wait forever
+			if(!stopped){
+				putEnd(analyzedPictures, 1);
+			}
+		}
+	}
+
+
+	/**
+	 * Analyzes one picture, making sure that any errors do not propagate to the caller;
+	 * this includes running out of memory, since every stage holds a few pictures
+	 * @param picture
+	 */
+	private void analyze(Picture picture){
+		try{
+			String profileName = IrisFrontend.selectedProfile;
+			Profile profile = ProfileRegistry.getProfile(profileName);
+			if(profile==null){
+				System.err.println("Unknown profile name: \"" + profileName +"\"");
+				return;
+			}
+			//the picture is handed over, so that the profile doesn't analyze a copy of it while this one is kept
+			picture.result = profile.analyzeImage(picture.image, picture.file.getAbsolutePath(), false, true);
+		}
+		catch(Throwable e){
+			System.out.println("Error processing file!\n");
+			e.printStackTrace(System.err);
+		}
+		finally{
+			if(picture.image!=null){
+				picture.image.flush();
+				picture.image = null;
+			}
+		}
+	}
+
+
+	/**
+	 * Stage 3: writes the results of the pictures analyzed, and gives up their claims
+	 * @param progressListener
+	 * @throws InterruptedException
+	 */
+	private void writeStage(ProgressListener progressListener) throws InterruptedException{
+		int workersDone = 0;
+		int picturesDone = 0;
+
+		while(workersDone<numberOfWorkers){
+			Picture picture = analyzedPictures.take();
+			if(picture==END){
+				workersDone++;
+				continue;
+			}
+
+			try{
+				if(picture.result!=null){
+					ProcessFolderWorker.writeResults(picture.result, picture.lease);
+				}
+			}
+			catch(Throwable e){
+				System.out.println("Error processing file!\n");
+				e.printStackTrace(System.err);
+			}
+			finally{
+				//we need to clean up, by giving up the claim, even if the analysis failed
+				if(picture.lease!=null){
+					picture.lease.release();
+				}
+			}
+
+			picturesDone++;
+			progressListener.picturesDone(picturesDone);
+		}
+	}
+
+}
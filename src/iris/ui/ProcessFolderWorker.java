@@ -5,38 +5,22 @@ package iris.ui;
 
 import java.awt.Toolkit;
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import javax.swing.SwingWorker;
 
-import iris.profiles.BasicProfile;
-import iris.profiles.BasicProfileInverted;
-import iris.profiles.BasicProfileNoEmptyCheck;
-import iris.profiles.BsubtilisHazyProfileHSB;
-import iris.profiles.BsubtilisSporulationProfile;
-import iris.profiles.CPRGProfile384_ourCamera2;
-import iris.profiles.ColonyOpacityProfile;
-import iris.profiles.ColonyOpacityProfileInverted;
-import iris.profiles.ColorProfileEcoli;
-import iris.profiles.ColorProfileEcoliNaturalIsolates;
-import iris.profiles.ColorProfilePA;
-import iris.profiles.ColorProfile_SimpleSegmentation;
-import iris.profiles.EcoliGrowthProfile;
-import iris.profiles.EcoliOpacityProfile384;
-import iris.profiles.EcoliOpacityProfile384_HazyColonies;
-import iris.profiles.EcoliOpacityProfile96;
-import iris.profiles.MorphologyProfileCandida96;
-import iris.profiles.MorphologyProfilePA384;
-import iris.profiles.MorphologyProfilePA96;
-import iris.profiles.MorphologyProfileStm96;
-import iris.profiles.OpacityProfile;
-import iris.profiles.OpacityProfile2;
-import iris.profiles.XgalProfile;
+import iris.imageSegmenters.TimeSeriesGrids;
+import iris.profiles.PlateResult;
+import iris.profiles.Profile;
+import iris.profiles.ProfileRegistry;
+import iris.settings.PictureSettings;
+import iris.utils.FileLease;
 
 /**
  * @author George Kritikos
@@ -82,33 +66,34 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 		//get a list of the files in the directory, keeping only image files
 		File[] filesInDirectory = directory.listFiles(new PicturesFilenameFilter());
 
-		int i=0;
-		int max = filesInDirectory.length;
-
-		for (File file : filesInDirectory) {
+		if(IrisFrontend.pipelined){
+			processFilesPipelined(filesInDirectory);
+		}
+		else if(IrisFrontend.multiThreaded && IrisFrontend.numberOfThreads>1){
+			processFilesInParallel(filesInDirectory);
+		}
+		else{
+			int i=0;
+			int max = filesInDirectory.length;
 
-			if(!file.exists())
-				continue;
+			for (File file : filesInDirectory) {
 
-			if(file.isDirectory())
-				continue;
+				if(!file.exists())
+					continue;
 
-			try{
-				processSingleFile(file);
-			}
-			catch(Exception e){
-				System.out.println("Error processing file!\n");
-				e.printStackTrace(System.err);
-			}
+				if(file.isDirectory())
+					continue;
 
-			i++;
-			int progress = Math.min(i*100/max, 100);
-			setProgress(progress);
-			System.out.println(i + " / " + max + "\t(" + progress +"% done)" +  "\n\n");
+				processSingleFileSafely(file);
 
-			publish("...done! " + "\n\n\n");
+				i++;
+				reportProgress(i, max);
+			}
 		}
 
+		//the next folder's pictures are other series
+		TimeSeriesGrids.forgetAllSeries();
+
 		//IrisFrontend.closeLog();
 		//close the log file
 		IrisFrontend.writeToLog("\n\n-----------------------------------------\n");
@@ -119,236 +104,244 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 	}
 
 
-	public static void processSingleFile(File file){
-
-
-		String filename = file.getAbsolutePath();
-
-		//if we set it here, then it will be called both on GUI or console s/w invocation
-		if(IrisFrontend.singleColonyRun==true){
-			IrisFrontend.settings.numberOfRowsOfColonies = 1;
-			IrisFrontend.settings.numberOfColumnsOfColonies = 1;
-
-			if(filename.contains("colony_")){
-				IrisFrontend.settings.userDefinedRoi=true;
-			}
+	/**
+	 * This function will process the given files using a fixed-size pool of worker threads.
+	 * Files are handed out to the workers in the order they were listed, but progress is
+	 * reported in that same order: the n-th file is reported done only after files 1..n are done.
+	 * A failure in one file is logged and does not affect the processing of any other file.
+	 * @param filesInDirectory
+	 */
+	private void processFilesInParallel(File[] filesInDirectory){
 
+		//keep only the files that are still there
+		List<File> filesToProcess = new ArrayList<File>();
+		for (File file : filesInDirectory) {
+			if(file.exists() && !file.isDirectory())
+				filesToProcess.add(file);
 		}
 
-		//publish("Now processing file " + "\n");
-		//System.out.println("Now processing file " + "\n");
-
+		int max = filesInDirectory.length;
 
-		File irisFile = new File(filename+".iris");
-		File irisFileDummy = new File(filename+".iris.dummy");
+		System.out.println("Processing " + filesToProcess.size() + " files using " + IrisFrontend.numberOfThreads + " worker threads\n");
+		IrisFrontend.writeToLog("-- Using " + IrisFrontend.numberOfThreads + " worker threads --\n\n");
 
+		IrisFrontend.executorService = Executors.newFixedThreadPool(IrisFrontend.numberOfThreads);
+		List<Future<Boolean>> listOfFutures = new ArrayList<Future<Boolean>>(filesToProcess.size());
 
-		if(IrisFrontend.nice){	
-			//if the iris file exists, or if another iris instance started working on it
-			if(irisFile.exists() || irisFileDummy.exists()){ 
-				String justFilename = irisFile.getName();
-				System.out.println("\n\nIris file already exists:\n  "+justFilename);
-				return;
+		try{
+			for (final File file : filesToProcess) {
+				listOfFutures.add(IrisFrontend.executorService.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						return(processSingleFileSafely(file));
+					}
+				}));
 			}
-			//if it didn't write down a dummy file, so that other instances won't start working on the same
-			else{
+
+			//wait for the files in the order they were submitted
+			int i=0;
+			for (Future<Boolean> future : listOfFutures) {
 				try {
-					irisFileDummy.createNewFile();
-				} catch (IOException e) {
-					e.printStackTrace();
+					future.get();
+				} catch (InterruptedException e) {
+					//we were asked to stop, drop any files not yet started
+					Thread.currentThread().interrupt();
+					System.out.println("Processing interrupted, skipping remaining files\n");
+					break;
+				} catch (ExecutionException e) {
+					//should not happen, processSingleFileSafely catches everything, but be defensive
+					System.out.println("Error processing file!\n");
+					e.getCause().printStackTrace(System.err);
 				}
-			}
-
-		}
-
-		/**
-		 * Decide which profile to use, according to the profile name
-		 */
-		String profileName = IrisFrontend.selectedProfile;
 
-		if(profileName.equals("Stm growth")){
-			BasicProfile basicProfile = new BasicProfile();
-			basicProfile.analyzePicture(filename);
+				i++;
+				reportProgress(i, max);
+			}
 		}
-
-		if(profileName.equals("Ecoli growth -- no empty check")){
-			BasicProfileNoEmptyCheck basicProfileNoEmptyCheck = new BasicProfileNoEmptyCheck();
-			basicProfileNoEmptyCheck.analyzePicture(filename);
+		finally{
+			//let running files finish, but don't start any new ones
+			for (Future<Boolean> future : listOfFutures) {
+				future.cancel(false);
+			}
+			IrisFrontend.executorService.shutdown();
 		}
+	}
 
-		else if(profileName.equals("Ecoli opacity 1536")){
-			ColonyOpacityProfile colonyOpacityProfile = new ColonyOpacityProfile();
-			colonyOpacityProfile.analyzePicture(filename);			
-		}			
-
-		else if(profileName.equals("B.subtilis Opacity (HSB)")){
-			BsubtilisHazyProfileHSB bsubtilisHazyProfileHSB = new BsubtilisHazyProfileHSB();
-			bsubtilisHazyProfileHSB.analyzePicture(filename);			
-		}
 
-		else if(profileName.equals("B.subtilis sporulation")){
-			BsubtilisSporulationProfile bsubtilisSporulationProfile = new BsubtilisSporulationProfile();
-			bsubtilisSporulationProfile.analyzePicture(filename);			
-		}
+	/**
+	 * This function will process the given files in stages (see PicturePipeline), so that reading the next pictures
+	 * and writing the results of the previous ones overlap with the analysis of the current ones.
+	 * Progress is reported in the order the files are done.
+	 * @param filesInDirectory
+	 */
+	private void processFilesPipelined(File[] filesInDirectory){
 
-		else if(profileName.equals("Ecoli growth")){
-			EcoliGrowthProfile ecoliGrowthProfile = new EcoliGrowthProfile();
-			ecoliGrowthProfile.analyzePicture(filename);			
+		List<File> filesToProcess = new ArrayList<File>();
+		for (File file : filesInDirectory) {
+			if(file.exists() && !file.isDirectory())
+				filesToProcess.add(file);
 		}
 
-		else if(profileName.equals("Ecoli opacity 384")){
-			EcoliOpacityProfile384 ecoliOpacityProfile384 = new EcoliOpacityProfile384();
-			ecoliOpacityProfile384.analyzePicture(filename);			
-		}
+		final int max = filesInDirectory.length;
+		int numberOfWorkers = IrisFrontend.multiThreaded ? IrisFrontend.numberOfThreads : 1;
 
-		else if(profileName.equals("Ecoli opacity 384 - hazy colonies")){
-			EcoliOpacityProfile384_HazyColonies ecoliOpacity384_hazy = new EcoliOpacityProfile384_HazyColonies();
-			ecoliOpacity384_hazy.analyzePicture(filename);			
-		}
+		System.out.println("Processing " + filesToProcess.size() + " files in a pipeline using " + numberOfWorkers + " worker threads\n");
+		IrisFrontend.writeToLog("-- Using a pipeline with " + numberOfWorkers + " worker threads --\n\n");
 
-		else if(profileName.equals("Ecoli opacity 96")){
-			EcoliOpacityProfile96 ecoliOpacity96 = new EcoliOpacityProfile96();
-			ecoliOpacity96.analyzePicture(filename);
-		}
+		new PicturePipeline(numberOfWorkers).process(filesToProcess, new PicturePipeline.ProgressListener() {
+			public void picturesDone(int numberOfPicturesDone) {
+				reportProgress(numberOfPicturesDone, max);
+			}
+		});
+	}
 
-		else if(profileName.equals("Colony growth")){
-			ColonyOpacityProfile colonyOpacity = new ColonyOpacityProfile();
-			colonyOpacity.analyzePicture(filename);
-		}
 
-		else if(profileName.contains("Xgal assay")){
-			XgalProfile xgalProfile = new XgalProfile();
-			xgalProfile.analyzePicture(filename);			
+	/**
+	 * Processes a single file, making sure that any errors do not propagate to the caller
+	 * @param file
+	 * @return true if the file was processed without errors
+	 */
+	static boolean processSingleFileSafely(File file){
+		try{
+			processSingleFile(file);
+			return(true);
 		}
-
-		else if(profileName.equals("CPRG 384")){
-			CPRGProfile384_ourCamera2 cprgProfile384_ourCamera2 = new CPRGProfile384_ourCamera2();
-			cprgProfile384_ourCamera2.analyzePicture(filename);
+		catch(Exception e){
+			System.out.println("Error processing file!\n");
+			e.printStackTrace(System.err);
+			return(false);
 		}
+	}
 
-		else if(profileName.equals("CPRG profile")){
-			CPRGProfile384_ourCamera2 cprgProfile384_ourCamera2 = new CPRGProfile384_ourCamera2();
-			cprgProfile384_ourCamera2.analyzePicture(filename);
-		}
 
-		//		else if(profileName.equals("Biofilm formation")){
-		//			ColorProfile colorProfile = new ColorProfile();
-		//			colorProfile.analyzePicture(filename);
-		//		}
+	/**
+	 * Updates the progress bar and prints out the progress, i being the number of files done so far
+	 * @param i
+	 * @param max
+	 */
+	private void reportProgress(int i, int max){
+		int progress = Math.min(i*100/max, 100);
+		setProgress(progress);
+		System.out.println(i + " / " + max + "\t(" + progress +"% done)" +  "\n\n");
 
-		else if(profileName.equals("Biofilm formation")){
-			ColorProfileEcoli colorProfileEcoli = new ColorProfileEcoli();
-			colorProfileEcoli.analyzePicture(filename);
-		}
+		publish("...done! " + "\n\n\n");
+	}
 
-		else if(profileName.equals("Biofilm formation PA")){
-			ColorProfilePA colorProfilePA = new ColorProfilePA();
-			colorProfilePA.analyzePicture(filename);
-		}
 
-		else if(profileName.equals("Biofilm formation Ecoli")){
-			ColorProfileEcoli colorProfileEcoli = new ColorProfileEcoli();
-			colorProfileEcoli.analyzePicture(filename);
-		}
+	public static void processSingleFile(File file){
 
-		else if(profileName.equals("Biofilm formation Ecoli Natural Isolates")){
-			ColorProfileEcoliNaturalIsolates colorProfileEcoliNaturalIsolates = new ColorProfileEcoliNaturalIsolates();
-			colorProfileEcoliNaturalIsolates.analyzePicture(filename);
-		}
 
-		else if(profileName.equals("Biofilm formation - Simple Grid")){
-			ColorProfile_SimpleSegmentation colorProfile_simpleSegmentation = new ColorProfile_SimpleSegmentation();
-			colorProfile_simpleSegmentation.analyzePicture(filename);
-		}
+		String filename = file.getAbsolutePath();
 
-		else if(profileName.equals("Opacity")){
-			OpacityProfile opacityProfile = new OpacityProfile();
-			opacityProfile.analyzePicture(filename);
-		}
+		applySingleColonySettings();
 
-		else if(profileName.equals("Opacity (fixed grid)")){
-			OpacityProfile2 opacityProfile2 = new OpacityProfile2();
-			opacityProfile2.analyzePicture(filename);
-		}
+		//publish("Now processing file " + "\n");
+		//System.out.println("Now processing file " + "\n");
 
-		else if(profileName.equals("Morphology Profile [Candida 96-plates]")){
-			MorphologyProfileCandida96 morphologyProfile = new MorphologyProfileCandida96();
-			morphologyProfile.analyzePicture(filename);
-		}
 
-		else if(profileName.equals("Morphology profile")){
-			MorphologyProfileCandida96 morphologyProfile = new MorphologyProfileCandida96();
-			morphologyProfile.analyzePicture(filename);
+		//when several Iris instances share the folder, only analyze pictures that no one else is working on
+		FileLease lease = null;
+		if(IrisFrontend.nice){
+			lease = claimPicture(file);
+			if(lease==null)
+				return;
 		}
 
-		else if(profileName.equals("Morphology Profile [Pseudomonas 96-plates]")){
-			MorphologyProfilePA96 morphologyProfile = new MorphologyProfilePA96();
-			morphologyProfile.analyzePicture(filename);
-		}
+		try{
+			/**
+			 * Decide which profile to use, according to the profile name
+			 */
+			String profileName = IrisFrontend.selectedProfile;
+
+			Profile profile = ProfileRegistry.getProfile(profileName);
+			if(profile==null){
+				System.err.println("Unknown profile name: \"" + profileName +"\"");
+				return;
+			}
+			if(lease!=null){
+				//keep the results in memory, they're only written if the picture is still ours once analyzed
+				PlateResult result = profile.analyzeImage(null, filename, false);
+				writeResults(result, lease);
+				return;
+			}
 
-		else if(profileName.equals("Morphology Profile [Pseudomonas 384-plates]")){
-			MorphologyProfilePA384 morphologyProfile = new MorphologyProfilePA384();
-			morphologyProfile.analyzePicture(filename);
+			PictureSettings previousPictureSettings = PictureSettings.setCurrent(PictureSettings.forPicture(filename));
+			try{
+				profile.analyzePicture(filename);
+			}
+			finally{
+				PictureSettings.setCurrent(previousPictureSettings);
+			}
 		}
-
-		else if(profileName.equals("Morphology&Color profile")){//pseudomonas colonies but it'll work for more than that
-			MorphologyProfilePA384 morphologyProfile = new MorphologyProfilePA384();
-			morphologyProfile.analyzePicture(filename);
+		finally{
+			//we need to clean up, by giving up the claim, even if the analysis failed
+			if(lease!=null){
+				lease.release();
+			}
 		}
 
-		else if(profileName.equals("Morphology Profile [Salmonella 96-plates]")){
-			MorphologyProfileStm96 morphologyProfile = new MorphologyProfileStm96();
-			morphologyProfile.analyzePicture(filename);
-		}
+	}
 
-		else if(profileName.equals("Growth profile inverted")){
-			BasicProfileInverted profile = new BasicProfileInverted();
-			profile.analyzePicture(filename);
-		}
 
-		else if(profileName.equals("Colony growth inverted")){
-			ColonyOpacityProfileInverted profile = new ColonyOpacityProfileInverted();
-			profile.analyzePicture(filename);
+	/**
+	 * In single colony mode, there's only one tile per picture.
+	 * This is the same for all pictures of the run; whether a picture holds a colony area
+	 * defined by the user is kept per picture (see PictureSettings)
+	 */
+	static void applySingleColonySettings(){
+		//if we set it here, then it will be called both on GUI or console s/w invocation
+		if(IrisFrontend.singleColonyRun==true){
+			IrisFrontend.settings.numberOfRowsOfColonies = 1;
+			IrisFrontend.settings.numberOfColumnsOfColonies = 1;
 		}
+	}
 
 
-
-
-		else{
-			System.err.println("Unknown profile name: \"" + profileName +"\"");
-			return;
+	/**
+	 * Writes the results of a picture analyzed in memory, unless another Iris instance took the picture over
+	 * in the meantime (nice mode), in which case they're that instance's to write
+	 * @param result
+	 * @param lease: the claim on the picture, null if it wasn't claimed
+	 */
+	static void writeResults(PlateResult result, FileLease lease){
+		try{
+			//re-read the lease right before writing, the heartbeat may not have noticed a takeover yet
+			if(lease!=null && !lease.confirmOwnership()){
+				System.err.println("Picture was taken over by another Iris instance, not writing its results: " + result.imageName);
+				return;
+			}
+			if(!result.writeOutputFiles()){
+				System.err.println("Could not write output file " + result.irisFilename);
+			}
 		}
-
-
-		//we need to clean up, by removing any dummy files
-		if(IrisFrontend.nice){
-			irisFileDummy.delete();
+		finally{
+			if(result.gridImage!=null){
+				result.gridImage.flush();
+			}
 		}
-
-
 	}
 
 
 	/**
-	 * This method will wait for all threads to finish execution before carrying on
+	 * Claims the picture for this Iris instance, when several instances share the folder (nice mode)
+	 * @param file
+	 * @return the lease, or null if the picture is already done or claimed by another instance
 	 */
-	private static void waitForThreads(List<Callable<Object>> todoIndex_) {
-		List<Future<Object>> listOfFutures = null;
-		try {
-			listOfFutures = IrisFrontend.executorService.invokeAll(todoIndex_);
-
-			for (Future<Object> future : listOfFutures) {
-				future.get();
-			}
+	static FileLease claimPicture(File file){
+		File irisFile = new File(file.getAbsolutePath()+".iris");
+		File irisFileDummy = new File(file.getAbsolutePath()+".iris.dummy");
 
-		} catch (Exception e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+		if(irisFile.exists()){ 
+			String justFilename = irisFile.getName();
+			System.out.println("\n\nIris file already exists:\n  "+justFilename);
+			return(null);
 		}
 
-		//wait for all futures to finish executing
-		IrisFrontend.executorService.shutdown();
-
+		FileLease lease = FileLease.tryClaim(irisFile, irisFileDummy);
+		if(lease==null){
+			String justFilename = file.getName();
+			System.out.println("\n\nPicture already done or claimed by another Iris instance:\n  "+justFilename);
+		}
+		return(lease);
 	}
 
 
@@ -385,19 +378,4 @@ public class ProcessFolderWorker extends SwingWorker<String, String> {
 
 	}
 
-
-	/**
-	 * This function gets a value i and it's maximum possible value
-	 * and calculates what percentage of the max value is the given value i
-	 * @param i
-	 * @param max
-	 * @return
-	 */
-	private int getPercentageDone(int i, int max){
-		float fraction = i/max;
-		float percentage = fraction*100;
-
-		return(Math.round(percentage));
-	}
-
 }
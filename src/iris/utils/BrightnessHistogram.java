@@ -0,0 +1,218 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+
+/**
+ * This class keeps the histogram (256 bins) of the gray values of some pixels of an 8-bit tile,
+ * e.g. those inside the colony, or those of the background around it.
+ *
+ * Medians, percentiles and sums over the brightest pixels are all read off the histogram in one go
+ * through its 256 bins. The tile readers used to get these by converting the tile to a FloatProcessor, putting
+ * every pixel in an ArrayList<Float> and sorting it, for every colony; building the histogram is a single pass
+ * over the pixels, without any copies or objects.
+ *
+ * @author George Kritikos
+ *
+ */
+public class BrightnessHistogram {
+
+	/**
+	 * the number of pixels with each gray value
+	 */
+	private final int[] counts = new int[256];
+
+	/**
+	 * the number of pixels in the histogram
+	 */
+	private int count = 0;
+
+
+
+	/**
+	 * An empty histogram, pixels are added to it one by one (see add)
+	 */
+	public BrightnessHistogram(){
+	}
+
+
+	/**
+	 * The histogram of all the pixels of the tile
+	 * @param tile: a view of an 8-bit picture
+	 */
+	public BrightnessHistogram(TileView tile){
+		this(tile, null, true);
+	}
+
+
+	/**
+	 * The histogram of the pixels of the tile that are inside the Roi (or outside it).
+	 * A pixel is inside the Roi if it's in its mask, the same pixels ImageProcessor.fill(mask) would fill
+	 * after ImageProcessor.setRoi(roi).
+	 * For colony outlines (traced particles), ovals and rectangles, these are also the pixels ImageProcessor.fillOutside(roi)
+	 * leaves alone; polygons with slanted edges can differ by a few pixels along the edges, as fillOutside goes through a ShapeRoi.
+	 * @param tile: a view of an 8-bit picture
+	 * @param roi: in the coordinates of the tile, it may fall partly outside the tile; if it's null, the whole tile is inside it
+	 * @param insideRoi: true to keep the pixels inside the Roi, false to keep the ones outside it
+	 */
+	public BrightnessHistogram(TileView tile, Roi roi, boolean insideRoi){
+		if(tile.isColour())
+			throw new IllegalArgumentException("only 8-bit pictures have a brightness histogram");
+
+		int width = tile.getWidth();
+		int height = tile.getHeight();
+
+		Rectangle roiBounds = roi==null ? new Rectangle(0, 0, width, height) : roi.getBounds();
+		ImageProcessor mask = roi==null ? null : roi.getMask();
+		byte[] maskPixels = mask==null ? null : (byte[]) mask.getPixels();
+
+		for(int y=0; y<height; y++){
+			boolean rowInRoi = y>=roiBounds.y && y<roiBounds.y+roiBounds.height;
+			int maskOffset = (y-roiBounds.y)*roiBounds.width - roiBounds.x;
+
+			for(int x=0; x<width; x++){
+				boolean inRoi = rowInRoi && x>=roiBounds.x && x<roiBounds.x+roiBounds.width
+						&& (maskPixels==null || maskPixels[maskOffset+x]!=0);
+
+				if(inRoi==insideRoi)
+					add(tile.getPixel(x, y));
+			}
+		}
+	}
+
+
+
+	/**
+	 * Adds a pixel to the histogram
+	 * @param value: the gray value of the pixel (0-255)
+	 */
+	public void add(int value){
+		counts[value]++;
+		count++;
+	}
+
+
+	/**
+	 * Adds all the pixels of the other histogram to this one
+	 * @param other
+	 */
+	public void add(BrightnessHistogram other){
+		for(int value=0; value<256; value++)
+			counts[value] += other.counts[value];
+		count += other.count;
+	}
+
+
+
+	/**
+	 * @return the number of pixels in the histogram
+	 */
+	public int getCount(){
+		return(count);
+	}
+
+
+	/**
+	 * @param lowest
+	 * @param highest
+	 * @return the number of pixels with gray values from lowest to highest
+	 */
+	public int getCount(int lowest, int highest){
+		int sum = 0;
+		for(int value=Math.max(lowest, 0); value<=Math.min(highest, 255); value++)
+			sum += counts[value];
+		return(sum);
+	}
+
+
+	/**
+	 * @param rank: starting from 0
+	 * @param lowest
+	 * @param highest
+	 * @return the gray value of the pixel with this rank, if the pixels with values from lowest to highest were sorted
+	 */
+	private int getValueOfRank(int rank, int lowest, int highest){
+		int seen = 0;
+		for(int value=Math.max(lowest, 0); value<=Math.min(highest, 255); value++){
+			seen += counts[value];
+			if(seen>rank)
+				return(value);
+		}
+		return(Math.min(highest, 255));
+	}
+
+
+
+	/**
+	 * Gets the median of the pixels with gray values from lowest to highest.
+	 * Like the median of a sorted array, for an even number of pixels it's the mean of the two in the middle.
+	 * @param lowest
+	 * @param highest
+	 * @return the median, 0 if there are no such pixels
+	 */
+	public double getMedian(int lowest, int highest){
+		int size = getCount(lowest, highest);
+		if(size==0)
+			return(0);
+
+		if(size%2==0)
+			return(((double)getValueOfRank(size/2, lowest, highest) + (double)getValueOfRank(size/2 - 1, lowest, highest))/2);
+		else
+			return((double)getValueOfRank(size/2, lowest, highest));
+	}
+
+
+	/**
+	 * @param percent: from 0 to 100
+	 * @return the smallest gray value that at least this percent of the pixels are not brighter than, 0 if the histogram is empty
+	 */
+	public int getPercentile(double percent){
+		if(count==0)
+			return(0);
+
+		int rank = (int)Math.ceil(percent/100.0*count) - 1;
+		return(getValueOfRank(Math.max(0, Math.min(rank, count-1)), 0, 255));
+	}
+
+
+
+	/**
+	 * Sums the gray values of the pixels with gray values from lowest to highest, each minus the given level
+	 * @param lowest
+	 * @param highest
+	 * @param level: subtracted from every pixel, e.g. the brightness of the background
+	 * @return the sum, this is negative if most pixels are below the level
+	 */
+	public int getSum(int lowest, int highest, int level){
+		int sum = 0;
+		for(int value=Math.max(lowest, 0); value<=Math.min(highest, 255); value++)
+			sum += counts[value]*(value-level);
+		return(sum);
+	}
+
+
+	/**
+	 * Sums the gray values of the brightest pixels, each minus the given level;
+	 * pixels not brighter than the level add nothing, and neither do any missing ones
+	 * (if there are fewer pixels in the histogram than asked for)
+	 * @param number: how many of the brightest pixels to sum up
+	 * @param level: subtracted from every pixel, e.g. the brightness of the background
+	 * @return the sum
+	 */
+	public int getSumOfBrightest(int number, int level){
+		int sum = 0;
+		int left = number;
+		for(int value=255; value>level && left>0; value--){
+			int taken = Math.min(left, counts[value]);
+			sum += taken*(value-level);
+			left -= taken;
+		}
+		return(sum);
+	}
+
+}
@@ -0,0 +1,341 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class lets several Iris instances (possibly on different machines sharing the same folder)
+ * work on the same folder without analyzing the same picture twice.
+ *
+ * Before analyzing a picture, an instance claims it by creating its lease file (the picture's .iris.dummy file).
+ * Creating the file is atomic, so only one instance can get it. The lease file holds the id of its owner, and
+ * while the picture is being analyzed its modification time is renewed every few seconds (heartbeat).
+ * If an instance dies, it stops renewing its leases; once a lease is older than the lease timeout,
+ * any other instance can reclaim it, by atomically renaming it away and creating a new one.
+ * The lease is deleted when the picture is done, whether it succeeded or not.
+ *
+ * Note: the machines sharing the folder should have their clocks in sync to well within the lease timeout.
+ *
+ * @author George Kritikos
+ *
+ */
+public class FileLease {
+
+	/**
+	 * leases not renewed for longer than this are considered abandoned and can be reclaimed
+	 */
+	public static long leaseTimeoutMillis = 10*60*1000;
+
+	/**
+	 * the id written in all the lease files of this Iris instance
+	 */
+	private static final String ownerId = createOwnerId();
+
+	/**
+	 * all the leases currently held by this Iris instance, renewed by the heartbeat
+	 */
+	private static final Set<FileLease> heldLeases = Collections.synchronizedSet(new HashSet<FileLease>());
+
+	/**
+	 * renews the held leases, started with the first lease
+	 */
+	private static ScheduledExecutorService heartbeat = null;
+
+
+	/**
+	 * the lease file
+	 */
+	private final Path leasePath;
+
+	/**
+	 * set if another instance took this lease over
+	 */
+	private volatile boolean lost = false;
+
+
+
+	private FileLease(Path leasePath){
+		this.leasePath = leasePath;
+	}
+
+
+	/**
+	 * Tries to claim the work that produces resultFile, using leaseFile as the lease
+	 * @param resultFile: if this exists, the work is already done and nothing is claimed
+	 * @param leaseFile
+	 * @return the lease, or null if the work is done or claimed by another instance
+	 */
+	public static FileLease tryClaim(File resultFile, File leaseFile){
+
+		if(resultFile.exists())
+			return(null);
+
+		Path leasePath = leaseFile.toPath();
+
+		if(!createLeaseFile(leasePath)){
+			//someone else has it; take it over only if its owner stopped renewing it
+			if(!isExpired(leaseFile.lastModified()) || !removeExpiredLease(leasePath))
+				return(null);
+			if(!createLeaseFile(leasePath))
+				return(null);
+		}
+
+		FileLease lease = new FileLease(leasePath);
+
+		//the previous owner may have finished (and deleted its lease) just before we looked
+		if(resultFile.exists()){
+			lease.release();
+			return(null);
+		}
+
+		heldLeases.add(lease);
+		startHeartbeat();
+		return(lease);
+	}
+
+
+	/**
+	 * Gives up the lease, deleting the lease file unless someone else has taken it over
+	 */
+	public void release(){
+		heldLeases.remove(this);
+		if(lost || !isOwned())
+			return;
+		try {
+			Files.deleteIfExists(leasePath);
+		} catch (IOException e) {
+			System.err.println("Could not delete lease file: " + leasePath);
+		}
+	}
+
+
+	/**
+	 * @return true if another Iris instance took over this lease, e.g. because this one
+	 * was not able to renew it in time; the results of the work are then the other instance's to write
+	 */
+	public boolean isLost(){
+		return(lost);
+	}
+
+
+	/**
+	 * Re-reads the lease file to check that this instance still owns the lease, instead of relying on the
+	 * last heartbeat, which may be up to a renewal period old (e.g. after a long GC pause or a slow network share).
+	 * Call this right before writing the results of the work: the only window left for another instance to take
+	 * the lease over and write the same results is then as long as the write itself.
+	 * If the lease file can't be read, the lease is treated as lost too, so that no results are written twice.
+	 * @return true if the lease file still holds this instance's id
+	 */
+	public boolean confirmOwnership(){
+		if(lost)
+			return(false);
+		if(!isOwned()){
+			lost = true;
+			heldLeases.remove(this);
+			return(false);
+		}
+		return(true);
+	}
+
+
+	/**
+	 * Atomically creates the lease file, writing the owner id in it
+	 * @param leasePath
+	 * @return false if the file already existed
+	 */
+	private static boolean createLeaseFile(Path leasePath){
+		try {
+			Files.createFile(leasePath);
+		} catch (FileAlreadyExistsException e) {
+			return(false);
+		} catch (IOException e) {
+			System.err.println("Could not create lease file: " + leasePath);
+			return(false);
+		}
+
+		try {
+			Files.write(leasePath, ownerId.getBytes(Charset.forName("UTF-8")));
+		} catch (IOException e) {
+			//the lease is still ours, we just won't be able to tell if it's taken over
+			System.err.println("Could not write lease file: " + leasePath);
+		}
+		return(true);
+	}
+
+
+	/**
+	 * Removes an expired lease. The lease is first renamed to a name unique to this instance,
+	 * so that if several instances try to reclaim it at the same time, only one of them succeeds.
+	 * @param leasePath
+	 * @return true if this instance removed the lease
+	 */
+	private static boolean removeExpiredLease(Path leasePath){
+		Path expiredPath = leasePath.resolveSibling(leasePath.getFileName() + ".expired." + ownerId.replaceAll("[^A-Za-z0-9._-]", "_"));
+		try {
+			Files.move(leasePath, expiredPath, StandardCopyOption.ATOMIC_MOVE);
+		} catch (NoSuchFileException e) {
+			return(false); //someone else got there first
+		} catch (IOException e) {
+			return(false);
+		}
+
+		//the lease might have been renewed (or re-created by another instance) between our check and the rename
+		if(!isExpired(expiredPath.toFile().lastModified())){
+			try {
+				if(!Files.exists(leasePath))
+					Files.move(expiredPath, leasePath, StandardCopyOption.ATOMIC_MOVE);
+				else
+					Files.deleteIfExists(expiredPath);
+			} catch (IOException e) {
+				System.err.println("Could not restore lease file: " + leasePath);
+			}
+			return(false);
+		}
+
+		try {
+			Files.deleteIfExists(expiredPath);
+		} catch (IOException e) {
+			System.err.println("Could not delete expired lease file: " + expiredPath);
+		}
+		System.out.println("\n\nReclaimed abandoned lease:\n  " + leasePath.getFileName());
+		return(true);
+	}
+
+
+	/**
+	 * @param lastModified
+	 * @return true if a lease last renewed at this time has expired
+	 */
+	private static boolean isExpired(long lastModified){
+		//a lastModified of 0 means the file is gone
+		return(lastModified!=0 && System.currentTimeMillis()-lastModified > leaseTimeoutMillis);
+	}
+
+
+	/**
+	 * @return true if the lease file still holds this instance's id
+	 */
+	private boolean isOwned(){
+		String leaseOwner = readOwner();
+		return(leaseOwner!=null && leaseOwner.equals(ownerId));
+	}
+
+
+	/**
+	 * Reads the id of the owner of the lease. While another instance checks whether the lease has expired,
+	 * the lease file is briefly renamed away (see removeExpiredLease), so a missing file is looked for a few more times.
+	 * @return the id in the lease file (empty if it was just created by someone and not written yet),
+	 * or null if there's no lease file or it could not be read
+	 */
+	private String readOwner(){
+		for(int attempt=0; attempt<5; attempt++){
+			try {
+				return(new String(Files.readAllBytes(leasePath), Charset.forName("UTF-8")));
+			} catch (NoSuchFileException e) {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e1) {
+					Thread.currentThread().interrupt();
+					return(null);
+				}
+			} catch (IOException e) {
+				return(null);
+			}
+		}
+		return(null);
+	}
+
+
+	/**
+	 * Renews this lease, or marks it as lost if another instance took it over.
+	 * The lease is only lost if its file holds another owner's id; if the file can't be found or read,
+	 * it is checked again at the next renewal.
+	 */
+	private void renew(){
+		String leaseOwner = readOwner();
+		if(leaseOwner==null){
+			System.err.println("Could not read lease file: " + leasePath);
+			return;
+		}
+		if(!leaseOwner.equals(ownerId)){
+			lost = true;
+			heldLeases.remove(this);
+			System.err.println("Lease was taken over by another Iris instance: " + leasePath);
+			return;
+		}
+		if(!leasePath.toFile().setLastModified(System.currentTimeMillis())){
+			System.err.println("Could not renew lease file: " + leasePath);
+		}
+	}
+
+
+	/**
+	 * Starts the heartbeat thread that renews the held leases, if it's not running already
+	 */
+	private static synchronized void startHeartbeat(){
+		if(heartbeat!=null)
+			return;
+
+		heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Iris lease heartbeat");
+				thread.setDaemon(true);
+				return(thread);
+			}
+		});
+
+		long period = Math.max(leaseTimeoutMillis/4, 1000);
+		heartbeat.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				FileLease[] leases;
+				synchronized (heldLeases) {
+					leases = heldLeases.toArray(new FileLease[heldLeases.size()]);
+				}
+				for (FileLease lease : leases) {
+					lease.renew();
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+
+		//if we're being shut down, let the other instances have our pictures right away
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				FileLease[] leases;
+				synchronized (heldLeases) {
+					leases = heldLeases.toArray(new FileLease[heldLeases.size()]);
+				}
+				for (FileLease lease : leases) {
+					lease.release();
+				}
+			}
+		}));
+	}
+
+
+	/**
+	 * @return an id unique to this Iris instance: process id, host name, and a random part
+	 */
+	private static String createOwnerId(){
+		String processName = ManagementFactory.getRuntimeMXBean().getName(); //usually pid@hostname
+		return(processName + "#" + Long.toHexString(new Random().nextLong()));
+	}
+
+}
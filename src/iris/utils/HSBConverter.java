@@ -0,0 +1,164 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+
+/**
+ * This class converts RGB pixels (as stored by ImageJ's ColorProcessor) to their HSB (also known as HSV) channels,
+ * only calculating the channels that are asked for.
+ * Most of the time only one channel is needed (the brightness, to segment the plate or threshold a tile), but
+ * ColorProcessor.getHSB goes through java.awt.Color.RGBtoHSB for every pixel, calculating all three and
+ * allocating all three arrays.
+ *
+ * Every channel is calculated in its own simple loop over the pixels, without calls or objects in it, so that the JIT can
+ * unroll and vectorise it: the brightness is only the maximum of the three colours, the saturation one more division.
+ * Only the hue has to pick one of three formulas per pixel.
+ *
+ * The values are exactly the same as those of java.awt.Color.RGBtoHSB (for the float functions),
+ * and of ColorProcessor.getHSB (for the byte functions, where every channel goes from 0 to 255).
+ *
+ * @author George Kritikos
+ *
+ */
+public class HSBConverter {
+
+
+	/**
+	 * @return the hue of this colour, from 0 to 1, same as java.awt.Color.RGBtoHSB
+	 */
+	public static float getHue(int red, int green, int blue){
+		int max = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+
+		//greys have no hue
+		if(max==min)
+			return(0);
+
+		float range = (float)(max-min);
+		float redc = ((float)(max-red)) / range;
+		float greenc = ((float)(max-green)) / range;
+		float bluec = ((float)(max-blue)) / range;
+
+		float hue;
+		if(red==max)
+			hue = bluec-greenc;
+		else if(green==max)
+			hue = 2.0f+redc-bluec;
+		else
+			hue = 4.0f+greenc-redc;
+
+		hue = hue/6.0f;
+		if(hue<0)
+			hue = hue+1.0f;
+		return(hue);
+	}
+
+
+	/**
+	 * @return the saturation of this colour, from 0 to 1, same as java.awt.Color.RGBtoHSB
+	 */
+	public static float getSaturation(int red, int green, int blue){
+		int max = Math.max(red, Math.max(green, blue));
+		int min = Math.min(red, Math.min(green, blue));
+
+		if(max==0)
+			return(0);
+		return(((float)(max-min)) / ((float)max));
+	}
+
+
+	/**
+	 * @return the brightness of this colour, from 0 to 1, same as java.awt.Color.RGBtoHSB
+	 */
+	public static float getBrightness(int red, int green, int blue){
+		return(((float)Math.max(red, Math.max(green, blue))) / 255.0f);
+	}
+
+
+
+	/**
+	 * Calculates the HSB channels of the given pixels, same as ColorProcessor.getHSB, but only the ones asked for
+	 * @param pixels: RGB pixels, as in ColorProcessor.getPixels()
+	 * @param hue: the hue of every pixel is written here, null if it's not needed
+	 * @param saturation: the saturation of every pixel is written here, null if it's not needed
+	 * @param brightness: the brightness of every pixel is written here, null if it's not needed
+	 */
+	public static void getHSB(int[] pixels, byte[] hue, byte[] saturation, byte[] brightness){
+		getHSB(pixels, 0, pixels.length, hue, saturation, brightness);
+	}
+
+
+	/**
+	 * Calculates the HSB channels of pixels[from] to pixels[to-1], same as ColorProcessor.getHSB,
+	 * but only the ones asked for; the channels are written at the same positions as the pixels
+	 * @param pixels: RGB pixels, as in ColorProcessor.getPixels()
+	 * @param from
+	 * @param to
+	 * @param hue: null if it's not needed
+	 * @param saturation: null if it's not needed
+	 * @param brightness: null if it's not needed
+	 */
+	public static void getHSB(int[] pixels, int from, int to, byte[] hue, byte[] saturation, byte[] brightness){
+
+		//the brightness is the brightest colour (the conversion to float and back doesn't change it)
+		if(brightness!=null){
+			for(int i=from; i<to; i++){
+				int c = pixels[i];
+				int max = Math.max((c>>16)&0xff, Math.max((c>>8)&0xff, c&0xff));
+				brightness[i] = (byte) max;
+			}
+		}
+
+		if(saturation!=null){
+			for(int i=from; i<to; i++){
+				int c = pixels[i];
+				int red = (c>>16)&0xff, green = (c>>8)&0xff, blue = c&0xff;
+				int max = Math.max(red, Math.max(green, blue));
+				int min = Math.min(red, Math.min(green, blue));
+
+				//black pixels have no saturation, this keeps the division away from zero without a branch
+				float value = ((float)(max-min)) / ((float)Math.max(max, 1));
+				saturation[i] = (byte)((int)(value*255.0));
+			}
+		}
+
+		if(hue!=null){
+			for(int i=from; i<to; i++){
+				int c = pixels[i];
+				hue[i] = (byte)((int)(getHue((c>>16)&0xff, (c>>8)&0xff, c&0xff)*255.0));
+			}
+		}
+	}
+
+
+	/**
+	 * Calculates the hue of the given pixels, from 0 to 1, same as java.awt.Color.RGBtoHSB
+	 * @param pixels: RGB pixels, as in ColorProcessor.getPixels()
+	 * @param hue: the hue of every pixel is written here
+	 */
+	public static void getHue(int[] pixels, float[] hue){
+		for(int i=0; i<pixels.length; i++){
+			int c = pixels[i];
+			hue[i] = getHue((c>>16)&0xff, (c>>8)&0xff, c&0xff);
+		}
+	}
+
+
+
+	/**
+	 * @param colourImage: an RGB picture, it is not changed
+	 * @return the HSB brightness of the picture, same as ColorProcessor.getHSB
+	 */
+	public static ImagePlus getBrightnessImage(ImagePlus colourImage){
+		int[] pixels = (int[]) colourImage.getProcessor().getPixels();
+		byte[] brightness = new byte[pixels.length];
+		getHSB(pixels, null, null, brightness);
+
+		return(new ImagePlus(colourImage.getTitle(),
+				new ByteProcessor(colourImage.getWidth(), colourImage.getHeight(), brightness, null)));
+	}
+
+}
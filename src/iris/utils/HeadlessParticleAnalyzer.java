@@ -0,0 +1,66 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.util.ArrayList;
+
+import ij.gui.Roi;
+import ij.measure.ResultsTable;
+import ij.plugin.filter.ParticleAnalyzer;
+import ij.process.ImageStatistics;
+
+/**
+ * This is a particle analyzer that keeps the particle ROIs to itself, instead of handing them
+ * to a RoiManager through the static ParticleAnalyzer.setRoiManager hook.
+ * That hook is shared by all threads, so two tiles analyzed at the same time could end up
+ * with each other's ROIs. This one only uses its own fields, so every tile reader can create
+ * its own and run concurrently with the others. It also never needs a window, so it works headless.
+ * The ROIs are returned in the same order as the rows of the results table.
+ * @author George Kritikos
+ *
+ */
+public class HeadlessParticleAnalyzer extends ParticleAnalyzer {
+
+	/**
+	 * the ROIs of the particles found, in the order they were written in the results table
+	 */
+	private ArrayList<Roi> rois = new ArrayList<Roi>();
+
+
+	/**
+	 * arguments as in ParticleAnalyzer: options, what to measure, where to store the results, minimum and maximum particle size.
+	 * The ADD_TO_MANAGER option is ignored, the ROIs are available through getRois() instead.
+	 */
+	public HeadlessParticleAnalyzer(int options, int measurements, ResultsTable resultsTable, double minSize, double maxSize) {
+		super(options & ~ADD_TO_MANAGER, measurements, resultsTable, minSize, maxSize);
+	}
+
+
+	/**
+	 * same as above, also filtering particles by their circularity
+	 */
+	public HeadlessParticleAnalyzer(int options, int measurements, ResultsTable resultsTable, double minSize, double maxSize,
+			double minCircularity, double maxCircularity) {
+		super(options & ~ADD_TO_MANAGER, measurements, resultsTable, minSize, maxSize, minCircularity, maxCircularity);
+	}
+
+
+	/**
+	 * Called by the ParticleAnalyzer once for every particle kept
+	 */
+	@Override
+	protected void saveResults(ImageStatistics stats, Roi roi) {
+		super.saveResults(stats, roi);
+		rois.add(roi);
+	}
+
+
+	/**
+	 * @return the ROIs of the particles found by the last call(s) to analyze
+	 */
+	public Roi[] getRois(){
+		return(rois.toArray(new Roi[rois.size()]));
+	}
+
+}
@@ -0,0 +1,239 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+
+import java.util.ArrayList;
+
+/**
+ * This class holds the integral image (summed area table) of a picture's brightness, so that the sum of the
+ * brightness of any rectangle of the picture can be found with 4 lookups instead of a pass over its pixels.
+ * It is computed with a single pass over the picture, but takes 8 bytes for every pixel, so it's only worth it
+ * when the sums of many arbitrary rectangles are needed (see BasicImageSegmenterInput.getIntegralImage).
+ *
+ * The brightness of a pixel is the value of ImagePlus.getPixel(x, y)[0], as used by the code this replaces:
+ * the gray value for grayscale pictures, the red channel for RGB pictures.
+ * Pixels outside the picture count as 0.
+ *
+ * For the sums of rows or columns of a picture, the static functions do the same without building the table.
+ *
+ * @author George Kritikos
+ *
+ */
+public class IntegralImage {
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * table[y*(width+1) + x] holds the sum of the brightness of all pixels above and left of (x, y), exclusive;
+	 * the first row and column are 0
+	 */
+	private final long[] table;
+
+
+
+	/**
+	 * Calculates the integral image of the given picture
+	 * @param image
+	 */
+	public IntegralImage(ImagePlus image){
+		width = image.getWidth();
+		height = image.getHeight();
+		table = new long[(width+1)*(height+1)];
+
+		int stride = width+1;
+		int[] brightness = new int[width];
+
+		for(int y=0; y<height; y++){
+			readRow(image, y, brightness);
+
+			int above = y*stride;
+			int current = above+stride;
+			long sumOfRow = 0;
+
+			for(int x=0; x<width; x++){
+				sumOfRow += brightness[x];
+				table[current+x+1] = table[above+x+1] + sumOfRow;
+			}
+		}
+	}
+
+
+	public int getWidth(){
+		return(width);
+	}
+
+
+	public int getHeight(){
+		return(height);
+	}
+
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param rectangleWidth
+	 * @param rectangleHeight
+	 * @return the sum of the brightness of the pixels in the given rectangle, only counting the part inside the picture
+	 */
+	public long sum(int x, int y, int rectangleWidth, int rectangleHeight){
+		int left = Math.max(x, 0);
+		int top = Math.max(y, 0);
+		int right = Math.min(x+rectangleWidth, width);
+		int bottom = Math.min(y+rectangleHeight, height);
+
+		if(right<=left || bottom<=top)
+			return(0);
+
+		int stride = width+1;
+		return(table[bottom*stride+right] - table[top*stride+right] - table[bottom*stride+left] + table[top*stride+left]);
+	}
+
+
+	/**
+	 * @return the sum of the brightness of every row of the picture (one for every y)
+	 */
+	public long[] sumOfRows(){
+		long[] sumOfRows = new long[height];
+		for(int y=0; y<height; y++){
+			sumOfRows[y] = sum(0, y, width, 1);
+		}
+		return(sumOfRows);
+	}
+
+
+	/**
+	 * @return the sum of the brightness of every column of the picture (one for every x)
+	 */
+	public long[] sumOfColumns(){
+		long[] sumOfColumns = new long[width];
+		for(int x=0; x<width; x++){
+			sumOfColumns[x] = sum(x, 0, 1, height);
+		}
+		return(sumOfColumns);
+	}
+
+
+	/**
+	 * @param image
+	 * @return the sum of the brightness of every row of the picture (one for every y), without building the table
+	 */
+	public static long[] sumOfRows(ImagePlus image){
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		long[] sumOfRows = new long[height];
+		int[] brightness = new int[width];
+
+		for(int y=0; y<height; y++){
+			readRow(image, y, brightness);
+			long sum = 0;
+			for(int x=0; x<width; x++){
+				sum += brightness[x];
+			}
+			sumOfRows[y] = sum;
+		}
+		return(sumOfRows);
+	}
+
+
+	/**
+	 * @param image
+	 * @return the sum of the brightness of every column of the picture (one for every x), without building the table
+	 */
+	public static long[] sumOfColumns(ImagePlus image){
+		int width = image.getWidth();
+		int height = image.getHeight();
+
+		long[] sumOfColumns = new long[width];
+		int[] brightness = new int[width];
+
+		//go through the picture row by row, that's the order the pixels are stored in
+		for(int y=0; y<height; y++){
+			readRow(image, y, brightness);
+			for(int x=0; x<width; x++){
+				sumOfColumns[x] += brightness[x];
+			}
+		}
+		return(sumOfColumns);
+	}
+
+
+	/**
+	 * For the code that still works with lists; the sums are cast to int, as they were summed up before
+	 * @param sums
+	 * @return
+	 */
+	public static ArrayList<Integer> toIntegerList(long[] sums){
+		ArrayList<Integer> list = new ArrayList<Integer>(sums.length);
+		for(int i=0; i<sums.length; i++){
+			list.add((int) sums[i]);
+		}
+		return(list);
+	}
+
+
+	/**
+	 * For the code that works with int arrays; the sums are cast to int, as they were summed up before
+	 * @param sums
+	 * @return
+	 */
+	public static int[] toIntArray(long[] sums){
+		int[] array = new int[sums.length];
+		for(int i=0; i<sums.length; i++){
+			array[i] = (int) sums[i];
+		}
+		return(array);
+	}
+
+
+	/**
+	 * @param sums
+	 * @return the sums as doubles
+	 */
+	public static double[] toDoubleArray(long[] sums){
+		double[] array = new double[sums.length];
+		for(int i=0; i<sums.length; i++){
+			array[i] = sums[i];
+		}
+		return(array);
+	}
+
+
+	/**
+	 * Reads the brightness of a row of the picture, as ImagePlus.getPixel(x, y)[0] would,
+	 * but going straight to the pixel array for 8-bit and RGB pictures
+	 * @param image
+	 * @param y
+	 * @param brightness: this is filled in
+	 */
+	private static void readRow(ImagePlus image, int y, int[] brightness){
+		int width = brightness.length;
+		int offset = y*width;
+
+		switch(image.getType()){
+		case ImagePlus.GRAY8:
+			byte[] grayPixels = (byte[]) image.getProcessor().getPixels();
+			for(int x=0; x<width; x++){
+				brightness[x] = grayPixels[offset+x]&0xff;
+			}
+			break;
+
+		case ImagePlus.COLOR_RGB:
+			int[] rgbPixels = (int[]) image.getProcessor().getPixels();
+			for(int x=0; x<width; x++){
+				brightness[x] = (rgbPixels[offset+x]>>16)&0xff;
+			}
+			break;
+
+		default:
+			for(int x=0; x<width; x++){
+				brightness[x] = image.getPixel(x, y)[0];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,444 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class counts the brightness elevations of a colony along concentric circles around its center,
+ * which is how the morphology tile readers tell how "wrinkly" a colony is.
+ *
+ * The morphology tile readers used to get the circle coordinates anew for every radius of every colony,
+ * ask the colony Roi whether every point of every circle is in it, and average the 9 pixels around it with
+ * bounds-checked getPixel calls. Here, the circle offsets are worked out once for every radius and kept for the whole run,
+ * the colony Roi is turned into a bitmap once per colony, and the 9-pixel averages of the whole tile are taken in one pass;
+ * following the circles is then a matter of array lookups.
+ *
+ * @author George Kritikos
+ *
+ */
+public class MorphologyKernel {
+
+	/**
+	 * the circle offsets (from the circle center) for every radius asked for so far, see getCircleOffsets
+	 */
+	private static final HashMap<Integer, int[][]> circleOffsets = new HashMap<Integer, int[][]>();
+
+	private final int width;
+	private final int height;
+
+	/**
+	 * the 8-bit pixels of the tile
+	 */
+	private final byte[] pixels;
+
+	/**
+	 * the average brightness of the 9 pixels around each pixel of the tile, see getBrightnessAverage9pixels
+	 */
+	private final int[] averages;
+
+	/**
+	 * the colony Roi, as a bitmap over its bounds: inColony[(y-colonyBounds.y)*colonyBounds.width + x-colonyBounds.x]
+	 * holds colonyRoi.contains(x, y), as one of the states below
+	 */
+	private final Roi colonyRoi;
+	private final Rectangle colonyBounds;
+	private final byte[] inColony;
+
+	private static final byte notChecked = 0;
+	private static final byte inside = 1;
+	private static final byte outside = 2;
+
+
+
+	/**
+	 * Prepares the given tile and colony for the circle scans
+	 * @param grayscale_image: an 8-bit tile
+	 * @param colonyRoi: the colony, in the coordinates of the tile; it may fall partly outside the tile
+	 */
+	public MorphologyKernel(ImagePlus grayscale_image, Roi colonyRoi){
+		ByteProcessor grayscale_image_ip = (ByteProcessor) grayscale_image.getProcessor();
+
+		width = grayscale_image_ip.getWidth();
+		height = grayscale_image_ip.getHeight();
+		pixels = (byte[]) grayscale_image_ip.getPixels();
+
+		averages = getBrightnessAverages9pixels();
+
+		this.colonyRoi = colonyRoi;
+		colonyBounds = colonyRoi.getBounds();
+		inColony = getColonyBitmap(colonyRoi, colonyBounds);
+	}
+
+
+
+	/**
+	 * Turns the colony Roi into a bitmap of the pixels it contains.
+	 * For plain rectangles, ovals and traced outlines, the Roi mask holds the same pixels as Roi.contains;
+	 * any other kind of Roi is asked about a pixel the first time it's needed (see isInColony)
+	 * @param colonyRoi
+	 * @param bounds
+	 * @return
+	 */
+	private static byte[] getColonyBitmap(Roi colonyRoi, Rectangle bounds){
+		byte[] bitmap = new byte[bounds.width*bounds.height];
+
+		int type = colonyRoi.getType();
+		if(type==Roi.RECTANGLE || type==Roi.OVAL || type==Roi.TRACED_ROI){
+			ImageProcessor mask = colonyRoi.getMask();
+			byte[] maskPixels = mask==null ? null : (byte[]) mask.getPixels();
+
+			for(int i=0; i<bitmap.length; i++){
+				bitmap[i] = (maskPixels==null || maskPixels[i]!=0) ? inside : outside;
+			}
+		}
+
+		return(bitmap);
+	}
+
+
+
+	/**
+	 * @return true if the pixel is in the colony Roi
+	 */
+	private boolean isInColony(int x, int y){
+		int colonyX = x-colonyBounds.x;
+		int colonyY = y-colonyBounds.y;
+
+		if(colonyX<0 || colonyY<0 || colonyX>=colonyBounds.width || colonyY>=colonyBounds.height)
+			return(false);
+
+		int index = colonyY*colonyBounds.width + colonyX;
+		if(inColony[index]==notChecked)
+			inColony[index] = colonyRoi.contains(x, y) ? inside : outside;
+
+		return(inColony[index]==inside);
+	}
+
+
+
+	/**
+	 * Gets the average brightness of the 9 pixels around every pixel of the tile, same as getBrightnessAverage9pixels,
+	 * by summing up 3 pixels along the rows first, and then 3 of those row sums along the columns
+	 * @return
+	 */
+	private int[] getBrightnessAverages9pixels(){
+		int[] rowSums = new int[width*height];
+		int[] rowCounts = new int[width*height];
+
+		for(int y=0; y<height; y++){
+			int row = y*width;
+			for(int x=0; x<width; x++){
+				int sum = 0;
+				int count = 0;
+				for(int neighbourX=Math.max(x-1, 0); neighbourX<=Math.min(x+1, width-1); neighbourX++){
+					int pixelIntensity = pixels[row+neighbourX]&0xff;
+					sum += pixelIntensity;
+					if(pixelIntensity!=0)
+						count++;
+				}
+				rowSums[row+x] = sum;
+				rowCounts[row+x] = count;
+			}
+		}
+
+		int[] tileAverages = new int[width*height];
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				int sum = 0;
+				int count = 0;
+				for(int neighbourY=Math.max(y-1, 0); neighbourY<=Math.min(y+1, height-1); neighbourY++){
+					sum += rowSums[neighbourY*width+x];
+					count += rowCounts[neighbourY*width+x];
+				}
+				tileAverages[y*width+x] = count==0 ? 0 : (int) Math.round((double)sum / (double)count);
+			}
+		}
+
+		return(tileAverages);
+	}
+
+
+
+	/**
+	 * This function will return the average brightness of +/- 1 pixels around the requested point.
+	 * Pixels out of the tile, and black pixels, are left out of the average.
+	 * @param x
+	 * @param y
+	 * @return the average, 0 if none of the 9 pixels was counted
+	 */
+	private int getBrightnessAverage9pixels(int x, int y){
+
+		//count the number of pixels actually retrieved and added to the sum
+		int pixelsAdded = 0;
+		int sumOfPixelIntensity = 0;
+
+		for(int neighbourY=Math.max(y-1, 0); neighbourY<=Math.min(y+1, height-1); neighbourY++){
+			for(int neighbourX=Math.max(x-1, 0); neighbourX<=Math.min(x+1, width-1); neighbourX++){
+				int pixelIntensity = pixels[neighbourY*width+neighbourX]&0xff;
+
+				if(pixelIntensity!=0){
+					pixelsAdded++;
+					sumOfPixelIntensity += pixelIntensity;
+				}
+			}
+		}
+
+		if(pixelsAdded==0)
+			return(0);
+
+		return((int) Math.round((double)sumOfPixelIntensity / (double)pixelsAdded));
+	}
+
+
+
+	/**
+	 * This function will calculate the brightness elevation counts of the colony by traversing concentric circles,
+	 * starting in the center of the colony and moving outwards until a circle goes out of the colony bounds.
+	 * The circle that went out of bounds is not counted.
+	 * @param colonyCenter
+	 * @param initialRadius: the radius of the innermost circle
+	 * @param radiusStep: the stepwise increase in circle radius
+	 * @param maximumNumberOfCircles: stop after this amount of circles
+	 * @param minimumBrightnessStep: the minimum brightness elevation required, for it to be considered as a structural element of the colony
+	 * @return the elevation count of every circle, innermost first
+	 */
+	public ArrayList<Integer> getElevationCounts(Point colonyCenter, int initialRadius, int radiusStep,
+			int maximumNumberOfCircles, int minimumBrightnessStep){
+
+		ArrayList<Integer> elevationCounts = new ArrayList<Integer>();
+
+		for(int number_of_circles=0; number_of_circles<maximumNumberOfCircles; number_of_circles++){
+
+			int radius = initialRadius + number_of_circles * radiusStep;
+
+			int[][] offsets = getCircleOffsets(radius);
+			int[] xOffsets = offsets[0];
+			int[] yOffsets = offsets[1];
+			int[] meanPixelValues = new int[xOffsets.length];
+
+			for(int i=0; i<xOffsets.length; i++){
+				int x = colonyCenter.x + xOffsets[i];
+				int y = colonyCenter.y + yOffsets[i];
+
+				//once a circle goes out of the colony bounds, it's not counted, and neither is any circle after it
+				if(!isInColony(x, y))
+					return(elevationCounts);
+
+				if(x>=0 && y>=0 && x<width && y<height)
+					meanPixelValues[i] = averages[y*width+x];
+				else
+					meanPixelValues[i] = getBrightnessAverage9pixels(x, y);
+			}
+
+			elevationCounts.add(Integer.valueOf(countBrightnessChanges(meanPixelValues, minimumBrightnessStep, 2)));
+		}
+
+		return(elevationCounts);
+	}
+
+
+
+	/**
+	 * This function will get a sequence of measurements and count the times there's a difference
+	 * greater than threshold, when subtracting a measurement from it's previous
+	 * @param series:	the pixel brightness values
+	 * @param threshold:	above which brightness difference is it going to be picked up as a brightness change
+	 * @param offset:	skip these number of pixels. Default value is 1
+	 * @return
+	 */
+	private static int countBrightnessChanges(int[] series, int threshold, int offset){
+
+		int changesOverThreshold = 0;
+
+		for(int i=0; i<series.length-offset; i++){
+			if(Math.abs(series[i+offset] - series[i])>threshold){
+				changesOverThreshold++;
+			}
+		}
+
+		return(changesOverThreshold);
+	}
+
+
+
+	/**
+	 * Gets the coordinates of a circle around (0, 0), see getCircleCoordinates.
+	 * These are worked out once for every radius, and kept for the rest of the run.
+	 * @param radius
+	 * @return the x offsets in [0], the y offsets in [1]; these are shared, so they must not be changed
+	 */
+	public static int[][] getCircleOffsets(int radius){
+		synchronized(circleOffsets){
+			int[][] offsets = circleOffsets.get(radius);
+			if(offsets==null){
+				offsets = calculateCircleOffsets(radius);
+				circleOffsets.put(radius, offsets);
+			}
+			return(offsets);
+		}
+	}
+
+
+
+	/**
+	 * Since we have a rasterized picture with relatively small resolution,
+	 * we will use Bresenham's circle algorithm, an adaptation of Bresenham's line algorithm
+	 * to draw a rasterized circle.
+	 * Note that this implementation follows Jean-Yves Tinevez's <jeanyves.tinevez@gmail.com>
+	 * Matlab implementation. Hence it provides us with a list of points that are sorted, as in
+	 * a circle that starts at 6 o'clock and goes counterclockwise.
+	 * This happens because the coordinate system this function was made for is
+	 * 	+
+	 * - +
+	 * 	-
+	 * whereas what happens for image coordinate systems is
+	 * 0	+
+	 * +
+	 * a.k.a
+	 * 	-
+	 * - +
+	 * 	+
+	 * @param center
+	 * @param radius
+	 * @return the circle point coordinates
+	 * @see http://en.wikipedia.org/wiki/Midpoint_circle_algorithm
+	 */
+	public static ArrayList<Point> getCircleCoordinates(Point center, int radius){
+		int[][] offsets = getCircleOffsets(radius);
+
+		ArrayList<Point> pointsToReturn = new ArrayList<Point>(offsets[0].length);
+		for(int i=0; i<offsets[0].length; i++){
+			pointsToReturn.add(new Point(center.x + offsets[0][i], center.y + offsets[1][i]));
+		}
+
+		return(pointsToReturn);
+	}
+
+
+
+	/**
+	 * Bresenham's circle algorithm, around (0, 0), see getCircleCoordinates
+	 * @param radius
+	 * @return the x coordinates in [0], the y coordinates in [1]
+	 */
+	private static int[][] calculateCircleOffsets(int radius){
+		// Compute first the number of points
+		int octant_size = (int) Math.floor((Math.sqrt(2)*(radius-1)+4)/2);
+		int n_points = 8 * octant_size;
+
+		// Iterate a second time, and this time retrieve coordinates.
+		// We "zig-zag" through indices, so that we reconstruct a continuous
+		// set of of x,y coordinates, starting from the top of the circle.
+
+		//Matlab uses the 1..n array notation instead of the 0...n-1 notation that Java uses
+		//an easy way to go from one to the other is make a bigger array and then "shift" all the values
+		//before moving them back into Java context
+		int[] xc = new int[n_points+1];
+		int[] yc = new int[n_points+1];
+
+		int x = 0;
+		int y = radius;
+		int f = 1 - radius;
+		int dx = 1;
+		int dy = - 2 * radius;
+
+		// Store
+
+		// 1 octant
+		xc[1] = x;
+		yc[1] = y;
+
+		// 2nd octant
+		xc[8 * octant_size] = - x;
+		yc[8 * octant_size] = y;
+
+		// 3rd octant
+		xc[4 * octant_size] = x;
+		yc[4 * octant_size] = - y;
+
+		// 4th octant
+		xc[4 * octant_size + 1] = - x;
+		yc[4 * octant_size + 1] = - y;
+
+		// 5th octant
+		xc[2 * octant_size] = y;
+		yc[2 * octant_size] = x;
+
+		// 6th octant
+		xc[6 * octant_size + 1] = - y;
+		yc[6 * octant_size + 1] = x;
+
+		// 7th octant
+		xc[2 * octant_size + 1] = y;
+		yc[2 * octant_size + 1] = - x;
+
+		// 8th octant
+		xc[6 * octant_size] = - y;
+		yc[6 * octant_size] = - x;
+
+
+		for(int i=2; i<=n_points/8; i++){
+
+			// We update x & y
+			if (f > 0){
+				y = y - 1;
+				dy = dy + 2;
+				f = f + dy;
+			}
+			x = x + 1;
+			dx = dx + 2;
+			f = f + dx;
+
+			// 1 octant
+			xc[i] = x;
+			yc[i] = y;
+
+			// 2nd octant
+			xc[8 * octant_size - i + 1] = - x;
+			yc[8 * octant_size - i + 1] = y;
+
+			// 3rd octant
+			xc[4 * octant_size - i + 1] = x;
+			yc[4 * octant_size - i + 1] = - y;
+
+			// 4th octant
+			xc[4 * octant_size + i] = - x;
+			yc[4 * octant_size + i] = - y;
+
+			// 5th octant
+			xc[2 * octant_size - i + 1] = y;
+			yc[2 * octant_size - i + 1] = x;
+
+			// 6th octant
+			xc[6 * octant_size + i] = - y;
+			yc[6 * octant_size + i] = x;
+
+			// 7th octant
+			xc[2 * octant_size + i] = y;
+			yc[2 * octant_size + i] = - x;
+
+			// 8th octant
+			xc[6 * octant_size - i + 1] = - y;
+			yc[6 * octant_size - i + 1] = - x;
+
+		}
+
+		//ready, drop the Matlab-style first element
+		int[][] offsets = new int[2][n_points];
+		System.arraycopy(xc, 1, offsets[0], 0, n_points);
+		System.arraycopy(yc, 1, offsets[1], 0, n_points);
+
+		return(offsets);
+	}
+
+}
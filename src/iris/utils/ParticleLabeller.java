@@ -0,0 +1,499 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.Prefs;
+import ij.gui.PolygonRoi;
+import ij.gui.Roi;
+import ij.gui.Wand;
+import ij.process.ImageProcessor;
+import ij.process.ImageStatistics;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * This class finds the particles (8-connected components) of a thresholded or binary 8-bit tile, as the ParticleAnalyzer
+ * would with the SHOW_NONE option, but without tracing, filling and measuring every particle through a ResultsTable.
+ *
+ * The tile is labelled in two passes over its pixels (union-find on the labels of the neighbours above and to the left),
+ * the second of which also sums up the area, bounding rectangle, center of mass and moments of every particle.
+ * Only the outline of a particle asked for (usually the biggest one) is then traced, to get its perimeter and circularity.
+ *
+ * The particles are returned in the same order as the rows of the ParticleAnalyzer's results table
+ * (the order their first pixel is found in), and every value is the same as the one in the results table, as a float:
+ * Area, BX, BY, Width, Height, XM, YM, AR (Measurements.AREA+RECT+CENTER_OF_MASS+SHAPE_DESCRIPTORS),
+ * Perim. and Circ. once traced.
+ * This keeps the colony sizes (area plus perimeter) and circularities the tile readers report the same as before.
+ * The picture is assumed uncalibrated, as tiles are.
+ * If the picture has a Roi, only the particles inside it are found.
+ *
+ * @author George Kritikos
+ *
+ */
+public class ParticleLabeller {
+
+	/**
+	 * A particle of the tile
+	 */
+	public static class Particle {
+		public float area;
+
+		/**
+		 * the bounding rectangle of the particle, in the coordinates of the tile
+		 */
+		public Rectangle bounds;
+
+		/**
+		 * the center of mass, the pixels weighted by their gray value (+0.5, as in ImageJ)
+		 */
+		public float xCenterOfMass;
+		public float yCenterOfMass;
+
+		/**
+		 * the major over the minor axis of the ellipse with the same moments as the particle
+		 */
+		public float aspectRatio;
+
+		/**
+		 * these are only set once the outline of the particle was traced (see traceOutline)
+		 */
+		public float perimeter = Float.NaN;
+		public float circularity = Float.NaN;
+		public Roi outline = null;
+
+		/**
+		 * the first pixel of the particle, the outline is traced from here
+		 */
+		private int startX;
+		private int startY;
+	}
+
+
+	/**
+	 * as in EllipseFitter
+	 */
+	private static final double HALFPI = 1.5707963267949;
+
+
+	private final ImagePlus image;
+
+	/**
+	 * the pixels of the picture, or if it has a Roi, a copy of them with the pixels outside it set to background
+	 */
+	private final ImageProcessor processor;
+	private final double level1;
+	private final double level2;
+
+	private Particle[] particles;
+
+
+
+	/**
+	 * Finds the particles of the picture; pixels from the picture's lower to upper threshold are particles,
+	 * or if no threshold was set, the picture must be binary and the foreground is picked as the ParticleAnalyzer would
+	 * (black, unless the LUT is inverted or black background is set).
+	 * Particles of fewer pixels than minimumSize are left out.
+	 * @param image: an 8-bit picture, it is not changed
+	 * @param minimumSize
+	 */
+	public ParticleLabeller(ImagePlus image, int minimumSize){
+		this.image = image;
+		ImageProcessor imageProcessor = image.getProcessor();
+
+		if(!(imageProcessor.getPixels() instanceof byte[]))
+			throw new IllegalArgumentException("only 8-bit pictures can be labelled");
+
+		double minimumThreshold = imageProcessor.getMinThreshold();
+		if(minimumThreshold!=ImageProcessor.NO_THRESHOLD){
+			level1 = minimumThreshold;
+			level2 = imageProcessor.getMaxThreshold();
+		}
+		else{
+			boolean threshold255 = image.isInvertedLut();
+			if(Prefs.blackBackground)
+				threshold255 = !threshold255;
+			level1 = threshold255 ? 255 : 0;
+			level2 = level1;
+		}
+
+		//the ParticleAnalyzer finds nothing in a picture that is neither thresholded nor binary (within its Roi)
+		boolean analyzable = true;
+		if(minimumThreshold==ImageProcessor.NO_THRESHOLD){
+			ImageStatistics statistics = image.getStatistics();
+			analyzable = statistics.histogram[0]+statistics.histogram[255]==statistics.pixelCount;
+		}
+
+		this.processor = getPixelsInsideRoi(imageProcessor);
+
+		if(analyzable)
+			particles = findParticles(minimumSize);
+		else
+			particles = new Particle[0];
+	}
+
+
+
+	/**
+	 * @param imageProcessor
+	 * @return the processor itself if it has no Roi, or else a copy of it where the pixels outside the Roi
+	 * are set to a value that's not part of any particle; as in the ParticleAnalyzer, this is the Roi of the processor
+	 * (its bounds, and its mask if it has one)
+	 */
+	private ImageProcessor getPixelsInsideRoi(ImageProcessor imageProcessor){
+		Rectangle bounds = imageProcessor.getRoi();
+		ImageProcessor mask = imageProcessor.getMask();
+		int width = imageProcessor.getWidth();
+		int height = imageProcessor.getHeight();
+
+		if(bounds.x==0 && bounds.y==0 && bounds.width==width && bounds.height==height && mask==null)
+			return(imageProcessor);
+
+		int background = 0;
+		while(background<256 && background>=level1 && background<=level2)
+			background++;
+		if(background==256)
+			return(imageProcessor); //every pixel is part of a particle, there's nothing to leave out
+
+		ImageProcessor copy = imageProcessor.duplicate();
+		byte[] pixels = (byte[]) copy.getPixels();
+		byte[] maskPixels = mask==null ? null : (byte[]) mask.getPixels();
+
+		for(int y=0; y<height; y++){
+			for(int x=0; x<width; x++){
+				boolean inside = bounds.contains(x, y) &&
+						(maskPixels==null || maskPixels[(y-bounds.y)*bounds.width + x-bounds.x]!=0);
+				if(!inside)
+					pixels[y*width+x] = (byte) background;
+			}
+		}
+		return(copy);
+	}
+
+
+
+	/**
+	 * @return the particles found, in the order of the ParticleAnalyzer's results table
+	 */
+	public Particle[] getParticles(){
+		return(particles);
+	}
+
+
+	/**
+	 * @return the index of the biggest particle (the first one, if more than one are as big), -1 if none were found
+	 */
+	public int getIndexOfBiggestParticle(){
+		int index = -1;
+		float max = -Float.MAX_VALUE;
+
+		for (int i = 0; i < particles.length; i++) {
+			if(particles[i].area>max){
+				max = particles[i].area;
+				index = i;
+			}
+		}
+
+		return(index);
+	}
+
+
+
+	/**
+	 * Traces the outline of the particle, and sets its perimeter, circularity and outline (as a traced PolygonRoi,
+	 * the same ROI the ParticleAnalyzer would give)
+	 * @param particle
+	 */
+	public void traceOutline(Particle particle){
+		if(particle.outline!=null)
+			return;
+
+		Wand wand = new Wand(processor);
+		wand.autoOutline(particle.startX, particle.startY, level1, level2, Wand.LEGACY_MODE);
+
+		//the same type of ROI as the ParticleAnalyzer's, for the perimeter to be the same
+		int roiType = Wand.allPoints() ? Roi.FREEROI : Roi.TRACED_ROI;
+		particle.outline = new PolygonRoi(wand.xpoints, wand.ypoints, wand.npoints, roiType);
+		particle.outline.setImage(image);
+
+		double perimeter = particle.outline.getLength();
+		double circularity = perimeter==0.0 ? 0.0 : 4.0*Math.PI*(particle.area/(perimeter*perimeter));
+		if(circularity>1.0)
+			circularity = 1.0;
+
+		particle.perimeter = (float) perimeter;
+		particle.circularity = (float) circularity;
+	}
+
+
+
+	/**
+	 * Labels the picture and measures its particles
+	 * @param minimumSize
+	 * @return the particles, in the order their first pixel is found in
+	 */
+	private Particle[] findParticles(int minimumSize){
+		int width = processor.getWidth();
+		int height = processor.getHeight();
+		byte[] pixels = (byte[]) processor.getPixels();
+
+		boolean[] isParticle = new boolean[256];
+		for(int value=0; value<256; value++)
+			isParticle[value] = value>=level1 && value<=level2;
+
+
+		//1. give every particle pixel the label of a neighbour already seen (left, above left, above, above right),
+		//or a new one; if these neighbours have different labels, they are the same particle
+		int[] labels = new int[width*height];
+		int[] parents = new int[256];
+		int numberOfLabels = 1; //0 is the background
+
+		for(int y=0; y<height; y++){
+			int offset = y*width;
+
+			for(int x=0; x<width; x++){
+				int i = offset+x;
+				if(!isParticle[pixels[i]&0xff])
+					continue;
+
+				int west = x>0 ? labels[i-1] : 0;
+				int northWest = x>0 && y>0 ? labels[i-width-1] : 0;
+				int north = y>0 ? labels[i-width] : 0;
+				int northEast = x<width-1 && y>0 ? labels[i-width+1] : 0;
+
+				//the pixel above touches all the others, so they're already joined to it;
+				//otherwise only the pixel above right can be a different particle so far
+				int label;
+				if(north!=0)
+					label = north;
+				else if(northWest!=0)
+					label = union(parents, northWest, northEast);
+				else if(west!=0)
+					label = union(parents, west, northEast);
+				else
+					label = northEast;
+
+				if(label==0){
+					if(numberOfLabels==parents.length)
+						parents = Arrays.copyOf(parents, parents.length*2);
+					label = numberOfLabels++;
+					parents[label] = label;
+				}
+
+				labels[i] = label;
+			}
+		}
+
+
+		//2. number the particles; the root of a particle is its smallest label, i.e. the label of its first pixel,
+		//so numbering the roots in order numbers the particles in the order their first pixel is found in
+		int[] particleOfLabel = new int[numberOfLabels];
+		int numberOfParticles = 0;
+		for(int label=1; label<numberOfLabels; label++){
+			if(parents[label]==label)
+				particleOfLabel[label] = numberOfParticles++;
+		}
+
+
+		//3. sum up every particle, going through its pixels in the same order as ImageJ does,
+		//so that the center of mass (a sum of doubles) comes out exactly the same
+		int[] pixelCounts = new int[numberOfParticles];
+		int[] firstX = new int[numberOfParticles];
+		int[] minX = new int[numberOfParticles];
+		int[] minY = new int[numberOfParticles];
+		int[] maxX = new int[numberOfParticles];
+		int[] maxY = new int[numberOfParticles];
+		long[] sumX = new long[numberOfParticles];
+		long[] sumY = new long[numberOfParticles];
+		long[] sumXX = new long[numberOfParticles];
+		long[] sumYY = new long[numberOfParticles];
+		long[] sumXY = new long[numberOfParticles];
+		double[] sumOfValues = new double[numberOfParticles];
+		double[] sumOfXValues = new double[numberOfParticles];
+		double[] sumOfYValues = new double[numberOfParticles];
+
+		Arrays.fill(minX, Integer.MAX_VALUE);
+		Arrays.fill(minY, Integer.MAX_VALUE);
+
+		for(int y=0; y<height; y++){
+			int offset = y*width;
+
+			for(int x=0; x<width; x++){
+				int label = labels[offset+x];
+				if(label==0)
+					continue;
+
+				int p = particleOfLabel[find(parents, label)];
+
+				if(pixelCounts[p]++==0)
+					firstX[p] = x;
+				if(x<minX[p]) minX[p] = x;
+				if(x>maxX[p]) maxX[p] = x;
+				if(y<minY[p]) minY[p] = y;
+				if(y>maxY[p]) maxY[p] = y;
+
+				sumX[p] += x;
+				sumY[p] += y;
+				sumXX[p] += x*x;
+				sumYY[p] += y*y;
+				sumXY[p] += x*y;
+
+				//as in ByteStatistics.calculateMoments
+				double value = (pixels[offset+x]&0xff) + Double.MIN_VALUE;
+				sumOfValues[p] += value;
+				sumOfXValues[p] += x*value;
+				sumOfYValues[p] += y*value;
+			}
+		}
+
+
+		//4. measure the particles that are big enough
+		Particle[] found = new Particle[numberOfParticles];
+		int numberFound = 0;
+
+		for(int p=0; p<numberOfParticles; p++){
+			if(pixelCounts[p]<minimumSize)
+				continue;
+
+			Particle particle = new Particle();
+			int n = pixelCounts[p];
+			int left = minX[p];
+			int top = minY[p];
+
+			particle.area = n;
+			particle.bounds = new Rectangle(left, top, maxX[p]-left+1, maxY[p]-top+1);
+			particle.xCenterOfMass = (float)(sumOfXValues[p]/sumOfValues[p]+0.5);
+			particle.yCenterOfMass = (float)(sumOfYValues[p]/sumOfValues[p]+0.5);
+
+			//the sums EllipseFitter takes, relative to the bounding rectangle
+			long xsum = sumX[p] - (long)n*left;
+			long ysum = sumY[p] - (long)n*top;
+			long x2sum = sumXX[p] - 2L*left*sumX[p] + (long)n*left*left;
+			long y2sum = sumYY[p] - 2L*top*sumY[p] + (long)n*top*top;
+			long xysum = sumXY[p] - (long)top*sumX[p] - (long)left*sumY[p] + (long)n*left*top;
+
+			particle.aspectRatio = (float) getAspectRatio(particle.bounds, n, xsum, ysum, x2sum, y2sum, xysum);
+
+			particle.startX = firstX[p];
+			particle.startY = top;
+
+			found[numberFound++] = particle;
+		}
+
+		return(Arrays.copyOf(found, numberFound));
+	}
+
+
+
+	/**
+	 * Calculates the aspect ratio of the ellipse with the same moments as the particle, as EllipseFitter does
+	 * (the sums are relative to the bounding rectangle, and exact)
+	 * @return the major over the minor axis
+	 */
+	private static double getAspectRatio(Rectangle bounds, int bitCount, double xsum, double ysum, double x2sum, double y2sum, double xysum){
+		double major, minor;
+
+		//the ParticleAnalyzer doesn't mask particles that are a single pixel wide or high, then the ellipse is that of the rectangle
+		if(bounds.width<=1 || bounds.height<=1){
+			double sqrtPi = 1.772453851;
+			major = (bounds.width*2) / sqrtPi;
+			minor = (bounds.height*2) / sqrtPi;
+			if(major<minor)
+				return(minor/major);
+			return(major/minor);
+		}
+
+		//EllipseFitter.getMoments
+		x2sum += 0.08333333 * bitCount;
+		y2sum += 0.08333333 * bitCount;
+		double n = bitCount;
+		double xm = xsum/n;
+		double ym = ysum/n;
+		double u20 = x2sum/n - (xm*xm);
+		double u02 = y2sum/n - (ym*ym);
+		double u11 = xysum/n - xm*ym;
+
+		//EllipseFitter.getEllipseParam
+		double m4 = 4.0 * Math.abs(u02 * u20 - u11 * u11);
+		if (m4 < 0.000001)
+			m4 = 0.000001;
+		double a11 = u02 / m4;
+		double a12 = u11 / m4;
+		double a22 = u20 / m4;
+
+		double tmp = a11 - a22;
+		if (tmp == 0.0)
+			tmp = 0.000001;
+		double theta = 0.5 * Math.atan(2.0 * a12 / tmp);
+		if (theta < 0.0)
+			theta += HALFPI;
+		if (a12 > 0.0)
+			theta += HALFPI;
+		else if (a12 == 0.0) {
+			if (a22 > a11) {
+				theta = 0.0;
+				tmp = a22;
+				a22 = a11;
+				a11 = tmp;
+			} else if (a11 != a22)
+				theta = HALFPI;
+		}
+		tmp = Math.sin(theta);
+		if (tmp == 0.0)
+			tmp = 0.000001;
+		double z = a12 * Math.cos(theta) / tmp;
+		major = Math.sqrt (1.0 / Math.abs(a22 + z));
+		minor = Math.sqrt (1.0 / Math.abs(a11 - z));
+		double scale = Math.sqrt (bitCount / (Math.PI * major * minor)); //equalize areas
+		major = major*scale*2.0;
+		minor = minor*scale*2.0;
+		if (major < minor) {
+			tmp = major;
+			major = minor;
+			minor = tmp;
+		}
+
+		return(major/minor);
+	}
+
+
+
+	/**
+	 * @return the root of the label, i.e. the smallest label of its particle
+	 */
+	private static int find(int[] parents, int label){
+		int root = label;
+		while(parents[root]!=root)
+			root = parents[root];
+
+		//point the labels on the way straight to the root
+		while(parents[label]!=root){
+			int next = parents[label];
+			parents[label] = root;
+			label = next;
+		}
+		return(root);
+	}
+
+
+	/**
+	 * Joins the particles of the two labels, the second one may be 0 (no label)
+	 * @return a label of the joined particle
+	 */
+	private static int union(int[] parents, int label1, int label2){
+		if(label2==0)
+			return(label1);
+
+		int root1 = find(parents, label1);
+		int root2 = find(parents, label2);
+		if(root1<root2){
+			parents[root2] = root1;
+			return(root1);
+		}
+		parents[root1] = root2;
+		return(root2);
+	}
+
+}
@@ -0,0 +1,209 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.process.ByteProcessor;
+import ij.process.ColorProcessor;
+import ij.process.ImageConverter;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+
+/**
+ * This class gives access to a colour plate picture as if it was rotated (the same way Toolbox.rotateImage does it),
+ * without making a rotated copy of the whole picture: the pixels are rotated as they are read.
+ * This way, the plate can be rotated, cropped and turned into its HSB brightness in one pass over the picture,
+ * only allocating the cropped colour picture and its brightness.
+ *
+ * The results are the same, pixel by pixel, as rotating the picture with Toolbox.rotateImage, then cropping it
+ * with Toolbox.cropImage and getting its brightness with Toolbox.getHSBgrayscaleImageBrightness.
+ *
+ * @author George Kritikos
+ *
+ */
+public class RotatedPlate {
+
+	private final ImagePlus originalImage;
+	private final int[] pixels;
+	private final int width;
+	private final int height;
+
+	/**
+	 * false if the angle is a multiple of 360 degrees, ImageJ leaves the picture as it is then
+	 */
+	private final boolean rotate;
+
+	/**
+	 * these are the same as ImageJ uses to rotate the picture
+	 */
+	private final double cosine;
+	private final double sine;
+	private final double centerX;
+	private final double centerY;
+	private final double tmp1;
+	private final double tmp2;
+
+
+	/**
+	 * @param originalImage: this must be a colour picture (see canRotate), it is not changed
+	 * @param angle: in degrees, clockwise
+	 */
+	public RotatedPlate(ImagePlus originalImage, double angle){
+		this.originalImage = originalImage;
+		ImageProcessor processor = originalImage.getProcessor();
+		pixels = (int[]) processor.getPixels();
+		width = processor.getWidth();
+		height = processor.getHeight();
+
+		rotate = angle%360!=0;
+
+		centerX = (width-1)/2.0;
+		centerY = (height-1)/2.0;
+		double angleRadians = -angle/(180.0/Math.PI);
+		cosine = Math.cos(angleRadians);
+		sine = Math.sin(angleRadians);
+		tmp1 = centerY*sine-centerX*cosine;
+		tmp2 = -centerX*sine-centerY*cosine;
+	}
+
+
+	/**
+	 * @param image
+	 * @return true if the picture can be rotated as it is read, this is only done for colour pictures
+	 * that ImageJ would rotate without interpolation (the default)
+	 */
+	public static boolean canRotate(ImagePlus image){
+		return(image.getType()==ImagePlus.COLOR_RGB
+				&& image.getProcessor().getInterpolationMethod()==ImageProcessor.NONE);
+	}
+
+
+	public int getWidth(){
+		return(width);
+	}
+
+
+	public int getHeight(){
+		return(height);
+	}
+
+
+
+	/**
+	 * Reads part of a row of the rotated picture
+	 * @param y: the row
+	 * @param x: the first column to read
+	 * @param length: how many pixels to read
+	 * @param row: the pixels are written here
+	 * @param offset: starting from here
+	 */
+	private void readRow(int y, int x, int length, int[] row, int offset){
+		if(!rotate){
+			System.arraycopy(pixels, y*width+x, row, offset, length);
+			return;
+		}
+
+		//this is ColorProcessor.rotate without interpolation, for one row; the background is black
+		double dwidth = width;
+		double dheight = height;
+		double tmp3 = tmp1 - y*sine + centerX;
+		double tmp4 = tmp2 + y*cosine + centerY;
+
+		for(int i=0; i<length; i++){
+			int xi = x+i;
+			double xs = xi*cosine + tmp3;
+			double ys = xi*sine + tmp4;
+
+			if((xs>=-0.01) && (xs<dwidth) && (ys>=-0.01) && (ys<dheight)){
+				int ixs = (int)(xs+0.5);
+				int iys = (int)(ys+0.5);
+				if(ixs>=width) ixs = width - 1;
+				if(iys>=height) iys = height -1;
+				row[offset+i] = pixels[width*iys+ixs];
+			}
+			else{
+				row[offset+i] = 0;
+			}
+		}
+	}
+
+
+	/**
+	 * Keeps only the part of the rectangle within the picture, the same way Toolbox.cropImage does
+	 * @param rectangle
+	 * @return
+	 */
+	private Rectangle clip(Rectangle rectangle){
+		Rectangle area = rectangle.intersection(new Rectangle(0, 0, width, height));
+		if(area.width<=0 || area.height<=0)
+			area = new Rectangle(0, 0, 0, 0);
+		return(area);
+	}
+
+
+	/**
+	 * @param rectangle
+	 * @return the given area of the rotated picture
+	 */
+	private ColorProcessor readArea(Rectangle rectangle){
+		Rectangle area = clip(rectangle);
+		ColorProcessor areaProcessor = new ColorProcessor(area.width, area.height);
+		int[] areaPixels = (int[]) areaProcessor.getPixels();
+
+		for(int y=0; y<area.height; y++){
+			readRow(area.y+y, area.x, area.width, areaPixels, y*area.width);
+		}
+		return(areaProcessor);
+	}
+
+
+
+	/**
+	 * @return a copy of the whole rotated picture, same as Toolbox.rotateImage
+	 */
+	public ImagePlus getRotatedImage(){
+		ImagePlus rotatedImage = new ImagePlus(originalImage.getTitle(), readArea(new Rectangle(0, 0, width, height)));
+		rotatedImage.setCalibration(originalImage.getCalibration());
+		return(rotatedImage);
+	}
+
+
+	/**
+	 * @param rectangle
+	 * @return the given area of the rotated picture, turned into 8-bit grayscale by ImageJ
+	 */
+	public ImagePlus getGrayscaleSection(Rectangle rectangle){
+		ImagePlus section = new ImagePlus(originalImage.getTitle(), readArea(rectangle));
+		ImageConverter imageConverter = new ImageConverter(section);
+		imageConverter.convertToGray8();
+		return(section);
+	}
+
+
+	/**
+	 * Crops the rotated picture and calculates the brightness of the cropped picture, in one pass
+	 * @param rectangle
+	 * @return the cropped colour picture and its HSB brightness, in this order
+	 */
+	public ImagePlus[] cropAndGetBrightness(Rectangle rectangle){
+		Rectangle area = clip(rectangle);
+
+		ColorProcessor colourProcessor = new ColorProcessor(area.width, area.height);
+		int[] colourPixels = (int[]) colourProcessor.getPixels();
+		byte[] brightnessPixels = new byte[area.width*area.height];
+
+		for(int y=0; y<area.height; y++){
+			int offset = y*area.width;
+			readRow(area.y+y, area.x, area.width, colourPixels, offset);
+			HSBConverter.getHSB(colourPixels, offset, offset+area.width, null, null, brightnessPixels);
+		}
+
+		ImagePlus colourCroppedImage = new ImagePlus(originalImage.getTitle(), colourProcessor);
+		ImagePlus brightnessImage = new ImagePlus(originalImage.getTitle(), new ByteProcessor(area.width, area.height, brightnessPixels));
+
+		return(new ImagePlus[]{colourCroppedImage, brightnessImage});
+	}
+
+}
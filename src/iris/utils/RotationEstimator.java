@@ -0,0 +1,278 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ImageConverter;
+
+/**
+ * This class finds how much a plate picture is rotated, by the angle at which the sums of the rows and columns
+ * of its black and white center are the most variable (i.e. colonies line up in rows and columns).
+ *
+ * Instead of rotating the picture for every angle tried, the foreground pixels are rotated as points and
+ * projected straight onto the rows and columns. The angles are searched coarse to fine: first in steps of
+ * 0.25 degrees on a picture downsampled 4 times, then in steps of 0.05 degrees around the best angle on a picture
+ * downsampled 2 times, and last in steps of 0.01 degrees on the full resolution picture.
+ * If the rotation is already roughly known (e.g. the camera was calibrated), the first step is left out,
+ * and the search starts around the expected angle instead.
+ *
+ * @author George Kritikos
+ *
+ */
+public class RotationEstimator {
+
+	/**
+	 * the range of angles searched, in hundredths of a degree
+	 */
+	private static final int minimumAngle = -200;
+	private static final int maximumAngle = 200;
+
+	/**
+	 * the steps of the search, in hundredths of a degree, and how much the picture is downsampled at each step
+	 */
+	private static final int[] angleIncrements = {25, 5, 1};
+	private static final int[] downsamplingFactors = {4, 2, 1};
+
+
+
+	/**
+	 * Estimates the rotation of the given plate picture, using its center (the middle quarter of its width and height)
+	 * @param originalImage: this is not changed
+	 * @return the angle in degrees, between -2 and 2, that the picture should be rotated by (see Toolbox.rotateImage)
+	 */
+	public static double estimateRotation(ImagePlus originalImage){
+		return(estimateRotation(originalImage, 0, 0));
+	}
+
+
+
+	/**
+	 * Estimates the rotation of the given plate picture, searching only around the expected angle
+	 * (as far as the first step of the full search would have been from the best angle)
+	 * @param originalImage: this is not changed
+	 * @param expectedAngle: in degrees
+	 * @return the angle in degrees that the picture should be rotated by,
+	 * or NaN if the best angle is not near the expected one (then the full search should be used)
+	 */
+	public static double estimateRotation(ImagePlus originalImage, double expectedAngle){
+		int angle = (int) Math.round(expectedAngle*100);
+		if(angle<minimumAngle || angle>maximumAngle)
+			return(Double.NaN);
+
+		return(estimateRotation(originalImage, 1, angle));
+	}
+
+
+
+	/**
+	 * @param originalImage
+	 * @param firstLevel: the step of the search to start from, 0 searches all angles
+	 * @param expectedAngle: in hundredths of a degree, where the search starts from if it doesn't search all angles
+	 * @return the angle in degrees, or NaN if the best angle was at the very edge of the search started from
+	 */
+	private static double estimateRotation(ImagePlus originalImage, int firstLevel, int expectedAngle){
+
+		//1. get a subset of that picture
+		int width = originalImage.getWidth();
+		int height = originalImage.getHeight();
+
+		int roiX = (int)Math.round(3.0*width/8.0);
+		int roiY = (int)Math.round(3.0*height/8.0);
+		int roiWidth = (int)Math.round(1.0*width/4.0);
+		int roiHeight = (int)Math.round(1.0*height/4.0);
+
+		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
+		ImagePlus imageSubset = Toolbox.cropImage(originalImage, centerRectangle);
+
+
+		//2. make grayscale, then auto-threshold to get black/white picture
+		ImageConverter imageConverter = new ImageConverter(imageSubset);
+		imageConverter.convertToGray8();
+
+		Toolbox.turnImageBW_Otsu(imageSubset);
+
+		byte[] pixels = (byte[]) imageSubset.getProcessor().getPixels();
+		int subsetWidth = imageSubset.getWidth();
+		int subsetHeight = imageSubset.getHeight();
+
+		imageSubset.flush();
+
+
+		//3. search the angles, from coarse to fine
+		int bestAngle = expectedAngle;
+
+		for(int level=firstLevel; level<angleIncrements.length; level++){
+
+			int factor = downsamplingFactors[level];
+			int levelWidth = subsetWidth/factor;
+			int levelHeight = subsetHeight/factor;
+
+			float[] foreground = getForegroundPoints(pixels, subsetWidth, subsetHeight, factor);
+			if(foreground.length==0){
+				//nothing to line up, don't rotate
+				return(0.0);
+			}
+
+			//the first step searches all angles, the next ones only around the best angle so far
+			int searchFrom = minimumAngle;
+			int searchTo = maximumAngle;
+			if(level>0){
+				searchFrom = Math.max(minimumAngle, bestAngle - angleIncrements[level-1]);
+				searchTo = Math.min(maximumAngle, bestAngle + angleIncrements[level-1]);
+			}
+
+			double bestVariance = -Double.MAX_VALUE;
+
+			for(int angle=searchFrom; angle<=searchTo; angle+=angleIncrements[level]){
+				double variance = getVarianceOfProjections(foreground, levelWidth, levelHeight, angle/100.0);
+
+				//pick the best (biggest) variance, store it's angle
+				if(variance > bestVariance){
+					bestAngle = angle;
+					bestVariance = variance;
+				}
+			}
+
+			//the best angle may well be further away than the search started from
+			if(level==firstLevel && level>0){
+				if((bestAngle==searchFrom && searchFrom>minimumAngle) || (bestAngle==searchTo && searchTo<maximumAngle))
+					return(Double.NaN);
+			}
+		}
+
+		return(bestAngle/100.0);
+	}
+
+
+
+	/**
+	 * Downsamples the black and white picture and returns the coordinates of its foreground (white) pixels,
+	 * relative to the center of the downsampled picture.
+	 * A downsampled pixel is foreground if at least half of the pixels it stands for are.
+	 * @param pixels
+	 * @param width
+	 * @param height
+	 * @param factor
+	 * @return the x and y of every foreground pixel, one after the other
+	 */
+	private static float[] getForegroundPoints(byte[] pixels, int width, int height, int factor){
+		int levelWidth = width/factor;
+		int levelHeight = height/factor;
+
+		//count the foreground pixels of every block
+		int[] counts = new int[levelWidth*levelHeight];
+		int numberOfPoints = 0;
+
+		for(int y=0; y<levelHeight*factor; y++){
+			int row = (y/factor)*levelWidth;
+			int offset = y*width;
+			for(int x=0; x<levelWidth*factor; x++){
+				if(pixels[offset+x]!=0)
+					counts[row + x/factor]++;
+			}
+		}
+
+		int minimumCount = (factor*factor+1)/2;
+		for(int i=0; i<counts.length; i++){
+			if(counts[i]>=minimumCount)
+				numberOfPoints++;
+		}
+
+
+		//keep the coordinates of the pixel centers, relative to the center of the picture
+		float[] points = new float[2*numberOfPoints];
+		float centerX = levelWidth/2.0f;
+		float centerY = levelHeight/2.0f;
+		int i = 0;
+
+		for(int y=0; y<levelHeight; y++){
+			for(int x=0; x<levelWidth; x++){
+				if(counts[y*levelWidth+x]>=minimumCount){
+					points[i++] = x + 0.5f - centerX;
+					points[i++] = y + 0.5f - centerY;
+				}
+			}
+		}
+
+		return(points);
+	}
+
+
+
+	/**
+	 * Rotates the foreground points by the given angle (clockwise, as ImageJ does), sums them up by row and by column
+	 * and returns the sum of the variances of these sums.
+	 * Points are split between the two nearest rows (columns), points that end up outside the picture are left out.
+	 * @param points
+	 * @param width
+	 * @param height
+	 * @param angle: in degrees
+	 * @return
+	 */
+	private static double getVarianceOfProjections(float[] points, int width, int height, double angle){
+		double[] sumOfRows = new double[height];
+		double[] sumOfColumns = new double[width];
+
+		double radians = Math.toRadians(angle);
+		double sin = Math.sin(radians);
+		double cos = Math.cos(radians);
+
+		//positions are shifted by half a pixel, so that a point at the center of a pixel falls on its index
+		double centerX = width/2.0 - 0.5;
+		double centerY = height/2.0 - 0.5;
+
+		for(int i=0; i<points.length; i+=2){
+			double x = points[i];
+			double y = points[i+1];
+
+			addToProjection(sumOfColumns, x*cos - y*sin + centerX);
+			addToProjection(sumOfRows, x*sin + y*cos + centerY);
+		}
+
+		return(getVariance(sumOfColumns) + getVariance(sumOfRows));
+	}
+
+
+
+	/**
+	 * Adds one point at the given position to the projection, splitting it between the two nearest indices
+	 * @param projection
+	 * @param position
+	 */
+	private static void addToProjection(double[] projection, double position){
+		int index = (int) Math.floor(position);
+		double weight = position - index;
+
+		if(index>=0 && index<projection.length)
+			projection[index] += 1-weight;
+		if(index+1>=0 && index+1<projection.length)
+			projection[index+1] += weight;
+	}
+
+
+
+	/**
+	 * @param values
+	 * @return the variance of the values
+	 */
+	private static double getVariance(double[] values){
+		if(values.length<2)
+			return(0);
+
+		double sum = 0;
+		for(int i=0; i<values.length; i++){
+			sum += values[i];
+		}
+		double mean = sum/values.length;
+
+		double sumOfSquares = 0;
+		for(int i=0; i<values.length; i++){
+			sumOfSquares += (values[i]-mean)*(values[i]-mean);
+		}
+
+		return(sumOfSquares/(values.length-1));
+	}
+
+}
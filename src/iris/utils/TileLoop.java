@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package iris.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import iris.settings.PictureSettings;
+import iris.ui.IrisFrontend;
+
+/**
+ * This class runs the per-tile analysis of a profile over the whole rows x columns grid.
+ * If more than one tile thread is requested (IrisFrontend.numberOfTileThreads), the grid is split
+ * in ranges of rows that are analyzed in parallel, otherwise the tiles are analyzed one after the other,
+ * row by row.
+ * Each tile task should only write to its own [row][column] cell of the output arrays,
+ * this way the results are the same no matter how many threads were used.
+ * The tile threads read the tiles with the settings of the picture that started the loop (see PictureSettings).
+ * @author George Kritikos
+ *
+ */
+public class TileLoop {
+
+	/**
+	 * This is the work done for one tile of the grid
+	 */
+	public static abstract class TileTask {
+		public abstract void processTile(int row, int column);
+	}
+
+
+	/**
+	 * the pools shared by all pictures processed at the same time, one for every number of tile threads asked for,
+	 * so that changing the number of threads doesn't leave the old pool behind while pictures may still be using it
+	 */
+	private static final Map<Integer, ForkJoinPool> tilePools = new HashMap<Integer, ForkJoinPool>();
+
+
+	/**
+	 * Runs the given task on every tile of the grid, using as many threads as set in IrisFrontend.numberOfTileThreads
+	 * @param numberOfRows
+	 * @param numberOfColumns
+	 * @param task
+	 */
+	public static void forEachTile(int numberOfRows, int numberOfColumns, TileTask task){
+
+		int numberOfThreads = IrisFrontend.numberOfTileThreads;
+
+		if(numberOfThreads<=1 || numberOfRows<2){
+			processRows(0, numberOfRows, numberOfColumns, task);
+			return;
+		}
+
+		getTilePool(numberOfThreads).invoke(new RowRangeAction(0, numberOfRows, numberOfColumns, task, PictureSettings.current()));
+	}
+
+
+	/**
+	 * Returns the shared pool with the given number of threads, creating it the first time it's needed
+	 * @param numberOfThreads
+	 * @return
+	 */
+	private static synchronized ForkJoinPool getTilePool(int numberOfThreads){
+		ForkJoinPool tilePool = tilePools.get(numberOfThreads);
+		if(tilePool==null){
+			tilePool = new ForkJoinPool(numberOfThreads);
+			tilePools.put(numberOfThreads, tilePool);
+		}
+		return(tilePool);
+	}
+
+
+	/**
+	 * Runs the task on all tiles of the rows from firstRow (inclusive) to lastRow (exclusive)
+	 */
+	private static void processRows(int firstRow, int lastRow, int numberOfColumns, TileTask task){
+		for(int i=firstRow; i<lastRow; i++){
+			for(int j=0; j<numberOfColumns; j++){
+				task.processTile(i, j);
+			}
+		}
+	}
+
+
+	/**
+	 * Splits a range of rows in half until only one row is left, then analyzes its tiles
+	 */
+	private static class RowRangeAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int firstRow;
+		private final int lastRow;
+		private final int numberOfColumns;
+		private final TileTask task;
+		private final PictureSettings pictureSettings;
+
+		RowRangeAction(int firstRow, int lastRow, int numberOfColumns, TileTask task, PictureSettings pictureSettings){
+			this.firstRow = firstRow;
+			this.lastRow = lastRow;
+			this.numberOfColumns = numberOfColumns;
+			this.task = task;
+			this.pictureSettings = pictureSettings;
+		}
+
+		@Override
+		protected void compute() {
+			if(lastRow-firstRow<=1){
+				//pool threads work on the tiles of all pictures analyzed at the same time
+				PictureSettings previousPictureSettings = PictureSettings.setCurrent(pictureSettings);
+				try{
+					processRows(firstRow, lastRow, numberOfColumns, task);
+				}
+				finally{
+					PictureSettings.setCurrent(previousPictureSettings);
+				}
+				return;
+			}
+
+			int middleRow = (firstRow+lastRow)/2;
+			invokeAll(new RowRangeAction(firstRow, middleRow, numberOfColumns, task, pictureSettings),
+					new RowRangeAction(middleRow, lastRow, numberOfColumns, task, pictureSettings));
+		}
+	}
+
+}
@@ -0,0 +1,179 @@
+/**
+ *
+ */
+package iris.utils;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.ImageProcessor;
+
+import java.awt.Rectangle;
+
+/**
+ * This class gives read-only access to a tile of a picture without copying it: the pixels of the tile are read
+ * straight out of the pixel array of the picture (byte[] for 8-bit pictures, int[] for colour ones),
+ * using the offset of the tile's first pixel and the width of the picture as the stride.
+ *
+ * Tile readers used to duplicate a tile every time they wanted to measure something on it, e.g. the average brightness
+ * around the colony center, only to throw the copy away; with a view, the copy is only made if the pixels are
+ * to be changed (see toImage).
+ * A view sees any changes made to the picture after it was created.
+ *
+ * @author George Kritikos
+ *
+ */
+public class TileView {
+
+	private final byte[] grayscalePixels;
+	private final int[] colourPixels;
+
+	/**
+	 * the tile, in the coordinates of the picture
+	 */
+	private final Rectangle bounds;
+
+	/**
+	 * the width of the picture
+	 */
+	private final int stride;
+
+	private final ImagePlus image;
+
+
+
+	/**
+	 * A view of the part of the picture that ImagePlus.duplicate() would copy:
+	 * the bounds of the picture's Roi, if it has one, otherwise the whole picture
+	 * @param image: an 8-bit or colour picture
+	 */
+	public TileView(ImagePlus image){
+		this(image, getDuplicatedArea(image));
+	}
+
+
+	/**
+	 * A view of the given part of the picture, only what falls within the picture is kept (same as Toolbox.cropImage)
+	 * @param image: an 8-bit or colour picture
+	 * @param bounds
+	 */
+	public TileView(ImagePlus image, Rectangle bounds){
+		ImageProcessor processor = image.getProcessor();
+		Object pixels = processor.getPixels();
+
+		this.image = image;
+		this.stride = processor.getWidth();
+		this.grayscalePixels = pixels instanceof byte[] ? (byte[]) pixels : null;
+		this.colourPixels = pixels instanceof int[] ? (int[]) pixels : null;
+
+		if(grayscalePixels==null && colourPixels==null)
+			throw new IllegalArgumentException("only 8-bit and colour pictures can be viewed");
+
+		Rectangle area = bounds.intersection(new Rectangle(0, 0, processor.getWidth(), processor.getHeight()));
+		if(area.width<=0 || area.height<=0)
+			area = new Rectangle(0, 0, 0, 0);
+		this.bounds = area;
+	}
+
+
+	/**
+	 * @param image
+	 * @return the part of the picture ImagePlus.duplicate() copies
+	 */
+	private static Rectangle getDuplicatedArea(ImagePlus image){
+		Roi roi = image.getRoi();
+		if(roi!=null && roi.isArea())
+			return(roi.getBounds());
+		return(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+	}
+
+
+
+	public int getWidth(){
+		return(bounds.width);
+	}
+
+
+	public int getHeight(){
+		return(bounds.height);
+	}
+
+
+	/**
+	 * @return the tile, in the coordinates of the picture
+	 */
+	public Rectangle getBounds(){
+		return(new Rectangle(bounds));
+	}
+
+
+	/**
+	 * @return true if this is a view of a colour picture, then the pixels are packed RGB values
+	 */
+	public boolean isColour(){
+		return(colourPixels!=null);
+	}
+
+
+	/**
+	 * @param x: in the coordinates of the tile
+	 * @param y
+	 * @return the gray value (0-255) or packed RGB value of the pixel
+	 */
+	public int getPixel(int x, int y){
+		int index = (bounds.y+y)*stride + bounds.x+x;
+		if(colourPixels!=null)
+			return(colourPixels[index]);
+		return(grayscalePixels[index]&0xff);
+	}
+
+
+
+	/**
+	 * Gets the pixels of the tile that are inside the given Roi; these are the only pixels left
+	 * if everything outside the Roi is filled with black (ImageProcessor.fillOutside)
+	 * @param roi: in the coordinates of the tile, it may fall partly outside the tile
+	 * @return the gray values (0-255) or packed RGB values of the pixels, row by row
+	 */
+	public int[] getPixelsInside(Roi roi){
+		Rectangle roiBounds = roi.getBounds();
+		ImageProcessor mask = roi.getMask();
+
+		//only go through the part of the Roi that is inside the tile
+		Rectangle area = roiBounds.intersection(new Rectangle(0, 0, bounds.width, bounds.height));
+		if(area.width<=0 || area.height<=0)
+			return(new int[0]);
+
+		byte[] maskPixels = mask==null ? null : (byte[]) mask.getPixels();
+		int[] inside = new int[area.width*area.height];
+		int count = 0;
+
+		for(int y=area.y; y<area.y+area.height; y++){
+			int offset = (bounds.y+y)*stride + bounds.x;
+			int maskOffset = (y-roiBounds.y)*roiBounds.width - roiBounds.x;
+
+			for(int x=area.x; x<area.x+area.width; x++){
+				if(maskPixels!=null && maskPixels[maskOffset+x]==0)
+					continue;
+
+				if(colourPixels!=null)
+					inside[count++] = colourPixels[offset+x];
+				else
+					inside[count++] = grayscalePixels[offset+x]&0xff;
+			}
+		}
+
+		int[] pixels = new int[count];
+		System.arraycopy(inside, 0, pixels, 0, count);
+		return(pixels);
+	}
+
+
+
+	/**
+	 * @return a copy of the tile, for when its pixels need to be changed (same as Toolbox.cropImage)
+	 */
+	public ImagePlus toImage(){
+		return(new ImagePlus(image.getTitle(), Toolbox.cropProcessor(image.getProcessor(), bounds)));
+	}
+
+}
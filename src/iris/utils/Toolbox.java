@@ -10,6 +10,8 @@ import java.awt.Rectangle;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Point2D;
 import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
@@ -23,12 +25,12 @@ import com.opencsv.CSVReader;
 import fiji.threshold.Auto_Local_Threshold;
 import ij.ImagePlus;
 import ij.gui.Roi;
+import ij.gui.ShapeRoi;
 import ij.io.FileSaver;
 import ij.measure.Calibration;
 import ij.measure.Measurements;
 import ij.measure.ResultsTable;
 import ij.plugin.filter.ParticleAnalyzer;
-import ij.plugin.frame.RoiManager;
 import ij.process.AutoThresholder;
 import ij.process.AutoThresholder.Method;
 import ij.process.ByteProcessor;
@@ -40,6 +42,7 @@ import ij.process.ImageStatistics;
 import iris.imageSegmenterInput.BasicImageSegmenterInput;
 import iris.imageSegmenterOutput.BasicImageSegmenterOutput;
 import iris.settings.ColorSettings;
+import iris.settings.PictureSettings;
 import iris.tileReaderInputs.BasicTileReaderInput;
 import iris.tileReaderInputs.ColorTileReaderInput;
 import iris.tileReaderOutputs.BasicTileReaderOutput;
@@ -120,10 +123,6 @@ public class Toolbox {
 					int[] rgb = new int[3];
 					ip.getPixel(x+r.x, y+r.y,rgb);
 
-					//get the corresponding HSB values
-					float[] HSB = java.awt.Color.RGBtoHSB(rgb[0], rgb[1], rgb[2], null); 
-
-
 					switch(channelToGet){
 					case('l'): //luminence/brightness
 						pixelList.add(ip.getPixelValue(x+r.x, y+r.y));
@@ -138,13 +137,13 @@ public class Toolbox {
 						pixelList.add((float)rgb[2]);
 					break;
 					case('H'): //Hue
-						pixelList.add((float)HSB[0]*(float)255); //HSB values are from 0...1, convert that to 0...255
+						pixelList.add(HSBConverter.getHue(rgb[0], rgb[1], rgb[2])*(float)255); //HSB values are from 0...1, convert that to 0...255
 					break;
 					case('S'): //Saturation
-						pixelList.add((float)HSB[1]*(float)255);
+						pixelList.add(HSBConverter.getSaturation(rgb[0], rgb[1], rgb[2])*(float)255);
 					break;
 					case('B'): //Brightness
-						pixelList.add((float)HSB[2]*(float)255);
+						pixelList.add(HSBConverter.getBrightness(rgb[0], rgb[1], rgb[2])*(float)255);
 					break;
 					}
 				}
@@ -176,7 +175,7 @@ public class Toolbox {
 		Auto_Local_Threshold.Mean(imageToThreshold, radius, 0, 0, true);
 		imageToThreshold.setTitle(originalImage.getTitle());
 
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(PictureSettings.current().userDefinedRoi){
 			imageToThreshold.setRoi(originalImage.getRoi());
 		}
 
@@ -231,7 +230,8 @@ public class Toolbox {
 	 */
 	public static ImagePlus getHSBgrayscaleImageBrightness(ImagePlus originalImage){
 
-		ImagePlus originalImageCopy = originalImage.duplicate();
+		//a copy is only needed to crop the picture to its Roi, the conversion itself doesn't change the picture
+		ImagePlus originalImageCopy = originalImage.getRoi()==null ? originalImage : originalImage.duplicate();
 		ImageProcessor ip =  originalImageCopy.getProcessor();
 
 		ColorProcessor cp = (ColorProcessor)ip;
@@ -242,23 +242,22 @@ public class Toolbox {
 		int height = originalImageCopy.getHeight();
 		int numPixels = width*height;
 
-		//we need those arrays to save the different channels into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the HSB channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		//create a new image with the original title and the brightness HSB channel of the input image
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
 		ImagePlus grayscaleImage = new ImagePlus(originalImage.getTitle(), bpBri);
 
 
-		if(IrisFrontend.settings.userDefinedRoi){
+		if(PictureSettings.current().userDefinedRoi){
 			grayscaleImage.setRoi(originalImage.getRoi());
 		}
-		originalImageCopy.flush();
+		if(originalImageCopy!=originalImage)
+			originalImageCopy.flush();
 
 		return(grayscaleImage);
 	}
@@ -294,13 +293,19 @@ public class Toolbox {
 	 */
 	public static ImagePlus rotateImage(ImagePlus originalImage, double angle) {
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ImagePlus rotatedImage = originalImage.duplicate();
 			rotatedImage.setRoi(originalImage.getRoi());
 			return(rotatedImage); // otherwise I'd have to delete the ROI
 		}
 
 		originalImage.deleteRoi();
+
+		//colour pictures are rotated straight into a new picture, without first copying the original one
+		if(RotatedPlate.canRotate(originalImage)){
+			return(new RotatedPlate(originalImage, angle).getRotatedImage());
+		}
+
 		ImagePlus aDuplicate = originalImage.duplicate();//because we don't want to tamper with the original image
 
 		aDuplicate.getProcessor().setBackgroundValue(0);
@@ -385,9 +390,7 @@ public class Toolbox {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask
@@ -542,81 +545,141 @@ public class Toolbox {
 	public static double calculateImageRotation(ImagePlus originalImage) {
 
 		//0. if user has cropped the colony, no need to rotate
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			return(0.0);
 		}
 
-		//1. get a subset of that picture
-		int width = originalImage.getWidth();
-		int height = originalImage.getHeight();
-
-		int roiX = (int)Math.round(3.0*width/8.0);
-		int roiY = (int)Math.round(3.0*height/8.0);
-		int roiWidth = (int)Math.round(1.0*width/4.0);
-		int roiHeight = (int)Math.round(1.0*height/4.0);
-
-		Roi centerRectangle = new Roi(roiX, roiY, roiWidth, roiHeight);
-		ImagePlus imageSubset = cropImage(originalImage, centerRectangle);
-
+		return(RotationEstimator.estimateRotation(originalImage));
+	}
 
-		//2. make grayscale, then auto-threshold to get black/white picture
-		ImageConverter imageConverter = new ImageConverter(imageSubset);
-		imageConverter.convertToGray8();
 
-		//convert to b/w
-		turnImageBW_Otsu(imageSubset);
 
+	/**
+	 * This method copies the area of the given image under the given ROI to a new ImagePlus object.
+	 * The result is the same as calling setRoi, copy(false) and getClipboard, but this method neither
+	 * uses ImageJ's internal clipboard nor changes the ROI of the original image.
+	 * It can therefore be called on the same image by many threads at once.
+	 * As with the clipboard, a non-rectangular ROI is copied over to the new image.
+	 * @param originalImage
+	 * @param roi
+	 * @return
+	 */
+	public static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
+		ImageProcessor originalProcessor = originalImage.getProcessor();
+		int width = originalProcessor.getWidth();
+		int height = originalProcessor.getHeight();
+
+		//no ROI, or an empty one: ImageJ would copy the whole image
+		Rectangle bounds = new Rectangle(0, 0, width, height);
+		if(roi!=null){
+			Rectangle roiBounds = roi.getBounds();
+			if(roiBounds.width!=0 || roiBounds.height!=0)
+				bounds = roiBounds;
+		}
 
-		//3. iterate over different angles
-		double initialAngle = -2;
-		double finalAngle = 2;
-		double angleIncrements = 0.25;
+		//keep only the part of the ROI that falls inside the image
+		Rectangle area = bounds.intersection(new Rectangle(0, 0, width, height));
+		if(area.width<=0 || area.height<=0)
+			area = new Rectangle(0, 0, 0, 0);
 
+		ImageProcessor croppedProcessor = cropProcessor(originalProcessor, area);
+		ImagePlus croppedImage = new ImagePlus(originalImage.getTitle(), croppedProcessor);
 
-		double bestAngle = 0;
-		double bestVariance = -Double.MAX_VALUE;
+		//copy over non-rectangular ROIs, cut to the image bounds if they are out of them
+		if(roi!=null && roi.getType()!=Roi.RECTANGLE && !area.isEmpty()){
+			Roi croppedRoi = (Roi)roi.clone();
+			if(bounds.x<0 || bounds.y<0 || bounds.x+bounds.width>width || bounds.y+bounds.height>height){
+				ShapeRoi imageRoi = new ShapeRoi(new Roi(0, 0, width, height));
+				croppedRoi = imageRoi.and(new ShapeRoi(croppedRoi));
+			}
+			croppedImage.setRoi(croppedRoi);
+		}
 
-		for(double angle = initialAngle; angle<=finalAngle; angle+=angleIncrements){
-			//3.1 rotate the b/w picture
-			ImagePlus rotatedImage = Toolbox.rotateImage(imageSubset, angle);			
+		return(croppedImage);
+	}
 
-			//3.2 calculate sums of rows and columns
-			ArrayList<Integer> sumOfColumns = sumOfColumns(rotatedImage);
-			ArrayList<Integer> sumOfRows = sumOfRows(rotatedImage);
 
-			//3.3 calculate their variances
-			double varianceColumns = getVariance(sumOfColumns);
-			double varianceRows = getVariance(sumOfRows);
-			double varianceSum = varianceColumns + varianceRows;
+	/**
+	 * Copies the given rectangular area of the image to a new ImagePlus object, see cropImage(ImagePlus, Roi)
+	 * @param originalImage
+	 * @param rectangle
+	 * @return
+	 */
+	public static ImagePlus cropImage(ImagePlus originalImage, Rectangle rectangle){
+		return(cropImage(originalImage, new Roi(rectangle)));
+	}
 
-			//3.4 pick the best (biggest) variance, store it's angle
-			if(varianceSum > bestVariance){
-				bestAngle = angle;
-				bestVariance = varianceSum;
-			}
 
-			rotatedImage.flush(); //we don't need this anymore, it was a copy after all
+	/**
+	 * Copies the given area of the image processor to a new image processor of the same type,
+	 * reading the pixel arrays directly, without setting a ROI on the original processor.
+	 * The area must lie within the image.
+	 * @param originalProcessor
+	 * @param area
+	 * @return
+	 */
+	public static ImageProcessor cropProcessor(ImageProcessor originalProcessor, Rectangle area){
+		ImageProcessor croppedProcessor;
+		if(originalProcessor instanceof ColorProcessor)
+			croppedProcessor = new ColorProcessor(area.width, area.height);
+		else
+			croppedProcessor = originalProcessor.createProcessor(area.width, area.height);
+
+		Object originalPixels = originalProcessor.getPixels();
+		Object croppedPixels = croppedProcessor.getPixels();
+		int originalWidth = originalProcessor.getWidth();
+
+		for(int y=0; y<area.height; y++){
+			System.arraycopy(originalPixels, (area.y+y)*originalWidth+area.x, croppedPixels, y*area.width, area.width);
 		}
 
-		return(bestAngle);			
+		return(croppedProcessor);
 	}
 
 
-
 	/**
-	 * This method will naively crop the plate in a hard-coded manner.
-	 * It copies the given area of interest to the internal clipboard.
-	 * Then, it copies the internal clipboard results to a new ImagePlus object.
-	 * @param originalPicture
-	 * @return
+	 * Downsamples an 8-bit picture by averaging each block of factor x factor pixels into one pixel.
+	 * The blocks at the right and bottom edges of the picture may be smaller, they are averaged all the same.
+	 * @param grayscaleImage: this is not changed
+	 * @param factor
+	 * @return the downsampled picture, (width/factor) x (height/factor), rounding up
 	 */
-	private static ImagePlus cropImage(ImagePlus originalImage, Roi roi){
-		originalImage.setRoi(roi);
-		originalImage.copy(false);//copy to the internal clipboard
-		//copy to a new picture
-		ImagePlus croppedImage = ImagePlus.getClipboard();
-		return(croppedImage);
+	public static ImagePlus downsampleImage(ImagePlus grayscaleImage, int factor){
+		int width = grayscaleImage.getWidth();
+		int height = grayscaleImage.getHeight();
+		int downsampledWidth = (width+factor-1)/factor;
+		int downsampledHeight = (height+factor-1)/factor;
+
+		byte[] pixels = (byte[]) grayscaleImage.getProcessor().getPixels();
+		byte[] downsampledPixels = new byte[downsampledWidth*downsampledHeight];
+		int[] sumOfBlocks = new int[downsampledWidth];
+
+		for(int blockY=0; blockY<downsampledHeight; blockY++){
+			Arrays.fill(sumOfBlocks, 0);
+			int firstRow = blockY*factor;
+			int lastRow = Math.min(firstRow+factor, height);
+
+			//go through the rows of the blocks, in the order the pixels are stored in
+			for(int y=firstRow; y<lastRow; y++){
+				int offset = y*width;
+				for(int blockX=0, x=0; blockX<downsampledWidth; blockX++){
+					int blockEnd = Math.min(x+factor, width);
+					int sum = 0;
+					for(; x<blockEnd; x++){
+						sum += pixels[offset+x]&0xff;
+					}
+					sumOfBlocks[blockX] += sum;
+				}
+			}
 
+			int blockHeight = lastRow-firstRow;
+			for(int blockX=0; blockX<downsampledWidth; blockX++){
+				int blockWidth = Math.min(factor, width-blockX*factor);
+				downsampledPixels[blockY*downsampledWidth+blockX] = (byte) Math.round(sumOfBlocks[blockX]/(float)(blockWidth*blockHeight));
+			}
+		}
+
+		return(new ImagePlus(grayscaleImage.getTitle(), new ByteProcessor(downsampledWidth, downsampledHeight, downsampledPixels, null)));
 	}
 
 
@@ -769,6 +832,24 @@ public class Toolbox {
 
 	}
 
+
+	/**
+	 * This function writes the given text to the file with the given path, replacing it if it exists
+	 * @param path
+	 * @param text
+	 * @return false if the file could not be written
+	 */
+	public static boolean writeTextFile(String path, String text) {
+		try {
+			FileWriter writer = new FileWriter(path);
+			writer.write(text);
+			writer.close();
+		} catch (IOException e) {
+			return(false);
+		}
+		return(true);
+	}
+
 	/**
 	 * This function will return the area covered by a ROI
 	 * @param imp
@@ -1153,6 +1234,27 @@ public class Toolbox {
 
 
 
+	/**
+	 * Same as isTileEmpty_simple2 below, for the biggest particle found by a ParticleLabeller.
+	 * @param biggestParticle: its outline must have been traced
+	 * @return
+	 */
+	public static boolean isTileEmpty_simple2(ParticleLabeller.Particle biggestParticle) {
+
+		if(PictureSettings.current().singleColonyRun==true){
+			return(false);
+		}
+
+		//usually, colonies have roundnesses that start from 0.50 (faint colonies)
+		//and reach 0.92 for normal colonies; everything below 0.20 gets characterized as an empty spot
+		if(biggestParticle.circularity<0.20){
+			return(true); //it's empty
+		}
+
+		return(false);
+	}
+
+
 	/**
 	 * This function just checks for circularity. If it's under 0.20, then the tile gets rejected.
 	 * @param resultsTable
@@ -1162,7 +1264,7 @@ public class Toolbox {
 	public static boolean isTileEmpty_simple2(ResultsTable resultsTable,
 			ImagePlus tileImage) {
 
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			return(false);
 		}
 
@@ -1197,7 +1299,7 @@ public class Toolbox {
 	 * @return
 	 */
 	public static boolean isTileEmpty_simple(ImagePlus tile, double varianceThreshold){
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			return(false);
 		}
 
@@ -1221,30 +1323,7 @@ public class Toolbox {
 	 * @return
 	 */
 	private static double[] sumOfRows_double(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		double[] sumOfRows = new double[dimensions[1]];
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows[y] = sum;
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toDoubleArray(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -1257,30 +1336,7 @@ public class Toolbox {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfRows(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows
-
-		ArrayList<Integer> sumOfRows = new ArrayList<Integer>(dimensions[1]);
-
-		int sum = 0;
-
-		//for all rows
-		for(int y=0; y<dimensions[1]; y++ ){
-			sum = 0;
-
-			//for all columns
-			for(int x=0; x<dimensions[0]; x++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfRows.set(y, sum);
-			sumOfRows.add(sum);
-		}
-
-		return(sumOfRows);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfRows(croppedImage)));
 	}
 
 
@@ -1294,29 +1350,7 @@ public class Toolbox {
 	 * @return
 	 */
 	private static ArrayList<Integer> sumOfColumns(ImagePlus croppedImage){
-		int dimensions[] = croppedImage.getDimensions();
-
-		//make the sum of rows and columns
-		ArrayList<Integer> sumOfColumns = new ArrayList<Integer>(dimensions[0]);
-
-		int sum = 0;
-
-		//for all columns
-		for(int x=0; x<dimensions[0]; x++ ){
-			sum = 0;
-
-			//for all rows
-			for(int y=0; y<dimensions[1]; y++ ){
-
-				sum += croppedImage.getPixel(x, y)[0];
-			}
-
-			//sum complete, add it to the list
-			//sumOfColumns.set(x, sum);
-			sumOfColumns.add(sum);
-		}
-
-		return(sumOfColumns);
+		return(IntegralImage.toIntegerList(IntegralImage.sumOfColumns(croppedImage)));
 	}
 
 
@@ -1325,19 +1359,17 @@ public class Toolbox {
 	 * a very commonly used procedure across tile readers: particle analysis
 	 * @param inputImage
 	 * @param resultsTable
-	 * @return
+	 * @return the ROIs of the particles found, in the order of the results table rows, or null if no particles were found
 	 */
-	public static RoiManager particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
+	public static Roi[] particleAnalysis_fillHoles(ImagePlus inputImage, ResultsTable resultsTable){
 		//create the results table, where the results of the particle analysis will be shown
 		//ResultsTable resultsTable = new ResultsTable();
-		RoiManager roiManager = new RoiManager(true);
 
 		//arguments: some weird ParticleAnalyzer.* options , what to measure (area), where to store the results, what is the minimum particle size, maximum particle size
-		ParticleAnalyzer particleAnalyzer = new ParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.ADD_TO_MANAGER+ParticleAnalyzer.INCLUDE_HOLES, 
+		HeadlessParticleAnalyzer particleAnalyzer = new HeadlessParticleAnalyzer(ParticleAnalyzer.SHOW_NONE+ParticleAnalyzer.INCLUDE_HOLES, 
 				Measurements.CENTER_OF_MASS + Measurements.AREA+Measurements.CIRCULARITY+Measurements.RECT+Measurements.PERIMETER, 
 				resultsTable, 5, Integer.MAX_VALUE);
 
-		ParticleAnalyzer.setRoiManager(roiManager);
 
 		particleAnalyzer.analyze(inputImage);
 
@@ -1346,7 +1378,7 @@ public class Toolbox {
 			return(null);
 		}
 
-		return(roiManager);
+		return(particleAnalyzer.getRois());
 	}
 
 	/**
@@ -1402,7 +1434,7 @@ public class Toolbox {
 			BW_tile.getProcessor().erode();
 
 			ResultsTable my_ResultsTable = new ResultsTable();
-			RoiManager my_RoiManager = Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
+			Toolbox.particleAnalysis_fillHoles(BW_tile, my_ResultsTable);
 
 			int indexOfBiggestParticle = getIndexOfBiggestParticle(my_ResultsTable);
 			pointToReturn = getBiggestParticleCenterOfMass(my_ResultsTable, indexOfBiggestParticle);
@@ -1482,7 +1514,8 @@ public class Toolbox {
 	 * @return
 	 */
 	private static ImagePlus makeImageGrayscaleHSB(ImagePlus inputImage){
-		ImagePlus grayscaleImage = inputImage.duplicate();
+		//a copy is only needed to crop the picture to its Roi
+		ImagePlus grayscaleImage = inputImage.getRoi()==null ? inputImage : inputImage.duplicate();
 
 		ImageProcessor ip =  grayscaleImage.getProcessor();
 		ColorProcessor cp = (ColorProcessor)ip;
@@ -1492,13 +1525,11 @@ public class Toolbox {
 		int height = grayscaleImage.getHeight();
 		int numPixels = width*height;
 
-		//we need those to save into
-		byte[] hSource = new byte[numPixels];
-		byte[] sSource = new byte[numPixels];
+		//we need this to save into
 		byte[] bSource = new byte[numPixels];
 
-		//saves the channels of the cp into the h, s, bSource
-		cp.getHSB(hSource,sSource,bSource);
+		//saves only the brightness channel of the cp into the bSource
+		HSBConverter.getHSB((int[]) cp.getPixels(), null, null, bSource);
 
 		ByteProcessor bpBri = new ByteProcessor(width,height,bSource);
 		grayscaleImage = new ImagePlus("", bpBri);
@@ -1515,7 +1546,7 @@ public class Toolbox {
 
 		//if there's only one colony, then there's no way to pre-calculate centers.
 		//basically return nulls in the place of the colony center. This will get it to calculate the center individually per-colony
-		if(IrisFrontend.singleColonyRun==true){
+		if(PictureSettings.current().singleColonyRun==true){
 			ColorTileReaderInput [][]  dummy_centeredColorTileReaderInput = new ColorTileReaderInput[1][1];
 			dummy_centeredColorTileReaderInput[0][0] = new ColorTileReaderInput(inputCroppedImage, segmentationOutput.ROImatrix[0][0], settings); //notice last argument (center point) is missing
 			return(dummy_centeredColorTileReaderInput);
@@ -1647,9 +1678,7 @@ public class Toolbox {
 			for (int j = 0; j<tileReaderOutputs[0].length; j++) {
 
 				//get the tile
-				croppedImage.setRoi(segmentationOutput.ROImatrix[i][j]);
-				croppedImage.copy(false);
-				ImagePlus tile = ImagePlus.getClipboard();
+				ImagePlus tile = cropImage(croppedImage, segmentationOutput.ROImatrix[i][j]);
 
 
 				//apply the ROI, get the mask